@@ -0,0 +1,133 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.RaplaResources;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentBlock;
+import org.rapla.framework.RaplaException;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.plugin.tableview.RaplaTableCSVWriter;
+import org.rapla.plugin.tableview.RaplaTableColumn;
+import org.rapla.plugin.tableview.RaplaTableModel;
+import org.rapla.plugin.tableview.internal.TableConfig;
+import org.rapla.plugin.tableview.server.ServerTableColumnFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the CSV export of the appointments table with 100.000 rows. The appointment blocks of a year are repeated until
+ * the row count is reached. Compares the export into one string with the streaming export, sequential and on the worker pool. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CSVExportBenchmark
+{
+    public static final int ROWS = 100000;
+
+    @State(Scope.Benchmark)
+    public static class Export
+    {
+        List<RaplaTableColumn<AppointmentBlock>> columns;
+        List<AppointmentBlock> rows;
+
+        @Setup(Level.Trial)
+        public void prepare(LoadedDataset dataset) throws RaplaException
+        {
+            final ServerBundleManager bundleManager = new ServerBundleManager();
+            final TableConfig.TableConfigLoader loader = new TableConfig.TableConfigLoader(dataset.facade, new RaplaResources(bundleManager),
+                    new RaplaLocaleImpl(bundleManager), Collections.emptySet(), new ServerTableColumnFactory(dataset.facade));
+            columns = loader.loadColumns(TableConfig.APPOINTMENTS_VIEW, dataset.admin);
+            final Date start = DatasetGenerator.START;
+            final Date end = DateTools.addDays(start, 365);
+            final Collection<Appointment> appointments = dataset.operator.waitForWithRaplaException(
+                    dataset.operator.queryAppointments(null, dataset.allAllocatables, null, start, end, null, (Map<String, String>) null),
+                    QueryBenchmark.TIMEOUT).getAllAppointments();
+            final List<AppointmentBlock> blocks = new ArrayList<>();
+            for (Appointment appointment : appointments)
+            {
+                appointment.createBlocks(start, end, blocks);
+            }
+            if (blocks.isEmpty())
+            {
+                throw new IllegalStateException("No appointments in the generated dataset");
+            }
+            rows = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++)
+            {
+                rows.add(blocks.get(i % blocks.size()));
+            }
+        }
+    }
+
+    /** discards the output, so only the formatting and not the target is measured */
+    static class NullWriter extends Writer
+    {
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len)
+        {
+            count += len;
+        }
+
+        @Override
+        public void write(String str)
+        {
+            count += str.length();
+        }
+
+        @Override
+        public void flush()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /** the export into one string, like the table view before the streaming */
+    @Benchmark
+    public String singleString(Export export)
+    {
+        return RaplaTableModel.getCSV(export.columns, export.rows, null, true);
+    }
+
+    @Benchmark
+    public long streamSequential(Export export) throws IOException
+    {
+        final NullWriter out = new NullWriter();
+        new RaplaTableCSVWriter<>(export.columns, null, true).write(export.rows, out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long streamParallel(Export export) throws IOException
+    {
+        final NullWriter out = new NullWriter();
+        new RaplaTableCSVWriter<>(export.columns, null, true).setExecutor(RaplaTableCSVWriter.getDefaultExecutor()).write(export.rows, out);
+        return out.count;
+    }
+}
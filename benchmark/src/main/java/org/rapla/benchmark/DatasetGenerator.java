@@ -0,0 +1,333 @@
+package org.rapla.benchmark;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Category;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.Repeating;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/** Generates a rapla data file with users, user groups, resource types, resources with group permissions and events with weekly
+ * repeating appointments.
+ * <p>
+ * All random choices are made with a seeded {@link Random} and all appointments are placed relative to a fixed start date, so the same
+ * scale and seed always produce the same content. Only the ids and the timestamps are assigned by the storage.
+ * Generated files are kept in the data folder and are reused by later benchmark runs.
+ * </p>
+ */
+public class DatasetGenerator
+{
+    public static final long DEFAULT_SEED = 4711;
+    public static final String DEFAULT_FOLDER = "target/benchmark-data";
+    /** a monday. All appointments start in the year after this date */
+    public static final Date START = new Date(DateTools.toDate(2030, 1, 7));
+
+    public enum Scale
+    {
+        SMALL(20, 5, 3, 100, 1000),
+        MEDIUM(100, 10, 5, 500, 10000),
+        LARGE(500, 20, 10, 2000, 50000);
+
+        final int users;
+        final int groups;
+        final int resourceTypes;
+        final int resources;
+        final int reservations;
+
+        Scale(int users, int groups, int resourceTypes, int resources, int reservations)
+        {
+            this.users = users;
+            this.groups = groups;
+            this.resourceTypes = resourceTypes;
+            this.resources = resources;
+            this.reservations = reservations;
+        }
+
+        /** accepts the lower case names used as benchmark parameters */
+        public static Scale find(String name)
+        {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static final int STORE_BATCH_SIZE = 1000;
+
+    private final Logger logger;
+    private final int users;
+    private final int groups;
+    private final int resourceTypes;
+    private final int resources;
+    private final int reservations;
+    private final long seed;
+    private File folder = new File(DEFAULT_FOLDER);
+
+    public DatasetGenerator(Logger logger, Scale scale)
+    {
+        this(logger, scale.users, scale.groups, scale.resourceTypes, scale.resources, scale.reservations, DEFAULT_SEED);
+    }
+
+    public DatasetGenerator(Logger logger, int users, int groups, int resourceTypes, int resources, int reservations, long seed)
+    {
+        if (users < 1 || groups < 1 || resourceTypes < 1 || resources < 1 || reservations < 0)
+        {
+            throw new IllegalArgumentException("At least one user, group, resource type and resource is needed");
+        }
+        this.logger = logger;
+        this.users = users;
+        this.groups = groups;
+        this.resourceTypes = resourceTypes;
+        this.resources = resources;
+        this.reservations = reservations;
+        this.seed = seed;
+    }
+
+    public void setFolder(File folder)
+    {
+        this.folder = folder;
+    }
+
+    /** the name of the generated file. It contains all parameters, so different scales don't overwrite each other */
+    public String getName()
+    {
+        return "rapla-u" + users + "-g" + groups + "-t" + resourceTypes + "-r" + resources + "-e" + reservations + "-s" + seed;
+    }
+
+    /** returns the data file for the parameters and generates it, if it does not exist yet */
+    public File getDataFile() throws RaplaException
+    {
+        final File file = new File(folder, getName() + ".xml");
+        if (!file.exists())
+        {
+            generate(file);
+        }
+        return file;
+    }
+
+    /** the username of the generated user with the index */
+    public static String getUsername(int index)
+    {
+        return "user" + index;
+    }
+
+    /** writes a new data file. An existing file is overwritten */
+    public void generate(File file) throws RaplaException
+    {
+        final long startTime = System.currentTimeMillis();
+        if (file.exists() && !file.delete())
+        {
+            throw new RaplaException("Can't delete " + file);
+        }
+        file.getParentFile().mkdirs();
+        // a missing file is created with the default system: admin user, user groups category and default types
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, file.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+        try
+        {
+            final Random random = new Random(seed);
+            final User admin = facade.getUser("admin");
+            final List<Category> groupList = createGroups(facade);
+            final List<DynamicType> typeList = createResourceTypes(facade);
+            final List<User> userList = createUsers(facade, random, groupList);
+            final List<Allocatable> allocatableList = createResources(facade, random, admin, typeList, groupList);
+            createReservations(facade, random, userList, allocatableList, groupList);
+            final FileOperator operator = (FileOperator) facade.getOperator();
+            operator.setFileIO(new FileOperator.DefaultFileIO());
+            operator.saveData();
+        }
+        finally
+        {
+            RaplaTestCase.dispose(facade);
+        }
+        logger.info("Generated " + file + " in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private List<Category> createGroups(RaplaFacade facade) throws RaplaException
+    {
+        final Category userGroups = facade.edit(facade.getUserGroupsCategory());
+        final List<Category> result = new ArrayList<>();
+        for (int i = 0; i < groups; i++)
+        {
+            final Category group = facade.newCategory();
+            group.setKey("group" + i);
+            group.getName().setName("en", "Group " + i);
+            userGroups.addCategory(group);
+            result.add(group);
+        }
+        facade.store(userGroups);
+        final List<Category> persistant = new ArrayList<>();
+        for (Category group : result)
+        {
+            persistant.add(facade.getPersistent(group));
+        }
+        return persistant;
+    }
+
+    private List<DynamicType> createResourceTypes(RaplaFacade facade) throws RaplaException
+    {
+        final List<DynamicType> result = new ArrayList<>();
+        for (int i = 0; i < resourceTypes; i++)
+        {
+            // the new type already contains a name attribute
+            final DynamicType type = facade.newDynamicType(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE);
+            type.setKey("resourcetype" + i);
+            type.getName().setName("en", "Resource type " + i);
+            final Attribute capacity = facade.newAttribute(AttributeType.INT);
+            capacity.setKey("capacity");
+            capacity.getName().setName("en", "Capacity");
+            type.addAttribute(capacity);
+            result.add(type);
+        }
+        facade.storeObjects(result.toArray(DynamicType.DYNAMICTYPE_ARRAY));
+        final List<DynamicType> persistant = new ArrayList<>();
+        for (DynamicType type : result)
+        {
+            persistant.add(facade.getPersistent(type));
+        }
+        return persistant;
+    }
+
+    private List<User> createUsers(RaplaFacade facade, Random random, List<Category> groupList) throws RaplaException
+    {
+        final List<User> result = new ArrayList<>();
+        for (int i = 0; i < users; i++)
+        {
+            final User user = facade.newUser();
+            user.setUsername(getUsername(i));
+            user.setName("User " + i);
+            user.setEmail(getUsername(i) + "@rapla.example");
+            for (Category group : new ArrayList<>(user.getGroupList()))
+            {
+                user.removeGroup(group);
+            }
+            user.addGroup(groupList.get(i % groupList.size()));
+            if (random.nextInt(3) == 0)
+            {
+                user.addGroup(groupList.get(random.nextInt(groupList.size())));
+            }
+            result.add(user);
+        }
+        facade.storeObjects(result.toArray(User.USER_ARRAY));
+        final List<User> persistant = new ArrayList<>();
+        for (User user : result)
+        {
+            persistant.add(facade.getPersistent(user));
+        }
+        return persistant;
+    }
+
+    private List<Allocatable> createResources(RaplaFacade facade, Random random, User admin, List<DynamicType> typeList, List<Category> groupList)
+            throws RaplaException
+    {
+        final List<Allocatable> result = new ArrayList<>();
+        final List<Allocatable> batch = new ArrayList<>();
+        for (int i = 0; i < resources; i++)
+        {
+            final DynamicType type = typeList.get(i % typeList.size());
+            final Classification classification = type.newClassification();
+            classification.setValue("name", type.getKey() + " " + i);
+            classification.setValue("capacity", 10 + random.nextInt(200));
+            final Allocatable allocatable = facade.newAllocatable(classification, admin);
+            // each resource can be allocated by one group and read by another
+            final Permission allocate = allocatable.newPermission();
+            allocate.setGroup(groupList.get(random.nextInt(groupList.size())));
+            allocate.setAccessLevel(Permission.AccessLevel.ALLOCATE_CONFLICTS);
+            allocatable.addPermission(allocate);
+            final Permission read = allocatable.newPermission();
+            read.setGroup(groupList.get(random.nextInt(groupList.size())));
+            read.setAccessLevel(Permission.AccessLevel.READ);
+            allocatable.addPermission(read);
+            batch.add(allocatable);
+            if (batch.size() >= STORE_BATCH_SIZE || i == resources - 1)
+            {
+                facade.storeObjects(batch.toArray(Allocatable.ALLOCATABLE_ARRAY));
+                for (Allocatable stored : batch)
+                {
+                    result.add(facade.getPersistent(stored));
+                }
+                batch.clear();
+            }
+        }
+        return result;
+    }
+
+    private void createReservations(RaplaFacade facade, Random random, List<User> userList, List<Allocatable> allocatableList, List<Category> groupList)
+            throws RaplaException
+    {
+        // the users of all groups can create events
+        final DynamicType editType = facade.edit(facade.getDynamicType("event"));
+        for (Category group : groupList)
+        {
+            final Permission create = editType.newPermission();
+            create.setGroup(group);
+            create.setAccessLevel(Permission.AccessLevel.CREATE);
+            editType.addPermission(create);
+        }
+        facade.store(editType);
+        final DynamicType eventType = facade.getPersistent(editType);
+        final List<Reservation> batch = new ArrayList<>();
+        for (int i = 0; i < reservations; i++)
+        {
+            final User owner = userList.get(random.nextInt(userList.size()));
+            final Classification classification = eventType.newClassification();
+            classification.setValue("name", "Event " + i);
+            final Reservation reservation = facade.newReservation(classification, owner);
+            final int appointmentCount = 1 + random.nextInt(3);
+            for (int a = 0; a < appointmentCount; a++)
+            {
+                final Date day = DateTools.addDays(START, random.nextInt(365));
+                final Date start = new Date(day.getTime() + (7 + random.nextInt(11)) * DateTools.MILLISECONDS_PER_HOUR);
+                final Date end = new Date(start.getTime() + (1 + random.nextInt(3)) * DateTools.MILLISECONDS_PER_HOUR);
+                final Appointment appointment = facade.newAppointmentWithUser(start, end, owner);
+                // most events are lectures that repeat weekly for a term
+                if (random.nextInt(4) > 0)
+                {
+                    appointment.setRepeatingEnabled(true);
+                    final Repeating repeating = appointment.getRepeating();
+                    repeating.setType(Repeating.WEEKLY);
+                    repeating.setNumber(5 + random.nextInt(11));
+                }
+                reservation.addAppointment(appointment);
+            }
+            final int allocatableCount = 1 + random.nextInt(3);
+            for (int r = 0; r < allocatableCount; r++)
+            {
+                final Allocatable allocatable = allocatableList.get(random.nextInt(allocatableList.size()));
+                if (!reservation.hasAllocated(allocatable))
+                {
+                    reservation.addAllocatable(allocatable);
+                }
+            }
+            if (random.nextInt(3) == 0)
+            {
+                final Permission read = reservation.newPermission();
+                read.setGroup(groupList.get(random.nextInt(groupList.size())));
+                read.setAccessLevel(Permission.AccessLevel.READ);
+                reservation.addPermission(read);
+            }
+            batch.add(reservation);
+            if (batch.size() >= STORE_BATCH_SIZE || i == reservations - 1)
+            {
+                facade.storeObjects(batch.toArray(Reservation.RESERVATION_ARRAY));
+                batch.clear();
+            }
+        }
+    }
+}
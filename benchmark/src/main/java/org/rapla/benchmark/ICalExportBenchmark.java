@@ -0,0 +1,78 @@
+package org.rapla.benchmark;
+
+import net.fortuna.ical4j.data.CalendarOutputter;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.validate.ValidationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.RaplaResources;
+import org.rapla.components.i18n.internal.AbstractBundleManager;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.configuration.Preferences;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.framework.RaplaException;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.plugin.export2ical.server.Export2iCalConverter;
+import org.rapla.server.internal.TimeZoneConverterImpl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the iCal export of the events of the selected resources for a year, like an exported calendar feed. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ICalExportBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class Export
+    {
+        Export2iCalConverter converter;
+        Preferences preferences;
+        List<Appointment> appointments;
+
+        @Setup(Level.Trial)
+        public void prepare(LoadedDataset dataset) throws RaplaException
+        {
+            final AbstractBundleManager bundleManager = new ServerBundleManager();
+            final RaplaResources i18n = new RaplaResources(bundleManager);
+            converter = new Export2iCalConverter(new TimeZoneConverterImpl(), new RaplaLocaleImpl(bundleManager), dataset.logger, dataset.facade, i18n);
+            preferences = dataset.facade.getPreferences(dataset.admin);
+            appointments = new ArrayList<>(dataset.operator.waitForWithRaplaException(dataset.operator
+                    .queryAppointments(null, dataset.selectedAllocatables, null, DatasetGenerator.START, DateTools.addDays(DatasetGenerator.START, 365),
+                            null, (Map<String, String>) null), QueryBenchmark.TIMEOUT).getAllAppointments());
+        }
+    }
+
+    @Benchmark
+    public Calendar createCalendar(LoadedDataset dataset, Export export)
+    {
+        return export.converter.createiCalender(export.appointments, export.preferences, dataset.admin);
+    }
+
+    /** the calendar creation and the serialization, like the export servlet */
+    @Benchmark
+    public String export(LoadedDataset dataset, Export export) throws IOException, ValidationException
+    {
+        final Calendar calendar = export.converter.createiCalender(export.appointments, export.preferences, dataset.admin);
+        final StringWriter writer = new StringWriter();
+        new CalendarOutputter().output(calendar, writer);
+        return writer.toString();
+    }
+}
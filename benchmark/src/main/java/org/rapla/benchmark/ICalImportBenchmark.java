@@ -0,0 +1,158 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.components.util.DateTools;
+import org.rapla.components.util.SerializableDateTimeFormat;
+import org.rapla.entities.User;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.ical.server.RaplaICalImport;
+import org.rapla.server.internal.RemoteSessionImpl;
+import org.rapla.server.internal.TimeZoneConverterImpl;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the import of a calendar feed with many events into a generated dataset, and the import of the same feed with a few new events.
+ * The second import finds the already imported events with the external id index and doesn't store them again.
+ * Each invocation starts with a freshly loaded dataset, so the imports don't accumulate.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ICalImportBenchmark
+{
+    /** events added to the feed for the second import */
+    public static final int NEW_EVENTS = 100;
+
+    @State(Scope.Benchmark)
+    public static class Feed
+    {
+        @Param({ "small" })
+        public String scale;
+
+        @Param({ "50000" })
+        public int events;
+
+        Logger logger;
+        File dataFile;
+        File calendarFile;
+        File extendedCalendarFile;
+
+        @Setup(Level.Trial)
+        public void prepare() throws RaplaException, IOException
+        {
+            logger = RaplaTestCase.initLoger().getChildLogger("benchmark");
+            final DatasetGenerator generator = new DatasetGenerator(logger, DatasetGenerator.Scale.find(scale));
+            dataFile = generator.getDataFile();
+            calendarFile = new File(dataFile.getParentFile(), "ical-import-" + events + ".ics");
+            extendedCalendarFile = new File(dataFile.getParentFile(), "ical-import-" + (events + NEW_EVENTS) + ".ics");
+            writeCalendar(calendarFile, events);
+            writeCalendar(extendedCalendarFile, events + NEW_EVENTS);
+        }
+
+        private static void writeCalendar(File file, int count) throws IOException
+        {
+            final SerializableDateTimeFormat format = SerializableDateTimeFormat.INSTANCE;
+            try (Writer writer = new FileWriter(file))
+            {
+                writer.write("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//Rapla//Benchmark//EN\r\n");
+                for (int i = 0; i < count; i++)
+                {
+                    final String day = format.formatDate(DateTools.addDays(DatasetGenerator.START, i % 365)).replace("-", "");
+                    writer.write("BEGIN:VEVENT\r\nUID:benchmark-" + i + "@rapla.org\r\nSUMMARY:Imported event " + i + "\r\n");
+                    writer.write("DTSTART:" + day + "T100000Z\r\nDTEND:" + day + "T110000Z\r\nEND:VEVENT\r\n");
+                }
+                writer.write("END:VCALENDAR\r\n");
+            }
+        }
+    }
+
+    /** the generated dataset, loaded again for every invocation */
+    @State(Scope.Thread)
+    public static class Import
+    {
+        RaplaFacade facade;
+        User user;
+        RaplaICalImport importer;
+        String eventTypeKey;
+
+        @Setup(Level.Invocation)
+        public void load(Feed feed) throws RaplaException
+        {
+            facade = RaplaTestCase.createFacadeWithFile(feed.logger, feed.dataFile.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+            user = facade.getUser("admin");
+            final TimeZoneConverterImpl converter = new TimeZoneConverterImpl();
+            converter.setImportExportTimeZone(TimeZone.getTimeZone("GMT+1"));
+            importer = new RaplaICalImport(converter, new RemoteSessionImpl(feed.logger, user), facade, feed.logger, null);
+            eventTypeKey = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].getKey();
+        }
+
+        Integer[] importCalendar(File file) throws IOException, RaplaException
+        {
+            try (Reader reader = new FileReader(file))
+            {
+                return importer.importCalendar(reader, Collections.emptyList(), user, eventTypeKey, "name");
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void dispose() throws RaplaException
+        {
+            RaplaTestCase.dispose(facade);
+        }
+    }
+
+    /** the generated dataset with the feed already imported */
+    @State(Scope.Thread)
+    public static class Reimport extends Import
+    {
+        @Setup(Level.Invocation)
+        public void importFeed(Feed feed) throws RaplaException, IOException
+        {
+            final Integer[] result = importCalendar(feed.calendarFile);
+            if (result[1] != feed.events)
+            {
+                throw new RaplaException("Expected " + feed.events + " imported events, but were " + result[1]);
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer[] importFeed(Feed feed, Import state) throws IOException, RaplaException
+    {
+        return state.importCalendar(feed.calendarFile);
+    }
+
+    @Benchmark
+    public Integer[] reimportWithNewEvents(Feed feed, Reimport state) throws IOException, RaplaException
+    {
+        return state.importCalendar(feed.extendedCalendarFile);
+    }
+}
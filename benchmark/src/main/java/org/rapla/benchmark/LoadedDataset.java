@@ -0,0 +1,78 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/** A generated dataset loaded with the file storage. Shared by all threads of a benchmark, the benchmarks only read from it.
+ * Changes are never written back to the generated file. */
+@State(Scope.Benchmark)
+public class LoadedDataset
+{
+    /** number of resources that are shown in a typical calendar view */
+    public static final int SELECTED_RESOURCES = 10;
+
+    @Param({ "small" })
+    public String scale;
+
+    public Logger logger;
+    public DatasetGenerator generator;
+    public File dataFile;
+    public RaplaFacade facade;
+    public CachableStorageOperator operator;
+    public User admin;
+    /** a user without admin rights */
+    public User user;
+    public List<Allocatable> allAllocatables;
+    public List<Allocatable> selectedAllocatables;
+
+    @Setup(Level.Trial)
+    public void load() throws RaplaException
+    {
+        logger = RaplaTestCase.initLoger().getChildLogger("benchmark");
+        generator = new DatasetGenerator(logger, DatasetGenerator.Scale.find(scale));
+        dataFile = generator.getDataFile();
+        facade = RaplaTestCase.createFacadeWithFile(logger, dataFile.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+        operator = (CachableStorageOperator) facade.getOperator();
+        admin = facade.getUser("admin");
+        user = facade.getUser(DatasetGenerator.getUsername(0));
+        // the ids are random, so the order of the names is used for a reproducible selection
+        final Allocatable[] allocatables = facade.getAllocatables();
+        Arrays.sort(allocatables, Comparator.comparing((Allocatable allocatable) -> allocatable.getName(Locale.ENGLISH)));
+        allAllocatables = Arrays.asList(allocatables);
+        selectedAllocatables = new ArrayList<>();
+        final Random random = new Random(DatasetGenerator.DEFAULT_SEED);
+        while (selectedAllocatables.size() < Math.min(SELECTED_RESOURCES, allocatables.length))
+        {
+            final Allocatable allocatable = allocatables[random.nextInt(allocatables.length)];
+            if (!selectedAllocatables.contains(allocatable))
+            {
+                selectedAllocatables.add(allocatable);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void dispose() throws RaplaException
+    {
+        RaplaTestCase.dispose(facade);
+    }
+}
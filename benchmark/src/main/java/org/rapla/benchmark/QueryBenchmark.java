@@ -0,0 +1,111 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentMapping;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.framework.RaplaException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the queries of the calendar views and of the reservation editor on a loaded dataset. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark
+{
+    static final int TIMEOUT = 60000;
+    /** number of events that are checked for the availability of the resources, like in the reservation editor */
+    static final int EDITED_RESERVATIONS = 20;
+
+    @State(Scope.Benchmark)
+    public static class EditedAppointments
+    {
+        List<Appointment> appointments;
+
+        @Setup(Level.Trial)
+        public void select(LoadedDataset dataset) throws RaplaException
+        {
+            final AppointmentMapping mapping = dataset.operator.waitForWithRaplaException(dataset.operator
+                    .queryAppointments(null, dataset.selectedAllocatables, null, DatasetGenerator.START, DateTools.addWeeks(DatasetGenerator.START, 4), null,
+                            (Map<String, String>) null), TIMEOUT);
+            appointments = new ArrayList<>();
+            final List<Reservation> reservations = new ArrayList<>(AppointmentMapping.getAllReservations(mapping.getAllAppointments()));
+            // the ids are random, so the names are used for a reproducible selection
+            reservations.sort(Comparator.comparing((Reservation reservation) -> reservation.getName(Locale.ENGLISH)));
+            for (Reservation reservation : reservations.subList(0, Math.min(EDITED_RESERVATIONS, reservations.size())))
+            {
+                appointments.addAll(Arrays.asList(reservation.getAppointments()));
+            }
+        }
+    }
+
+    /** the week view of the selected resources */
+    @Benchmark
+    public AppointmentMapping queryAppointmentsWeek(LoadedDataset dataset) throws RaplaException
+    {
+        final Date start = DateTools.addWeeks(DatasetGenerator.START, 10);
+        return query(dataset, null, dataset.selectedAllocatables, start, DateTools.addWeeks(start, 1));
+    }
+
+    /** the month view of all resources */
+    @Benchmark
+    public AppointmentMapping queryAppointmentsMonthAllResources(LoadedDataset dataset) throws RaplaException
+    {
+        final Date start = DateTools.addWeeks(DatasetGenerator.START, 10);
+        return query(dataset, null, dataset.allAllocatables, start, DateTools.addWeeks(start, 4));
+    }
+
+    /** the month view of all resources, restricted to the events of the user */
+    @Benchmark
+    public AppointmentMapping queryAppointmentsMonthOwnEvents(LoadedDataset dataset) throws RaplaException
+    {
+        final Date start = DateTools.addWeeks(DatasetGenerator.START, 10);
+        return query(dataset, dataset.user, dataset.allAllocatables, start, DateTools.addWeeks(start, 4));
+    }
+
+    /** the list of all events of the selected resources */
+    @Benchmark
+    public AppointmentMapping queryAppointmentsYear(LoadedDataset dataset) throws RaplaException
+    {
+        return query(dataset, null, dataset.selectedAllocatables, DatasetGenerator.START, DateTools.addDays(DatasetGenerator.START, 365));
+    }
+
+    @Benchmark
+    public Map<ReferenceInfo<Allocatable>, Collection<Appointment>> getAllocatableBindings(LoadedDataset dataset, EditedAppointments edited)
+            throws RaplaException
+    {
+        return dataset.operator.waitForWithRaplaException(dataset.facade.getAllocatableBindings(dataset.allAllocatables, edited.appointments), TIMEOUT);
+    }
+
+    /** the owner restricts the result to the events of a user, null returns the events of all users */
+    private AppointmentMapping query(LoadedDataset dataset, User owner, Collection<Allocatable> allocatables, Date start, Date end) throws RaplaException
+    {
+        return dataset.operator.waitForWithRaplaException(
+                dataset.operator.queryAppointments(owner, allocatables, null, start, end, null, (Map<String, String>) null), TIMEOUT);
+    }
+}
@@ -0,0 +1,68 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.AppointmentBlock;
+import org.rapla.plugin.abstractcalendar.RaplaBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the block preparation of the calendar views for a month with many blocks: splitting blocks at day borders and the min max calculation. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitBlocksBenchmark
+{
+    @Param({ "20000" })
+    public int blockCount;
+
+    List<AppointmentBlock> blocks;
+    Date startDate;
+    Date endDate;
+
+    @Setup(Level.Trial)
+    public void createBlocks()
+    {
+        final long start = DatasetGenerator.START.getTime();
+        final long end = start + 31 * DateTools.MILLISECONDS_PER_DAY;
+        blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++)
+        {
+            final long blockStart = start + (i % 31) * DateTools.MILLISECONDS_PER_DAY + (i % 24) * DateTools.MILLISECONDS_PER_HOUR;
+            // every tenth block spans two days
+            final long duration = (i % 10 == 0) ? DateTools.MILLISECONDS_PER_DAY + DateTools.MILLISECONDS_PER_HOUR : DateTools.MILLISECONDS_PER_HOUR / 2;
+            blocks.add(new AppointmentBlock(blockStart, blockStart + duration, null, false));
+        }
+        startDate = new Date(start);
+        endDate = new Date(end);
+    }
+
+    @Benchmark
+    public List<AppointmentBlock> splitBlocks()
+    {
+        return RaplaBuilder.splitBlocks(blocks, startDate, endDate, 0);
+    }
+
+    @Benchmark
+    public int[] calculateMinMaxMinutes()
+    {
+        return RaplaBuilder.calculateMinMaxMinutes(blocks, 0);
+    }
+}
@@ -0,0 +1,122 @@
+package org.rapla.benchmark;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
+import org.rapla.storage.impl.server.StartupImage;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the startup of the server storage from the startup image with a full load, for the file and the database storage.
+ * Both include building the appointment bindings and the conflicts, which the image doesn't contain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupImageBenchmark
+{
+    @Param({ "small" })
+    public String scale;
+
+    LocalAbstractCachableOperator fileOperator;
+    LocalAbstractCachableOperator databaseOperator;
+    StartupImage fileImage;
+    StartupImage databaseImage;
+    RaplaFacade fileFacade;
+    RaplaFacade databaseFacade;
+
+    @Setup(Level.Trial)
+    public void prepare() throws Exception
+    {
+        final Logger logger = RaplaTestCase.initLoger().getChildLogger("benchmark");
+        final DatasetGenerator generator = new DatasetGenerator(logger, DatasetGenerator.Scale.find(scale));
+        final File dataFile = generator.getDataFile();
+        final JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:" + new File(dataFile.getParentFile(), "hsqldb/" + generator.getName()).getPath());
+        dataSource.setUser("db_user");
+        dataSource.setPassword("your_pwd");
+
+        fileFacade = RaplaTestCase.createFacadeWithFile(logger, dataFile.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+        fileOperator = (LocalAbstractCachableOperator) fileFacade.getOperator();
+        fileImage = new StartupImage(File.createTempFile("raplabenchmark", ".img"), logger);
+        fileImage.getFile().deleteOnExit();
+        fileOperator.setStartupImage(fileImage);
+        fileOperator.writeStartupImage();
+
+        // the database is cleared and filled with the generated file once per trial
+        databaseFacade = RaplaTestCase.createFacadeWithDatasource(logger, dataSource, dataFile.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+        databaseOperator = (LocalAbstractCachableOperator) databaseFacade.getOperator();
+        databaseImage = new StartupImage(File.createTempFile("raplabenchmark", ".img"), logger);
+        databaseImage.getFile().deleteOnExit();
+        databaseOperator.setStartupImage(databaseImage);
+        databaseOperator.writeStartupImage();
+    }
+
+    @TearDown(Level.Trial)
+    public void dispose() throws RaplaException
+    {
+        RaplaTestCase.dispose(fileFacade);
+        RaplaTestCase.dispose(databaseFacade);
+    }
+
+    /** disconnects without writing a new image, so every start reads the image from the trial setup */
+    @Setup(Level.Invocation)
+    public void disconnect() throws RaplaException
+    {
+        fileOperator.setStartupImage(null);
+        fileOperator.disconnect();
+        databaseOperator.setStartupImage(null);
+        databaseOperator.disconnect();
+    }
+
+    @Benchmark
+    public LocalAbstractCachableOperator loadFile() throws RaplaException
+    {
+        fileOperator.connect();
+        return fileOperator;
+    }
+
+    @Benchmark
+    public LocalAbstractCachableOperator loadFileFromImage() throws RaplaException
+    {
+        fileOperator.setStartupImage(fileImage);
+        fileOperator.connect();
+        return fileOperator;
+    }
+
+    @Benchmark
+    public LocalAbstractCachableOperator loadDatabase() throws RaplaException
+    {
+        databaseOperator.connect();
+        return databaseOperator;
+    }
+
+    @Benchmark
+    public LocalAbstractCachableOperator loadDatabaseFromImage() throws RaplaException
+    {
+        databaseOperator.setStartupImage(databaseImage);
+        databaseOperator.connect();
+        return databaseOperator;
+    }
+}
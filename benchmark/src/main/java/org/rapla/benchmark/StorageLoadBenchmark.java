@@ -0,0 +1,77 @@
+package org.rapla.benchmark;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the startup of the server storage: reading all entities and building the indexes and the conflicts. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StorageLoadBenchmark
+{
+    @Param({ "small" })
+    public String scale;
+
+    Logger logger;
+    File dataFile;
+    JDBCDataSource dataSource;
+    RaplaFacade facade;
+
+    @Setup(Level.Trial)
+    public void prepare() throws RaplaException
+    {
+        logger = RaplaTestCase.initLoger().getChildLogger("benchmark");
+        final DatasetGenerator generator = new DatasetGenerator(logger, DatasetGenerator.Scale.find(scale));
+        dataFile = generator.getDataFile();
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:" + new File(dataFile.getParentFile(), "hsqldb/" + generator.getName()).getPath());
+        dataSource.setUser("db_user");
+        dataSource.setPassword("your_pwd");
+        // the database is cleared and filled with the generated file once per trial
+        final RaplaFacade importFacade = RaplaTestCase.createFacadeWithDatasource(logger, dataSource, dataFile.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+        RaplaTestCase.dispose(importFacade);
+    }
+
+    @TearDown(Level.Invocation)
+    public void disconnect() throws RaplaException
+    {
+        RaplaTestCase.dispose(facade);
+        facade = null;
+    }
+
+    @Benchmark
+    public RaplaFacade loadFile() throws RaplaException
+    {
+        facade = RaplaTestCase.createFacadeWithFile(logger, dataFile.getAbsolutePath(), new RaplaTestCase.VoidFileIO());
+        return facade;
+    }
+
+    @Benchmark
+    public RaplaFacade loadDatabase() throws RaplaException
+    {
+        facade = RaplaTestCase.createFacadeWithDatasource(logger, dataSource, null, null);
+        return facade;
+    }
+}
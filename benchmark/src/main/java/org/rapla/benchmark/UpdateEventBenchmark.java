@@ -0,0 +1,108 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.AppointmentFormaterImpl;
+import org.rapla.RaplaResources;
+import org.rapla.components.i18n.internal.AbstractBundleManager;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.framework.RaplaException;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.server.internal.SecurityManager;
+import org.rapla.server.internal.UpdateDataManagerImpl;
+import org.rapla.storage.UpdateEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the update that a client requests after a refresh interval, with and without changes since the last synchronisation. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateEventBenchmark
+{
+    /** every hundredth event is changed between the synchronisations */
+    static final int CHANGED_RESERVATIONS_PERCENT = 1;
+
+    @State(Scope.Benchmark)
+    public static class Changes
+    {
+        UpdateDataManagerImpl updateDataManager;
+        Date beforeChanges;
+        Date afterChanges;
+
+        @Setup(Level.Trial)
+        public void change(LoadedDataset dataset) throws RaplaException
+        {
+            final AbstractBundleManager bundleManager = new ServerBundleManager();
+            final RaplaResources i18n = new RaplaResources(bundleManager);
+            final AppointmentFormaterImpl appointmentFormater = new AppointmentFormaterImpl(i18n, new RaplaLocaleImpl(bundleManager));
+            final SecurityManager securityManager = new SecurityManager(dataset.logger, i18n, appointmentFormater, dataset.operator);
+            updateDataManager = new UpdateDataManagerImpl(dataset.logger, dataset.operator, securityManager);
+
+            beforeChanges = dataset.operator.getCurrentTimestamp();
+            final List<Reservation> reservations = new ArrayList<>(
+                    dataset.operator.waitForWithRaplaException(dataset.facade.getReservationsForAllocatable(null, null, null, null), QueryBenchmark.TIMEOUT));
+            // the ids are random, so the names are used for a reproducible selection
+            reservations.sort(Comparator.comparing((Reservation reservation) -> reservation.getName(Locale.ENGLISH)));
+            final int changeCount = Math.max(1, reservations.size() * CHANGED_RESERVATIONS_PERCENT / 100);
+            final List<Reservation> changed = new ArrayList<>();
+            for (Reservation reservation : reservations.subList(0, Math.min(changeCount, reservations.size())))
+            {
+                final Reservation edit = dataset.facade.edit(reservation);
+                edit.getClassification().setValue("name", reservation.getName(Locale.ENGLISH) + " moved");
+                final Appointment appointment = edit.getAppointments()[0];
+                appointment.moveTo(DateTools.addDays(appointment.getStart(), 1));
+                changed.add(edit);
+            }
+            dataset.facade.storeObjects(changed.toArray(Reservation.RESERVATION_ARRAY));
+            // a permission change makes the clients reload the resources they can see
+            final Allocatable allocatable = dataset.facade.edit(dataset.selectedAllocatables.get(0));
+            final Permission permission = allocatable.newPermission();
+            permission.setUser(dataset.user);
+            permission.setAccessLevel(Permission.AccessLevel.READ);
+            allocatable.addPermission(permission);
+            dataset.facade.store(allocatable);
+            dataset.operator.refresh();
+            afterChanges = dataset.operator.getLastRefreshed();
+        }
+    }
+
+    @Benchmark
+    public UpdateEvent updateWithoutChanges(LoadedDataset dataset, Changes changes) throws RaplaException
+    {
+        return changes.updateDataManager.createUpdateEvent(dataset.user, changes.afterChanges);
+    }
+
+    @Benchmark
+    public UpdateEvent updateWithChangesForAdmin(LoadedDataset dataset, Changes changes) throws RaplaException
+    {
+        return changes.updateDataManager.createUpdateEvent(dataset.admin, changes.beforeChanges);
+    }
+
+    @Benchmark
+    public UpdateEvent updateWithChangesForUser(LoadedDataset dataset, Changes changes) throws RaplaException
+    {
+        return changes.updateDataManager.createUpdateEvent(dataset.user, changes.beforeChanges);
+    }
+}
@@ -0,0 +1,46 @@
+package org.rapla.storage.impl.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapla.benchmark.DatasetGenerator;
+import org.rapla.benchmark.LoadedDataset;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the calculation of all conflicts on server start. The benchmark is in the package of the package private ConflictFinder.
+ * The start of the generated dataset is used as today, so all generated appointments are checked, independent of the current date. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConflictFinderBenchmark
+{
+    @Benchmark
+    public ConflictFinder initConflicts(LoadedDataset dataset)
+    {
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) dataset.operator;
+        final AllocationMap allocationMap = new AllocationMap()
+        {
+            public SortedSet<Appointment> getAppointments(Allocatable allocatable)
+            {
+                return operator.getAppointments(allocatable);
+            }
+
+            public Collection<Allocatable> getAllocatables()
+            {
+                return dataset.allAllocatables;
+            }
+        };
+        return new ConflictFinder(allocationMap, DatasetGenerator.START, dataset.logger, operator, operator.getPermissionController());
+    }
+}
@@ -7,5 +7,6 @@ public interface RaplaTreeNode
     int getChildCount();
     RaplaTreeNode getChild(int index);
     void add(RaplaTreeNode childNode);
+    void insert(RaplaTreeNode childNode, int index);
     void remove(RaplaTreeNode childNode);
 }
@@ -5,6 +5,7 @@ import org.rapla.entities.Named;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.facade.Conflict;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.framework.RaplaException;
 
 import java.util.Collection;
@@ -73,6 +74,20 @@ public interface TreeFactory {
 		{
 			return filtered;
 		}
+
+		/** applies the allocatables that are added, changed or removed in the event to the nodes and notifies the listener about each inserted and removed node.
+		 * Returns false if the nodes can't be updated, e.g. because types or the filter have changed. Then the model must be created again with createAllocatableModel. */
+		public boolean update(ClassificationFilter[] filter, ModificationEvent evt, TreeNodeListener listener) throws RaplaException
+		{
+			return false;
+		}
+	}
+
+	interface TreeNodeListener
+	{
+		void nodeInserted(RaplaTreeNode parent, int index, RaplaTreeNode child);
+
+		void nodeRemoved(RaplaTreeNode parent, int index, RaplaTreeNode child);
 	}
 
 }
\ No newline at end of file
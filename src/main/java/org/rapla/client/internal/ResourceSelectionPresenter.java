@@ -88,7 +88,7 @@ public class ResourceSelectionPresenter implements Presenter
         model.setAllocatableFilter(filters);
         ClassificationFilter[] filter = model.getAllocatableFilter();
         Collection<Object> selectedObjects = new ArrayList<>(model.getSelectedObjects());
-        view.update(filter, model, selectedObjects);
+        view.update(filter, model, selectedObjects, null);
 
         applyFilter();
     }
@@ -160,7 +160,7 @@ public class ResourceSelectionPresenter implements Presenter
         {
             ClassificationFilter[] filter = model.getAllocatableFilter();
             Collection<Object> selectedObjects = new ArrayList<>(model.getSelectedObjects());
-            view.update(filter, model, selectedObjects);
+            view.update(filter, model, selectedObjects, evt);
         }
         // No longer needed here as directly done in RaplaClientServiceImpl
         // ((CalendarModelImpl) model).dataChanged( evt);
@@ -3,6 +3,7 @@ package org.rapla.client.internal;
 import org.rapla.client.RaplaWidget;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.facade.ClassifiableFilter;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.framework.RaplaException;
 
 import java.util.Collection;
@@ -27,7 +28,8 @@ public interface ResourceSelectionView extends RaplaWidget
     }
 
 
-    void update(ClassificationFilter[] filter, ClassifiableFilter model, Collection<Object> selectedObjects);
+    /** updates the tree. If a modification event is passed, the view can apply only the changes of the event*/
+    void update(ClassificationFilter[] filter, ClassifiableFilter model, Collection<Object> selectedObjects, ModificationEvent evt);
 
     void updateMenu(Collection<?> list, Object focusedObject) throws RaplaException;
 
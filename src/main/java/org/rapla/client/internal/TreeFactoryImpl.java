@@ -18,6 +18,7 @@ import org.rapla.client.RaplaTreeNode;
 import org.rapla.components.util.Assert;
 import org.rapla.components.util.iterator.FilterIterable;
 import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
 import org.rapla.entities.Named;
 import org.rapla.entities.NamedComparator;
 import org.rapla.entities.User;
@@ -28,11 +29,15 @@ import org.rapla.entities.dynamictype.AttributeAnnotations;
 import org.rapla.entities.dynamictype.Classifiable;
 import org.rapla.entities.dynamictype.Classification;
 import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.ClassificationFilterRule;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.dynamictype.SortKeyClassifiableComparator;
 import org.rapla.entities.dynamictype.SortedClassifiableComparator;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
+import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.Conflict;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.facade.RaplaComponent;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.facade.internal.CalendarModelImpl;
@@ -50,6 +55,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -296,7 +302,12 @@ public class TreeFactoryImpl extends RaplaComponent implements TreeFactory
 
     protected Attribute getCategorizationAttribute(Classification classification)
     {
-        for (Attribute attribute : classification.getType().getAttributeIterable())
+        return getCategorizationAttribute(classification.getType());
+    }
+
+    private Attribute getCategorizationAttribute(DynamicType type)
+    {
+        for (Attribute attribute : type.getAttributeIterable())
         {
             String annotation = attribute.getAnnotation(AttributeAnnotations.KEY_CATEGORIZATION);
             if (annotation != null && annotation.equals("true"))
@@ -467,9 +478,245 @@ public class TreeFactoryImpl extends RaplaComponent implements TreeFactory
         }
         // adds elements to typ folders
         Allocatable[] filtered = getQuery().getAllocatablesWithFilter(filter);
-        Collection<Allocatable> sorted = sorted(filtered, new SortedClassifiableComparator(getLocale()));
-        addClassifiables(nodeMap, sorted, true);
-        return new AllocatableNodes( treeNode, resourcesFiltered);
+        SortKeyClassifiableComparator comparator = new SortKeyClassifiableComparator(getLocale());
+        Collection<Allocatable> sorted = sorted(filtered, comparator);
+        Map<Classifiable, Collection<RaplaTreeNode>> childMap = addClassifiables(nodeMap, sorted, true);
+        return new AllocatableTreeModel( treeNode, resourcesFiltered, filter, nodeMap, childMap, comparator);
+    }
+
+    /** The allocatable nodes of the resource tree, that apply changes of single allocatables as node inserts and removals
+     * instead of rebuilding the tree. The children of a type node are sorted with cached sort keys, so the position of an allocatable
+     * is found with a binary search. Updates of allocatables in types with categorizations and of trees with parts or packages
+     * are not supported, the tree must be created again for them.
+     */
+    public class AllocatableTreeModel extends AllocatableNodes
+    {
+        private final ClassificationFilter[] filter;
+        private final Map<DynamicType, RaplaTreeNode> typeNodes;
+        private final SortKeyClassifiableComparator comparator;
+        // the nodes of the allocatables that are directly sorted under the type node
+        private final Map<String, RaplaTreeNode> nodes = new HashMap<>();
+        // the allocatables in categorizations
+        private final Set<String> categorizedIds = new HashSet<>();
+        private final Set<DynamicType> categorizedTypes = new HashSet<>();
+        private final boolean updatable;
+
+        AllocatableTreeModel(RaplaTreeNode allocatableNode, boolean filtered, ClassificationFilter[] filter, Map<DynamicType, RaplaTreeNode> typeNodes,
+                Map<Classifiable, Collection<RaplaTreeNode>> childMap, SortKeyClassifiableComparator comparator)
+        {
+            super(allocatableNode, filtered);
+            this.filter = filter;
+            this.typeNodes = typeNodes;
+            this.comparator = comparator;
+            for (DynamicType type : typeNodes.keySet())
+            {
+                if (getCategorizationAttribute(type) != null)
+                {
+                    categorizedTypes.add(type);
+                }
+            }
+            boolean updatable = true;
+            for (Map.Entry<Classifiable, Collection<RaplaTreeNode>> entry : childMap.entrySet())
+            {
+                final Allocatable allocatable = (Allocatable) entry.getKey();
+                final Collection<RaplaTreeNode> childNodes = entry.getValue();
+                if (isPartOrPackage(allocatable))
+                {
+                    updatable = false;
+                }
+                if (categorizedTypes.contains(allocatable.getClassification().getType()))
+                {
+                    categorizedIds.add(allocatable.getId());
+                }
+                else if (childNodes.size() == 1)
+                {
+                    nodes.put(allocatable.getId(), childNodes.iterator().next());
+                }
+            }
+            this.updatable = updatable;
+        }
+
+        @Override
+        public boolean update(ClassificationFilter[] filter, ModificationEvent evt, TreeNodeListener listener) throws RaplaException
+        {
+            if (!updatable || evt == null || !isSameFilter(this.filter, filter))
+            {
+                return false;
+            }
+            // type changes can change the folders and the sorting, user and category changes can change the permissions
+            if (evt.isModified(DynamicType.class) || evt.isModified(Category.class) || evt.isModified(User.class))
+            {
+                return false;
+            }
+            final Map<String, RaplaTreeNode> toRemove = new LinkedHashMap<>();
+            final Map<String, Allocatable> toInsert = new LinkedHashMap<>();
+            for (ReferenceInfo removed : evt.getRemovedReferences())
+            {
+                if (removed.getType() != Allocatable.class)
+                {
+                    continue;
+                }
+                final String id = removed.getId();
+                if (categorizedIds.contains(id))
+                {
+                    return false;
+                }
+                final RaplaTreeNode node = nodes.get(id);
+                if (node != null)
+                {
+                    toRemove.put(id, node);
+                }
+            }
+            for (Entity entity : evt.getChanged())
+            {
+                if (!(entity instanceof Allocatable))
+                {
+                    continue;
+                }
+                final Allocatable allocatable = (Allocatable) entity;
+                final String id = allocatable.getId();
+                if (categorizedIds.contains(id))
+                {
+                    return false;
+                }
+                final DynamicType type = allocatable.getClassification().getType();
+                final boolean visible = typeNodes.containsKey(type) && isVisible(allocatable);
+                if (visible && (categorizedTypes.contains(type) || isPartOrPackage(allocatable)))
+                {
+                    return false;
+                }
+                final RaplaTreeNode node = nodes.get(id);
+                if (node != null)
+                {
+                    toRemove.put(id, node);
+                }
+                if (visible)
+                {
+                    toInsert.put(id, allocatable);
+                }
+            }
+            for (Map.Entry<String, RaplaTreeNode> entry : toRemove.entrySet())
+            {
+                final RaplaTreeNode node = entry.getValue();
+                final Allocatable old = (Allocatable) node.getUserObject();
+                final RaplaTreeNode parent = typeNodes.get(old.getClassification().getType());
+                final int index = indexOf(parent, node);
+                parent.remove(node);
+                nodes.remove(entry.getKey());
+                comparator.invalidate(old);
+                listener.nodeRemoved(parent, index, node);
+            }
+            for (Allocatable allocatable : toInsert.values())
+            {
+                final RaplaTreeNode parent = typeNodes.get(allocatable.getClassification().getType());
+                final RaplaTreeNode node = newNamedNode(allocatable);
+                final int position = binarySearch(parent, allocatable);
+                final int index = position >= 0 ? position : -position - 1;
+                parent.insert(node, index);
+                nodes.put(allocatable.getId(), node);
+                listener.nodeInserted(parent, index, node);
+            }
+            return true;
+        }
+
+        /** parts and packages are shown a second time under their parent or package node */
+        private boolean isPartOrPackage(Allocatable allocatable)
+        {
+            final Classification classification = allocatable.getClassification();
+            final DynamicTypeImpl type = (DynamicTypeImpl) classification.getType();
+            final Attribute belongsToAttribute = type.getBelongsToAttribute();
+            if (belongsToAttribute != null && classification.getValueForAttribute(belongsToAttribute) != null)
+            {
+                return true;
+            }
+            final Attribute packagesAttribute = type.getPackagesAttribute();
+            return packagesAttribute != null && !classification.getValues(packagesAttribute).isEmpty();
+        }
+
+        private boolean isVisible(Allocatable allocatable) throws RaplaException
+        {
+            // same rules as in getAllocatablesWithFilter
+            if (filter != null ? !ClassificationFilter.Util.matches(filter, allocatable) : Classifiable.ClassifiableUtil.isInternalType(allocatable))
+            {
+                return false;
+            }
+            final User user = clientFacade.getUser();
+            return user == null || user.isAdmin() || getQuery().getPermissionController().canRead(allocatable, user);
+        }
+
+        private int indexOf(RaplaTreeNode parent, RaplaTreeNode child)
+        {
+            final int position = binarySearch(parent, (Allocatable) child.getUserObject());
+            if (position >= 0 && parent.getChild(position) == child)
+            {
+                return position;
+            }
+            for (int i = 0; i < parent.getChildCount(); i++)
+            {
+                if (parent.getChild(i) == child)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int binarySearch(RaplaTreeNode parent, Allocatable allocatable)
+        {
+            int low = 0;
+            int high = parent.getChildCount() - 1;
+            while (low <= high)
+            {
+                final int mid = (low + high) >>> 1;
+                final Allocatable midAllocatable = (Allocatable) parent.getChild(mid).getUserObject();
+                final int result = comparator.compare(midAllocatable, allocatable);
+                if (result < 0)
+                {
+                    low = mid + 1;
+                }
+                else if (result > 0)
+                {
+                    high = mid - 1;
+                }
+                else
+                {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    static boolean isSameFilter(ClassificationFilter[] filter1, ClassificationFilter[] filter2)
+    {
+        if (filter1 == null || filter2 == null)
+        {
+            return filter1 == filter2;
+        }
+        if (filter1.length != filter2.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < filter1.length; i++)
+        {
+            if (!filter1[i].getType().equals(filter2[i].getType()) || filter1[i].ruleSize() != filter2[i].ruleSize())
+            {
+                return false;
+            }
+            Iterator<? extends ClassificationFilterRule> rules1 = filter1[i].ruleIterator();
+            Iterator<? extends ClassificationFilterRule> rules2 = filter2[i].ruleIterator();
+            while (rules1.hasNext() && rules2.hasNext())
+            {
+                final ClassificationFilterRule rule1 = rules1.next();
+                final ClassificationFilterRule rule2 = rules2.next();
+                if (!rule1.getAttribute().equals(rule2.getAttribute()) || !Arrays.equals(rule1.getOperators(), rule2.getOperators()) || !Arrays
+                        .equals(rule1.getValues(), rule2.getValues()))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     static private Collection<Allocatable> sorted(Allocatable[] allocatables, Comparator<Classifiable> comp)
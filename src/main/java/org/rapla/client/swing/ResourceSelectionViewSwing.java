@@ -43,6 +43,7 @@ import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.facade.ClassifiableFilter;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.facade.internal.CalendarModelImpl;
@@ -90,6 +91,7 @@ public class ResourceSelectionViewSwing implements ResourceSelectionView
     private final FilterEditButtonFactory filterEditButtonFactory;
     private boolean selectionFromProgram = false;
     private Presenter presenter;
+    private TreeFactory.AllocatableNodes allocatableNodes;
     private final MenuFactory menuFactory;
     ComplexTreeCellRenderer treeCellRenderer;
 
@@ -168,7 +170,7 @@ public class ResourceSelectionViewSwing implements ResourceSelectionView
     }
     
     @Override
-    public void update(ClassificationFilter[] filter, ClassifiableFilter model, Collection<Object> selectedObjects)
+    public void update(ClassificationFilter[] filter, ClassifiableFilter model, Collection<Object> selectedObjects, ModificationEvent evt)
     {
         SwingUtilities.invokeLater(() -> {
             try
@@ -180,7 +182,7 @@ public class ResourceSelectionViewSwing implements ResourceSelectionView
                 }
                 //boolean defaultFilter = model.isDefaultResourceTypes();
                 //filterEdit.setFiltered( ! defaultFilter );
-                updateTree(filter, selectedObjects);
+                updateTree(filter, selectedObjects, evt);
                 updateSelection(selectedObjects);
             }
             catch (RaplaException e)
@@ -213,12 +215,16 @@ public class ResourceSelectionViewSwing implements ResourceSelectionView
      * 
      * @see org.rapla.client.swing.gui.internal.view.ITreeFactory#createClassifiableModel(org.rapla.entities.dynamictype.Classifiable[], org.rapla.entities.dynamictype.DynamicType[])
      */
-    protected void updateTree(final ClassificationFilter[] filter, final Collection<Object> selectedObjects) throws RaplaException
+    protected void updateTree(final ClassificationFilter[] filter, final Collection<Object> selectedObjects, ModificationEvent evt) throws RaplaException
     {
 
         treeSelection.getTree().setRootVisible(false);
         final JTree tree = treeSelection.getTree();
         tree.setShowsRootHandles(true);
+        if (evt != null && updateAllocatableNodes(filter, evt))
+        {
+            return;
+        }
         DefaultTreeModel treeModel = generateTree(filter);
         try
         {
@@ -239,10 +245,36 @@ public class ResourceSelectionViewSwing implements ResourceSelectionView
     
     
 
+    /** applies the changed allocatables to the current tree model. Returns false if the tree must be generated again */
+    private boolean updateAllocatableNodes(ClassificationFilter[] filter, ModificationEvent evt) throws RaplaException
+    {
+        final TreeModel model = treeSelection.getTree().getModel();
+        // the users are not updated incrementally
+        if (allocatableNodes == null || !(model instanceof RaplaSwingTreeModel) || evt.isModified(User.class))
+        {
+            return false;
+        }
+        final DefaultTreeModel treeModel = (DefaultTreeModel) model;
+        return allocatableNodes.update(filter, evt, new TreeFactory.TreeNodeListener()
+        {
+            @Override
+            public void nodeInserted(RaplaTreeNode parent, int index, RaplaTreeNode child)
+            {
+                treeModel.nodesWereInserted((TreeNode) parent, new int[] { index });
+            }
+
+            @Override
+            public void nodeRemoved(RaplaTreeNode parent, int index, RaplaTreeNode child)
+            {
+                treeModel.nodesWereRemoved((TreeNode) parent, new int[] { index }, new Object[] { child });
+            }
+        });
+    }
+
     protected DefaultTreeModel generateTree(ClassificationFilter[] filter) throws RaplaException
     {
         final TreeFactory treeFactory =  getTreeFactory();
-        final TreeFactory.AllocatableNodes allocatableNodes = treeFactory.createAllocatableModel(filter);
+        allocatableNodes = treeFactory.createAllocatableModel(filter);
         filterEdit.setFiltered( allocatableNodes.filtered );
         treeCellRenderer.setFiltered( allocatableNodes.filtered);
         final RaplaTreeNode raplaTreeNode = treeFactory.newRootNode();
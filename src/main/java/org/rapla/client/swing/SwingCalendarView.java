@@ -15,6 +15,7 @@
 package org.rapla.client.swing;
 
 import org.rapla.client.RaplaWidget;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.inject.ExtensionPoint;
 import org.rapla.inject.InjectionContext;
 
@@ -26,6 +27,13 @@ public interface SwingCalendarView extends RaplaWidget<Component>
 {
     String ID = "org.rapla.client.swing.calendarview";
     org.rapla.scheduler.Observable triggerUpdate();
+    /** called when the data changed. Views can use the event to update only the changed parts, default is a full update
+     * @param evt the modification, can be null
+     */
+    default org.rapla.scheduler.Observable triggerUpdate(ModificationEvent evt)
+    {
+        return triggerUpdate();
+    }
     /** you can provide a DateSelection component if you want */
     JComponent getDateSelection();
     /** Most times you can only scroll programaticaly if the window is visible and the size of
@@ -288,7 +288,7 @@ public class MultiCalendarPresenter implements CalendarContainer,Presenter
              	}
              	if ( update )
              	{
-             		currentView.triggerUpdate( );
+             		currentView.triggerUpdate( evt );
              	}
             }
         }
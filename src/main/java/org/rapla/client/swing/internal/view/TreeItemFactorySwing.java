@@ -71,6 +71,10 @@ public class TreeItemFactorySwing implements TreeItemFactory
             super.add( (DefaultMutableTreeNode)node );
         }
 
+        public void insert(RaplaTreeNode node, int index) {
+            super.insert( (DefaultMutableTreeNode)node, index );
+        }
+
         public RaplaTreeNode getChild(int index) {
             return (RaplaTreeNode)getChildAt( index);
         }
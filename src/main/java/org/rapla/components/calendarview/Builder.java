@@ -26,6 +26,16 @@ public interface Builder {
     * @param end
     */
     PreperationResult prepareBuild(Date start, Date end);
+
+    /** Calculates only the blocks between changedStart and changedEnd again and replaces the blocks of the former result in that interval.
+     * The blocks outside the interval are taken from the former result. The interval must start and end with a day.
+     * The default implementation calculates all blocks again.
+     * @param former the result of a preparation for the same start and end
+     */
+    default PreperationResult prepareBuild(PreperationResult former, Date start, Date end, Date changedStart, Date changedEnd)
+    {
+        return prepareBuild(start, end);
+    }
    
 
         class PreperationResult
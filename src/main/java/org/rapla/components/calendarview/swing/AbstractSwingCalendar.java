@@ -14,9 +14,13 @@ package org.rapla.components.calendarview.swing;
 
 import org.rapla.components.calendarview.AbstractCalendar;
 import org.rapla.components.calendarview.Block;
+import org.rapla.components.calendarview.BlockContainer;
+import org.rapla.components.calendarview.Builder;
+import org.rapla.components.calendarview.Builder.PreperationResult;
 import org.rapla.components.calendarview.CalendarView;
 import org.rapla.components.layout.TableLayout;
 import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.domain.AppointmentBlock;
 
 import javax.swing.BoxLayout;
 import javax.swing.JComponent;
@@ -36,7 +40,12 @@ import java.awt.Rectangle;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 
 public abstract class AbstractSwingCalendar extends AbstractCalendar implements CalendarView {
@@ -54,6 +63,9 @@ public abstract class AbstractSwingCalendar extends AbstractCalendar implements
     JPanel jCenter = new JPanel();
     protected JPanel jTitlePanel = new JPanel();
     protected JPanel component = new JPanel();
+    private PreperationResult preperation;
+    private Date preperationStart;
+    private Date preperationEnd;
 
     AbstractSwingCalendar(boolean showScrollPane) {
         jHeader.setLayout(boxLayout1);
@@ -122,6 +134,92 @@ public abstract class AbstractSwingCalendar extends AbstractCalendar implements
 
     abstract public void updateSize(int width);
 
+    /** Builds the view with blocks that are already prepared for the start and end date of the view.
+     * The default implementation prepares the blocks again. */
+    public void rebuild(Builder b, PreperationResult prep) {
+        rebuild(b);
+    }
+
+    /** Updates the view without recreating all day slots. Only the prepared blocks between changedStart and changedEnd are built again,
+     * and only the columns that contain a changed block, either in the current view or after the update, are cleared and filled again.
+     * All other columns keep their components.
+     * @param prep the prepared blocks for the whole view, e.g. from {@link Builder#prepareBuild(PreperationResult, Date, Date, Date, Date)}
+     * @param changedBlocks returns true for all blocks that belong to changed objects
+     * @return false if the view can't be updated incrementally. Then {@link #rebuild(Builder, PreperationResult)} must be called with the same blocks.
+     */
+    public boolean rebuild(Builder b, PreperationResult prep, Date changedStart, Date changedEnd, Predicate<Block> changedBlocks) {
+        return false;
+    }
+
+    /** @return the prepared blocks of the last build or null, if the view was not built from prepared blocks or its period changed since then */
+    public PreperationResult getPreperationResult() {
+        if (preperation == null || !preperationStart.equals(getStartDate()) || !preperationEnd.equals(getEndDate())) {
+            return null;
+        }
+        return preperation;
+    }
+
+    protected void setPreperationResult(PreperationResult prep) {
+        this.preperation = prep;
+        this.preperationStart = getStartDate();
+        this.preperationEnd = getEndDate();
+    }
+
+    /** @return the prepared blocks that start between changedStart and changedEnd */
+    static List<AppointmentBlock> getBlocksBetween(PreperationResult prep, Date changedStart, Date changedEnd) {
+        final long start = changedStart.getTime();
+        final long end = changedEnd.getTime();
+        final List<AppointmentBlock> result = new ArrayList<>();
+        for (AppointmentBlock block : prep.getBlocks()) {
+            if (block.getStart() >= start && block.getStart() < end) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    /** collects the blocks per column, that the builder would add to the view */
+    static class ColumnRecorder implements BlockContainer {
+        final Map<Integer, List<Object[]>> columns = new LinkedHashMap<>();
+
+        @Override
+        public void addBlock(Block bl, int column, int slot) {
+            columns.computeIfAbsent(column, (key) -> new ArrayList<>()).add(new Object[] { bl, slot });
+        }
+
+        boolean containsChanged(int column, Predicate<Block> changedBlocks) {
+            final List<Object[]> blocks = columns.get(column);
+            if (blocks == null) {
+                return false;
+            }
+            for (Object[] entry : blocks) {
+                if (changedBlocks.test((Block) entry[0])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void replay(int column, BlockContainer container) {
+            final List<Object[]> blocks = columns.get(column);
+            if (blocks == null) {
+                return;
+            }
+            for (Object[] entry : blocks) {
+                container.addBlock((Block) entry[0], column, (Integer) entry[1]);
+            }
+        }
+    }
+
+    static boolean containsChanged(Collection<Block> blocks, Predicate<Block> changedBlocks) {
+        for (Block block : blocks) {
+            if (changedBlocks.test(block)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 	public JComponent getComponent()
     {
     	return component;
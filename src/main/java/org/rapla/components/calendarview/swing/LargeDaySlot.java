@@ -195,6 +195,15 @@ class LargeDaySlot extends AbstractDaySlot
         blockViewMapper.put(bl.getView(),bl);
     }
 
+    /** removes all blocks and slots, so that the day can be filled again with putBlock */
+    public void clearBlocks() {
+        removeAll();
+        slots.clear();
+        blockViewMapper.clear();
+        this.add(Box.createHorizontalStrut(left_gap));
+        addSlot();
+    }
+
     public Dimension getMinimumSize() { return getPreferredSize(); }
     public Dimension getMaximumSize() { return getPreferredSize(); }
     Insets insets = new Insets(0,0,0, right_gap);
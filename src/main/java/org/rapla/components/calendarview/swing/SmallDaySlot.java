@@ -106,6 +106,14 @@ public class SmallDaySlot extends AbstractDaySlot
         updateSize();
     }
 
+    /** removes all blocks, so that the day can be filled again with putBlock */
+    public void clearBlocks() {
+        removeAll();
+        blocks.clear();
+        blockViewMapper.clear();
+        updateSize();
+    }
+
 	public void updateSize() {
 	    int blockHeight = 0;
 	    for ( Block b:blocks)
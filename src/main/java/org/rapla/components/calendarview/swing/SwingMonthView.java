@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.function.Predicate;
 
 /** Graphical component for displaying a calendar like monthview.
  *
@@ -102,12 +103,17 @@ public class SwingMonthView extends AbstractSwingCalendar
     TableLayout tableLayout;
 
     public void rebuild(Builder b) {
+        rebuild(b, b.prepareBuild(getStartDate(), getEndDate()));
+    }
+
+    @Override
+    public void rebuild(Builder b, PreperationResult prep) {
         // we need to clone the calendar, because we modify the calendar object in the getExclude() method 
         Date startDate = getStartDate();
-        final Date endDate = getEndDate();
 
         
         // createInfoDialog fields
+        setPreperationResult(prep);
         slots = new SmallDaySlot[daysInMonth];
         Date counter =startDate;
         int year = DateTools.getYear(counter);
@@ -122,7 +128,6 @@ public class SwingMonthView extends AbstractSwingCalendar
         jCenter.removeAll();
        
         monthTitle.setText( monthname + " " + year);
-        PreperationResult prep = b.prepareBuild(startDate, endDate);
         // build Blocks
         final Collection<AppointmentBlock> blocks = prep.getBlocks();
         b.build(this, getStartDate(),blocks);
@@ -186,6 +191,38 @@ public class SwingMonthView extends AbstractSwingCalendar
         component.repaint();
     }
 
+    @Override
+    public boolean rebuild(Builder b, PreperationResult prep, Date changedStart, Date changedEnd, Predicate<Block> changedBlocks) {
+        if ( slots == null || slots.length != daysInMonth || getPreperationResult() == null) {
+            return false;
+        }
+        ColumnRecorder recorder = new ColumnRecorder();
+        b.build(recorder, getStartDate(), getBlocksBetween( prep, changedStart, changedEnd));
+        setPreperationResult(prep);
+        boolean changed = false;
+        for (int i=0;i<slots.length;i++) {
+            SmallDaySlot slot = slots[i];
+            if ( !containsChanged( slot.getBlocks(), changedBlocks) && !recorder.containsChanged( i, changedBlocks)) {
+                continue;
+            }
+            slot.clearBlocks();
+            recorder.replay( i, this);
+            changed = true;
+        }
+        if ( !changed ) {
+            return true;
+        }
+        selectionHandler.clearSelection();
+        jCenter.validate();
+        if ( isEditable())
+        {
+            updateSize(component.getSize().width);
+        }
+        component.revalidate();
+        component.repaint();
+        return true;
+    }
+
     private void createField(int pos, Date date)  {
         slots[pos]= createSmallslot(pos, date);
     }
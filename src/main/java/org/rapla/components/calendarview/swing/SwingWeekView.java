@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.function.Predicate;
 
 /** Graphical component for displaying a calendar like weekview.
  */
@@ -48,6 +49,10 @@ public class SwingWeekView extends AbstractSwingCalendar
 
     protected JLabel weekTitle;
     protected SelectionHandler selectionHandler;
+    private DraggingHandler draggingHandler;
+    // the time scale of the last full rebuild, an incremental rebuild is only possible if it didn't change
+    private int builtStart = -1;
+    private int builtEnd = -1;
 
     public SwingWeekView()
     {
@@ -244,6 +249,12 @@ public class SwingWeekView extends AbstractSwingCalendar
     }
 
     public void rebuild(Builder b)
+    {
+        rebuild(b, b.prepareBuild(getStartDate(), getEndDate()));
+    }
+
+    @Override
+    public void rebuild(Builder b, PreperationResult prep)
     {
         daySlots = new LargeDaySlot[getColumnCount()];
         selectionHandler.clearSelection();
@@ -255,8 +266,6 @@ public class SwingWeekView extends AbstractSwingCalendar
         int start = startMinutes;
         int end = endMinutes;
 
-        // calculate the blocks
-        PreperationResult prep = b.prepareBuild(getStartDate(), getEndDate());
         if (!bEditable)
         {
             start = Math.min(prep.getMinMinutes(), start);
@@ -297,8 +306,11 @@ public class SwingWeekView extends AbstractSwingCalendar
             timeScale.setTimeIntervall(minHour, maxHour, 60);
         }
 
+        setPreperationResult(prep);
+        builtStart = start;
+        builtEnd = end;
         // createInfoDialog Slots
-        DraggingHandler draggingHandler = new DraggingHandler(this, rowScale, true);
+        draggingHandler = new DraggingHandler(this, rowScale, true);
 
         for (int i = 0; i < getColumnCount(); i++)
         {
@@ -328,6 +340,55 @@ public class SwingWeekView extends AbstractSwingCalendar
         component.repaint();
     }
 
+    @Override
+    public boolean rebuild(Builder b, PreperationResult prep, Date changedStart, Date changedEnd, Predicate<Block> changedBlocks)
+    {
+        if (draggingHandler == null || daySlots.length != getColumnCount() || getPreperationResult() == null)
+        {
+            return false;
+        }
+        if (!bEditable)
+        {
+            int start = Math.min(prep.getMinMinutes(), startMinutes);
+            int end = Math.max(prep.getMaxMinutes(), endMinutes);
+            // the time scale changes, so all columns must be layouted again
+            if (start != builtStart || end != builtEnd)
+            {
+                return false;
+            }
+        }
+        ColumnRecorder recorder = new ColumnRecorder();
+        b.build(recorder, getStartDate(), getBlocksBetween(prep, changedStart, changedEnd));
+        setPreperationResult(prep);
+        boolean changed = false;
+        for (int i = 0; i < daySlots.length; i++)
+        {
+            LargeDaySlot slot = daySlots[i];
+            if (!containsChanged(slot.getBlocks(), changedBlocks) && !recorder.containsChanged(i, changedBlocks))
+            {
+                continue;
+            }
+            slot.clearBlocks();
+            recorder.replay(i, this);
+            slot.invalidate();
+            changed = true;
+        }
+        if (!changed)
+        {
+            return true;
+        }
+        selectionHandler.clearSelection();
+        jHeader.validate();
+        jCenter.validate();
+        if (isEditable())
+        {
+            updateSize(component.getSize().width);
+        }
+        component.revalidate();
+        component.repaint();
+        return true;
+    }
+
     private void createMultiSlot(int pos, int column, DraggingHandler draggingHandler, SelectionHandler selectionHandler)
     {
         JComponent header = createSlotHeader(column);
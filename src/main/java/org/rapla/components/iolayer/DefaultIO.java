@@ -41,6 +41,7 @@ import java.awt.print.Paper;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -273,6 +274,10 @@ public class DefaultIO  implements IOInterface{
     }
 
     public String saveFile(Frame frame,String dir,final  String[] fileExtensions, String filename, byte[] content) throws IOException {
+        return saveFile(frame, dir, fileExtensions, filename, (out) -> out.write(content));
+    }
+
+    public String saveFile(Frame frame,String dir,final  String[] fileExtensions, String filename, ContentWriter content) throws IOException {
         final FileDialog fd = new FileDialog(frame, "Save File", FileDialog.SAVE);
         
         if ( dir == null)
@@ -363,12 +368,11 @@ public class DefaultIO  implements IOInterface{
                 + System.getProperty("file.separator").charAt(0) + fd.getFile();
     }
 
-    private void writeFile(final File savedFile, byte[] content) throws IOException {
-        final FileOutputStream out;
-        out = new FileOutputStream(savedFile);
-        out.write( content);
-        out.flush();
-        out.close();
+    private void writeFile(final File savedFile, ContentWriter content) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(savedFile)))
+        {
+            content.write(out);
+        }
     }
 
 	public boolean openUrl(URL url) throws IOException {
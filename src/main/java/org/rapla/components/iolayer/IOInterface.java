@@ -58,12 +58,19 @@ public interface IOInterface {
     void setContents(Transferable transferable, ClipboardOwner owner);
     Transferable getContents( ClipboardOwner owner);
     String saveFile(Frame frame, String dir, String[] fileExtensions, String path, byte[] content) throws IOException;
+    /** like {@link #saveFile(Frame, String, String[], String, byte[])}, but the content is written to the selected file while it is created */
+    String saveFile(Frame frame, String dir, String[] fileExtensions, String path, ContentWriter content) throws IOException;
     FileContent openFile(Frame frame, String dir, String[] fileExtensions) throws IOException;
             
     boolean openUrl(final URL url) throws IOException;
     
     boolean supportsPostscriptExport();
 
+    interface ContentWriter
+    {
+        void write(OutputStream out) throws IOException;
+    }
+
     double INCH_TO_MM = 25.40006;
     double MM_TO_INCH = 1.0 / INCH_TO_MM;
 }
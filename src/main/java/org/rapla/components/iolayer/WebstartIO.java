@@ -209,6 +209,13 @@ final public class WebstartIO extends DefaultIO {
         
     }
 
+    /** the file save service needs the complete content, so it is collected in memory */
+    public String saveFile(Frame frame,String dir, String[] fileExtensions, String filename, ContentWriter content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.write(out);
+        return saveFile(frame, dir, fileExtensions, filename, out.toByteArray());
+    }
+
     public FileContent openFile(Frame frame,String dir, String[] fileExtensions) throws IOException {
         try {
             
@@ -0,0 +1,33 @@
+package org.rapla.components.util.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A monotonically increasing count, e.g. of requests or errors */
+public class Counter extends Metric
+{
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String[] labels)
+    {
+        super(name, labels);
+    }
+
+    public void inc()
+    {
+        value.increment();
+    }
+
+    public void add(long amount)
+    {
+        if (amount < 0)
+        {
+            throw new IllegalArgumentException("Counters can't be decreased: " + amount);
+        }
+        value.add(amount);
+    }
+
+    public long get()
+    {
+        return value.sum();
+    }
+}
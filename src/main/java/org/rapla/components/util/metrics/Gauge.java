@@ -0,0 +1,36 @@
+package org.rapla.components.util.metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.function.ToDoubleFunction;
+
+/** A value that is read from its owner when the metrics are written, e.g. a cache size.
+ * The owner is only weakly referenced, so a registered gauge doesn't keep a disposed component in memory.
+ * If the owner is garbage collected the value is NaN and the gauge is dropped from the registry. */
+public class Gauge extends Metric
+{
+    private final WeakReference<Object> owner;
+    private final ToDoubleFunction<Object> function;
+
+    @SuppressWarnings("unchecked")
+    <T> Gauge(String name, String[] labels, T owner, ToDoubleFunction<T> function)
+    {
+        super(name, labels);
+        this.owner = new WeakReference<>(owner);
+        this.function = (ToDoubleFunction<Object>) function;
+    }
+
+    public double get()
+    {
+        final Object current = owner.get();
+        if (current == null)
+        {
+            return Double.NaN;
+        }
+        return function.applyAsDouble(current);
+    }
+
+    boolean isCollected()
+    {
+        return owner.get() == null;
+    }
+}
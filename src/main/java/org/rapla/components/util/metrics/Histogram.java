@@ -0,0 +1,126 @@
+package org.rapla.components.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Records durations in nanoseconds into log-linear buckets, like a HdrHistogram with a fixed precision.
+ * Each power of two is split into {@value #SUB_BUCKET_COUNT} linear buckets, so a percentile is at most 1/{@value #SUB_BUCKET_COUNT}
+ * above the recorded value. Recording is lock free and needs no allocation. Durations above about 18 minutes are counted in the last bucket,
+ * the maximum is kept exact.
+ */
+public class Histogram extends Metric
+{
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** the highest power of two that gets its own buckets, 2^40 ns are about 18 minutes */
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name, String[] labels)
+    {
+        super(name, labels);
+    }
+
+    public void record(long nanos)
+    {
+        final long value = Math.max(0, nanos);
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value))
+        {
+            currentMax = max.get();
+        }
+    }
+
+    public void record(long duration, TimeUnit unit)
+    {
+        record(unit.toNanos(duration));
+    }
+
+    /** records the time since the start, which is a value of {@link System#nanoTime()} */
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSumNanos()
+    {
+        return sum.sum();
+    }
+
+    public long getMaxNanos()
+    {
+        return max.get();
+    }
+
+    /** the recorded value at the percentile (between 0 and 100) with the precision of the buckets */
+    public long getValueAtPercentile(double percentile)
+    {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        final double fraction = Math.min(100, Math.max(0, percentile)) / 100.0;
+        final long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            cumulated += counts[i];
+            if (cumulated >= rank)
+            {
+                return Math.min(getHighestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int getBucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+        {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /** the highest value that is counted in the bucket */
+    static long getHighestValue(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final int subBucket = index % SUB_BUCKET_COUNT;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,36 @@
+package org.rapla.components.util.metrics;
+
+/** Base class of the metrics in a {@link MetricsRegistry}. A metric is identified by the name of its family and its label values. */
+public abstract class Metric
+{
+    private final String name;
+    private final String[] labels;
+
+    Metric(String name, String[] labels)
+    {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /** the label names and values as pairs, e.g. {"lock","read"} */
+    public String[] getLabels()
+    {
+        return labels.clone();
+    }
+
+    String[] getLabelsInternal()
+    {
+        return labels;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + MetricsRegistry.formatLabels(labels, null, null);
+    }
+}
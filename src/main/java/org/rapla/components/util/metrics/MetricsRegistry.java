@@ -0,0 +1,357 @@
+package org.rapla.components.util.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Pattern;
+
+/** Keeps counters, gauges and latency histograms of the running process and writes them as JSON or in the Prometheus text format.
+ * <p>
+ * Metrics with the same name form a family with one help text and type, the members are distinguished by label name and value pairs,
+ * e.g. <code>histogram("rapla_lock_wait_seconds", "...", "lock", "read")</code>. Requesting a metric again returns the registered one,
+ * so callers can either keep the metric in a field or look it up for each use.
+ * </p>
+ * <p>
+ * The components share the {@link #getDefault() default registry}, so they don't need to be constructed with it.
+ * Histograms record nanoseconds and are written in seconds.
+ * </p>
+ */
+public class MetricsRegistry
+{
+    public static final double[] PERCENTILES = { 50, 90, 99 };
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    enum Type
+    {
+        counter, gauge, summary
+    }
+
+    static class Family
+    {
+        final String name;
+        final String help;
+        final Type type;
+        final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, Type type)
+        {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name, String help, String... labels)
+    {
+        final String[] checkedLabels = checkLabels(labels);
+        return (Counter) getFamily(name, help, Type.counter).metrics.computeIfAbsent(formatLabels(checkedLabels, null, null),
+                (key) -> new Counter(name, checkedLabels));
+    }
+
+    public Histogram histogram(String name, String help, String... labels)
+    {
+        final String[] checkedLabels = checkLabels(labels);
+        return (Histogram) getFamily(name, help, Type.summary).metrics.computeIfAbsent(formatLabels(checkedLabels, null, null),
+                (key) -> new Histogram(name, checkedLabels));
+    }
+
+    /** registers a gauge that reads its value from the owner. A gauge registered before with the same name and labels is replaced. */
+    public <T> Gauge gauge(String name, String help, T owner, ToDoubleFunction<T> function, String... labels)
+    {
+        final String[] checkedLabels = checkLabels(labels);
+        final Gauge gauge = new Gauge(name, checkedLabels, owner, function);
+        getFamily(name, help, Type.gauge).metrics.put(formatLabels(checkedLabels, null, null), gauge);
+        return gauge;
+    }
+
+    /** returns the registered metric or null */
+    public Metric find(String name, String... labels)
+    {
+        final Family family = families.get(name);
+        if (family == null)
+        {
+            return null;
+        }
+        return family.metrics.get(formatLabels(checkLabels(labels), null, null));
+    }
+
+    private Family getFamily(String name, String help, Type type)
+    {
+        final Family family = families.computeIfAbsent(name, (key) -> {
+            if (!NAME_PATTERN.matcher(name).matches())
+            {
+                throw new IllegalArgumentException("Illegal metric name " + name);
+            }
+            return new Family(name, help, type);
+        });
+        if (family.type != type)
+        {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static String[] checkLabels(String[] labels)
+    {
+        if (labels.length % 2 != 0)
+        {
+            throw new IllegalArgumentException("Labels must be passed as name value pairs");
+        }
+        for (int i = 0; i < labels.length; i += 2)
+        {
+            if (labels[i] == null || !NAME_PATTERN.matcher(labels[i]).matches())
+            {
+                throw new IllegalArgumentException("Illegal label name " + labels[i]);
+            }
+            if (labels[i + 1] == null)
+            {
+                throw new IllegalArgumentException("Value for label " + labels[i] + " is missing");
+            }
+        }
+        return labels;
+    }
+
+    /** the families sorted by name and their metrics sorted by labels. Gauges of collected owners are removed. */
+    private List<Family> getSortedFamilies()
+    {
+        final List<Family> result = new ArrayList<>(new TreeMap<>(families).values());
+        for (Family family : result)
+        {
+            if (family.type == Type.gauge)
+            {
+                family.metrics.values().removeIf((metric) -> ((Gauge) metric).isCollected());
+            }
+        }
+        return result;
+    }
+
+    private static List<Metric> getSortedMetrics(Family family)
+    {
+        return new ArrayList<>(new TreeMap<>(family.metrics).values());
+    }
+
+    /** writes the metrics in the Prometheus text exposition format. Histograms are written as summaries with an extra _max gauge */
+    public void writePrometheus(Writer out) throws IOException
+    {
+        for (Family family : getSortedFamilies())
+        {
+            final List<Metric> metrics = getSortedMetrics(family);
+            if (metrics.isEmpty())
+            {
+                continue;
+            }
+            final String name = family.name;
+            writePrometheusHeader(out, name, family.help, family.type.name());
+            for (Metric metric : metrics)
+            {
+                final String[] labels = metric.getLabelsInternal();
+                if (metric instanceof Counter)
+                {
+                    writePrometheusLine(out, name, labels, null, null, Long.toString(((Counter) metric).get()));
+                }
+                else if (metric instanceof Gauge)
+                {
+                    writePrometheusLine(out, name, labels, null, null, formatDouble(((Gauge) metric).get()));
+                }
+                else
+                {
+                    final Histogram histogram = (Histogram) metric;
+                    for (double percentile : PERCENTILES)
+                    {
+                        writePrometheusLine(out, name, labels, "quantile", Double.toString(percentile / 100),
+                                formatDouble(toSeconds(histogram.getValueAtPercentile(percentile))));
+                    }
+                    writePrometheusLine(out, name + "_sum", labels, null, null, formatDouble(toSeconds(histogram.getSumNanos())));
+                    writePrometheusLine(out, name + "_count", labels, null, null, Long.toString(histogram.getCount()));
+                }
+            }
+            if (family.type == Type.summary)
+            {
+                writePrometheusHeader(out, name + "_max", "Maximum of " + name, Type.gauge.name());
+                for (Metric metric : metrics)
+                {
+                    final double max = toSeconds(((Histogram) metric).getMaxNanos());
+                    writePrometheusLine(out, name + "_max", metric.getLabelsInternal(), null, null, formatDouble(max));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static void writePrometheusHeader(Writer out, String name, String help, String type) throws IOException
+    {
+        if (help != null)
+        {
+            out.write("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+        }
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void writePrometheusLine(Writer out, String name, String[] labels, String extraLabel, String extraValue, String value)
+            throws IOException
+    {
+        out.write(name);
+        out.write(formatLabels(labels, extraLabel, extraValue));
+        out.write(" ");
+        out.write(value);
+        out.write("\n");
+    }
+
+    /** the labels in the Prometheus notation {name="value",...} or an empty string if there are no labels */
+    static String formatLabels(String[] labels, String extraLabel, String extraValue)
+    {
+        if (labels.length == 0 && extraLabel == null)
+        {
+            return "";
+        }
+        final StringBuilder buf = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2)
+        {
+            appendLabel(buf, labels[i], labels[i + 1]);
+        }
+        if (extraLabel != null)
+        {
+            appendLabel(buf, extraLabel, extraValue);
+        }
+        buf.setCharAt(buf.length() - 1, '}');
+        return buf.toString();
+    }
+
+    private static void appendLabel(StringBuilder buf, String label, String value)
+    {
+        buf.append(label).append("=\"");
+        buf.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+        buf.append("\",");
+    }
+
+    /** writes the metrics as one JSON object with the timestamp and a list of metrics. Histograms contain the count, sum, max and percentiles in seconds. */
+    public void writeJson(Writer out) throws IOException
+    {
+        out.write("{\"timestamp\":" + System.currentTimeMillis() + ",\"metrics\":[");
+        boolean first = true;
+        for (Family family : getSortedFamilies())
+        {
+            for (Metric metric : getSortedMetrics(family))
+            {
+                if (!first)
+                {
+                    out.write(",");
+                }
+                first = false;
+                out.write("\n{\"name\":" + quote(family.name) + ",\"type\":" + quote(family.type == Type.summary ? "histogram" : family.type.name()));
+                if (family.help != null)
+                {
+                    out.write(",\"help\":" + quote(family.help));
+                }
+                final String[] labels = metric.getLabelsInternal();
+                if (labels.length > 0)
+                {
+                    out.write(",\"labels\":{");
+                    for (int i = 0; i < labels.length; i += 2)
+                    {
+                        out.write((i > 0 ? "," : "") + quote(labels[i]) + ":" + quote(labels[i + 1]));
+                    }
+                    out.write("}");
+                }
+                if (metric instanceof Counter)
+                {
+                    out.write(",\"value\":" + ((Counter) metric).get());
+                }
+                else if (metric instanceof Gauge)
+                {
+                    final double value = ((Gauge) metric).get();
+                    out.write(",\"value\":" + (Double.isNaN(value) || Double.isInfinite(value) ? "null" : formatDouble(value)));
+                }
+                else
+                {
+                    final Histogram histogram = (Histogram) metric;
+                    out.write(",\"count\":" + histogram.getCount());
+                    out.write(",\"sum\":" + formatDouble(toSeconds(histogram.getSumNanos())));
+                    out.write(",\"max\":" + formatDouble(toSeconds(histogram.getMaxNanos())));
+                    for (double percentile : PERCENTILES)
+                    {
+                        out.write(",\"p" + (int) percentile + "\":" + formatDouble(toSeconds(histogram.getValueAtPercentile(percentile))));
+                    }
+                }
+                out.write("}");
+            }
+        }
+        out.write("\n]}\n");
+        out.flush();
+    }
+
+    private static String quote(String value)
+    {
+        final StringBuilder buf = new StringBuilder(value.length() + 2);
+        buf.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        buf.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        buf.append(c);
+                    }
+            }
+        }
+        buf.append('"');
+        return buf.toString();
+    }
+
+    private static double toSeconds(long nanos)
+    {
+        return nanos / NANOS_PER_SECOND;
+    }
+
+    private static String formatDouble(double value)
+    {
+        if (Double.isNaN(value))
+        {
+            return "NaN";
+        }
+        if (Double.isInfinite(value))
+        {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+        {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -171,7 +171,8 @@ public class SignedToken {
       return null;
     }
 
-    return new ValidToken(maxAge > 0 && c + (maxAge >> 1) <= n, recvText);
+    final long validUntil = maxAge > 0 ? (c + maxAge + 1) * 5000L : Long.MAX_VALUE;
+    return new ValidToken(maxAge > 0 && c + (maxAge >> 1) <= n, recvText, validUntil);
   }
 
   synchronized private void computeToken(final byte[] buf, final String text)
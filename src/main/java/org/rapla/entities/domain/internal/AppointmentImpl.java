@@ -419,6 +419,14 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
         long currentPos = s + timeFromStart;
         DD=DE?BUG: print( " currentPos:" + n(currentPos) + " c2-s:" + n(c2-s) + " c1-e:" + n(c1-e));
         long blockLength = Math.max(0, e - s);
+        // monthly and yearly repeatings jump directly to the first occurrence that can overlap the interval
+        final boolean useOccurrenceIndex = repeating.hasOccurrenceIndex();
+        int occurrence = 1;
+        if ( useOccurrenceIndex)
+        {
+            occurrence = Math.max(1, repeating.getFirstOccurrenceAfter(c1 - blockLength));
+            currentPos = repeating.getOccurrenceStart( occurrence);
+        }
         while (currentPos <= c2 && (maxNumber<0 || (currentPos<=maxEnding ))) {
             DD=DE?BUG: print(" current pos:" + f(currentPos));
             if (( currentPos + blockLength > c1  )  && ( currentPos < c2 ) && (( end!=DateTools.cutDate(end) || !repeating.isDaily() || currentPos < maxEnding))) {
@@ -436,8 +444,15 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
                     }
                 }
             }
-            currentPos += repeating.getIntervalLength( currentPos) ;
-            
+            occurrence++;
+            if ( useOccurrenceIndex && occurrence < RepeatingImpl.MAX_INDEXED_OCCURRENCES)
+            {
+                currentPos = repeating.getOccurrenceStart( occurrence);
+            }
+            else
+            {
+                currentPos += repeating.getIntervalLength( currentPos) ;
+            }
         }
         return false;
     }
@@ -665,16 +680,16 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
         long l1 = r1.getFixedIntervalLength();
         long l2 = r2.getFixedIntervalLength();
         long gap = (l1 * l2) / gcd(l1,l2);
-        Date[] exceptions1 = r1.getExceptions();
-        Date[] exceptions2 = r2.getExceptions();
+        long[] exceptions1 = r1.getExceptionTimes();
+        long[] exceptions2 = r2.getExceptionTimes();
         DD=DE?BUG: print(" Testing Exceptions for overlapp " + f(s1) + " with " + f(s2) + " gap " + n(gap));
         int i1 = 0;
         int i2 = 0;
         long x = 0;
         if (exceptions1.length>i1)
-            DD=DE?BUG: print("Exception a1: " + fe(exceptions1[i1].getTime()));
+            DD=DE?BUG: print("Exception a1: " + fe(exceptions1[i1]));
         if (exceptions2.length>i2)
-            DD=DE?BUG: print("Exception a2: " + fe(exceptions2[i2].getTime()));
+            DD=DE?BUG: print("Exception a2: " + fe(exceptions2[i2]));
         long exceptionTime1 = 0;
         long exceptionTime2 = 0;
   
@@ -686,7 +701,7 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
             // Find first exception from app1 that matches gap
             while (i1<exceptions1.length)
             {
-               	exceptionTime1=exceptions1[i1].getTime();
+               	exceptionTime1=exceptions1[i1];
             	if ( exceptionTime1  >= pos1)
             	{
             		DD=DE?BUG: print("Exception  a1: " + fe(exceptionTime1));
@@ -698,7 +713,7 @@ public final class AppointmentImpl extends SimpleEntity implements Appointment
             // Find first exception from app2 that matches gap
             while (i2<exceptions2.length)
             {
-            	exceptionTime2 = exceptions2[i2].getTime();
+            	exceptionTime2 = exceptions2[i2];
             	if ( exceptionTime2 >= pos1)
             	{
             		DD=DE?BUG: print("Exception a2: " + fe(exceptionTime2));
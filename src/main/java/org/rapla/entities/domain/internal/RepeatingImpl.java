@@ -43,12 +43,14 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
     private RepeatingType repeatingType;
     private Set<Date> exceptions;
     private Set<Integer> weekdays;
-    transient private Date[] exceptionArray;
-    transient private boolean arrayUpToDate = false;
+    transient private volatile ExceptionDates exceptionDates;
     transient private Appointment appointment;
     private int frequency;
     boolean monthly;
     boolean yearly;
+    transient private volatile OccurrenceIndex occurrenceIndex;
+    // 100 years of monthly occurrences
+    static final int MAX_INDEXED_OCCURRENCES = 1200;
 
     RepeatingImpl()
     {
@@ -73,6 +75,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         this.repeatingType = repeatingType;
         monthly = false;
         yearly = false;
+        occurrenceIndex = null;
         if (repeatingType!=RepeatingType.WEEKLY )
         {
             weekdays = null;
@@ -209,6 +212,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         {
             this.weekdays = null;
         }
+        occurrenceIndex = null;
     }
 
     public void setEnd(Date end) {
@@ -243,6 +247,10 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         if ( !isFixedIntervalLength())
         {
             int counts =  ((number -1) * interval) ;
+            if ( hasOccurrenceIndex())
+            {
+                return new Date( getOccurrenceStart( counts));
+            }
             Date newDate = appointmentStart;
             for ( int i=0;i< counts;i++)
             {
@@ -286,20 +294,17 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         if (!hasExceptions())
             return false;
 
-        Date[] exceptions = getExceptions();
-        if (exceptions.length == 0) {
-            //          System.out.println("no exceptions");
-            return false;
+        long[] exceptionTimes = getExceptionDates().times;
+        // find the last exception that starts before or at time
+        int index = Arrays.binarySearch(exceptionTimes, time);
+        if (index >= 0) {
+            return true;
         }
-        for (int i=0;i<exceptions.length;i++) {
-            //System.out.println("Comparing exception " + exceptions[i] + " with " + new Date(time));
-            if (exceptions[i].getTime()<=time
-                && time<exceptions[i].getTime() + DateTools.MILLISECONDS_PER_DAY) {
-                //System.out.println("Exception matched " + exceptions[i]);
-                return true;
-            }
+        index = -index - 2;
+        if (index < 0) {
+            return false;
         }
-        return false;
+        return time < exceptionTimes[index] + DateTools.MILLISECONDS_PER_DAY;
     }
 
     public int getNumber() {
@@ -318,6 +323,10 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
             long intervalLength = getFixedIntervalLength();
             return (int) ((duration/ intervalLength) + 1);
         }
+        else if ( hasOccurrenceIndex())
+        {
+            return Math.max(1, getFirstOccurrenceAfter(end.getTime() - 1));
+        }
         else
         {
             Date appointmentStart = appointment.getStart();
@@ -343,7 +352,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         if (exceptions == null)
             exceptions = new TreeSet<>();
         exceptions.add(DateTools.cutDate(date));
-        arrayUpToDate = false;
+        exceptionDates = null;
     }
 
     public void addExceptions(TimeInterval interval) {
@@ -358,7 +367,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
             final long l = DateTools.cutDate(appointmentBlock.getStart());
             exceptions.add(new Date(l));
         }
-        arrayUpToDate = false;
+        exceptionDates = null;
     }
 
     public void removeException(Date date) {
@@ -372,7 +381,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         exceptions.remove(DateTools.cutDate(date));
         if (exceptions.size()==0)
             exceptions = null;
-        arrayUpToDate = false;
+        exceptionDates = null;
     }
 
     public void clearExceptions() {
@@ -380,7 +389,7 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
             return;
         exceptions.clear();
         exceptions = null;
-        arrayUpToDate = false;
+        exceptionDates = null;
     }
 
     public String toString() {
@@ -424,6 +433,8 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         RepeatingImpl source = this; 
         copy(source, dest);
         dest.appointment = appointment;
+        // the index is immutable and checks the appointment start, so it can be shared
+        dest.occurrenceIndex = occurrenceIndex;
         dest.readOnly = false;// clones are always writable
         return dest;
     }
@@ -456,6 +467,8 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         {
         	dest.exceptions = null;
         }
+        // the sorted arrays are immutable so they can be shared until one of the copies changes its exceptions
+        dest.exceptionDates = source.exceptionDates;
         
 	}
     
@@ -466,21 +479,27 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
 		dest.setType(repeating.getType());
     	RepeatingImpl source = (RepeatingImpl)repeating;
 		copy( source, dest);
+		dest.occurrenceIndex = null;
     }
 
-    private static final Date[] DATE_ARRAY = new Date[0];
     public Date[] getExceptions() {
-        if (!arrayUpToDate) {
-            if (exceptions != null) {
-                exceptionArray = exceptions.toArray(DATE_ARRAY);
-                Arrays.sort(exceptionArray);
-            }
-            else
-                exceptionArray = DATE_ARRAY;
-            arrayUpToDate = true;
+        return getExceptionDates().dates;
+    }
+
+    /** returns the start of the exception days in ascending order. */
+    long[] getExceptionTimes() {
+        return getExceptionDates().times;
+    }
+
+    private ExceptionDates getExceptionDates() {
+        ExceptionDates result = exceptionDates;
+        if (result == null) {
+            result = exceptions != null ? new ExceptionDates(exceptions) : ExceptionDates.EMPTY;
+            exceptionDates = result;
         }
-        return exceptionArray;
+        return result;
     }
+
     public boolean hasExceptions() {
         return exceptions != null && exceptions.size()>0;
     }
@@ -584,6 +603,145 @@ final class RepeatingImpl implements Repeating,java.io.Serializable {
         return !monthly &&!yearly && !(weekdays != null && weekdays.size() >1);
     }
 
+    /** monthly and yearly repeatings keep the start times of their occurrences in an index, so they don't need to be stepped through from the appointment start on each call.
+     * @see #getOccurrenceStart(int)
+     * @see #getFirstOccurrenceAfter(long)
+     */
+    boolean hasOccurrenceIndex()
+    {
+        return monthly || yearly;
+    }
+
+    /** returns the start of the n-th occurrence. The occurrence with number 0 is the appointment itself. Exceptions and the end of the repeating are not considered.
+     * Only available if {@link #hasOccurrenceIndex()} is true.*/
+    long getOccurrenceStart(int n)
+    {
+        OccurrenceIndex index = getOccurrenceIndex(n);
+        if (n < index.size)
+        {
+            return index.starts[n];
+        }
+        // we don't cache beyond the maximum index size, so we step from the last cached occurrence
+        final Date appointmentStart = appointment.getStart();
+        long time = index.starts[index.size - 1];
+        for (int i = index.size - 1; i < n; i++)
+        {
+            time = gotoNextStep(appointmentStart, new Date(time));
+        }
+        return time;
+    }
+
+    /** returns the number of the first occurrence that starts after the passed time.
+     * Only available if {@link #hasOccurrenceIndex()} is true.*/
+    int getFirstOccurrenceAfter(long time)
+    {
+        OccurrenceIndex index = getOccurrenceIndex(0);
+        while (index.starts[index.size - 1] <= time && index.size < OccurrenceIndex.MAX_SIZE)
+        {
+            index = getOccurrenceIndex(index.size * 2);
+        }
+        if (index.starts[index.size - 1] <= time)
+        {
+            final Date appointmentStart = appointment.getStart();
+            int n = index.size - 1;
+            long occurrenceStart = index.starts[n];
+            while (occurrenceStart <= time)
+            {
+                occurrenceStart = gotoNextStep(appointmentStart, new Date(occurrenceStart));
+                n++;
+            }
+            return n;
+        }
+        // binary search for the first entry greater than time
+        int low = 0;
+        int high = index.size - 1;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (index.starts[mid] <= time)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** returns an index that contains the n-th occurrence if n is below {@link OccurrenceIndex#MAX_SIZE}. The index is rebuilt if the appointment start has changed since its creation.*/
+    private OccurrenceIndex getOccurrenceIndex(int n)
+    {
+        if ( appointment == null)
+        {
+            throw new IllegalStateException("Appointment not set");
+        }
+        final Date appointmentStart = appointment.getStart();
+        OccurrenceIndex index = occurrenceIndex;
+        if (index == null || index.appointmentStart != appointmentStart.getTime())
+        {
+            index = new OccurrenceIndex(appointmentStart.getTime());
+        }
+        else if (n < index.size || index.size >= OccurrenceIndex.MAX_SIZE)
+        {
+            return index;
+        }
+        final int newSize = Math.min(OccurrenceIndex.MAX_SIZE, Math.max(Math.max(n + 1, OccurrenceIndex.INITIAL_SIZE), index.size * 2));
+        final long[] starts = Arrays.copyOf(index.starts, newSize);
+        long time = starts[index.size - 1];
+        for (int i = index.size; i < newSize; i++)
+        {
+            time = gotoNextStep(appointmentStart, new Date(time));
+            starts[i] = time;
+        }
+        // indices are immutable, so concurrent readers always see a consistent state
+        index = new OccurrenceIndex(index.appointmentStart, starts, newSize);
+        occurrenceIndex = index;
+        return index;
+    }
+
+    /** the sorted exceptions as dates and as primitive times for binary search */
+    static private final class ExceptionDates
+    {
+        static final ExceptionDates EMPTY = new ExceptionDates(Collections.emptySet());
+        final Date[] dates;
+        final long[] times;
+
+        ExceptionDates(Collection<Date> exceptions)
+        {
+            dates = exceptions.toArray(new Date[0]);
+            Arrays.sort(dates);
+            times = new long[dates.length];
+            for (int i = 0; i < dates.length; i++)
+            {
+                times[i] = dates[i].getTime();
+            }
+        }
+    }
+
+    /** sorted start times of the first occurrences of a repeating */
+    static private final class OccurrenceIndex
+    {
+        static final int MAX_SIZE = MAX_INDEXED_OCCURRENCES;
+        static final int INITIAL_SIZE = 16;
+        final long appointmentStart;
+        final long[] starts;
+        final int size;
+
+        OccurrenceIndex(long appointmentStart)
+        {
+            this(appointmentStart, new long[] { appointmentStart }, 1);
+        }
+
+        OccurrenceIndex(long appointmentStart, long[] starts, int size)
+        {
+            this.appointmentStart = appointmentStart;
+            this.starts = starts;
+            this.size = size;
+        }
+    }
+
     
 }
 
@@ -0,0 +1,164 @@
+package org.rapla.entities.dynamictype;
+
+import org.rapla.entities.Named;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Sorts like {@link SortedClassifiableComparator}, but computes the sorting attribute values and a {@link CollationKey} of the name
+ * only once per classifiable. The keys are kept until the classification of the classifiable is exchanged or {@link #invalidate(Classifiable)}
+ * is called, so sorting large collections doesn't format the names in every comparison.
+ * Not thread safe.
+ */
+public class SortKeyClassifiableComparator implements Comparator<Classifiable>
+{
+    private final Locale locale;
+    private final Collator collator;
+    private final Map<DynamicType, List<Attribute>> sortingCache = new LinkedHashMap<>();
+    private final Map<Classifiable, SortKey> keys = new HashMap<>();
+
+    public SortKeyClassifiableComparator(Locale locale)
+    {
+        this.locale = locale;
+        this.collator = Collator.getInstance(locale);
+    }
+
+    static class SortKey
+    {
+        final Classification classification;
+        final Object[] values;
+        final int[] orders;
+        final CollationKey name;
+
+        SortKey(Classification classification, Object[] values, int[] orders, CollationKey name)
+        {
+            this.classification = classification;
+            this.values = values;
+            this.orders = orders;
+            this.name = name;
+        }
+    }
+
+    /** removes the key of the classifiable, e.g. if it was changed or removed */
+    public void invalidate(Classifiable classifiable)
+    {
+        keys.remove(classifiable);
+    }
+
+    SortKey getKey(Classifiable classifiable)
+    {
+        final Classification classification = classifiable.getClassification();
+        SortKey key = keys.get(classifiable);
+        // the classifiable is equal to former versions of the entity, so the key is only valid for the same classification
+        if (key != null && key.classification == classification)
+        {
+            return key;
+        }
+        final List<Attribute> sortAttributes = getSortAttributes(classification.getType());
+        final Object[] values = new Object[sortAttributes.size()];
+        final int[] orders = new int[sortAttributes.size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            final Attribute attribute = sortAttributes.get(i);
+            final String sorting = attribute.getAnnotation(AttributeAnnotations.KEY_SORTING);
+            if (AttributeAnnotations.VALUE_SORTING_ASCENDING.equals(sorting))
+            {
+                orders[i] = 1;
+            }
+            else if (AttributeAnnotations.VALUE_SORTING_DESCENDING.equals(sorting))
+            {
+                orders[i] = -1;
+            }
+            if (orders[i] != 0)
+            {
+                values[i] = classification.getValueForAttribute(attribute);
+            }
+        }
+        final String name = ((Named) classifiable).getName(locale);
+        key = new SortKey(classification, values, orders, collator.getCollationKey(name));
+        keys.put(classifiable, key);
+        return key;
+    }
+
+    private List<Attribute> getSortAttributes(DynamicType type)
+    {
+        List<Attribute> sortAttributes = sortingCache.get(type);
+        if (sortAttributes == null)
+        {
+            sortAttributes = new ArrayList<>();
+            for (Attribute attribute : type.getAttributeIterable())
+            {
+                String sorting = attribute.getAnnotation(AttributeAnnotations.KEY_SORTING);
+                if (sorting != null)
+                {
+                    sortAttributes.add(attribute);
+                }
+            }
+            sortingCache.put(type, sortAttributes);
+        }
+        return sortAttributes;
+    }
+
+    @Override
+    public int compare(Classifiable o1, Classifiable o2)
+    {
+        Classification classification1 = o1.getClassification();
+        Classification classification2 = o2.getClassification();
+        if (classification1 == classification2)
+        {
+            return 0;
+        }
+        final SortKey key1 = getKey(o1);
+        final SortKey key2 = getKey(o2);
+        if (classification1.getType().equals(classification2.getType()))
+        {
+            for (int i = 0; i < key1.values.length; i++)
+            {
+                final int order = key1.orders[i];
+                if (order == 0)
+                {
+                    continue;
+                }
+                Object value1 = key1.values[i];
+                Object value2 = key2.values[i];
+                if (value1 != null)
+                {
+                    if (value2 == null)
+                    {
+                        return order;
+                    }
+                    if (value1 instanceof Comparable && value2 instanceof Comparable)
+                    {
+                        @SuppressWarnings({ "unchecked", "rawtypes" }) int result = order * ((Comparable) value1).compareTo(value2);
+                        if (result != 0)
+                        {
+                            return result;
+                        }
+                    }
+                }
+                else if (value2 != null)
+                {
+                    return -order;
+                }
+            }
+        }
+        // same order as the NamedComparator
+        if (o1.equals(o2))
+        {
+            return 0;
+        }
+        int result = key1.name.compareTo(key2.name);
+        if (result != 0)
+        {
+            return result;
+        }
+        return (o1.hashCode() < o2.hashCode()) ? -1 : 1;
+    }
+}
@@ -289,6 +289,21 @@ public class RaplaComponent
 		return false;
 	}
 
+	/** @return true if all appointments of the reservation start and end before maxEnd. Appointments without start or end, e.g. repeating forever, never end. */
+	public static boolean isEndedBefore(Reservation reservation, Date maxEnd)
+	{
+		for (Appointment appointment : reservation.getAppointments())
+		{
+			final Date start = appointment.getStart();
+			final Date end = appointment.getMaxEnd();
+			if (start == null || end == null || end.after(maxEnd) || start.after(maxEnd))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
     public static Date getStartDate(CalendarModel model, RaplaFacade raplaFacade, User user) {
 
         return getMarkedInterval( model,raplaFacade, user).getStart();
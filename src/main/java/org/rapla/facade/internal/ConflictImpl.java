@@ -34,6 +34,7 @@ import org.rapla.facade.RaplaComponent;
 import org.rapla.framework.RaplaException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -189,6 +190,17 @@ public class ConflictImpl extends SimpleEntity implements Conflict, ModifiableTi
         return splitConflictId(id) != null;
     }
 
+    /** @return the ids of both appointments of the conflict or an empty list, if the id is not a conflict id */
+    public static List<String> getAppointmentIds(String id)
+    {
+        String[] split = splitConflictId(id);
+        if (split == null || split.length < 4)
+        {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(split[2], split[3]);
+    }
+
     public Date getLastChanged()
     {
         return lastChanged;
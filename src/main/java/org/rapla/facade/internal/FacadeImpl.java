@@ -65,6 +65,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -505,20 +506,18 @@ public class FacadeImpl implements RaplaFacade {
 				}
 			}
 		}
-		Promise<Map<ReferenceInfo<Allocatable>, Collection<Appointment>>> result;
-		Promise<Map<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>>> allAllocatableBindings = operator.getAllAllocatableBindings(allocatables, appointments, ignoreList);
-		result = allAllocatableBindings.thenApply((allocatableBindings) -> {
+		final List<Appointment> appointmentList = appointments != null ? new ArrayList<>(appointments) : Collections.emptyList();
+		Promise<Map<ReferenceInfo<Allocatable>, BitSet>> availabilityMatrix = operator.getAvailabilityMatrix(allocatables, appointmentList, ignoreList);
+		Promise<Map<ReferenceInfo<Allocatable>, Collection<Appointment>>> result = availabilityMatrix.thenApply((matrix) -> {
 			Map<ReferenceInfo<Allocatable>, Collection<Appointment>> map = new HashMap<>();
-			for (Map.Entry<ReferenceInfo<Allocatable>, Map<Appointment, Collection<Appointment>>> entry : allocatableBindings.entrySet()) {
-				ReferenceInfo<Allocatable> alloc = entry.getKey();
-				Map<Appointment, Collection<Appointment>> appointmentMap = entry.getValue();
-				for (Map.Entry<Appointment,Collection<Appointment>> appointmentMapEntry : appointmentMap.entrySet()) {
-
-					Collection<Appointment> conflictingAppointments = appointmentMapEntry.getValue();
-					if ( !conflictingAppointments.isEmpty()) {
-						Appointment originalAppointment = appointmentMapEntry.getKey();
-						map.computeIfAbsent(alloc, (s)->new HashSet<>()).add(originalAppointment);
-					}
+			for (Map.Entry<ReferenceInfo<Allocatable>, BitSet> entry : matrix.entrySet()) {
+				final BitSet busy = entry.getValue();
+				Collection<Appointment> busyAppointments = new HashSet<>();
+				for (int i = busy.nextSetBit(0); i >= 0 && i < appointmentList.size(); i = busy.nextSetBit(i + 1)) {
+					busyAppointments.add(appointmentList.get(i));
+				}
+				if (!busyAppointments.isEmpty()) {
+					map.put(entry.getKey(), busyAppointments);
 				}
 			}
 			return map;
@@ -29,6 +29,7 @@ import org.rapla.components.util.DateTools;
 import org.rapla.components.util.TimeInterval;
 import org.rapla.components.i18n.I18nBundle;
 import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
 import org.rapla.entities.CategoryAnnotations;
 import org.rapla.entities.NamedComparator;
 import org.rapla.entities.User;
@@ -66,13 +67,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class RaplaBuilder
     implements
@@ -96,6 +97,9 @@ public class RaplaBuilder
     private boolean nonFilteredEventsVisible;
     private BlockCreator blockCreator = (blockContext, start, end) -> new RaplaBlock(blockContext, start, end);
     AppointmentMapping bindings;
+    // the appointments of the last updateFromModel
+    private TimeInterval changedInterval;
+    private Collection<Appointment> changedIntervalAppointments;
 
     /** default buildStrategy is {@link GroupAllocatablesStrategy}.*/
     BuildStrategy buildStrategy;
@@ -155,6 +159,8 @@ public class RaplaBuilder
             Collection<Conflict> conflictsSelected = new ArrayList<>();
             conflictsSelected.addAll( ((CalendarModelImpl)model).getSelectedConflicts());
             bindings = appointmentBindings;
+            changedInterval = null;
+            changedIntervalAppointments = null;
             Collection<Allocatable> allocatables ;
             if ( !conflictsSelected.isEmpty() )
             {
@@ -382,80 +388,243 @@ public class RaplaBuilder
 		AppointmentBlock original;
     }
 
+    /** splits all blocks that span more than one day (shifted by offsetMinutes) into one block per day in the interval. The split uses only primitive long arithmetic, so no objects are created for blocks that don't need to be split.*/
     static public List<AppointmentBlock> splitBlocks(Collection<AppointmentBlock> preparedBlocks, Date startDate, Date endDate, int offsetMinutes) {
-        List<AppointmentBlock> result = new ArrayList<>();
+        List<AppointmentBlock> result = new ArrayList<>(preparedBlocks.size());
+        final long offsetMillis = offsetMinutes * DateTools.MILLISECONDS_PER_MINUTE;
+        final long intervalStart = startDate.getTime();
+        final long intervalEnd = endDate.getTime();
         for (AppointmentBlock block:preparedBlocks) {
             long blockStart = block.getStart();
             long blockEnd = block.getEnd();
+            final long blockStartDay = getDayStart(blockStart, offsetMillis);
+            final long blockEndDay = getDayStart(blockEnd, offsetMillis);
+            if (blockStartDay == blockEndDay) {
+                result.add( block);
+                continue;
+            }
             Appointment appointment = block.getAppointment();
             boolean isException = block.isException();
-            final long offsetMillis = offsetMinutes * DateTools.MILLISECONDS_PER_MINUTE;
-            BiFunction<Long, Long, Boolean> shouldSplit = ( start, end) -> !DateTools.isSameDay( start -offsetMillis, end- offsetMillis);
-            Function<Long, Long> minStart = ( date) -> DateTools.cutDate( date -offsetMillis ) + offsetMillis;
-            Function<Long, Long> maxEnd = ( date) -> DateTools.fillDate( date  - offsetMillis)-1 + offsetMillis;
-
-
-            if (shouldSplit.apply(blockStart, blockEnd) ) {
-                long firstBlockDate = Math.max(blockStart, startDate.getTime());
-                long lastBlockDate = Math.min(blockEnd, endDate.getTime());
-                long currentBlockDate = firstBlockDate;
-                while ( currentBlockDate >= blockStart && minStart.apply( currentBlockDate )  < lastBlockDate) {
-                    final boolean splitStart =shouldSplit.apply(blockStart, currentBlockDate);
-                    final long start = splitStart ? minStart.apply(currentBlockDate): blockStart;
-                    final boolean splitEnd = shouldSplit.apply(blockEnd, currentBlockDate) || minStart.apply(blockEnd) == blockEnd;
-                    final long end = splitEnd ? maxEnd.apply( currentBlockDate ): blockEnd;
-                    //System.out.println("Adding Block " + new Date(start) + " - " + new Date(end));
-                    result.add ( new SplittedBlock(block,start, end, appointment,isException, splitStart, splitEnd));
-                    currentBlockDate+= DateTools.MILLISECONDS_PER_DAY;
+            long firstBlockDate = Math.max(blockStart, intervalStart);
+            long lastBlockDate = Math.min(blockEnd, intervalEnd);
+            long currentBlockDate = firstBlockDate;
+            while ( currentBlockDate >= blockStart) {
+                final long currentDay = getDayStart(currentBlockDate, offsetMillis);
+                if ( currentDay >= lastBlockDate) {
+                    break;
                 }
-            } else {
-                result.add( block);
+                final boolean splitStart = blockStartDay != currentDay;
+                final long start = splitStart ? currentDay: blockStart;
+                final boolean splitEnd = blockEndDay != currentDay || blockEndDay == blockEnd;
+                final long end = splitEnd ? DateTools.fillDate( currentBlockDate  - offsetMillis)-1 + offsetMillis: blockEnd;
+                result.add ( new SplittedBlock(block,start, end, appointment,isException, splitStart, splitEnd));
+                currentBlockDate+= DateTools.MILLISECONDS_PER_DAY;
             }
         }
         return result;
     }
 
+    /** @return the start of the day containing time, if days start offsetMillis after midnight */
+    private static long getDayStart(long time, long offsetMillis) {
+        return DateTools.cutDate( time - offsetMillis ) + offsetMillis;
+    }
+
+    /** calculates the minimal start and maximal end minute of the day for the blocks in one pass over the passed start and end times.
+     * @return an array with the min minutes at index 0 and the max minutes at index 1
+     */
+    static public int[] calculateMinMaxMinutes(long[] starts, long[] ends, int count, int offsetMinutes) {
+        final int[] minMax = createMinMax(offsetMinutes);
+        for (int i=0;i<count;i++)
+        {
+            updateMinMax(minMax, starts[i], ends[i], offsetMinutes);
+        }
+        return minMax;
+    }
+
+    /** calculates the minimal start and maximal end minute of the day for the blocks in one pass, without copying their times.
+     * @return an array with the min minutes at index 0 and the max minutes at index 1
+     */
+    static public int[] calculateMinMaxMinutes(Collection<AppointmentBlock> blocks, int offsetMinutes) {
+        final int[] minMax = createMinMax(offsetMinutes);
+        for (AppointmentBlock block : blocks)
+        {
+            updateMinMax(minMax, block.getStart(), block.getEnd(), offsetMinutes);
+        }
+        return minMax;
+    }
+
+    private static int[] createMinMax(int offsetMinutes) {
+        final int minHour = offsetMinutes * 60;
+        final int maxHour = 24 + offsetMinutes * 60;
+        return new int[] {maxHour * 60, minHour * 60};
+    }
+
+    private static void updateMinMax(int[] minMax, long start, long end, int offsetMinutes) {
+        final int minHour = offsetMinutes * 60;
+        final int maxHour = 24 + offsetMinutes * 60;
+        final int startMinuteOfDay = DateTools.getMinuteOfDay(start);
+        final int endMinuteOfDay = DateTools.getMinuteOfDay(end);
+        final int starthour = startMinuteOfDay / 60;
+        final int endhour = endMinuteOfDay / 60;
+        final int endminute = endMinuteOfDay % 60;
+        if (startMinuteOfDay != 0  && startMinuteOfDay<minMax[0])
+            minMax[0] = startMinuteOfDay;
+        if (endMinuteOfDay > 0 && endMinuteOfDay<minMax[0]  )
+            minMax[0] = Math.max(minHour,endhour-1) * 60 + endminute;
+        if (endMinuteOfDay != 0 && endMinuteOfDay != 23 * 60 + 59 && endMinuteOfDay>minMax[1])
+            minMax[1] = Math.min(maxHour*60 , endMinuteOfDay);
+        if (starthour>=minMax[1])
+            minMax[1] = Math.min(maxHour*60 , startMinuteOfDay);
+    }
 
     /** selects all blocks that should be visible and calculates the max start- and end-time  */
     public PreperationResult prepareBuild(Date start,Date end) {
-        start = new Date( start.getTime() );
-        end = new Date( end.getTime() );
-        boolean excludeExceptions = isExceptionsExcluded();
-    	boolean nonFilteredEventsVisible = isNonFilteredEventsVisible();
-
         //long time = System.currentTimeMillis();
         Collection<Appointment> appointments = bindings.getAllAppointments();
         //= AppointmentImpl.getAppointments(	nonFilteredEventsVisible ? allReservations : selectedReservations, selectedAllocatables);
         //logger.info( "Get appointments took " + (System.currentTimeMillis() - time) + " ms.");
+        final List<AppointmentBlock> blocks = createBlocks(appointments, start, end);
+        int offsetMinutes = buildStrategy.getOffsetMinutes();
+        List<AppointmentBlock> preparedBlocks = splitBlocks(blocks, start, end, offsetMinutes);
+        int[] minMax = calculateMinMaxMinutes(blocks, offsetMinutes);
+        return new PreperationResult( minMax[0], minMax[1],preparedBlocks);
+    }
+
+    /** Splits only the blocks of the changed interval. If {@link #updateFromModel(CalendarModel, TimeInterval, Predicate)} was called
+     * for the interval, only the appointments of that interval are used. The min and max minutes are calculated from the original blocks of the merged result,
+     * so they are the same as for a preparation of the whole period. */
+    @Override
+    public PreperationResult prepareBuild(PreperationResult former, Date start, Date end, Date changedStart, Date changedEnd) {
+        final TimeInterval interval = new TimeInterval(changedStart, changedEnd);
+        final Collection<Appointment> appointments = interval.equals(changedInterval) ? changedIntervalAppointments : bindings.getAllAppointments();
+        final long from = changedStart.getTime();
+        final long to = changedEnd.getTime();
+        final List<AppointmentBlock> preparedBlocks = new ArrayList<>();
+        for (AppointmentBlock block : former.getBlocks()) {
+            if (block.getStart() < from || block.getStart() >= to) {
+                preparedBlocks.add(block);
+            }
+        }
+        int offsetMinutes = buildStrategy.getOffsetMinutes();
+        preparedBlocks.addAll(splitBlocks(createBlocks(appointments, changedStart, changedEnd), changedStart, changedEnd, offsetMinutes));
+        final List<AppointmentBlock> originals = new ArrayList<>(preparedBlocks.size());
+        for (AppointmentBlock block : preparedBlocks) {
+            originals.add(block instanceof SplittedBlock ? ((SplittedBlock) block).getOriginal() : block);
+        }
+        int[] minMax = calculateMinMaxMinutes(originals, offsetMinutes);
+        return new PreperationResult( minMax[0], minMax[1],preparedBlocks);
+    }
+
+    private List<AppointmentBlock> createBlocks(Collection<Appointment> appointments, Date start, Date end) {
+        start = new Date( start.getTime() );
+        end = new Date( end.getTime() );
+        boolean excludeExceptions = isExceptionsExcluded();
         // Add appointment to the blocks
         final List<AppointmentBlock> blocks = new ArrayList<>();
         for (Appointment app:appointments)
         {
             app.createBlocks(start, end, blocks, excludeExceptions );
         }
-        int offsetMinutes = buildStrategy.getOffsetMinutes();
-        List<AppointmentBlock> preparedBlocks = splitBlocks(blocks, start, end, offsetMinutes);
-        int minHour = offsetMinutes * 60;
-        int maxHour = 24 + offsetMinutes * 60;
-        // calculate new start and end times
-        int max =minHour * 60;
-        int min =maxHour*60;
-        for (AppointmentBlock block:blocks)
+        return blocks;
+    }
+
+    /** @return the whole days between start and end, that contain a formerly prepared block of a changed appointment or a block of the new appointments.
+     * Null if there is no such block. */
+    public TimeInterval getChangedInterval(PreperationResult former, Predicate<Appointment> changedAppointments, Collection<Appointment> newAppointments, Date start, Date end) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        final List<AppointmentBlock> blocks = new ArrayList<>();
+        for (AppointmentBlock block : former.getBlocks()) {
+            if (changedAppointments.test(block.getAppointment())) {
+                blocks.add(block);
+            }
+        }
+        blocks.addAll(createBlocks(newAppointments, start, end));
+        for (AppointmentBlock block : blocks) {
+            min = Math.min(min, block.getStart());
+            max = Math.max(max, block.getEnd());
+        }
+        if (blocks.isEmpty()) {
+            return null;
+        }
+        final long offsetMillis = buildStrategy.getOffsetMinutes() * DateTools.MILLISECONDS_PER_MINUTE;
+        final long changedStart = Math.max(start.getTime(), getDayStart(min, offsetMillis));
+        // the end of a block is exclusive, so a block that ends at midnight doesn't change the next day
+        final long changedEnd = Math.min(end.getTime(), getDayStart(Math.max(min, max - 1), offsetMillis) + DateTools.MILLISECONDS_PER_DAY);
+        if (changedStart >= changedEnd) {
+            return null;
+        }
+        return new TimeInterval(new Date(changedStart), new Date(changedEnd));
+    }
+
+    /** Queries only the appointments of the changed interval and computes the bindings that replace the formerly queried appointments
+     * in that interval and the appointments of the changed reservations, so that the blocks of the interval can be prepared again with
+     * {@link #prepareBuild(PreperationResult, Date, Date, Date, Date)} after {@link #applyUpdate(BindingsUpdate)}. The builder itself is not changed,
+     * as the query completes outside the event dispatch thread. The allocatables and their colors of the last {@link #initFromModel(CalendarModel, Date, Date)} are kept.
+     * @param changedAppointments returns true for all formerly queried appointments that are changed or removed
+     * @return null if the builder can't be updated, because an allocatable is added to the view or conflicts are selected. Then initFromModel must be called.
+     */
+    public Promise<BindingsUpdate> updateFromModel(CalendarModel model, TimeInterval changedInterval, Predicate<Appointment> changedAppointments)
+    {
+        final AppointmentMapping formerBindings = bindings;
+        return model.queryAppointmentBindings(changedInterval).thenApply((changedBindings) -> {
+            if (isConflictsSelected() || !selectedAllocatables.containsAll(changedBindings.getAllocatables()))
+            {
+                return null;
+            }
+            final Map<Entity, Collection<Appointment>> appointmentMap = new LinkedHashMap<>();
+            for (Map.Entry<Entity, Collection<Appointment>> entry : formerBindings.entrySet())
+            {
+                final Collection<Appointment> appointments = new LinkedHashSet<>();
+                for (Appointment appointment : entry.getValue())
+                {
+                    if (!changedAppointments.test(appointment) && !appointment.overlapsTimeInterval(changedInterval))
+                    {
+                        appointments.add(appointment);
+                    }
+                }
+                appointmentMap.put(entry.getKey(), appointments);
+            }
+            for (Map.Entry<Entity, Collection<Appointment>> entry : changedBindings.entrySet())
+            {
+                appointmentMap.computeIfAbsent(entry.getKey(), (key) -> new LinkedHashSet<>()).addAll(entry.getValue());
+            }
+            return new BindingsUpdate(formerBindings, new AppointmentMapping(appointmentMap), changedInterval, changedBindings.getAllAppointments());
+        });
+    }
+
+    /** replaces the bindings with the result of {@link #updateFromModel(CalendarModel, TimeInterval, Predicate)}. Must be called in the thread that builds the view.
+     * @return false if the bindings were replaced after the update was queried, then the update is not applied */
+    public boolean applyUpdate(BindingsUpdate update)
+    {
+        if (update.formerBindings != bindings)
+        {
+            return false;
+        }
+        bindings = update.bindings;
+        selectedReservations = update.selectedReservations;
+        changedInterval = update.changedInterval;
+        changedIntervalAppointments = update.changedIntervalAppointments;
+        return true;
+    }
+
+    /** the bindings after a change, computed from the bindings that were current when the update was queried */
+    public static class BindingsUpdate
+    {
+        private final AppointmentMapping formerBindings;
+        private final AppointmentMapping bindings;
+        private final Collection<Reservation> selectedReservations;
+        private final TimeInterval changedInterval;
+        private final Collection<Appointment> changedIntervalAppointments;
+
+        BindingsUpdate(AppointmentMapping formerBindings, AppointmentMapping bindings, TimeInterval changedInterval, Collection<Appointment> changedIntervalAppointments)
         {
-            int starthour = DateTools.getHourOfDay(block.getStart());
-            int startminute = DateTools.getMinuteOfHour(block.getStart());
-            int endhour = DateTools.getHourOfDay(block.getEnd());
-            int endminute = DateTools.getMinuteOfHour(block.getEnd());
-            if ((starthour != 0 || startminute != 0)  && starthour*60 + startminute<min)
-                min = starthour * 60 + startminute;
-            if ((endhour >0 || endminute>0) && (endhour *60 + endminute)<min  )
-                min = Math.max(minHour,endhour-1) * 60 + endminute;
-            if ((endhour != 0 || endminute != 0) && (endhour != 23 || endminute!=59) && (endhour *60 + endminute)>max)
-                max = Math.min(maxHour*60 , endhour  * 60 + endminute);
-            if (starthour>=max)
-                max = Math.min(maxHour*60 , starthour *60 + startminute);
-        }
-        return new PreperationResult( min, max,preparedBlocks);
+            this.formerBindings = formerBindings;
+            this.bindings = bindings;
+            this.selectedReservations = bindings.getAllReservations();
+            this.changedInterval = changedInterval;
+            this.changedIntervalAppointments = changedIntervalAppointments;
+        }
     }
 
     public void build(BlockContainer blockContainer, Date startDate, Collection<AppointmentBlock> preparedBlocks) {
@@ -29,7 +29,9 @@ import org.rapla.client.swing.VisibleTimeInterval;
 import org.rapla.components.calendar.DateChangeEvent;
 import org.rapla.components.calendar.DateChangeListener;
 import org.rapla.components.calendar.DateRenderer;
+import org.rapla.components.calendarview.Block;
 import org.rapla.components.calendarview.BuildStrategy;
+import org.rapla.components.calendarview.Builder.PreperationResult;
 import org.rapla.components.calendarview.CalendarView;
 import org.rapla.components.calendarview.swing.AbstractSwingCalendar;
 import org.rapla.components.calendarview.swing.ViewListener;
@@ -37,16 +39,24 @@ import org.rapla.components.iolayer.IOInterface;
 import org.rapla.components.util.DateTools;
 import org.rapla.components.util.TimeInterval;
 import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentFormater;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.CalendarModel;
 import org.rapla.facade.CalendarSelectionModel;
+import org.rapla.facade.Conflict;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.facade.client.ClientFacade;
+import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.logger.Logger;
 import org.rapla.plugin.abstractcalendar.DateChooserPanel;
 import org.rapla.plugin.abstractcalendar.GroupAllocatablesStrategy;
 import org.rapla.plugin.abstractcalendar.MultiCalendarPrint;
+import org.rapla.plugin.abstractcalendar.RaplaBlock;
 import org.rapla.plugin.abstractcalendar.RaplaBuilder;
 import org.rapla.plugin.abstractcalendar.RaplaCalendarViewListener;
 import org.rapla.scheduler.Observable;
@@ -71,17 +81,29 @@ import java.awt.Graphics2D;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
         implements SwingCalendarView, DateChangeListener, MultiCalendarPrint, VisibleTimeInterval, Printable
 {
     protected final CalendarModel model;
     protected final AbstractSwingCalendar view;
+    // the builder of the last update, it can be updated for a change in the data
+    private RaplaBuilder lastBuilder;
+    /** incremented by every full and incremental update. An update is only applied on the event dispatch thread if no other update was started since */
+    private final AtomicInteger updateGeneration = new AtomicInteger();
+    /** the generation of the last applied update */
+    private volatile int builtGeneration;
     protected DateChooserPanel dateChooser;
     JComponent container;
     JLabel titleView;
@@ -186,13 +208,145 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
 
     public Observable triggerUpdate()
     {
-        Promise<Void> result = initializeBuilder()
+        return getFacade().getScheduler().toObservable(rebuild());
+    }
+
+    /** builds the view completely */
+    private Promise<Void> rebuild()
+    {
+        final int generation = updateGeneration.incrementAndGet();
+        return initializeBuilder()
+                .execOn(SwingUtilities::invokeLater)
+                .thenAccept((builder) -> {
+                    // a newer update is already running and replaces the view
+                    if (generation != updateGeneration.get())
+                    {
+                        return;
+                    }
+                    update(builder);
+                    builtGeneration = generation;
+                })
+                .exceptionally(this::handleException);
+    }
+
+    /** Updates only the days that contain changed reservations or appointments of changed conflicts, if the event contains only such changes.
+     * Only the appointments of these days are queried and prepared again, the blocks of the other days are taken from the last build.
+     * Otherwise the view is rebuild completely.
+     * The view is also rebuild completely, if another update is not finished yet, because the changes are only applied to the last built view.*/
+    @Override
+    public Observable triggerUpdate(ModificationEvent evt)
+    {
+        final RaplaBuilder builder = lastBuilder;
+        final Set<String> changedIds = getChangedIds(evt);
+        if (changedIds == null || builder == null || builder.isConflictsSelected() || builtGeneration != updateGeneration.get())
+        {
+            return triggerUpdate();
+        }
+        try
+        {
+            configureView();
+        }
+        catch (RaplaException e)
+        {
+            return triggerUpdate();
+        }
+        final PreperationResult former = view.getPreperationResult();
+        if (former == null)
+        {
+            return triggerUpdate();
+        }
+        final Predicate<Appointment> changedAppointments = (appointment) -> changedIds.contains(appointment.getId()) || changedIds
+                .contains(appointment.getReservation().getId());
+        final TimeInterval changedInterval = builder.getChangedInterval(former, changedAppointments, getNewAppointments(evt), getStartDate(), getEndDate());
+        if (changedInterval == null)
+        {
+            // no block in the view changed
+            return getFacade().getScheduler().toObservable(new ResolvedPromise<>(Promise.VOID));
+        }
+        final Predicate<Block> changedBlocks = (block) -> block instanceof RaplaBlock && changedAppointments.test(((RaplaBlock) block).getAppointment());
+        final int generation = updateGeneration.incrementAndGet();
+        Promise<Void> result = builder.updateFromModel(model, changedInterval, changedAppointments)
                 .execOn(SwingUtilities::invokeLater)
-                .thenAccept(this::update)
+                .thenCompose((bindingsUpdate) -> {
+                    // updates started while this one is running are full updates, that contain these changes as well
+                    if (generation != updateGeneration.get())
+                    {
+                        return new ResolvedPromise<>(Promise.VOID);
+                    }
+                    if (bindingsUpdate == null || builder != lastBuilder || !builder.applyUpdate(bindingsUpdate))
+                    {
+                        return rebuild();
+                    }
+                    update(builder, former, changedInterval, changedBlocks);
+                    builtGeneration = generation;
+                    return new ResolvedPromise<>(Promise.VOID);
+                })
                 .exceptionally(this::handleException);
         return getFacade().getScheduler().toObservable( result);
     }
 
+    /** @return the ids of all changed, added or removed reservations and of the appointments of changed conflicts
+     * or null if other objects are changed */
+    private Set<String> getChangedIds(ModificationEvent evt)
+    {
+        if (evt == null || evt.isSwitchTemplateMode())
+        {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        final Collection<Entity> changed = new ArrayList<>(evt.getChanged());
+        changed.addAll(evt.getAddObjects());
+        for (Entity entity : changed)
+        {
+            if (entity instanceof Reservation)
+            {
+                result.add(entity.getId());
+            }
+            else if (entity instanceof Conflict)
+            {
+                result.add(((Conflict) entity).getAppointment1().getId());
+                result.add(((Conflict) entity).getAppointment2().getId());
+            }
+            else
+            {
+                return null;
+            }
+        }
+        for (ReferenceInfo removed : evt.getRemovedReferences())
+        {
+            final Class<? extends Entity> type = removed.getType();
+            if (type == Reservation.class)
+            {
+                result.add(removed.getId());
+            }
+            else if (type == Conflict.class)
+            {
+                result.addAll(ConflictImpl.getAppointmentIds(removed.getId()));
+            }
+            else
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /** @return the appointments of the changed and added reservations */
+    private Collection<Appointment> getNewAppointments(ModificationEvent evt)
+    {
+        final Collection<Appointment> result = new ArrayList<>();
+        final Collection<Entity> changed = new ArrayList<>(evt.getChanged());
+        changed.addAll(evt.getAddObjects());
+        for (Entity entity : changed)
+        {
+            if (entity instanceof Reservation)
+            {
+                result.addAll(Arrays.asList(((Reservation) entity).getAppointments()));
+            }
+        }
+        return result;
+    }
+
     public void handleException(Throwable ex)
     {
         PopupContext popupContext = dialogUiFactory.createPopupContext(()->view.getComponent());
@@ -200,6 +354,12 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
     }
 
     public void update(RaplaBuilder builder) throws RaplaException
+    {
+        update(builder, null);
+    }
+
+    /** @param prep the prepared blocks or null if the view should prepare them */
+    private void update(RaplaBuilder builder, PreperationResult prep) throws RaplaException
     {
 
         if (titleView != null)
@@ -212,7 +372,34 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
             int minBlockWidth = getCalendarOptions().getMinBlockWidth();
             view.setMinBlockWidth(minBlockWidth);
         }
-        view.rebuild(builder);
+        if (prep != null)
+        {
+            view.rebuild(builder, prep);
+        }
+        else
+        {
+            view.rebuild(builder);
+        }
+        lastBuilder = builder;
+        updateContainerBounds();
+    }
+
+    /** prepares and rebuilds only the changed interval. Falls back to a full rebuild with the same prepared blocks, if the view can't be updated incrementally. */
+    private void update(RaplaBuilder builder, PreperationResult former, TimeInterval changedInterval, Predicate<Block> changedBlocks) throws RaplaException
+    {
+        final Date changedStart = changedInterval.getStart();
+        final Date changedEnd = changedInterval.getEnd();
+        final PreperationResult prep = builder.prepareBuild(former, getStartDate(), getEndDate(), changedStart, changedEnd);
+        if (!view.rebuild(builder, prep, changedStart, changedEnd, changedBlocks))
+        {
+            update(builder, prep);
+            return;
+        }
+        updateContainerBounds();
+    }
+
+    private void updateContainerBounds()
+    {
         if (!view.isEditable())
         {
             Dimension size = view.getComponent().getPreferredSize();
@@ -16,6 +16,8 @@ public interface ArchiverService
 	TypedComponentRole<RaplaConfiguration> CONFIG = new TypedComponentRole<>(PLUGIN_ID);
 
 	String REMOVE_OLDER_THAN_ENTRY = "remove-older-than";
+	/** reservations that ended more than the given number of days ago are moved out of memory into the cold storage */
+	String COLD_OLDER_THAN_ENTRY = "cold-older-than";
 	String EXPORT = "export";
 	
 	@POST
@@ -2,7 +2,6 @@ package org.rapla.plugin.archiver.server;
 
 import org.rapla.components.util.DateTools;
 import org.rapla.entities.User;
-import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Reservation;
 import org.rapla.facade.RaplaComponent;
 import org.rapla.facade.RaplaFacade;
@@ -15,6 +14,7 @@ import org.rapla.scheduler.CommandScheduler;
 import org.rapla.scheduler.Promise;
 import org.rapla.scheduler.ResolvedPromise;
 import org.rapla.server.RemoteSession;
+import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.ImportExportManager;
 import org.rapla.storage.RaplaSecurityException;
 import org.rapla.storage.StorageOperator;
@@ -128,6 +128,13 @@ public class ArchiverServiceImpl  implements ArchiverService
     static public void delete(Integer removeOlderInDays, RaplaFacade raplaFacade, Logger logger) throws RaplaException
     {
         Date endDate = new Date(raplaFacade.today().getTime() - removeOlderInDays * DateTools.MILLISECONDS_PER_DAY);
+        final StorageOperator operator = raplaFacade.getOperator();
+        if (operator instanceof CachableStorageOperator)
+        {
+            // removes all old events with one update instead of dispatching them in small blocks
+            ((CachableStorageOperator) operator).purgeReservations(endDate);
+            return;
+        }
         User[] owners = raplaFacade.getUsers();
         Promise<Collection<Reservation>> eventsPromise = raplaFacade.getReservationsAsync(null, null,owners,null, endDate, null);
         eventsPromise.thenAccept((events) ->
@@ -135,7 +142,7 @@ public class ArchiverServiceImpl  implements ArchiverService
             List<Reservation> toRemove = new ArrayList<>();
             for (Reservation event : events)
             {
-                if (!RaplaComponent.isTemplate(event) && isOlderThan(event, endDate))
+                if (!RaplaComponent.isTemplate(event) && RaplaComponent.isEndedBefore(event, endDate))
                 {
                     toRemove.add(event);
                 }
@@ -156,28 +163,4 @@ public class ArchiverServiceImpl  implements ArchiverService
         });
     }
 
-    static private boolean isOlderThan( Reservation event, Date maxAllowedDate )
-	{
-        Appointment[] appointments = event.getAppointments();
-        for ( int i=0;i<appointments.length;i++)
-        {
-            Appointment appointment = appointments[i];
-            Date start = appointment.getStart();
-            Date end = appointment.getMaxEnd();
-            if ( start == null || end == null )
-            {
-                return false;
-            }
-            if ( end.after( maxAllowedDate))
-            {
-                return false;
-            }
-            if ( start.after( maxAllowedDate))
-            {
-                return false;
-            }
-        }
-        return true;
-	}
-
 }
\ No newline at end of file
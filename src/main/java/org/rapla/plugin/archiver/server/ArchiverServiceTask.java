@@ -11,9 +11,11 @@ import org.rapla.logger.Logger;
 import org.rapla.plugin.archiver.ArchiverService;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.server.extensionpoints.ServerExtension;
+import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.ImportExportManager;
 
 import javax.inject.Inject;
+import java.util.Date;
 
 @Extension(provides = ServerExtension.class,id="org.rapla.plugin.archiver.server")
 public class ArchiverServiceTask  implements ServerExtension
@@ -47,11 +49,12 @@ public class ArchiverServiceTask  implements ServerExtension
             throw new RaplaInitializationException(e);
         }
         final int days = config.getChild( ArchiverService.REMOVE_OLDER_THAN_ENTRY).getValueAsInteger(-20);
+        final int coldDays = config.getChild( ArchiverService.COLD_OLDER_THAN_ENTRY).getValueAsInteger(-20);
         final boolean export = config.getChild( ArchiverService.EXPORT).getValueAsBoolean(false);
-        if ( days != -20 || export)
+        if ( days != -20 || coldDays != -20 || export)
         {
             // Call it each hour
-            schedule = timer.schedule(() -> doArchive(export, days), 0, DateTools.MILLISECONDS_PER_HOUR);
+            schedule = timer.schedule(() -> doArchive(export, days, coldDays), 0, DateTools.MILLISECONDS_PER_HOUR);
         }
     }
     
@@ -63,7 +66,7 @@ public class ArchiverServiceTask  implements ServerExtension
         }
     }
 
-    private void doArchive(boolean export, int days)
+    private void doArchive(boolean export, int days, int coldDays)
     {
         try
         {
@@ -75,6 +78,11 @@ public class ArchiverServiceTask  implements ServerExtension
             {
                 ArchiverServiceImpl.delete(days,facade,logger);
             }
+            if ( coldDays != -20 && facade.getOperator() instanceof CachableStorageOperator)
+            {
+                final Date horizon = DateTools.addDays(facade.today(), -coldDays);
+                ((CachableStorageOperator) facade.getOperator()).moveToColdStorage(horizon);
+            }
         }
         catch (Exception e) {
             logger.error("Could not execute archiver task ", e);
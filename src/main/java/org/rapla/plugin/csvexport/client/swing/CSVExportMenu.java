@@ -31,6 +31,7 @@ import org.rapla.framework.RaplaLocale;
 import org.rapla.inject.Extension;
 import org.rapla.logger.Logger;
 import org.rapla.plugin.csvexport.CSVExportPlugin;
+import org.rapla.plugin.tableview.RaplaTableCSVWriter;
 import org.rapla.plugin.tableview.RaplaTableColumn;
 import org.rapla.plugin.tableview.RaplaTableModel;
 import org.rapla.plugin.tableview.client.swing.AppointmentTableViewFactory;
@@ -48,6 +49,8 @@ import java.awt.Frame;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.util.*;
 
 @Extension(provides = ExportMenuExtension.class, id = CSVExportPlugin.PLUGIN_ID)
@@ -88,9 +91,6 @@ public class CSVExportMenu extends RaplaGUIComponent implements ExportMenuExtens
         return exportEntry;
     }
 
-    private static final String LINE_BREAK = "\n";
-    private static final String CELL_BREAK = ";";
-
     @SuppressWarnings({"unchecked", "rawtypes"})
     public void export(final CalendarSelectionModel model) throws RaplaException {
         // generates a text file from all filtered events;
@@ -118,10 +118,9 @@ public class CSVExportMenu extends RaplaGUIComponent implements ExportMenuExtens
         }
         promise.thenCompose((objects) ->
         {
-            String buf = getCSV(model, tableViewName, objects, fallbackComparator);
-            byte[] bytes = buf.getBytes();
+            IOInterface.ContentWriter csv = getCSV(model, tableViewName, objects, fallbackComparator);
             final String filename = model.getFilename() + ".csv";
-            if (saveFile(bytes, filename, "csv")) {
+            if (saveFile(csv, filename, "csv")) {
                 return exportFinished(getMainComponent());
             } else {
                 return ResolvedPromise.VOID_PROMISE;
@@ -132,7 +131,7 @@ public class CSVExportMenu extends RaplaGUIComponent implements ExportMenuExtens
     }
 
     @NotNull
-    private <T,C> String  getCSV(CalendarSelectionModel model, String tableViewName, List<T> objects, Comparator<T> fallBackComparator) throws RaplaException {
+    private <T,C> IOInterface.ContentWriter getCSV(CalendarSelectionModel model, String tableViewName, List<T> objects, Comparator<T> fallBackComparator) throws RaplaException {
         final User user = getUser();
         List< RaplaTableColumn<T>> columnPlugins = tableConfigLoader.loadColumns(tableViewName, user);
         if (tableViewName.equals(TableConfig.APPOINTMENTS_PER_DAY_VIEW)) {
@@ -143,7 +142,10 @@ public class CSVExportMenu extends RaplaGUIComponent implements ExportMenuExtens
         Map<RaplaTableColumn<T>, Integer> sortDirections = RaplaTableModel.getSortDirections(model,columnPlugins, tableViewName);
         String contextAnnotationName = DynamicTypeAnnotations.KEY_NAME_FORMAT;
         final List<T> rows = RaplaTableModel.sortRows(objects, sortDirections, fallBackComparator, contextAnnotationName);
-        return RaplaTableModel.getCSV(columnPlugins, rows, contextAnnotationName, false);
+        final RaplaTableCSVWriter<T> csvWriter = new RaplaTableCSVWriter<>(columnPlugins, contextAnnotationName, false);
+        csvWriter.setExecutor(RaplaTableCSVWriter.getDefaultExecutor());
+        // the rows are written to the file while they are formatted, in the default encoding like before
+        return (out) -> csvWriter.write(rows, new OutputStreamWriter(out, Charset.defaultCharset()));
     }
 
     protected Promise<Void> exportFinished(Component topLevel) {
@@ -172,7 +174,7 @@ public class CSVExportMenu extends RaplaGUIComponent implements ExportMenuExtens
 
     }
 
-    public boolean saveFile(byte[] content, String filename, String extension) throws RaplaException {
+    public boolean saveFile(IOInterface.ContentWriter content, String filename, String extension) throws RaplaException {
         final Frame frame = (Frame) SwingUtilities.getRoot(getMainComponent());
         try {
             String file = io.saveFile(frame, null, new String[]{extension}, filename, content);
@@ -28,6 +28,7 @@ import org.rapla.components.calendar.DateRenderer;
 import org.rapla.components.calendarview.Block;
 import org.rapla.components.calendarview.BlockContainer;
 import org.rapla.components.calendarview.Builder;
+import org.rapla.components.calendarview.Builder.PreperationResult;
 import org.rapla.components.calendarview.swing.AbstractSwingCalendar;
 import org.rapla.components.calendarview.swing.SelectionHandler.SelectionStrategy;
 import org.rapla.components.calendarview.swing.SwingWeekView;
@@ -106,8 +107,8 @@ public class SwingDayResourceCalendar extends SwingDayCalendar
             }
             
             @Override
-            public void rebuild(Builder b) {
-                super.rebuild(b);
+            public void rebuild(Builder b, PreperationResult prep) {
+                super.rebuild(b, prep);
                 String dateText = getRaplaLocale().formatDateShort(getStartDate());
                 weekTitle.setText( dateText);
             }
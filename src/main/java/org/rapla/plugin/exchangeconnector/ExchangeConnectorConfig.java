@@ -27,6 +27,10 @@ public interface ExchangeConnectorConfig
 //	public static final TypedComponentRole<Integer> SYNCING_PERIOD_FUTURE = new TypedComponentRole<Integer>("exch-sync-future");
 //	public static final Integer DEFAULT_SYNCING_PERIOD_FUTURE = 300;
 
+	/** number of threads that synchronize the mailboxes in parallel */
+	TypedComponentRole<Integer> SYNC_WORKERS = new TypedComponentRole<>("exchange.workers");
+	Integer DEFAULT_SYNC_WORKERS = 4;
+
 	TypedComponentRole<String> EXCHANGE_APPOINTMENT_CATEGORY  = new TypedComponentRole<>("exchange.default.category");
 	String DEFAULT_EXCHANGE_APPOINTMENT_CATEGORY = "RAPLA";
 	
@@ -103,6 +107,7 @@ public interface ExchangeConnectorConfig
 		    {
 	            load(serverConfig,EXCHANGE_WS_FQDN,DEFAULT_EXCHANGE_WS_FQDN);
 		        loadInt(serverConfig,SYNCING_PERIOD_PAST,DEFAULT_SYNCING_PERIOD_PAST);
+		        loadInt(serverConfig,SYNC_WORKERS,DEFAULT_SYNC_WORKERS);
 		        //loadInt(config,SYNCING_PERIOD_FUTURE,DEFAULT_SYNCING_PERIOD_FUTURE);
 		        load(serverConfig,EXCHANGE_APPOINTMENT_CATEGORY,DEFAULT_EXCHANGE_APPOINTMENT_CATEGORY);
 		        load(serverConfig,EXCHANGE_TIMEZONE,DEFAULT_EXCHANGE_TIMEZONE);
@@ -168,6 +173,11 @@ public interface ExchangeConnectorConfig
                 return get(SYNCING_PERIOD_PAST).intValue();
             }
             
+            public int getSyncWorkers()
+            {
+                return get(SYNC_WORKERS).intValue();
+            }
+
             public boolean isEnabled()
             {
                 return get(ENABLED_BY_ADMIN);
@@ -177,4 +187,5 @@ public interface ExchangeConnectorConfig
     String getExchangeTimezone();
     String getAppointmentCategory();
     int getSyncPeriodPast();
+    int getSyncWorkers();
 }
@@ -40,6 +40,8 @@ public class ExchangeConnectorAdminOptions implements PluginOptionPanel{
     private JTextField exchangeWebServiceFQDNTextField;//= new JTextField();
     private JTextField categoryForRaplaAppointmentsOnExchangeTextField;//= new JTextField();
     private RaplaNumber syncIntervalPast;// = new RaplaNumber();
+    // not editable in the panel, but kept when the configuration is stored
+    private int syncWorkers = ExchangeConnectorConfig.DEFAULT_SYNC_WORKERS;
     //private RaplaNumber syncIntervalFuture;// = new RaplaNumber();
     //private RaplaNumber pullFrequency;// = new RaplaNumber();
     //private JButton syncallButton;// = new JButton("(Re-)Sync all");
@@ -198,6 +200,7 @@ public class ExchangeConnectorAdminOptions implements PluginOptionPanel{
         set(newConfig, ExchangeConnectorConfig.EXCHANGE_WS_FQDN, exchangeWebServiceFQDNTextField.getText());
         set(newConfig, ExchangeConnectorConfig.EXCHANGE_APPOINTMENT_CATEGORY, categoryForRaplaAppointmentsOnExchangeTextField.getText());
         set(newConfig, ExchangeConnectorConfig.SYNCING_PERIOD_PAST, syncIntervalPast.getNumber().intValue());
+        set(newConfig, ExchangeConnectorConfig.SYNC_WORKERS, syncWorkers);
         //set(newConfig,SYNCING_PERIOD_FUTURE, syncIntervalFuture.getNumber().intValue());
         set(newConfig, ExchangeConnectorConfig.EXCHANGE_TIMEZONE, (String)cbEventTypes.getSelectedItem());
         //ExchangeConnectorPlugin.PULL_FREQUENCY, pullFrequency.getNumber().intValue();
@@ -275,6 +278,7 @@ public class ExchangeConnectorAdminOptions implements PluginOptionPanel{
         exchangeWebServiceFQDNTextField.setText(reader.getExchangeServerURL());
         categoryForRaplaAppointmentsOnExchangeTextField.setText(reader.getAppointmentCategory());
         syncIntervalPast.setNumber(reader.getSyncPeriodPast());
+        syncWorkers = reader.getSyncWorkers();
 //        syncIntervalFuture.setNumber(reader.get(SYNCING_PERIOD_FUTURE));
         cbEventTypes.setModel( new DefaultComboBoxModel( timezones.toArray(new String[]{} )));
         cbEventTypes.setSelectedItem(reader.getExchangeTimezone());
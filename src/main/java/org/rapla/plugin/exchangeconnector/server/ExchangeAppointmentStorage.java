@@ -54,6 +54,8 @@ public class ExchangeAppointmentStorage
 {
     private static final String EXCHANGE_ID = "exchange";
     private final Map<String, Set<SynchronizationTask>> tasks = new ConcurrentHashMap<>();
+    /** the same tasks indexed by user id. Both maps are only changed while holding the lock of the storage */
+    private final Map<String, Set<SynchronizationTask>> tasksByUser = new ConcurrentHashMap<>();
     private Map<String, ExternalSyncEntity> importExportEntities = new ConcurrentHashMap<>();
     //CachableStorageOperator operator;
     TypedComponentRole<String> LAST_SYNC_ERROR_CHANGE_HASH = new TypedComponentRole<>("org.rapla.plugin.exchangconnector.last_sync_error_change_hash");
@@ -78,7 +80,7 @@ public class ExchangeAppointmentStorage
         this.showExchangeForUser = showExchangeForUser;
     }
 
-    public Set<SynchronizationTask> getAllTasks() throws RaplaException
+    synchronized public Set<SynchronizationTask> getAllTasks() throws RaplaException
     {
         Set<SynchronizationTask> result = new HashSet<>();
         for (Collection<SynchronizationTask> list : tasks.values())
@@ -92,22 +94,17 @@ public class ExchangeAppointmentStorage
         return result;
     }
 
-    public Collection<SynchronizationTask> getTasksForUser(ReferenceInfo<User> userId, String mailbox) throws RaplaException
+    synchronized public Collection<SynchronizationTask> getTasksForUser(ReferenceInfo<User> userId, String mailbox) throws RaplaException
     {
-        // TODO add another index (userId to Collection<SynchronizationTask>) so we can do this faster
         List<SynchronizationTask> result = new ArrayList<>();
-        for (Collection<SynchronizationTask> list : tasks.values())
+        Set<SynchronizationTask> set = tasksByUser.get(userId.getId());
+        if (set != null)
         {
-            if (list != null)
+            for (SynchronizationTask task : set)
             {
-                for (SynchronizationTask task : list)
+                if (mailbox == null || mailbox.equals(task.getMailboxName()))
                 {
-                    if (task.matchesUserId( userId ))
-                    {
-                        if (mailbox == null || mailbox.equals(task.getMailboxName())) {
-                            result.add(task);
-                        }
-                    }
+                    result.add(task);
                 }
             }
         }
@@ -138,7 +135,7 @@ public class ExchangeAppointmentStorage
         return null;
     }
 
-    public Collection<SynchronizationTask> getTasks(ReferenceInfo appointment) throws RaplaException
+    synchronized public Collection<SynchronizationTask> getTasks(ReferenceInfo appointment) throws RaplaException
     {
         String appointmentId = appointment.getId();
         Set<SynchronizationTask> set = tasks.get(appointmentId);
@@ -176,32 +173,17 @@ public class ExchangeAppointmentStorage
     //	
     public void storeAndRemove(Collection<SynchronizationTask> toStore, Collection<SynchronizationTask> toRemove) throws RaplaException
     {
-        for (SynchronizationTask task : toStore)
+        synchronized (this)
         {
-            String appointmentId = task.getAppointmentId();
-            Set<SynchronizationTask> set = tasks.get(appointmentId);
-            if (set != null)
+            for (SynchronizationTask task : toStore)
             {
-                set.remove(task);
+                // replaces an equal task with the new state
+                removeTask(task);
+                addTask(task);
             }
-            else
+            for (SynchronizationTask task : toRemove)
             {
-                set = new HashSet<>();
-                tasks.put(appointmentId, set);
-            }
-            set.add(task);
-        }
-        for (SynchronizationTask task : toRemove)
-        {
-            String appointmentId = task.getAppointmentId();
-            Set<SynchronizationTask> set = tasks.get(appointmentId);
-            if (set != null)
-            {
-                set.remove(task);
-                if (set.isEmpty())
-                {
-                    tasks.remove(appointmentId);
-                }
+                removeTask(task);
             }
         }
 
@@ -209,16 +191,6 @@ public class ExchangeAppointmentStorage
         Collection<ReferenceInfo<Entity>> removeObjects = new HashSet<>();
         for (SynchronizationTask task : toRemove)
         {
-            // remove task from memory 
-            String appointmentId = task.getAppointmentId();
-            if (appointmentId != null)
-            {
-                //remove tasks from appointmenttask
-                final Set<SynchronizationTask> set = tasks.get(appointmentId);
-                if (set != null)
-                    set.remove(task);
-            }
-
             // remove task from database
             String persistentId = task.getPersistantId();
             if (persistentId != null)
@@ -320,6 +292,40 @@ public class ExchangeAppointmentStorage
         operator.storeAndRemove(storeObjects, removeObjects, user);
     }
 
+    private void addTask(SynchronizationTask task)
+    {
+        tasks.computeIfAbsent(task.getAppointmentId(), (id) -> new HashSet<>()).add(task);
+        final String userId = task.getUserId();
+        if (userId != null)
+        {
+            tasksByUser.computeIfAbsent(userId, (id) -> new HashSet<>()).add(task);
+        }
+    }
+
+    private void removeTask(SynchronizationTask task)
+    {
+        final String appointmentId = task.getAppointmentId();
+        final Set<SynchronizationTask> set = appointmentId != null ? tasks.get(appointmentId) : null;
+        if (set != null)
+        {
+            set.remove(task);
+            if (set.isEmpty())
+            {
+                tasks.remove(appointmentId);
+            }
+        }
+        final String userId = task.getUserId();
+        final Set<SynchronizationTask> userSet = userId != null ? tasksByUser.get(userId) : null;
+        if (userSet != null)
+        {
+            userSet.remove(task);
+            if (userSet.isEmpty())
+            {
+                tasksByUser.remove(userId);
+            }
+        }
+    }
+
     private void addHash(Map<ReferenceInfo<User>, Set<String>> hashMap, SynchronizationTask task, String useInHashCalc)
     {
         ReferenceInfo<User> userId = task.getUserRef();
@@ -340,7 +346,7 @@ public class ExchangeAppointmentStorage
     public void refresh() throws RaplaException
     {
         importExportEntities = operator.getImportExportEntities(EXCHANGE_ID, ImportExportDirections.EXPORT);
-        tasks.clear();
+        List<SynchronizationTask> loadedTasks = new ArrayList<>();
         List<User> removeForUser = new ArrayList<>();
         List<ReferenceInfo<ExternalSyncEntity>> toRemove = new ArrayList<>();
         for (ExternalSyncEntity persistent : importExportEntities.values())
@@ -400,13 +406,16 @@ public class ExchangeAppointmentStorage
                 toRemove.add( reference );
                 removeForUser.add(user);
             }
-            Set<SynchronizationTask> taskList = tasks.get(appointmentId);
-            if (taskList == null)
+            loadedTasks.add(synchronizationTask);
+        }
+        synchronized (this)
+        {
+            tasks.clear();
+            tasksByUser.clear();
+            for (SynchronizationTask task : loadedTasks)
             {
-                taskList = new HashSet<>();
-                tasks.put(appointmentId, taskList);
+                addTask(task);
             }
-            taskList.add(synchronizationTask);
         }
         if ( !toRemove.isEmpty() ) {
             for ( User user: removeForUser) {
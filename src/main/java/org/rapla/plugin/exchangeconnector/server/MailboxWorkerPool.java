@@ -0,0 +1,190 @@
+package org.rapla.plugin.exchangeconnector.server;
+
+import org.rapla.logger.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Runs the synchronisation jobs of different mailboxes in parallel on a bounded number of threads.
+ * <p>
+ * Each mailbox has its own queue, so the jobs of one mailbox are executed one after another in the order they are submitted,
+ * while a slow mailbox only blocks the thread that is currently working on it. A worker hands its thread back after each job,
+ * so mailboxes with many jobs don't starve the others.
+ * </p>
+ */
+public class MailboxWorkerPool
+{
+    public interface MailboxJob
+    {
+        void run() throws Exception;
+    }
+
+    private final Logger logger;
+    private final ExecutorService executor;
+    private final int threads;
+    /** the queues of the mailboxes that have pending or running jobs, guarded by itself */
+    private final Map<String, Queue<Job>> queues = new HashMap<>();
+
+    public MailboxWorkerPool(Logger logger, int threads)
+    {
+        this.logger = logger;
+        this.threads = Math.max(1, threads);
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(this.threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "rapla-exchange-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /** queues the job for the mailbox. The returned future completes when the job is done, exceptionally if the job failed */
+    public CompletableFuture<Void> submit(String mailbox, MailboxJob job)
+    {
+        final Job entry = new Job(job);
+        final boolean start;
+        synchronized (queues)
+        {
+            Queue<Job> queue = queues.get(mailbox);
+            start = queue == null;
+            if (start)
+            {
+                queue = new ArrayDeque<>();
+                queues.put(mailbox, queue);
+            }
+            queue.add(entry);
+        }
+        if (start)
+        {
+            schedule(mailbox);
+        }
+        return entry.future;
+    }
+
+    /** number of mailboxes with pending or running jobs */
+    public int getActiveMailboxes()
+    {
+        synchronized (queues)
+        {
+            return queues.size();
+        }
+    }
+
+    /** stops the workers. Jobs that have not started yet are cancelled */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        final List<Job> pending = new ArrayList<>();
+        synchronized (queues)
+        {
+            for (Queue<Job> queue : queues.values())
+            {
+                pending.addAll(queue);
+            }
+            queues.clear();
+        }
+        for (Job job : pending)
+        {
+            job.future.cancel(false);
+        }
+    }
+
+    private void schedule(String mailbox)
+    {
+        try
+        {
+            executor.execute(() -> runNext(mailbox));
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // the pool is shut down, the waiting jobs are not executed anymore
+            final Queue<Job> queue;
+            synchronized (queues)
+            {
+                queue = queues.remove(mailbox);
+            }
+            if (queue != null)
+            {
+                for (Job job : queue)
+                {
+                    job.future.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private void runNext(String mailbox)
+    {
+        final Job job;
+        synchronized (queues)
+        {
+            final Queue<Job> queue = queues.get(mailbox);
+            if (queue == null)
+            {
+                return;
+            }
+            job = queue.peek();
+        }
+        Throwable failure = null;
+        try
+        {
+            job.job.run();
+        }
+        catch (Throwable ex)
+        {
+            logger.debug("Synchronisation job for mailbox " + mailbox + " failed: " + ex.getMessage());
+            failure = ex;
+        }
+        final boolean more;
+        synchronized (queues)
+        {
+            final Queue<Job> queue = queues.get(mailbox);
+            if (queue != null)
+            {
+                queue.poll();
+            }
+            more = queue != null && !queue.isEmpty();
+            if (queue != null && !more)
+            {
+                queues.remove(mailbox);
+            }
+        }
+        if (failure != null)
+        {
+            job.future.completeExceptionally(failure);
+        }
+        else
+        {
+            job.future.complete(null);
+        }
+        // the next job of the mailbox goes to the end of the executor queue, so other mailboxes get their turn
+        if (more)
+        {
+            schedule(mailbox);
+        }
+    }
+
+    private static class Job
+    {
+        final MailboxJob job;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Job(MailboxJob job)
+        {
+            this.job = job;
+        }
+    }
+}
@@ -49,7 +49,10 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -64,6 +67,9 @@ public class SynchronisationManager implements ServerExtension
 
     private static final long SCHEDULE_PERIOD_REFRESH_MAILBOXES = DateTools.MILLISECONDS_PER_MINUTE * 20;
 
+    /** number of finished tasks that are collected before they are stored */
+    private static final int COMMIT_BATCH_SIZE = 100;
+
     private static final long VALID_LOCK_DURATION = DateTools.MILLISECONDS_PER_MINUTE /30;
     private static final String EXCHANGE_LOCK_ID = "EXCHANGE";
     private static final TypedComponentRole<Boolean> REFRESH_MAILBOXES = new TypedComponentRole<>("org.rapla.plugin.exchangconnector.refreshMailboxes");
@@ -94,6 +100,9 @@ public class SynchronisationManager implements ServerExtension
 
     Map<ReferenceInfo<User>, EWSConnector.UserConnect> connectMap = new ConcurrentHashMap<>();
     Map<ReferenceInfo<Allocatable>, SynchronizationBox> synchronizationBoxMap = new ConcurrentHashMap<>();
+    /** mailbox refreshes of the same user are not executed in parallel */
+    private final Map<ReferenceInfo<User>, Object> refreshLocks = new ConcurrentHashMap<>();
+    private final MailboxWorkerPool workerPool;
     @Inject
     public SynchronisationManager(RaplaFacade facade, RaplaResources i18nRapla, ExchangeConnectorResources i18nExchange, Logger logger,
                                   TimeZoneConverter converter, AppointmentFormater appointmentFormater, RaplaKeyStorage keyStorage, ExchangeAppointmentStorage appointmentStorage,
@@ -118,6 +127,7 @@ public class SynchronisationManager implements ServerExtension
         exchangeAppointmentCategory = config.getAppointmentCategory();
         syncPeriodPast = config.getSyncPeriodPast();
         enabled = config.isEnabled();
+        workerPool = new MailboxWorkerPool(logger.getChildLogger("worker"), config.getSyncWorkers());
 
         this.appointmentStorage = appointmentStorage;
         this.showExchangeForUser = showExchangeForUser;
@@ -138,13 +148,11 @@ public class SynchronisationManager implements ServerExtension
             logger.info("Synchronizing mailboxes");
             Collection<User> users = cachableStorageOperator.getUsers();
             Map<String, Allocatable> allocatablesPerMailbox = getAllocatableForMailbox();
+            List<CompletableFuture<Void>> jobs = new ArrayList<>();
             for (User user:users) {
-                try {
-                    refreshMailbox(user, allocatablesPerMailbox, false);
-                } catch ( Throwable e) {
-                    logger.error("Aborting refresh");
-                }
+                jobs.add(workerPool.submit("user:" + user.getId(), () -> refreshMailbox(user, allocatablesPerMailbox, false)));
             }
+            waitFor(jobs, "Aborting refresh");
         };
         scheduleMailboxes = scheduler.schedule(synchronizeMailboxesAction, 0, SCHEDULE_PERIOD_REFRESH_MAILBOXES);
         final Action synchronizeAction = () ->
@@ -181,6 +189,7 @@ public class SynchronisationManager implements ServerExtension
         if ( schedule != null) {
             schedule.dispose();
         }
+        workerPool.shutdown();
     }
 
     boolean firstExecution = true;
@@ -714,7 +723,13 @@ public class SynchronisationManager implements ServerExtension
         return allocatablesPerMailbox;
     }
 
-    synchronized private void refreshMailbox(User user, Map<String, Allocatable> allocatablesPerMailbox, boolean forceReplace) throws RaplaException {
+    private void refreshMailbox(User user, Map<String, Allocatable> allocatablesPerMailbox, boolean forceReplace) throws RaplaException {
+        synchronized (refreshLocks.computeIfAbsent(user.getReference(), (ref) -> new Object())) {
+            refreshMailboxForUser(user, allocatablesPerMailbox, forceReplace);
+        }
+    }
+
+    private void refreshMailboxForUser(User user, Map<String, Allocatable> allocatablesPerMailbox, boolean forceReplace) throws RaplaException {
         if (!showExchangeForUser.isExchangeEnabledFor(user)) {
             return;
         }
@@ -933,9 +948,9 @@ public class SynchronisationManager implements ServerExtension
     private SynchronizeResult processTasks(Collection<SynchronizationTask> tasks, boolean skipNotification) throws RaplaException
     {
         Map<String, List<SynchronizationTask>> groups = tasks.stream().collect(Collectors.groupingBy(SynchronizationTask::getUserId));
-        final Collection<SynchronizationTask> toStore = new HashSet<>();
-        final Collection<SynchronizationTask> toRemove = new HashSet<>();
-        final SynchronizeResult result = new SynchronizeResult();
+        final TaskCommitter committer = new TaskCommitter();
+        final List<SynchronizeResult> mailboxResults = new ArrayList<>();
+        final List<CompletableFuture<Void>> jobs = new ArrayList<>();
         for ( Map.Entry<String,List<SynchronizationTask>> entry:groups.entrySet()) {
             final ReferenceInfo<User> userId = new ReferenceInfo<>(entry.getKey(), User.class);
             List<SynchronizationTask> tasksForUser = entry.getValue();
@@ -948,33 +963,25 @@ public class SynchronisationManager implements ServerExtension
                 user = facade.resolve(userId);
             } catch (EntityNotFoundException e) {
                 logger.info("Removing synchronize tasks for user with id  " + userId + " due to " + e.getMessage());
-                toRemove.addAll(tasksForUser);
+                committer.add(Collections.emptyList(), tasksForUser);
                 continue;
             }
             if (!showExchangeForUser.isExchangeEnabledFor(user)) {
                 logger.info("Removing synchronize task for  user " + user.getUsername() + ". He does not belong to group " + ExchangeConnectorPlugin.EXCHANGE_SYNCHRONIZATION_GROUP);
-                toRemove.addAll(tasksForUser);
+                committer.add(Collections.emptyList(), tasksForUser);
                 continue;
             }
 
             final LoginInfo secrets = keyStorage.getSecrets(user, ExchangeConnectorServerPlugin.EXCHANGE_USER_STORAGE);
             if ( secrets == null) {
                 logger.info("No exchange secrets found for user " + user.getUsername() + ". Ignoring updates");
-                toRemove.addAll(tasksForUser);
+                committer.add(Collections.emptyList(), tasksForUser);
                 continue;
             }
             EWSConnector.UserConnect userConnect = connectMap.get(userId);
             if ( userConnect == null ){
                 continue;
             }
-            try {
-                userConnect.getEwsConnector().test();
-            } catch (Exception ex) {
-                String message = "Internal error while processing SynchronizationTask for " +user.getUsername() + ". Ignoring task. ";
-                tasksForUser.stream().forEach(t->t.increaseRetries( message));
-                logger.error(message, ex);
-                continue;
-            }
             final boolean notificationMail;
             if (skipNotification) {
                 notificationMail = false;
@@ -983,95 +990,131 @@ public class SynchronisationManager implements ServerExtension
                 notificationMail = preferences.getEntryAsBoolean(ExchangeConnectorConfig.EXCHANGE_SEND_INVITATION_AND_CANCELATION,
                         ExchangeConnectorConfig.DEFAULT_EXCHANGE_SEND_INVITATION_AND_CANCELATION);
             }
-            for (SynchronizationTask task : tasksForUser) {
-                final SyncStatus beforeStatus = task.getStatus();
-                final ReferenceInfo<Appointment> appointmentId = new ReferenceInfo<>(task.getAppointmentId(), Appointment.class);
-                final Appointment appointment = beforeStatus != SyncStatus.toDelete ? facade.tryResolve(appointmentId) : null;
+            // each mailbox gets its own worker queue, the connection of the user is only tested once
+            final ConnectionCheck connectionCheck = new ConnectionCheck(user, userConnect);
+            final Map<String, List<SynchronizationTask>> tasksPerMailbox = tasksForUser.stream().collect(Collectors.groupingBy(task -> String.valueOf(task.getMailboxName()), LinkedHashMap::new, Collectors.toList()));
+            for (Map.Entry<String, List<SynchronizationTask>> mailboxEntry : tasksPerMailbox.entrySet()) {
+                final SynchronizeResult mailboxResult = new SynchronizeResult();
+                mailboxResults.add(mailboxResult);
+                final List<SynchronizationTask> mailboxTasks = mailboxEntry.getValue();
+                jobs.add(workerPool.submit(mailboxEntry.getKey(), () -> processMailboxTasks(user, userConnect, connectionCheck, notificationMail, mailboxTasks, mailboxResult, committer)));
+            }
+        }
+        waitFor(jobs, "Error synchronizing mailbox");
+        committer.flush();
+        final SynchronizeResult result = new SynchronizeResult();
+        for (SynchronizeResult mailboxResult : mailboxResults) {
+            result.changed += mailboxResult.changed;
+            result.removed += mailboxResult.removed;
+            result.open += mailboxResult.open;
+            result.errorMessages.addAll(mailboxResult.errorMessages);
+        }
+        return result;
+    }
 
-                if ((beforeStatus == SyncStatus.deleted) || (appointment != null && !isInSyncInterval(appointment))) {
-                    toRemove.add(task);
-                    continue;
-                }
-                if (beforeStatus == SyncStatus.synched) {
-                    continue;
-                }
-                Map<ReferenceInfo<Allocatable>,String> mailboxForResources = new HashMap<>();
-                if ( appointment == null) {
-                    toRemove.add(task);
-                    if ( beforeStatus != SyncStatus.toDelete) {
-                        continue;
-                    }
-                    mailboxForResources.put(new ReferenceInfo<Allocatable>(task.getResourceId(), Allocatable.class), task.getMailboxName());
-                } else {
-                    ((ReservationImpl) appointment.getReservation()).getAllocatablesReferences(appointment.getReference()).forEach(
-                            allocRef ->
-                            {
-                                Allocatable allocatable = cachableStorageOperator.tryResolve(allocRef);
-                                if (allocatable == null) {
-                                    return;
-                                }
-                                String mailbox = getMailbox(allocatable);
-                                if (mailbox == null) {
-                                    return;
-                                }
-                                mailboxForResources.put(allocRef, mailbox);
-                            }
-                    );
-                }
-                if ( mailboxForResources.isEmpty()) {
-                    toRemove.add(task);
+    private void processMailboxTasks(User user, EWSConnector.UserConnect userConnect, ConnectionCheck connectionCheck, boolean notificationMail,
+            List<SynchronizationTask> tasksForMailbox, SynchronizeResult mailboxResult, TaskCommitter committer) throws RaplaException
+    {
+        if (!connectionCheck.isConnected()) {
+            String message = "Internal error while processing SynchronizationTask for " +user.getUsername() + ". Ignoring task. ";
+            tasksForMailbox.stream().forEach(t->t.increaseRetries( message));
+            return;
+        }
+        final Collection<SynchronizationTask> toStore = new HashSet<>();
+        final Collection<SynchronizationTask> toRemove = new HashSet<>();
+        for (SynchronizationTask task : tasksForMailbox) {
+            final SyncStatus beforeStatus = task.getStatus();
+            final ReferenceInfo<Appointment> appointmentId = new ReferenceInfo<>(task.getAppointmentId(), Appointment.class);
+            final Appointment appointment = beforeStatus != SyncStatus.toDelete ? facade.tryResolve(appointmentId) : null;
+
+            if ((beforeStatus == SyncStatus.deleted) || (appointment != null && !isInSyncInterval(appointment))) {
+                toRemove.add(task);
+                continue;
+            }
+            if (beforeStatus == SyncStatus.synched) {
+                continue;
+            }
+            Map<ReferenceInfo<Allocatable>,String> mailboxForResources = new HashMap<>();
+            if ( appointment == null) {
+                toRemove.add(task);
+                if ( beforeStatus != SyncStatus.toDelete) {
                     continue;
                 }
-                Map<ReferenceInfo<Allocatable>, CalendarFolder> usedSharedMailboxes = new HashMap<>();
-                Map<String, CalendarFolder> sharedMailboxes = userConnect.getSharedMailboxes();
-                mailboxForResources.entrySet().stream()
-                        .filter(x -> x.getValue() != null && sharedMailboxes.containsKey(x.getValue())).forEach(x ->
+                mailboxForResources.put(new ReferenceInfo<Allocatable>(task.getResourceId(), Allocatable.class), task.getMailboxName());
+            } else {
+                ((ReservationImpl) appointment.getReservation()).getAllocatablesReferences(appointment.getReference()).forEach(
+                        allocRef ->
                         {
-                            ReferenceInfo<Allocatable> key = x.getKey();
-                            SynchronizationBox synchronizationBox = synchronizationBoxMap.get(key);
-                            if (synchronizationBox == null) {
+                            Allocatable allocatable = cachableStorageOperator.tryResolve(allocRef);
+                            if (allocatable == null) {
+                                return;
+                            }
+                            String mailbox = getMailbox(allocatable);
+                            if (mailbox == null) {
                                 return;
                             }
-                            CalendarFolder calendarFolder = synchronizationBox.getCalendarFolder();
-                            usedSharedMailboxes.put( key, calendarFolder);
-                });
+                            mailboxForResources.put(allocRef, mailbox);
+                        }
+                );
+            }
+            if ( mailboxForResources.isEmpty()) {
+                toRemove.add(task);
+                continue;
+            }
+            Map<ReferenceInfo<Allocatable>, CalendarFolder> usedSharedMailboxes = new HashMap<>();
+            Map<String, CalendarFolder> sharedMailboxes = userConnect.getSharedMailboxes();
+            mailboxForResources.entrySet().stream()
+                    .filter(x -> x.getValue() != null && sharedMailboxes.containsKey(x.getValue())).forEach(x ->
+                    {
+                        ReferenceInfo<Allocatable> key = x.getKey();
+                        SynchronizationBox synchronizationBox = synchronizationBoxMap.get(key);
+                        if (synchronizationBox == null) {
+                            return;
+                        }
+                        CalendarFolder calendarFolder = synchronizationBox.getCalendarFolder();
+                        usedSharedMailboxes.put( key, calendarFolder);
+            });
 
 
-                if (usedSharedMailboxes.isEmpty()) {
-                    continue;
-                }
-                final Logger logger = this.logger.getChildLogger("exchange");
-                final AppointmentSynchronizer worker = new AppointmentSynchronizer(logger, converter, exchangeTimezoneId, exchangeAppointmentCategory, user, userConnect.getEwsConnector(),
-                        notificationMail, task, appointment, i18n.getLocale(), usedSharedMailboxes);
+            if (usedSharedMailboxes.isEmpty()) {
+                continue;
+            }
+            final Logger logger = this.logger.getChildLogger("exchange");
+            final AppointmentSynchronizer worker = new AppointmentSynchronizer(logger, converter, exchangeTimezoneId, exchangeAppointmentCategory, user, userConnect.getEwsConnector(),
+                    notificationMail, task, appointment, i18n.getLocale(), usedSharedMailboxes);
 
+            try {
                 try {
-                    try {
-                        worker.execute();
-                    } catch (RaplaException ex) {
-                        String message = "Internal error while processing SynchronizationTask " + task + ". Ignoring task. ";
-                        task.increaseRetries(message);
-                        if ( message.contains("Read timed out ")) {
-                            logger.warn(message + ex.getMessage());
-                        } else {
-                            logger.error(message, ex);
-                        }
+                    worker.execute();
+                } catch (RaplaException ex) {
+                    String message = "Internal error while processing SynchronizationTask " + task + ". Ignoring task. ";
+                    task.increaseRetries(message);
+                    if ( message.contains("Read timed out ")) {
+                        logger.warn(message + ex.getMessage());
+                    } else {
+                        logger.error(message, ex);
                     }
+                }
+                // the mailbox workers of a user share its preferences
+                synchronized (connectionCheck) {
                     final Preferences userPreferences = facade.getPreferences(user);
                     if (userPreferences.getEntryAsBoolean(PASSWORD_MAIL_USER, false)) {
                         final Preferences userPreferencesEdit = facade.edit(userPreferences);
                         userPreferencesEdit.putEntry(PASSWORD_MAIL_USER, false);
                         facade.store(userPreferencesEdit);
                     }
-                } catch (Exception e) {
-                    String message = e.getMessage();
-                    Throwable cause = e.getCause();
-                    if (cause != null && cause.getCause() != null) {
-                        cause = cause.getCause();
-                    }
-                    if (cause instanceof HttpErrorException) {
-                        int httpErrorCode = ((HttpErrorException) cause).getHttpErrorCode();
-                        if (httpErrorCode == 401) {
-                            message = "Exchangezugriff verweigert. Ist das eingetragenen Exchange Passwort noch aktuell fuer den user '" + user.getUsername() + "' ?";
+                }
+            } catch (Exception e) {
+                String message = e.getMessage();
+                Throwable cause = e.getCause();
+                if (cause != null && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof HttpErrorException) {
+                    int httpErrorCode = ((HttpErrorException) cause).getHttpErrorCode();
+                    if (httpErrorCode == 401) {
+                        message = "Exchangezugriff verweigert. Ist das eingetragenen Exchange Passwort noch aktuell fuer den user '" + user.getUsername() + "' ?";
+                        synchronized (connectionCheck) {
                             final Preferences preferences = facade.getPreferences(user);
                             final Boolean mailSent = preferences.getEntryAsBoolean(PASSWORD_MAIL_USER, false);
                             if (!mailSent) {
@@ -1086,41 +1129,105 @@ public class SynchronisationManager implements ServerExtension
                             }
                         }
                     }
-                    if (cause instanceof IOException) {
-                        message = "Keine Verbindung zum Exchange " + cause.getMessage();
-                    }
-                    String toString = getAppointmentMessage(task);
-                    if (message != null) {
-                        message = message.replaceAll("The request failed. ", "");
-                        message = message.replaceAll("The request failed.", "");
-                    } else {
-                        message = "Synchronisierungsfehler mit exchange " + e;
-                    }
-                    task.increaseRetries(message);
-                    result.errorMessages.add(new SyncError(toString, message));
-                    logger.warn("Can't synchronize " + task + " " + toString + " " + message);
-                    result.open++;
-                    toStore.add(task);
                 }
-                SyncStatus after = task.getStatus();
-                if (after == SyncStatus.deleted && beforeStatus != SyncStatus.deleted) {
-                    toRemove.add(task);
-                    result.removed++;
+                if (cause instanceof IOException) {
+                    message = "Keine Verbindung zum Exchange " + cause.getMessage();
                 }
-                if (after == SyncStatus.synched && beforeStatus != SyncStatus.synched) {
-                    toStore.add(task);
-                    result.changed++;
+                String toString = getAppointmentMessage(task);
+                if (message != null) {
+                    message = message.replaceAll("The request failed. ", "");
+                    message = message.replaceAll("The request failed.", "");
+                } else {
+                    message = "Synchronisierungsfehler mit exchange " + e;
                 }
+                task.increaseRetries(message);
+                mailboxResult.errorMessages.add(new SyncError(toString, message));
+                logger.warn("Can't synchronize " + task + " " + toString + " " + message);
+                mailboxResult.open++;
+                toStore.add(task);
+            }
+            SyncStatus after = task.getStatus();
+            if (after == SyncStatus.deleted && beforeStatus != SyncStatus.deleted) {
+                toRemove.add(task);
+                mailboxResult.removed++;
+            }
+            if (after == SyncStatus.synched && beforeStatus != SyncStatus.synched) {
+                toStore.add(task);
+                mailboxResult.changed++;
+            }
+        }
+        committer.add(toStore, toRemove);
+    }
+
+    private void waitFor(List<CompletableFuture<Void>> jobs, String errorMessage) throws RaplaException
+    {
+        for (CompletableFuture<Void> job : jobs) {
+            try {
+                job.get();
+            } catch (ExecutionException ex) {
+                logger.error(errorMessage, ex.getCause());
+            } catch (CancellationException ex) {
+                logger.warn(errorMessage + ". Worker was stopped.");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RaplaException(ex);
             }
         }
-        if (!toStore.isEmpty() || !toRemove.isEmpty())
+    }
+
+    /** tests the exchange connection of a user once for all mailbox workers of a synchronisation run. Also used to lock the preference changes of the user */
+    private class ConnectionCheck
+    {
+        private final User user;
+        private final EWSConnector.UserConnect userConnect;
+        private Boolean connected;
+
+        ConnectionCheck(User user, EWSConnector.UserConnect userConnect)
         {
-            appointmentStorage.storeAndRemove(toStore, toRemove);
+            this.user = user;
+            this.userConnect = userConnect;
+        }
+
+        synchronized boolean isConnected()
+        {
+            if (connected == null) {
+                try {
+                    userConnect.getEwsConnector().test();
+                    connected = true;
+                } catch (Exception ex) {
+                    logger.error("Internal error while processing SynchronizationTask for " +user.getUsername() + ". Ignoring task. ", ex);
+                    connected = false;
+                }
+            }
+            return connected;
         }
-        return result;
     }
 
+    /** collects the results of the mailbox workers and stores them in batches, so the results of finished mailboxes don't wait for slow ones */
+    private class TaskCommitter
+    {
+        private final Collection<SynchronizationTask> toStore = new HashSet<>();
+        private final Collection<SynchronizationTask> toRemove = new HashSet<>();
+
+        synchronized void add(Collection<SynchronizationTask> store, Collection<SynchronizationTask> remove) throws RaplaException
+        {
+            toStore.addAll(store);
+            toRemove.addAll(remove);
+            if (toStore.size() + toRemove.size() >= COMMIT_BATCH_SIZE) {
+                flush();
+            }
+        }
 
+        synchronized void flush() throws RaplaException
+        {
+            if (toStore.isEmpty() && toRemove.isEmpty()) {
+                return;
+            }
+            appointmentStorage.storeAndRemove(new ArrayList<>(toStore), new ArrayList<>(toRemove));
+            toStore.clear();
+            toRemove.clear();
+        }
+    }
 
     @Nullable
     private String getAttribute( Classification c, String attributeKey) {
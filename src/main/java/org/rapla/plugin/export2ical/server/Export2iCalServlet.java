@@ -6,6 +6,9 @@ import net.fortuna.ical4j.validate.ValidationException;
 import org.rapla.RaplaResources;
 import org.rapla.components.util.DateTools;
 import org.rapla.components.util.TimeInterval;
+import org.rapla.components.util.metrics.Counter;
+import org.rapla.components.util.metrics.Histogram;
+import org.rapla.components.util.metrics.MetricsRegistry;
 import org.rapla.entities.EntityNotFoundException;
 import org.rapla.entities.User;
 import org.rapla.entities.configuration.Preferences;
@@ -42,6 +45,10 @@ import java.util.*;
 @Singleton
 public class Export2iCalServlet
 {
+	static final Histogram EXPORT_DURATION = MetricsRegistry.getDefault().histogram("rapla_ical_export_seconds", "Duration of the iCal exports");
+	static final Counter EXPORTED_APPOINTMENTS = MetricsRegistry.getDefault().counter("rapla_ical_exported_appointments_total", "Appointments written to iCal exports");
+	static final String REQUESTS_METRIC = "rapla_ical_export_requests_total";
+
 	private int global_daysBefore;
 	private int global_daysAfter;
 
@@ -119,6 +126,8 @@ public class Export2iCalServlet
 	public void generatePage(@PathParam("path")  String path, @Context HttpServletRequest request, @Context HttpServletResponse response, @QueryParam("file") final String filename, @QueryParam("user") final String username) throws IOException, ServletException {
 
 		//this.response = response;
+		final long start = System.nanoTime();
+		String result = "not_found";
         getLogger().debug("File: "+filename);
         getLogger().debug("User: "+username);
 
@@ -167,6 +176,7 @@ public class Export2iCalServlet
 				return;
 			}
 
+			result = "ok";
 			if (request.getMethod().equals("HEAD")) {
 				return;
 			}
@@ -174,6 +184,7 @@ public class Export2iCalServlet
 			Promise<Collection<Appointment>> appointments = calModel.queryAppointments(new TimeInterval(null, null));
 			write(response, promiseWait.waitForWithRaplaException(appointments, 10000), filename,user, null);
 		} catch (Exception e) {
+			result = "error";
 			response.getWriter().println(("An error occured giving you the Calendarview for user " + username + " named " + filename));
 			response.getWriter().println();
 			e.printStackTrace(response.getWriter());
@@ -181,6 +192,8 @@ public class Export2iCalServlet
 			getLogger().error( e.getMessage(), e);
 		} finally {
 			threadContextMap.remove("internal_request");
+			EXPORT_DURATION.recordSince(start);
+			MetricsRegistry.getDefault().counter(REQUESTS_METRIC, "iCal export requests by result", "result", result).inc();
 		}
 	}
 
@@ -242,6 +255,7 @@ public class Export2iCalServlet
 			throw new RaplaException("Error with returning '" + filename);
 		}
 		final Calendar iCal = converter.createiCalender(appointments,preferences, user);
+		EXPORTED_APPOINTMENTS.add(appointments.size());
 		final CalendarOutputter calOutputter = new CalendarOutputter();
 		final PrintWriter responseWriter = response.getWriter();
 		try {
@@ -0,0 +1,151 @@
+package org.rapla.plugin.ical.server;
+
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.data.ParserException;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the VEVENTs of an iCal stream in batches, so that a large feed is never parsed into one calendar object.
+ * <p>
+ * The stream is split at the component lines. Each batch is parsed with ical4j as a calendar that contains the properties of the
+ * original calendar, all VTIMEZONE definitions read so far and the next events. Other components like VTODO are skipped.
+ * </p>
+ */
+class ICalEventReader implements Closeable
+{
+    private static final String CRLF = "\r\n";
+
+    private final BufferedReader reader;
+    private final int batchSize;
+    private final CalendarBuilder builder = new CalendarBuilder();
+    private final StringBuilder calendarProperties = new StringBuilder();
+    private final StringBuilder timezones = new StringBuilder();
+    private boolean calendarStarted;
+    private boolean finished;
+
+    ICalEventReader(Reader reader, int batchSize)
+    {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** @return the next events of the stream, an empty list if there are no more events */
+    public List<Component> nextBatch() throws IOException, ParserException
+    {
+        final StringBuilder events = new StringBuilder();
+        int count = 0;
+        while (!finished && count < batchSize)
+        {
+            String line = reader.readLine();
+            if (line == null)
+            {
+                finished = true;
+                break;
+            }
+            final String tag = getTag(line);
+            if (!calendarStarted)
+            {
+                // anything before the calendar, e.g. a byte order mark, is ignored
+                if (tag.equals("BEGIN:VCALENDAR"))
+                {
+                    calendarStarted = true;
+                }
+                continue;
+            }
+            if (tag.equals("END:VCALENDAR"))
+            {
+                finished = true;
+            }
+            else if (tag.equals("BEGIN:VEVENT"))
+            {
+                readComponent(line, "END:VEVENT", events);
+                count++;
+            }
+            else if (tag.equals("BEGIN:VTIMEZONE"))
+            {
+                readComponent(line, "END:VTIMEZONE", timezones);
+            }
+            else if (tag.startsWith("BEGIN:"))
+            {
+                readComponent(line, "END:" + tag.substring("BEGIN:".length()), null);
+            }
+            else
+            {
+                calendarProperties.append(line).append(CRLF);
+            }
+        }
+        if (count == 0)
+        {
+            return new ArrayList<>();
+        }
+        final StringBuilder content = new StringBuilder(events.length() + timezones.length() + calendarProperties.length() + 64);
+        content.append("BEGIN:VCALENDAR").append(CRLF);
+        content.append(calendarProperties);
+        content.append(timezones);
+        content.append(events);
+        content.append("END:VCALENDAR").append(CRLF);
+        final Calendar calendar = builder.build(new StringReader(content.toString()));
+        final List<Component> result = new ArrayList<>(count);
+        for (Object component : calendar.getComponents())
+        {
+            if (((Component) component).getName().equalsIgnoreCase("VEVENT"))
+            {
+                result.add((Component) component);
+            }
+        }
+        return result;
+    }
+
+    /** appends the lines up to the end tag to the buffer, or skips them if the buffer is null. */
+    private void readComponent(String beginLine, String endTag, StringBuilder buffer) throws IOException
+    {
+        if (buffer != null)
+        {
+            buffer.append(beginLine).append(CRLF);
+        }
+        while (true)
+        {
+            final String line = reader.readLine();
+            if (line == null)
+            {
+                throw new IOException("Unexpected end of iCal stream, " + endTag + " missing");
+            }
+            if (buffer != null)
+            {
+                buffer.append(line).append(CRLF);
+            }
+            if (getTag(line).equals(endTag))
+            {
+                return;
+            }
+        }
+    }
+
+    /** returns the upper case line without trailing whitespace. Folded lines start with a whitespace, so they never match a tag. */
+    private static String getTag(String line)
+    {
+        final int start = line.startsWith("\uFEFF") ? 1 : 0;
+        int end = line.length();
+        while (end > start && Character.isWhitespace(line.charAt(end - 1)))
+        {
+            end--;
+        }
+        return line.substring(start, end).toUpperCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+}
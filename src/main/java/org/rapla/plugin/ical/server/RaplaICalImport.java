@@ -1,13 +1,11 @@
 package org.rapla.plugin.ical.server;
 
-import net.fortuna.ical4j.data.CalendarBuilder;
 import net.fortuna.ical4j.data.ParserException;
 import net.fortuna.ical4j.model.*;
 import net.fortuna.ical4j.model.property.DateProperty;
 import net.fortuna.ical4j.model.property.RRule;
 import net.fortuna.ical4j.util.CompatibilityHints;
 import org.rapla.components.util.DateTools;
-import org.rapla.entities.Entity;
 import org.rapla.entities.EntityNotFoundException;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
@@ -16,6 +14,7 @@ import org.rapla.entities.domain.RaplaObjectAnnotations;
 import org.rapla.entities.domain.RepeatingType;
 import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.framework.RaplaException;
@@ -24,9 +23,11 @@ import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
 import org.rapla.plugin.ical.ICalImport;
 import org.rapla.scheduler.Promise;
+import org.rapla.scheduler.ResolvedPromise;
 import org.rapla.server.PromiseWait;
 import org.rapla.server.RemoteSession;
 import org.rapla.server.TimeZoneConverter;
+import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.impl.AbstractCachableOperator;
 
 import javax.inject.Inject;
@@ -35,18 +36,21 @@ import javax.ws.rs.core.Context;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 @DefaultImplementation(context=InjectionContext.server, of=ICalImport.class)
@@ -62,7 +66,11 @@ public class RaplaICalImport implements ICalImport {
     @Inject
     PromiseWait promiseWait;
 
+    /** the default number of events that are parsed and stored together */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
     private final HttpServletRequest request;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
 
     @Inject
@@ -134,6 +142,32 @@ public class RaplaICalImport implements ICalImport {
 	 * @throws RaplaException
 	 */
 	public Promise<Integer[]> importCalendar(String content, boolean isURL, List<Allocatable> resources, User user, String eventTypeKey, String eventTypeNameAttributeKey) throws RaplaException {
+		final Integer[] result;
+		try {
+    		if (isURL) {
+    		    try (InputStream in = new URL(content).openStream())
+    		    {
+    		        result = importCalendar(new InputStreamReader(in, StandardCharsets.UTF_8), resources, user, eventTypeKey, eventTypeNameAttributeKey);
+    		    }
+    		} 
+    		else 
+    		{
+    		    result = importCalendar(new StringReader(content), resources, user, eventTypeKey, eventTypeNameAttributeKey);
+    		}
+		} catch (IOException ioe) {
+		    throw new RaplaException(ioe.getMessage());
+		}
+		return new ResolvedPromise<>(result);
+	}
+
+	/**
+	 * reads the VEVENTs from the stream in batches of {@link #getBatchSize()} events and stores the reservations of each batch before
+	 * the next batch is parsed, so the memory needed doesn't grow with the size of the calendar.
+	 * Events with a UID that was already imported are found with the external id index of the storage and ignored.
+	 * 
+	 * @return the number of events in the calendar, the number of imported events, the number of events that were already imported and the number of skipped events
+	 */
+	public Integer[] importCalendar(Reader reader, List<Allocatable> resources, User user, String eventTypeKey, String eventTypeNameAttributeKey) throws RaplaException {
         final TimeZone timeZone = timeZoneConverter.getImportExportTimeZone();
 
 	    CompatibilityHints.setHintEnabled( CompatibilityHints.KEY_NOTES_COMPATIBILITY, true);
@@ -141,47 +175,30 @@ public class RaplaICalImport implements ICalImport {
 	    CompatibilityHints.setHintEnabled( CompatibilityHints.KEY_RELAXED_PARSING, true);
 	    CompatibilityHints.setHintEnabled( CompatibilityHints.KEY_RELAXED_UNFOLDING, true);
 	    CompatibilityHints.setHintEnabled( CompatibilityHints.KEY_RELAXED_VALIDATION, true);
-	    CalendarBuilder builder = new CalendarBuilder();
-		Calendar calendar = null;
+	    final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+	    final DynamicType eventType = facade.getDynamicType(eventTypeKey);
         int eventsInICal = 0;
 		int eventsSkipped = 0;
-		try {
-    		if (isURL) {
-    		    InputStream in = new URL(content).openStream();
-    		    calendar = builder.build(in);
-    		    in.close();
-    		} 
-    		else 
-    		{
-    		    StringReader fin = new StringReader(content);
-    		    calendar = builder.build(fin);
-    		}
-		} catch (IOException ioe) {
-		    throw new RaplaException(ioe.getMessage());
-		} catch (ParserException pe) {
-            throw new RaplaException(pe.getMessage());
-        } catch (IllegalArgumentException pe) {
-          throw new RaplaException(pe.getMessage());
-        }	
-		
-		ComponentList events = calendar.getComponents();
-		@SuppressWarnings("unchecked")
-        Iterator<Component> iterator = events.iterator();
-		List<Reservation> eventList = new ArrayList<>();
-	    Map<String, Reservation> reservationMap = new HashMap<>();
-	    while (iterator.hasNext()) {
-			Component component = iterator.next();
-			if (component.getName().equalsIgnoreCase("VEVENT") ) {
-                try {
+        int eventsPresent = 0;
+        int eventsImported = 0;
+	    // the reservations that were stored with an earlier batch, events with the same uid are added to them
+	    final Map<String, ReferenceInfo<Reservation>> importedMap = new HashMap<>();
+		try (ICalEventReader eventReader = new ICalEventReader(reader, batchSize)) {
+		    while (true) {
+		        final List<Component> components = eventReader.nextBatch();
+		        if (components.isEmpty()) {
+		            break;
+		        }
+        	    final Map<String, Reservation> reservationMap = new HashMap<>();
+        	    final Set<Reservation> toStore = new LinkedHashSet<>();
+        	    for (Component component : components) {
                 	eventsInICal ++;
                 	String uid = null;
-    				Reservation lookupEvent = null;
     				String name = component.getProperty("SUMMARY").getValue();
     				Property uidProperty = component.getProperty("UID");
     				if ( uidProperty != null)
     				{
     				    uid = uidProperty.getValue();
-    				    lookupEvent = reservationMap.get( uid);
     				}
     				if (name == null || name.trim().length() == 0)
     				{
@@ -189,11 +206,43 @@ public class RaplaICalImport implements ICalImport {
 				    	eventsSkipped ++;
 				    	continue;
     				}
-
+    				final List<Appointment> appointments;
+    				try {
+    				    appointments = createAppointments(component, name, user, timeZone);
+    				}
+    				catch (ParseException ex)
+    				{
+    				    continue;
+    				}
+    				if ( appointments == null)
+    				{
+    				    eventsSkipped ++;
+    				    continue;
+    				}
+    				Reservation lookupEvent = null;
+    				if ( uid != null)
+    				{
+    				    lookupEvent = reservationMap.get( uid);
+    				    if ( lookupEvent == null)
+    				    {
+    				        final ReferenceInfo<Reservation> importedId = importedMap.get( uid);
+    				        if ( importedId != null)
+    				        {
+    				            final Reservation imported = facade.tryResolve( importedId);
+    				            lookupEvent = imported != null ? facade.edit( imported) : null;
+    				        }
+    				        else if ( !operator.getReservationsWithExternalId( uid).isEmpty())
+    				        {
+    				            logger.debug("Ignoring event with uid " + uid + " already imported. Ignoring");
+    				            eventsPresent++;
+    				            continue;
+    				        }
+    				    }
+    				}
                 	if ( lookupEvent == null)
     				{
     					// createInfoDialog the reservation
-    					Classification classification = facade.getDynamicType(eventTypeKey).newClassification();
+    					Classification classification = eventType.newClassification();
     				    lookupEvent = facade.newReservation(classification,user);
     				    if ( uid != null)
     				    {
@@ -201,204 +250,154 @@ public class RaplaICalImport implements ICalImport {
     				    }
     		            classification.setValue(eventTypeNameAttributeKey, name);
     				}
-                	Reservation event = lookupEvent;
-    			    DateProperty startDateProperty = component.getProperty("DTSTART");
-                    Date startdate =  startDateProperty.getDate();
-                    Date enddate =  null;
-    				boolean wholeDay = false;
-    				long duration_millis = 0;
-    				Dur duration;
-    				if (component.getProperties("DTEND").size() > 0) {
-    				    DateProperty endDateProperty = component.getProperty("DTEND");
-    				    enddate = endDateProperty.getDate();
-    					duration = null;
-    				} else if (component.getProperties("DURATION").size() > 0) {
-    				    duration = new Dur(component.getProperty("DURATION").getValue());
-    			        Date t1 = new Date();
-    			        Date t2 = duration.getTime(t1);
-    			        duration_millis = t2.getTime() - t1.getTime();
-    				} else {
-    					logger.warn("Error in ics File. There is an event without DTEND or DURATION. " + "SUMMARY: " + name + ", DTSTART: " + startdate);
-    					eventsSkipped ++;
-    					continue;
-    				}
-    
-    				
-    				
 		            for (Allocatable allocatable: resources)
                     {
-                        event.addAllocatable(allocatable);
-                    }
-		            
-		            if (duration_millis == 0 && enddate != null) {
-                        duration_millis = enddate.getTime() - startdate.getTime();
+                        lookupEvent.addAllocatable(allocatable);
                     }
-		            // createInfoDialog appointment
-		            
-
-		            Appointment appointment;
-		        	if ( !(startdate instanceof DateTime))
-		            {
-		            	Date begin = new Date( startdate.getTime());
-			            Date end = new Date(begin.getTime() + duration_millis);
-			            appointment = newAppointment(user,begin, end);
-		            	wholeDay = true;
-			            appointment.setWholeDays(wholeDay);
-		            }
-		            else
-		            {
-                        Date begin = timeZoneConverter.toRaplaTime(timeZone, startdate);
-			            Date end = new Date(begin.getTime() + duration_millis);
-			            appointment = newAppointment(user,begin, end);
-		            }
-		            
-		            PropertyList<Property> rrules = component.getProperties("RRULE");
-		            if ( rrules.size() >0)
-		            {
-		                List<Recur> recurList = new ArrayList<>(rrules.size());
-                        for ( int i=0;i<rrules.size();i++)
-                        {
-                            Property prop = rrules.get( i);
-                            RRule rrule = new RRule(prop.getParameters(),prop.getValue());
-                            recurList.add(rrule.getRecur());
-                        }
-                        List<Appointment> list = calcRepeating( recurList, appointment);
-                        if  ( list != null)
-                        {
-                            for ( Appointment app: list)
-                            {
-                                event.addAppointment( app);
-                            }
-                        }
-                        else
-                        {
-                            net.fortuna.ical4j.model.Date periodEnd = null;
-                            for (Recur recur: recurList)
-                            {
-                                net.fortuna.ical4j.model.Date until = recur.getUntil();
-                                if ( until != null)
-                                {
-                                    if ( periodEnd == null || periodEnd.before( until))
-                                    {
-                                        periodEnd = until;
-                                    }
-                                }
-                            }
-                           
-                            if ( periodEnd == null)
-                            {
-                                periodEnd = new net.fortuna.ical4j.model.Date(startdate.getTime() + DateTools.MILLISECONDS_PER_WEEK * 52 *6);
-                            }
-                            PeriodList periodList;
-                            {
-                                long e4 = DateTools.addDays( periodEnd, 1).getTime();
-                                long s1 = startdate.getTime();
-                                Period period = new Period(new DateTime( s1), new DateTime(e4));
-                                periodList = component.calculateRecurrenceSet(period);
-                            }
-                            for ( @SuppressWarnings("unchecked") Iterator<Period> it = periodList.iterator();it.hasNext();)
-                            {
-                                Period p = it.next();
-                               
-								Date s = timeZoneConverter.toRaplaTime(timeZone, p.getStart());
-                                Date e = timeZoneConverter.toRaplaTime(timeZone,p.getEnd());
-                                Appointment singleAppointment = newAppointment( user,s, e);
-                                event.addAppointment( singleAppointment);
-                            }
-                        }
-		            }
-		            else
+		            for (Appointment appointment: appointments)
 		            {
-		                event.addAppointment( appointment);
+		                lookupEvent.addAppointment( appointment);
 		            }
-
-		            		            
-					/*
-					 * get a date iterable for given startdate and recurrance
-					 * rule.
-					 * timezone passed is UTC, because timezone calculation has
-					 * already been taken care of earlier
-					 */
 		            if (uid  != null)
 				    {
 				        reservationMap.put( uid, lookupEvent);
+				        importedMap.put( uid, lookupEvent.getReference());
 				    }
-		            eventList.add( lookupEvent);
-                }
-                catch (ParseException ex)
-                {
-                    
-                }
+		            toStore.add( lookupEvent);
+		            eventsImported++;
+        	    }
+        	    if ( !toStore.isEmpty())
+        	    {
+        	        facade.storeObjects(toStore.toArray(Reservation.RESERVATION_ARRAY));
+        	    }
+		    }
+		} catch (IOException ioe) {
+		    throw new RaplaException(ioe.getMessage());
+		} catch (ParserException pe) {
+            throw new RaplaException(pe.getMessage());
+        } catch (IllegalArgumentException pe) {
+          throw new RaplaException(pe.getMessage());
+        }	
+        return new Integer[] { eventsInICal, eventsImported, eventsPresent, eventsSkipped };
+	}
 
-			} else if (component.getName().equalsIgnoreCase("VTIMEZONE")) {
-				if (component.getProperties("TZID").size() > 0) {
-				//	TimeZone timezoneFromICal = TimeZone.getTimeZone(component.getProperty("TZID").getValue());
-				}
-			}
+	/** creates the appointments for the VEVENT or returns null if the event has no end */
+	private List<Appointment> createAppointments(Component component, String name, User user, TimeZone timeZone) throws RaplaException, ParseException
+	{
+        List<Appointment> appointments = new ArrayList<>();
+        DateProperty startDateProperty = component.getProperty("DTSTART");
+        Date startdate =  startDateProperty.getDate();
+        Date enddate =  null;
+        boolean wholeDay = false;
+        long duration_millis = 0;
+        Dur duration;
+        if (component.getProperties("DTEND").size() > 0) {
+            DateProperty endDateProperty = component.getProperty("DTEND");
+            enddate = endDateProperty.getDate();
+            duration = null;
+        } else if (component.getProperties("DURATION").size() > 0) {
+            duration = new Dur(component.getProperty("DURATION").getValue());
+            Date t1 = new Date();
+            Date t2 = duration.getTime(t1);
+            duration_millis = t2.getTime() - t1.getTime();
+        } else {
+            logger.warn("Error in ics File. There is an event without DTEND or DURATION. " + "SUMMARY: " + name + ", DTSTART: " + startdate);
+            return null;
+        }
+
+        if (duration_millis == 0 && enddate != null) {
+            duration_millis = enddate.getTime() - startdate.getTime();
+        }
+        // createInfoDialog appointment
+
+        Appointment appointment;
+        if ( !(startdate instanceof DateTime))
+        {
+            Date begin = new Date( startdate.getTime());
+            Date end = new Date(begin.getTime() + duration_millis);
+            appointment = newAppointment(user,begin, end);
+            wholeDay = true;
+            appointment.setWholeDays(wholeDay);
+        }
+        else
+        {
+            Date begin = timeZoneConverter.toRaplaTime(timeZone, startdate);
+            Date end = new Date(begin.getTime() + duration_millis);
+            appointment = newAppointment(user,begin, end);
         }
-		Date minStart = null;
-        final int eventsInICalFinal = eventsInICal;
-        int eventsSkippedFinal = eventsSkipped;
-		Promise<Map<String, List<Entity<Reservation>>>> importedPromise = getImportedReservations(minStart);
-        return importedPromise.thenApply((imported) ->
+
+        PropertyList<Property> rrules = component.getProperties("RRULE");
+        if ( rrules.size() >0)
         {
-            int eventsPresent = 0;
-            int eventsImported = 0;
-            List<Reservation> toImport = new ArrayList<>();
-            for (Reservation reservation : eventList)
+            List<Recur> recurList = new ArrayList<>(rrules.size());
+            for ( int i=0;i<rrules.size();i++)
             {
-                String uid = reservation.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
-                if (uid == null)
+                Property prop = rrules.get( i);
+                RRule rrule = new RRule(prop.getParameters(),prop.getValue());
+                recurList.add(rrule.getRecur());
+            }
+            List<Appointment> list = calcRepeating( recurList, appointment);
+            if  ( list != null)
+            {
+                for ( Appointment app: list)
                 {
-                    eventsImported++;
-                    toImport.add(reservation);
+                    appointments.add( app);
                 }
-                else
+            }
+            else
+            {
+                net.fortuna.ical4j.model.Date periodEnd = null;
+                for (Recur recur: recurList)
                 {
-                    List<Entity<Reservation>> alreadyImported = imported.get(uid);
-                    if (alreadyImported == null || alreadyImported.isEmpty())
-                    {
-                        eventsImported++;
-                        toImport.add(reservation);
-                    }
-                    else
+                    net.fortuna.ical4j.model.Date until = recur.getUntil();
+                    if ( until != null)
                     {
-                        logger.debug("Ignoring event with uid " + uid + " already imported. Ignoring");
-                        eventsPresent++;
+                        if ( periodEnd == null || periodEnd.before( until))
+                        {
+                            periodEnd = until;
+                        }
                     }
                 }
+
+                if ( periodEnd == null)
+                {
+                    periodEnd = new net.fortuna.ical4j.model.Date(startdate.getTime() + DateTools.MILLISECONDS_PER_WEEK * 52 *6);
+                }
+                PeriodList periodList;
+                {
+                    long e4 = DateTools.addDays( periodEnd, 1).getTime();
+                    long s1 = startdate.getTime();
+                    Period period = new Period(new DateTime( s1), new DateTime(e4));
+                    periodList = component.calculateRecurrenceSet(period);
+                }
+                for ( @SuppressWarnings("unchecked") Iterator<Period> it = periodList.iterator();it.hasNext();)
+                {
+                    Period p = it.next();
+
+                    Date s = timeZoneConverter.toRaplaTime(timeZone, p.getStart());
+                    Date e = timeZoneConverter.toRaplaTime(timeZone,p.getEnd());
+                    Appointment singleAppointment = newAppointment( user,s, e);
+                    appointments.add( singleAppointment);
+                }
             }
+        }
+        else
+        {
+            appointments.add( appointment);
+        }
 
-            facade.storeObjects(toImport.toArray(Reservation.RESERVATION_ARRAY));
-            return new Integer[] { eventsInICalFinal, eventsImported, eventsPresent, eventsSkippedFinal };
-        });
+        return appointments;
 	}
 
-    protected Promise<Map<String, List<Entity<Reservation>>>> getImportedReservations(Date start)
+    public int getBatchSize()
     {
-        Map<String, List<Entity<Reservation>>> keyMap;
-        User user = null;
-        Date end = null;
-        keyMap = new LinkedHashMap<>();
-        Promise<Collection<Reservation>> reservationsPromise = facade.getReservations(user, start, end, null);
-        return reservationsPromise.thenApply((reservations) ->
-        {
-            for (Reservation r : reservations)
-            {
-                String key = r.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
-                if (key != null)
-                {
-                    List<Entity<Reservation>> list = keyMap.get(key);
-                    if (list == null)
-                    {
-                        list = new ArrayList<>();
-                        keyMap.put(key, list);
-                    }
-                    list.add(r);
-                }
-            }
-            return keyMap;
-        });
+        return batchSize;
+    }
+
+    /** the number of events that are parsed and stored together */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
     }
 
 //    
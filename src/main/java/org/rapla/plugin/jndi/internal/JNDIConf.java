@@ -13,5 +13,7 @@ public interface JNDIConf {
     String CONNECTION_URL = "connectionURL";
     String CONNECTION_PASSWORD = "connectionPassword";
     String CONNECTION_NAME = "connectionName";
+    String POOL_SIZE = "poolSize";
+    String CACHE_SECONDS = "cacheSeconds";
 
 }
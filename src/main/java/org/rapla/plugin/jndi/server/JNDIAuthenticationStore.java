@@ -92,8 +92,10 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -101,6 +103,9 @@ import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This Plugin is based on the jakarta.apache.org/tomcat JNDI Realm
@@ -176,9 +181,31 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
 
 
     /**
-     * The directory context linking us to our directory server.
+     * Idle directory contexts, bound with the connection user, that can be reused
+     * for the next search.
      */
-    protected DirContext context = null;
+    protected final LinkedBlockingDeque<DirContext> contextPool = new LinkedBlockingDeque<>();
+
+    /**
+     * The maximum number of idle directory contexts kept open.
+     */
+    protected int poolSize = 4;
+
+    /**
+     * The time in milliseconds a successful login is remembered. Zero disables the cache.
+     */
+    protected long cacheMillis = 0;
+
+    /**
+     * Successful logins by username. Only a salted hash of the password is kept.
+     */
+    private final Map<String, CachedLogin> loginCache = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private final AtomicLong ldapRequests = new AtomicLong();
+    private final AtomicLong ldapNanos = new AtomicLong();
+    private final AtomicLong ldapMaxNanos = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
 
 
     /**
@@ -323,6 +350,12 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
         setUserMail( getAttribute( config,USER_MAIL, null ) );
         setUserCn( getAttribute( config,USER_CN, null ) );
         setUserSearch( getAttribute( config,USER_SEARCH, null) );
+        try {
+            setPoolSize( Integer.parseInt( getAttribute( config, POOL_SIZE, "4")));
+            setCacheSeconds( Integer.parseInt( getAttribute( config, CACHE_SECONDS, "0")));
+        } catch (NumberFormatException e) {
+            throw new RaplaException( e.getMessage());
+        }
     }
 
     private String getAttribute(Map<String,String> config, String key, String defaultValue) {
@@ -488,6 +521,43 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
         this.userBase = userBase;
     }
 
+    /**
+     * Set the maximum number of idle directory contexts that are kept open for reuse.
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Set how long a successful login is remembered, so that repeated logins and the
+     * following initUser don't contact the directory again. Zero disables the cache.
+     */
+    public void setCacheSeconds(int cacheSeconds) {
+        this.cacheMillis = cacheSeconds * 1000L;
+        loginCache.clear();
+    }
+
+    /** @return the number of directory round trips (authentications against the directory). */
+    public long getLdapRequestCount() {
+        return ldapRequests.get();
+    }
+
+    /** @return the average directory round-trip time in milliseconds. */
+    public double getAverageLdapMillis() {
+        long count = ldapRequests.get();
+        return count == 0 ? 0 : ldapNanos.get() / 1000000.0 / count;
+    }
+
+    /** @return the slowest directory round-trip time in milliseconds. */
+    public double getMaxLdapMillis() {
+        return ldapMaxNanos.get() / 1000000.0;
+    }
+
+    /** @return the number of logins answered from the login cache. */
+    public long getLoginCacheHits() {
+        return cacheHits.get();
+    }
+
     /**
      * Set the message format pattern for selecting users in this Realm.
      *
@@ -527,6 +597,31 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
      * @throws RaplaException 
      */
     private JNDIUser authenticateUser(String username, String credentials) throws RaplaException  {
+        if (username == null || credentials == null)
+            return null;
+        final CachedLogin cached = cacheMillis > 0 ? loginCache.get(username) : null;
+        if (cached != null) {
+            if (cached.validUntil > System.currentTimeMillis() && cached.matches(credentials)) {
+                cacheHits.incrementAndGet();
+                return cached.user;
+            }
+            loginCache.remove(username, cached);
+        }
+        final long start = System.nanoTime();
+        final JNDIUser user = authenticateUserInDirectory(username, credentials);
+        final long time = System.nanoTime() - start;
+        ldapRequests.incrementAndGet();
+        ldapNanos.addAndGet(time);
+        ldapMaxNanos.accumulateAndGet(time, Math::max);
+        if ( getLogger().isDebugEnabled() )
+            log("Directory round trip for " + username + " took " + time / 1000000 + " ms");
+        if (user != null && cacheMillis > 0) {
+            loginCache.put(username, new CachedLogin(user, credentials, System.currentTimeMillis() + cacheMillis));
+        }
+        return user;
+    }
+
+    private JNDIUser authenticateUserInDirectory(String username, String credentials) throws RaplaException  {
         DirContext context = null;
         JNDIUser user = null;
         try {
@@ -565,6 +660,9 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
 
             }
 
+            // Give the connection back for the next request
+            release(context);
+            context = null;
             // Return the authenticated Principal (if any)
             return user;
         } catch (NamingException e) {
@@ -574,7 +672,7 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
         }
         finally
         {
-            // Close the connection so that it gets reopened next time
+            // Close the connection after an error so that it gets reopened next time
             if (context != null)
                 close(context);
         	
@@ -654,8 +752,7 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
        }
        finally
        {
-    	   context.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
-    	   context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+           restoreEnvironment(context);
        }
 	}
 
@@ -978,6 +1075,16 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
         }
 
         // Restore the original security environment
+        restoreEnvironment(context);
+
+        return (validated);
+     }
+
+    /**
+     * Restores the security environment of the connection user after binding as a user,
+     * so that the context can be reused for the next search.
+     */
+    protected void restoreEnvironment(DirContext context) throws NamingException {
         if (connectionName != null) {
             context.addToEnvironment(Context.SECURITY_PRINCIPAL,
                                      connectionName);
@@ -992,9 +1099,7 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
         else {
             context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
         }
-
-        return (validated);
-     }
+    }
 
 
     /**
@@ -1049,20 +1154,32 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
         } catch (NamingException e) {
             log("jndiRealm.close", e);
         }
-        this.context = null;
 
     }
 
+    /**
+     * Return the connection to the pool of idle connections or close it if the pool is full.
+     *
+     * @param context The directory context to be released
+     */
+    protected void release(DirContext context) {
+        if (context == null)
+            return;
+        if (contextPool.size() >= poolSize || !contextPool.offerFirst(context))
+            close(context);
+    }
+
 
     /**
-     * Open (if necessary) and return a connection to the configured
-     * directory server for this Realm.
+     * Take an idle connection from the pool or open a new connection
+     * to the configured directory server for this Realm.
      *
      * @exception NamingException if a directory server error occurs
      */
     protected DirContext open() throws NamingException {
 
-        // Do nothing if there is a directory server connection already open
+        // Reuse an idle directory server connection if one is open
+        DirContext context = contextPool.pollFirst();
         if (context != null)
             return (context);
 
@@ -1129,7 +1246,10 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
     public void dispose() 
     {
         // Close any open directory server connection
-        close(this.context);
+        DirContext context;
+        while ((context = contextPool.pollFirst()) != null)
+            close(context);
+        loginCache.clear();
     }
 
     public static void main(String[] args) {
@@ -1152,6 +1272,38 @@ public class JNDIAuthenticationStore implements AuthenticationStore,Disposable,J
     }
 
    
+    /**
+     * A successful login, remembered with a salted hash of the password
+     */
+    class CachedLogin {
+        final JNDIUser user;
+        final byte[] salt;
+        final byte[] hash;
+        final long validUntil;
+
+        CachedLogin(JNDIUser user, String credentials, long validUntil) {
+            this.user = user;
+            this.salt = new byte[16];
+            random.nextBytes(salt);
+            this.hash = hash(salt, credentials);
+            this.validUntil = validUntil;
+        }
+
+        boolean matches(String credentials) {
+            return MessageDigest.isEqual(hash, hash(salt, credentials));
+        }
+    }
+
+    private static byte[] hash(byte[] salt, String credentials) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(salt);
+            return sha.digest(credentials.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
     /**
      * A private class representing a User
      */
@@ -0,0 +1,225 @@
+package org.rapla.plugin.tableview;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Writes the rows of a table view as CSV to a writer, without building the whole export as one string.
+ * <p>
+ * The rows are split into batches. If an executor is set, the cells of the batches are evaluated and formatted on the executor
+ * while the formatted batches are written in the order of the rows. Only a limited number of formatted batches waits for
+ * the writer, so the memory needed doesn't grow with the number of rows.
+ * </p>
+ */
+public class RaplaTableCSVWriter<T>
+{
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    static final String LINE_BREAK = "\n";
+    static final String CELL_BREAK = ";";
+
+    private static ExecutorService defaultExecutor;
+
+    private final List<RaplaTableColumn<T>> columns;
+    private final String contextAnnotationName;
+    private final boolean addIds;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Executor executor;
+    private int maxPendingBatches = 2 * Runtime.getRuntime().availableProcessors();
+
+    public RaplaTableCSVWriter(List<RaplaTableColumn<T>> columns, String contextAnnotationName, boolean addIds)
+    {
+        this.columns = columns;
+        this.contextAnnotationName = contextAnnotationName;
+        this.addIds = addIds;
+    }
+
+    /** a shared pool with one daemon thread per processor for the exports of the server */
+    public static synchronized Executor getDefaultExecutor()
+    {
+        if (defaultExecutor == null)
+        {
+            final AtomicInteger threadCount = new AtomicInteger();
+            defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+                Thread thread = new Thread(runnable, "rapla-table-export-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return defaultExecutor;
+    }
+
+    /** the executor that evaluates the batches. If it is null, all rows are evaluated in the writing thread */
+    public RaplaTableCSVWriter<T> setExecutor(Executor executor)
+    {
+        this.executor = executor;
+        return this;
+    }
+
+    public RaplaTableCSVWriter<T> setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /** the number of formatted batches that can wait for the writer */
+    public RaplaTableCSVWriter<T> setMaxPendingBatches(int maxPendingBatches)
+    {
+        this.maxPendingBatches = Math.max(1, maxPendingBatches);
+        return this;
+    }
+
+    public String toCSV(List<T> rows)
+    {
+        final StringWriter writer = new StringWriter();
+        try
+        {
+            write(rows, writer);
+        }
+        catch (IOException e)
+        {
+            // a StringWriter doesn't throw IOExceptions
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /** writes the header and the rows. The writer is flushed but not closed. Exceptions of the columns are passed to the caller */
+    public void write(List<T> rows, Writer out) throws IOException
+    {
+        out.write(formatHeader());
+        final int size = rows.size();
+        if (executor == null || size <= batchSize)
+        {
+            for (int start = 0; start < size; start += batchSize)
+            {
+                out.write(formatRows(rows.subList(start, Math.min(start + batchSize, size))));
+            }
+        }
+        else
+        {
+            final Deque<Future<String>> pending = new ArrayDeque<>();
+            int next = 0;
+            try
+            {
+                while (next < size || !pending.isEmpty())
+                {
+                    while (next < size && pending.size() < maxPendingBatches)
+                    {
+                        final List<T> batch = rows.subList(next, Math.min(next + batchSize, size));
+                        final FutureTask<String> task = new FutureTask<>(() -> formatRows(batch));
+                        executor.execute(task);
+                        pending.add(task);
+                        next += batch.size();
+                    }
+                    out.write(getResult(pending.poll()));
+                }
+            }
+            finally
+            {
+                // after an error the batches that are not started yet are skipped
+                for (Future<String> future : pending)
+                {
+                    future.cancel(false);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private String getResult(Future<String> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV export interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private String formatHeader()
+    {
+        StringBuilder buf = new StringBuilder();
+        if (addIds)
+        {
+            buf.append("id");
+            buf.append(CELL_BREAK);
+        }
+        for (RaplaTableColumn<T> column : columns)
+        {
+            buf.append(column.getColumnName());
+            buf.append(CELL_BREAK);
+        }
+        return buf.toString();
+    }
+
+    private String formatRows(List<T> rows)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (T rowObject : rows)
+        {
+            buf.append(LINE_BREAK);
+            if (addIds)
+            {
+                if (rowObject instanceof Entity)
+                    buf.append(((Entity) rowObject).getId());
+                buf.append(CELL_BREAK);
+            }
+            for (RaplaTableColumn<T> column : columns)
+            {
+                Object value = column.getValue(rowObject, contextAnnotationName);
+                buf.append(formatCell(column, value));
+                buf.append(CELL_BREAK);
+            }
+        }
+        return buf.toString();
+    }
+
+    static String formatCell(RaplaTableColumn<?> column, Object value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+        if (column.getColumnClass().equals(Date.class))
+        {
+            return DateTools.formatDateTime((Date) value);
+        }
+        return escape(value);
+    }
+
+    static private String escape(Object cell)
+    {
+        return cell.toString().replace(LINE_BREAK, " ").replace(CELL_BREAK, " ");
+    }
+}
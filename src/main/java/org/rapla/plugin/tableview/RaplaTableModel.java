@@ -1,8 +1,6 @@
 package org.rapla.plugin.tableview;
 
 import org.jetbrains.annotations.NotNull;
-import org.rapla.components.util.DateTools;
-import org.rapla.entities.Entity;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
 import org.rapla.facade.CalendarModel;
 
@@ -119,59 +117,10 @@ public class RaplaTableModel<T>
         return data.toString();
     }
 
-    private static final String LINE_BREAK = "\n";
-    private static final String CELL_BREAK = ";";
+    /** @see RaplaTableCSVWriter for exports that are written to a stream */
     static public <T> String getCSV(List<RaplaTableColumn<T>> columns, List<T> rows, String contextAnnotationName, boolean addIds)
     {
-        StringBuffer buf = new StringBuffer();
-        if ( addIds ) {
-            buf.append("id");
-            buf.append(CELL_BREAK);
-        }
-        for (RaplaTableColumn column : columns)
-        {
-            buf.append(column.getColumnName());
-            buf.append(CELL_BREAK);
-        }
-        for (T row : rows)
-        {
-            buf.append(LINE_BREAK);
-            T rowObject = row;
-            if ( addIds ) {
-                if (rowObject instanceof Entity)
-                    buf.append(((Entity) rowObject).getId());
-                buf.append(CELL_BREAK);
-            }
-            for (RaplaTableColumn column : columns)
-            {
-                Object value = column.getValue(rowObject, contextAnnotationName);
-                Class columnClass = column.getColumnClass();
-                boolean isDate = columnClass.equals(java.util.Date.class);
-                String formated = "";
-                if (value != null)
-                {
-                    if (isDate)
-                    {
-                        String timestamp = DateTools.formatDateTime( (java.util.Date) value);
-                        formated = timestamp;
-                    }
-                    else
-                    {
-                        String escaped = escape(value);
-                        formated = escaped;
-                    }
-                }
-                buf.append(formated);
-                buf.append(CELL_BREAK);
-            }
-        }
-        final String result = buf.toString();
-        return result;
-    }
-
-
-    static private String escape(Object cell) {
-        return cell.toString().replace(LINE_BREAK, " ").replace(CELL_BREAK, " ");
+        return new RaplaTableCSVWriter<>(columns, contextAnnotationName, addIds).toCSV(rows);
     }
 
     static public <T> List<T> sortRows(Collection<T> rowObjects, Map<RaplaTableColumn<T>, Integer> sortDirections,Comparator<T> fallbackComparator, String  contextAnnotationName) {
@@ -36,6 +36,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.swing.table.TableColumn;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 
 @Extension(provides = HTMLViewPage.class, id = TableViewPlugin.TABLE_APPOINTMENTS_PER_DAY_VIEW) public class AppointmentPerDayViewPage
@@ -86,6 +87,18 @@ import java.util.*;
                 }
             }
 
+            @Override
+            protected void writeCsv(Writer out) throws RaplaException, IOException
+            {
+                User user = model.getUser();
+                final String tableViewName = TableConfig.APPOINTMENTS_PER_DAY_VIEW;
+                List<RaplaTableColumn<AppointmentBlock>> columnPluginsPlusDate = new ArrayList<>(tableConfigLoader.loadColumns(tableViewName, user));
+                columnPluginsPlusDate.add(0, tableConfigLoader.createDateColumn( "appointment_per_date_date", user));
+                final List<AppointmentBlock> blocks = waiter.waitForWithRaplaException(model.queryBlocks(model.getTimeIntervall()), 10000);
+                Map<RaplaTableColumn<AppointmentBlock>, Integer> sortDirections = RaplaTableModel.getSortDirections(model,columnPluginsPlusDate, tableViewName);
+                writeCsv(out, columnPluginsPlusDate, blocks, sortDirections);
+            }
+
             public String getCalendarBodyHTML(List<RaplaTableColumn<AppointmentBlock>> columPlugins,Map<String,List<AppointmentBlock>> blocks)
             {
                 StringBuffer buf = new StringBuffer();
@@ -33,6 +33,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.swing.table.TableColumn;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +59,16 @@ import java.util.Map;
                 return getCalendarBody(columnPlugins, blocks, sortDirections);
             }
 
+            @Override
+            protected void writeCsv(Writer out) throws RaplaException, IOException
+            {
+                final String tableViewName = TableConfig.APPOINTMENTS_VIEW;
+                List<RaplaTableColumn<AppointmentBlock>> columnPlugins = tableConfigLoader.loadColumns(tableViewName, model.getUser());
+                final List<AppointmentBlock> blocks = waiter.waitForWithRaplaException(model.queryBlocks(model.getTimeIntervall()), 10000);
+                Map<RaplaTableColumn<AppointmentBlock>, Integer> sortDirections = RaplaTableModel.getSortDirections(model,columnPlugins, tableViewName);
+                writeCsv(out, columnPlugins, blocks, sortDirections);
+            }
+
             @Override
             protected Comparator<AppointmentBlock> getFallbackComparator() {
                 return Comparator.naturalOrder();
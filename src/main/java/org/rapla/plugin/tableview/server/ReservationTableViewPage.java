@@ -34,6 +34,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.swing.table.TableColumn;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
@@ -61,6 +62,17 @@ public class ReservationTableViewPage implements HTMLViewPage
                 return getCalendarBody(columnPlugins, reservations, sortDirections);
             }
 
+            @Override
+            protected void writeCsv(Writer out) throws RaplaException, IOException
+            {
+                final Collection<Reservation> reservations = waiter.waitForWithRaplaException(model.queryReservations(model.getTimeIntervall()),
+                        10000);
+                final String tableName = TableConfig.EVENTS_VIEW;
+                List<RaplaTableColumn<Reservation>> columnPlugins = tableConfigLoader.loadColumns(tableName, model.getUser());
+                Map<RaplaTableColumn<Reservation>, Integer> sortDirections = RaplaTableModel.getSortDirections(model,columnPlugins, tableName);
+                writeCsv(out, columnPlugins, reservations, sortDirections);
+            }
+
             @Override
             protected Comparator<Reservation> getFallbackComparator() {
                 return comparator;
@@ -7,6 +7,7 @@ import org.rapla.facade.CalendarModel;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.plugin.abstractcalendar.server.AbstractHTMLCalendarPage;
+import org.rapla.plugin.tableview.RaplaTableCSVWriter;
 import org.rapla.plugin.tableview.RaplaTableColumn;
 import org.rapla.plugin.tableview.RaplaTableModel;
 
@@ -15,6 +16,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 
 abstract public class TableViewPage<T>
@@ -67,8 +69,8 @@ abstract public class TableViewPage<T>
         java.io.PrintWriter out = response.getWriter();
         try
         {
-            final String calendarCSV = getCalendarBody();
-            out.println(calendarCSV);
+            writeCsv(out);
+            out.println();
         }
         catch (RaplaException e)
         {
@@ -189,6 +191,21 @@ abstract public class TableViewPage<T>
 
     protected abstract String getCalendarBody() throws RaplaException;
 
+    /** writes the csv export of the page. Pages that override it can stream the rows with {@link #writeCsv(Writer, List, Collection, Map)} */
+    protected void writeCsv(Writer out) throws RaplaException, IOException
+    {
+        out.write(getCalendarBody());
+    }
+
+    /** writes the rows to the csv while they are formatted, so the response is sent in chunks */
+    protected void writeCsv(Writer out, List<RaplaTableColumn<T>> columPlugins, Collection<T> rowObjects, Map<RaplaTableColumn<T>, Integer> sortDirections)
+            throws IOException
+    {
+        final List<T> rows = RaplaTableModel.sortRows(rowObjects, sortDirections, getFallbackComparator(), DynamicTypeAnnotations.KEY_NAME_FORMAT);
+        final RaplaTableCSVWriter<T> csvWriter = new RaplaTableCSVWriter<>(columPlugins, DynamicTypeAnnotations.KEY_NAME_FORMAT, addIds);
+        csvWriter.setExecutor(RaplaTableCSVWriter.getDefaultExecutor()).write(rows, out);
+    }
+
     /** Comparator to be used, when no sorting option is defined */
     protected abstract Comparator<T> getFallbackComparator();
 
@@ -26,7 +26,7 @@ public class EncryptedHttpServletRequest extends HttpServletRequestWrapper
 		super(originalRequest);
 		String encryptedParameters = originalRequest.getParameter(UrlEncryption.ENCRYPTED_PARAMETER_NAME);
 		final String salt = originalRequest.getParameter(UrlEncryption.ENCRYPTED_SALT_PARAMETER_NAME);
-		String parameters = urlEncryption.decrypt(encryptedParameters, salt);
+		String parameters = urlEncryption.decryptParameters(encryptedParameters, salt);
 		Map<String, String[]> parameterMap = createParamterMapFromQueryString(parameters);
 
 		this.newRequestUri = originalRequest.getRequestURL().toString();
@@ -24,6 +24,11 @@ import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.KeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Singleton
 public class UrlEncryptor
@@ -34,8 +39,13 @@ public class UrlEncryptor
     private static final int NUM_SHUFFELS = 2;
     private final String syncEncryptionAlg = "AES/ECB/PKCS5Padding";
 
-    private Cipher encryptionCipher;
-    private Cipher decryptionCipher;
+    /** maximum number of decrypted parameter strings that are kept for repeated requests of the same link */
+    static final int DECRYPTED_CACHE_SIZE = 1000;
+
+    /** the key of the last request. Replaced when the key in the preferences changes */
+    private volatile KeyState keyState;
+    /** ciphers that are not in use. A request takes its own ciphers from the pool, so requests don't wait for each other */
+    private final Queue<Ciphers> cipherPool = new ConcurrentLinkedQueue<>();
 
     private final RaplaFacade facade;
     private final Logger logger;
@@ -58,17 +68,18 @@ public class UrlEncryptor
      * @param plain Plain text
      * @return String The encrypted result or null in case of an exception
      */
-    public synchronized String encrypt(String plain, HttpServletRequest request) throws RaplaException
+    public String encrypt(String plain, HttpServletRequest request) throws RaplaException
     {
         final User user = session.checkAndGetUser(request);
         return encrypt(plain, user.getId());
     }
 
     @NotNull
-    public synchronized String encrypt(String plain, String userId) throws RaplaException
+    public String encrypt(String plain, String userId) throws RaplaException
     {
         final String salt = Integer.toString(userId.hashCode());
-        final Base64 base64 = initForRequest();
+        final Base64 base64 = createBase64();
+        final Ciphers ciphers = borrowCiphers(base64);
         try
         {
             String valueToEnc = null;
@@ -76,7 +87,7 @@ public class UrlEncryptor
             for(int i = 0; i < NUM_SHUFFELS; i++)
             {
                 valueToEnc = salt + eValue;
-                byte[] encValue = this.encryptionCipher.doFinal(valueToEnc.getBytes());
+                byte[] encValue = ciphers.encryptionCipher.doFinal(valueToEnc.getBytes());
                 eValue = base64.encodeAsString(encValue);
             }
             return eValue + "&" + UrlEncryption.ENCRYPTED_SALT_PARAMETER_NAME + "=" + salt;
@@ -89,6 +100,10 @@ public class UrlEncryptor
         {
             // Something went wrong while initializing the used cipher
         }
+        finally
+        {
+            releaseCiphers(ciphers);
+        }
         return "";
     }
 
@@ -99,9 +114,48 @@ public class UrlEncryptor
      * @return String Plain string
      * @throws Exception If the String could't be decrypted.
      */
-    public synchronized String decrypt(String encrypted, String salt) throws Exception
+    public String decrypt(String encrypted, String salt) throws Exception
+    {
+        final Base64 base64 = createBase64();
+        final Ciphers ciphers = borrowCiphers(base64);
+        // ciphers that failed on an invalid link are not reused
+        final String result = decrypt(encrypted, salt, base64, ciphers);
+        releaseCiphers(ciphers);
+        return result;
+    }
+
+    /**
+     * Same as {@link #decrypt(String, String)}, but the result is cached, so links that are requested again, e.g. by calendar feed polls,
+     * are not decrypted again.
+     */
+    public String decryptParameters(String encrypted, String salt) throws Exception
+    {
+        final Base64 base64 = createBase64();
+        final Map<String, String> cache = getKeyState(base64).decryptedParameters;
+        final String cacheKey = salt + "&" + encrypted;
+        String result = cache.get(cacheKey);
+        if (result == null)
+        {
+            final Ciphers ciphers = borrowCiphers(base64);
+            result = decrypt(encrypted, salt, base64, ciphers);
+            releaseCiphers(ciphers);
+            if (cache.size() >= DECRYPTED_CACHE_SIZE)
+            {
+                // not a strict lru, it just removes entries until there is room again
+                final Iterator<String> it = cache.keySet().iterator();
+                while (it.hasNext() && cache.size() >= DECRYPTED_CACHE_SIZE * 3 / 4)
+                {
+                    it.next();
+                    it.remove();
+                }
+            }
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    private String decrypt(String encrypted, String salt, Base64 base64, Ciphers ciphers) throws Exception
     {
-        final Base64 base64 = initForRequest();
         try
         {
             String dValue = null;
@@ -109,7 +163,7 @@ public class UrlEncryptor
             for(int i = 0; i < NUM_SHUFFELS; i++)
             {
                 byte[] decordedValue = base64.decode(valueToDecrypt);
-                byte[] decValue = decryptionCipher.doFinal(decordedValue);
+                byte[] decValue = ciphers.decryptionCipher.doFinal(decordedValue);
                 dValue = new String(decValue).substring(salt.length());
                 valueToDecrypt = dValue;
             }
@@ -121,11 +175,38 @@ public class UrlEncryptor
         }
     }
 
-    private Base64 initForRequest() throws RaplaException
+    private Base64 createBase64()
     {
         byte[] linebreake = {};
-        Base64 base64 = new Base64(64, linebreake, true);
+        return new Base64(64, linebreake, true);
+    }
+
+    /** returns unused ciphers for the current key */
+    private Ciphers borrowCiphers(Base64 base64) throws RaplaException
+    {
+        final KeyState keyState = getKeyState(base64);
+        Ciphers result;
+        while ((result = cipherPool.poll()) != null)
+        {
+            // ciphers of an old key are dropped
+            if (result.keyState == keyState)
+            {
+                return result;
+            }
+        }
+        return new Ciphers(keyState);
+    }
+
+    private void releaseCiphers(Ciphers ciphers)
+    {
+        if (ciphers.keyState == keyState)
+        {
+            cipherPool.offer(ciphers);
+        }
+    }
 
+    private KeyState getKeyState(Base64 base64) throws RaplaException
+    {
         // Try to read the encryption key from the plugin configuration file.
         Preferences preferences = facade.getSystemPreferences();
 
@@ -143,14 +224,20 @@ public class UrlEncryptor
         {
             keyEntry = keyStore.getRootKeyBase64();
         }
+        final KeyState current = keyState;
+        if (current != null && current.keyEntry.equals(keyEntry))
+        {
+            return current;
+        }
         try
         {
             byte[] encryptionKey = base64.decode(keyEntry);
             if (encryptionKey == null || encryptionKey.equals(""))
                 throw new InvalidKeyException("Empty key string found!");
 
-            this.initializeCiphers(encryptionKey);
-            return base64;
+            final KeyState newState = new KeyState(keyEntry, createKey(encryptionKey));
+            keyState = newState;
+            return newState;
         }
         catch (KeyException e)
         {
@@ -158,41 +245,71 @@ public class UrlEncryptor
         }
     }
 
+    private Key createKey(byte[] encryptionKey)
+    {
+        byte[] encryptionKey2;
+        // We just use the first 16 bytes from the private key for encrypting the url
+        if (encryptionKey.length > 16)
+        {
+            encryptionKey2 = new byte[16];
+            System.arraycopy(encryptionKey, 0, encryptionKey2, 0, 16);
+        }
+        else
+        {
+            encryptionKey2 = encryptionKey;
+        }
+        return new SecretKeySpec(encryptionKey2, "AES");
+    }
+
+    /** the key and the links decrypted with it */
+    private static class KeyState
+    {
+        final String keyEntry;
+        final Key specKey;
+        final Map<String, String> decryptedParameters = new ConcurrentHashMap<>();
+
+        KeyState(String keyEntry, Key specKey)
+        {
+            this.keyEntry = keyEntry;
+            this.specKey = specKey;
+        }
+    }
+
     /**
-     * Initializes the encryption an decryption Cipher so they can be used.
+     * An encryption an decryption Cipher pair. Only used by one request at a time.
      *
      */
-    private void initializeCiphers(byte[] encryptionKey) throws InvalidKeyException
+    private class Ciphers
     {
-        try
+        final KeyState keyState;
+        Cipher encryptionCipher;
+        Cipher decryptionCipher;
+
+        Ciphers(KeyState keyState) throws RaplaException
         {
-            byte[] encryptionKey2;
-            // We just use the first 16 bytes from the private key for encrypting the url
-            if (encryptionKey.length > 16)
+            this.keyState = keyState;
+            try
             {
-                encryptionKey2 = new byte[16];
-                System.arraycopy(encryptionKey, 0, encryptionKey2, 0, 16);
+                this.encryptionCipher = Cipher.getInstance(syncEncryptionAlg);
+                this.encryptionCipher.init(Cipher.ENCRYPT_MODE, keyState.specKey);
+
+                this.decryptionCipher = Cipher.getInstance(syncEncryptionAlg);
+                this.decryptionCipher.init(Cipher.DECRYPT_MODE, keyState.specKey);
             }
-            else
+            catch (NoSuchAlgorithmException e)
             {
-                encryptionKey2 = encryptionKey;
+                // AES Algorithm does not exist here
+                logger.error("AES Algorithm does not exist here");
+            }
+            catch (NoSuchPaddingException e)
+            {
+                // AES/ECB/PKCS5 Padding missing
+                logger.error("AES/ECB/PKCS5 Padding missing");
+            }
+            catch (InvalidKeyException e)
+            {
+                throw new RaplaException(e.getMessage(), e);
             }
-            Key specKey = new SecretKeySpec(encryptionKey2, "AES");
-            this.encryptionCipher = Cipher.getInstance(syncEncryptionAlg);
-            this.encryptionCipher.init(Cipher.ENCRYPT_MODE, specKey);
-
-            this.decryptionCipher = Cipher.getInstance(syncEncryptionAlg);
-            this.decryptionCipher.init(Cipher.DECRYPT_MODE, specKey);
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            // AES Algorithm does not exist here
-            logger.error("AES Algorithm does not exist here");
-        }
-        catch (NoSuchPaddingException e)
-        {
-            // AES/ECB/PKCS5 Padding missing
-            logger.error("AES/ECB/PKCS5 Padding missing");
         }
     }
 }
@@ -141,6 +141,34 @@ public class MainServlet extends HttpServlet
                 backendContext.setPatchScript( patchScript );
             }
         }
+        {
+            String loaderThreads = jndi.lookupEnvString("raplaloaderthreads", true);
+            if ( loaderThreads != null && !loaderThreads.isEmpty())
+            {
+                try
+                {
+                    backendContext.setFileLoaderThreads( Integer.parseInt( loaderThreads.trim() ) );
+                }
+                catch (NumberFormatException ex)
+                {
+                    logger.warn("Ignoring raplaloaderthreads " + loaderThreads + ". Number expected.");
+                }
+            }
+        }
+        {
+            String poolSize = jndi.lookupEnvString("raplaconnectionpool", true);
+            if ( poolSize != null && !poolSize.isEmpty())
+            {
+                try
+                {
+                    backendContext.setConnectionPoolSize( Integer.parseInt( poolSize.trim() ) );
+                }
+                catch (NumberFormatException ex)
+                {
+                    logger.warn("Ignoring raplaconnectionpool " + poolSize + ". Number expected.");
+                }
+            }
+        }
         env_raplamail = jndi.lookupResource("mail/Session", false);
         if (env_raplamail != null)
         {
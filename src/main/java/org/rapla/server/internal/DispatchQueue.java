@@ -0,0 +1,203 @@
+package org.rapla.server.internal;
+
+import org.rapla.components.util.metrics.Counter;
+import org.rapla.components.util.metrics.MetricsRegistry;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.UpdateEvent;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the changes that clients store concurrently and dispatches them together, so that they don't wait for the write lock one by one.
+ * The permission checks are done by each caller before the change is queued. The first caller that finds no dispatch in progress takes all
+ * queued changes and passes them to {@link CachableStorageOperator#dispatchAll(List)}, while the other callers wait for their own result.
+ * Changes queued in the meantime are dispatched with the next batch.
+ */
+@Singleton
+public class DispatchQueue
+{
+    static final int MAX_BATCH_SIZE = 100;
+    static final Counter BATCHES = MetricsRegistry.getDefault().counter("rapla_dispatch_batches_total", "Batches of client changes dispatched together");
+
+    private final CachableStorageOperator operator;
+    private final Logger logger;
+    private final Object lock = new Object();
+    private final List<Pending> queue = new ArrayList<>();
+    private boolean dispatching;
+    private long batchCount;
+    private long eventCount;
+
+    static class Pending
+    {
+        final UpdateEvent event;
+        RaplaException exception;
+        boolean done;
+
+        Pending(UpdateEvent event)
+        {
+            this.event = event;
+        }
+    }
+
+    @Inject
+    public DispatchQueue(CachableStorageOperator operator, Logger logger)
+    {
+        this.operator = operator;
+        this.logger = logger.getChildLogger("dispatch");
+        MetricsRegistry.getDefault().gauge("rapla_dispatch_queue_size", "Client changes waiting for the dispatch", this, DispatchQueue::getQueueSize);
+    }
+
+    /** the number of changes that wait for the next batch */
+    public int getQueueSize()
+    {
+        synchronized (lock)
+        {
+            return queue.size();
+        }
+    }
+
+    /** queues the event and returns when it is dispatched. Throws the exception the dispatch of this event failed with. */
+    public void dispatch(UpdateEvent evt) throws RaplaException
+    {
+        final Pending pending = new Pending(evt);
+        boolean interrupted = false;
+        synchronized (lock)
+        {
+            queue.add(pending);
+            while (dispatching && !pending.done)
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    // the event is already queued, so we wait for the result anyway
+                    interrupted = true;
+                }
+            }
+            if (!pending.done)
+            {
+                dispatching = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.done)
+        {
+            dispatchUntilDone(pending);
+        }
+        if (pending.exception != null)
+        {
+            throw pending.exception;
+        }
+    }
+
+    private void dispatchUntilDone(Pending pending)
+    {
+        try
+        {
+            while (true)
+            {
+                final List<Pending> batch;
+                synchronized (lock)
+                {
+                    if (pending.done)
+                    {
+                        return;
+                    }
+                    final int size = Math.min(queue.size(), MAX_BATCH_SIZE);
+                    batch = new ArrayList<>(queue.subList(0, size));
+                    queue.subList(0, size).clear();
+                }
+                try
+                {
+                    dispatchBatch(batch);
+                }
+                finally
+                {
+                    synchronized (lock)
+                    {
+                        for (Pending done : batch)
+                        {
+                            done.done = true;
+                        }
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            synchronized (lock)
+            {
+                dispatching = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void dispatchBatch(List<Pending> batch)
+    {
+        final long start = System.currentTimeMillis();
+        final List<UpdateEvent> events = new ArrayList<>(batch.size());
+        for (Pending pending : batch)
+        {
+            events.add(pending.event);
+            // replaced by the result, unless the dispatch ends with an error
+            pending.exception = new RaplaException("Change could not be dispatched.");
+        }
+        try
+        {
+            final List<RaplaException> result = operator.dispatchAll(events);
+            for (int i = 0; i < batch.size(); i++)
+            {
+                batch.get(i).exception = result.get(i);
+            }
+        }
+        catch (RaplaException ex)
+        {
+            for (Pending pending : batch)
+            {
+                pending.exception = ex;
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            final RaplaException wrapped = new RaplaException(ex);
+            for (Pending pending : batch)
+            {
+                pending.exception = wrapped;
+            }
+        }
+        final long batches;
+        final long total;
+        synchronized (lock)
+        {
+            batches = ++batchCount;
+            total = eventCount += batch.size();
+        }
+        BATCHES.inc();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Dispatched " + batch.size() + " changes in " + (System.currentTimeMillis() - start) + " ms. " + total + " changes in "
+                    + batches + " batches since start.");
+        }
+    }
+
+    /** the average number of changes dispatched together since the start */
+    public double getAverageBatchSize()
+    {
+        synchronized (lock)
+        {
+            return batchCount == 0 ? 0 : (double) eventCount / batchCount;
+        }
+    }
+}
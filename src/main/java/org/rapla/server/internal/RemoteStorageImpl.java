@@ -4,6 +4,8 @@ import org.rapla.RaplaResources;
 import org.rapla.components.util.ParseDateException;
 import org.rapla.components.util.SerializableDateTimeFormat;
 import org.rapla.components.i18n.I18nBundle;
+import org.rapla.components.util.metrics.Histogram;
+import org.rapla.components.util.metrics.MetricsRegistry;
 import org.rapla.entities.DependencyException;
 import org.rapla.entities.Entity;
 import org.rapla.entities.EntityNotFoundException;
@@ -20,9 +22,11 @@ import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.entities.dynamictype.Classifiable;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.storage.EntityReferencer;
 import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.entities.storage.UnresolvableReferenceExcpetion;
 import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.internal.AbstractRaplaLocale;
@@ -52,6 +56,7 @@ import javax.inject.Provider;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Context;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -65,9 +70,13 @@ import java.util.stream.Collectors;
 
 @DefaultImplementation(context = InjectionContext.server, of = RemoteStorage.class) public class RemoteStorageImpl implements RemoteStorage
 {
+    static final String DURATION_METRIC = "rapla_remote_storage_seconds";
+    static final String ENTITIES_METRIC = "rapla_remote_storage_entities_total";
+
     @Inject RemoteSession session;
     @Inject CachableStorageOperator operator;
     @Inject SecurityManager security;
+    @Inject DispatchQueue dispatchQueue;
     @Inject ShutdownService shutdownService;
     @Inject Set<PrePostDispatchProcessor> prePostDispatchProcessors;
 
@@ -86,6 +95,7 @@ import java.util.stream.Collectors;
     @Override
     public UpdateEvent getResourcesSync() throws RaplaException
     {
+        final long start = System.nanoTime();
         User user = checkSessionUser();
         getLogger().debug("A RemoteAuthentificationService wants to get all resource-objects.");
         Date serverTime = operator.getCurrentTimestamp();
@@ -109,6 +119,7 @@ import java.util.stream.Collectors;
             }
         }
         evt.setLastValidated(operator.getLastRefreshed());
+        recordMetrics("getResources", start, evt);
         return evt;
     }
 
@@ -227,7 +238,7 @@ import java.util.stream.Collectors;
                 owners.add(owner);
             }
         }
-        ClassificationFilter[] classificationFilters = null;
+        ClassificationFilter[] classificationFilters = getClassificationFilters(job.getFilters());
         final Promise<AppointmentMapping> mapFutureResult = operator
                 .queryAppointments(user, allocatables,owners, start, end, classificationFilters, annotationQuery);
         AppointmentMapping reservations = operator.waitForWithRaplaException(mapFutureResult, 50000);
@@ -236,6 +247,36 @@ import java.util.stream.Collectors;
         return new ResolvedPromise<>(list);
     }
 
+    /** resolves the transferred filters against the server cache. Filters for types unknown to the server can't match any reservation and are skipped. */
+    private ClassificationFilter[] getClassificationFilters(List<ClassificationFilterImpl> filters)
+    {
+        if (filters == null)
+        {
+            return null;
+        }
+        List<ClassificationFilter> result = new ArrayList<>();
+        for (ClassificationFilterImpl filter : filters)
+        {
+            if (filter == null)
+            {
+                continue;
+            }
+            filter.setResolver(operator);
+            try
+            {
+                filter.getType();
+            }
+            catch (UnresolvableReferenceExcpetion ex)
+            {
+                getLogger().warn("Ignoring reservation filter for unknown type: " + ex.getMessage());
+                continue;
+            }
+            filter.setReadOnly(true);
+            result.add(filter);
+        }
+        return result.toArray(ClassificationFilter.CLASSIFICATIONFILTER_ARRAY);
+    }
+
     private ReservationImpl checkAndMakeReservationsAnonymous(User sessionUser, Entity entity)
     {
         ReservationImpl reservation = (ReservationImpl) entity;
@@ -274,6 +315,7 @@ import java.util.stream.Collectors;
 
     public UpdateEvent store(UpdateEvent event) throws RaplaException
     {
+        final long start = System.nanoTime();
         User sessionUser = checkSessionUser();
         Date currentTimestamp = operator.getCurrentTimestamp();
         Date lastRefreshed = operator.getLastRefreshed();
@@ -303,6 +345,7 @@ import java.util.stream.Collectors;
         {
             processor.postProcess(sessionUser, result);
         }
+        recordMetrics("store", start, event);
         return result;
     }
 
@@ -434,11 +477,13 @@ import java.util.stream.Collectors;
 
     public UpdateEvent refreshSync(String lastSyncedTime) throws RaplaException
     {
+        final long start = System.nanoTime();
         final User user = checkSessionUser();
         try
         {
             Date clientRepoVersion = lastSyncedTime != null ? SerializableDateTimeFormat.INSTANCE.parseTimestamp(lastSyncedTime) : null;
             UpdateEvent event = updateDataManager.createUpdateEvent(user, clientRepoVersion);
+            recordMetrics("refresh", start, event);
             return event;
         }
         catch (ParseDateException e)
@@ -464,6 +509,18 @@ import java.util.stream.Collectors;
         return session.getLogger();
     }
 
+    /** records the duration and the number of transfered entities of the operation */
+    static void recordMetrics(String operation, long startNanos, UpdateEvent evt)
+    {
+        final MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.histogram(DURATION_METRIC, "Duration of the remote storage operations", "operation", operation).recordSince(startNanos);
+        if (evt != null)
+        {
+            registry.counter(ENTITIES_METRIC, "Entities transfered by the remote storage operations", "operation", operation)
+                    .add(evt.countChanges());
+        }
+    }
+
     private User checkSessionUser() throws RaplaException
     {
         return session.checkAndGetUser(request);
@@ -518,7 +575,7 @@ import java.util.stream.Collectors;
                 this.getLogger().debug("Dispatching changes to " + operator.getClass());
 
 
-            operator.dispatch(evt);
+            dispatchQueue.dispatch(evt);
             if (this.getLogger().isDebugEnabled())
                 this.getLogger().debug("Changes dispatched returning result.");
         }
@@ -634,6 +691,35 @@ import java.util.stream.Collectors;
         return promise;
     }
 
+    @Override
+    public Promise<AvailabilityMatrix> getAvailabilityMatrix(AllocatableBindingsRequest job)
+    {
+        String[] allocatableIds = job.getAllocatableIds();
+        List<AppointmentImpl> appointments = job.getAppointments();
+        String[] reservationIds = job.getReservationIds();
+        List<Allocatable> allocatables;
+        try
+        {
+            checkSessionUser();
+            allocatables = resolveAllocatables(allocatableIds);
+        } catch ( RaplaException ex)
+        {
+            return new ResolvedPromise<>(ex);
+        }
+        Collection<Reservation> ignoreList = resolveReservations(reservationIds);
+        List<Appointment> asList = cast(appointments);
+        Promise<AvailabilityMatrix> promise = operator.getAvailabilityMatrix(allocatables, asList, ignoreList).thenApply((matrix) ->
+        {
+            Map<String, long[]> result = new LinkedHashMap<>();
+            for (Map.Entry<ReferenceInfo<Allocatable>, BitSet> entry : matrix.entrySet())
+            {
+                result.put(entry.getKey().getId(), entry.getValue().toLongArray());
+            }
+            return new AvailabilityMatrix(result);
+        });
+        return promise;
+    }
+
     private List<Appointment> cast(List<AppointmentImpl> appointments)
     {
         List<Appointment> result = new ArrayList<>(appointments.size());
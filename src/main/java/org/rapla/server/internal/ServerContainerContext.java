@@ -12,6 +12,8 @@ public class ServerContainerContext
     private Object mailSession;
     Runnable shutdownCommand;
     String patchScript;
+    int fileLoaderThreads;
+    int connectionPoolSize;
 
     private ShutdownService shutdownService = new ShutdownService()
     {
@@ -114,5 +116,27 @@ public class ServerContainerContext
         this.patchScript = patchScript;
     }
 
+    /** number of threads for reading the reservations of the data file on startup, 0 (default) for the single threaded reader */
+    public int getFileLoaderThreads()
+    {
+        return fileLoaderThreads;
+    }
+
+    public void setFileLoaderThreads(int fileLoaderThreads)
+    {
+        this.fileLoaderThreads = fileLoaderThreads;
+    }
+
+    /** maximum number of pooled database connections, 0 (default) if the data source is used directly */
+    public int getConnectionPoolSize()
+    {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(int connectionPoolSize)
+    {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
 
 }
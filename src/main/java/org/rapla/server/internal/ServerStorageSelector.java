@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.rapla.RaplaResources;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.extensionpoints.FunctionFactory;
+import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.logger.Logger;
 import org.rapla.scheduler.CommandScheduler;
@@ -12,12 +13,16 @@ import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.ImportExportManager;
 import org.rapla.storage.dbfile.FileOperator;
 import org.rapla.storage.dbsql.DBOperator;
+import org.rapla.storage.impl.server.ColdReservationStorage;
 import org.rapla.storage.impl.server.ImportExportManagerImpl;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
+import org.rapla.storage.impl.server.StartupImage;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.sql.DataSource;
+import java.io.File;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,6 +30,8 @@ import java.util.Set;
 @Singleton
 public class ServerStorageSelector implements Provider<CachableStorageOperator>
 {
+    public static final String COLD_STORAGE_DATASOURCE = "raplacold";
+    public static final String STARTUP_IMAGE_DATASOURCE = "raplaimage";
     final ServerContainerContext containerContext;
     FileOperator file;
     DBOperator db;
@@ -56,7 +63,11 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
     {
         final String raplafile = containerContext.getMainFilesource();
         final String fileDatasource = raplafile != null ? raplafile : "data/data.xml";
-        return new FileOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, fileDatasource, permissionExtensions);
+        final FileOperator operator = new FileOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, fileDatasource, permissionExtensions);
+        operator.setLoaderThreads(containerContext.getFileLoaderThreads());
+        initColdStorage(operator, new File(new File(fileDatasource).getAbsoluteFile().getParentFile(), "cold"));
+        initStartupImage(operator);
+        return operator;
     }
 
     synchronized private ImportExportManager getImportExport()
@@ -77,7 +88,42 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
     {
         Provider<ImportExportManager> importExportMananger = getImportExportManager();
         final DataSource dbDatasource = containerContext.getMainDbDatasource();
-        return new DBOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, importExportMananger, dbDatasource, permissionExtensions);
+        final DBOperator operator = new DBOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, importExportMananger, dbDatasource, permissionExtensions);
+        operator.setConnectionPoolSize(containerContext.getConnectionPoolSize());
+        // the database has no default location for files, so the cold storage must be configured explicitly
+        initColdStorage(operator, null);
+        initStartupImage(operator);
+        return operator;
+    }
+
+    /** the startup image is only used if the raplaimage datasource is set to the image file */
+    private void initStartupImage(LocalAbstractCachableOperator operator)
+    {
+        final String imageDatasource = containerContext.getFileDatasource(STARTUP_IMAGE_DATASOURCE);
+        if (imageDatasource == null)
+        {
+            return;
+        }
+        operator.setStartupImage(new StartupImage(new File(imageDatasource), logger.getChildLogger("startupimage")));
+    }
+
+    /** the cold storage directory can be set with the raplacold datasource */
+    private void initColdStorage(LocalAbstractCachableOperator operator, File defaultDirectory)
+    {
+        final String coldDatasource = containerContext.getFileDatasource(COLD_STORAGE_DATASOURCE);
+        final File directory = coldDatasource != null ? new File(coldDatasource) : defaultDirectory;
+        if (directory == null)
+        {
+            return;
+        }
+        try
+        {
+            operator.setColdStorage(new ColdReservationStorage(directory, logger.getChildLogger("coldstorage")));
+        }
+        catch (RaplaException ex)
+        {
+            logger.error("Cold storage disabled. " + ex.getMessage(), ex);
+        }
     }
 
 
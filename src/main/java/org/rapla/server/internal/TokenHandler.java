@@ -1,5 +1,7 @@
 package org.rapla.server.internal;
 
+import org.rapla.components.util.metrics.Counter;
+import org.rapla.components.util.metrics.MetricsRegistry;
 import org.rapla.entities.EntityNotFoundException;
 import org.rapla.entities.User;
 import org.rapla.framework.RaplaException;
@@ -18,38 +20,175 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Singleton
 public class TokenHandler
 {
-    SignedToken accessTokenSigner;
-    SignedToken refreshTokenSigner;
     RaplaKeyStorage keyStore;
     StorageOperator operator;
+    // replaced as a whole when the root key changes, so requests can read it without locking
+    private volatile Signers signers;
+    private final Object rotationLock = new Object();
 
     // 1 Hour until the token expires
-    int accessTokenValiditySeconds = 60 * 60;
+    static final int accessTokenValiditySeconds = 60 * 60;
+
+    // access tokens that passed the signature check, so that repeated requests with the same token skip the hmac computation.
+    // Only the user id is cached, the user itself is resolved on every request so user changes and deletions apply immediately
+    static final int MAX_CACHED_TOKENS = 10000;
+    final Counter cacheHits;
+    final Counter cacheMisses;
+
+    static class VerifiedToken
+    {
+        final String userId;
+        final long validUntil;
+
+        VerifiedToken(String userId, long validUntil)
+        {
+            this.userId = userId;
+            this.validUntil = validUntil;
+        }
+    }
+
+    /** the signers for one root key and the access tokens verified with them */
+    static class Signers
+    {
+        final String secretKey;
+        final SignedToken accessTokenSigner;
+        final SignedToken refreshTokenSigner;
+        final Map<String, VerifiedToken> verifiedAccessTokens = new ConcurrentHashMap<>();
+
+        Signers(String secretKey) throws TokenInvalidException
+        {
+            this.secretKey = secretKey;
+            accessTokenSigner = new SignedToken(accessTokenValiditySeconds, secretKey);
+            refreshTokenSigner = new SignedToken(-1, secretKey);
+        }
+    }
 
     @Inject public TokenHandler(RaplaKeyStorage keyStorage, StorageOperator operator) throws RaplaInitializationException
     {
         this.keyStore = keyStorage;
         this.operator = operator;
-        String secretKey = keyStorage.getRootKeyBase64();
         try
         {
-            accessTokenSigner = new SignedToken(accessTokenValiditySeconds, secretKey);
-            refreshTokenSigner = new SignedToken(-1, secretKey);
+            signers = new Signers(keyStorage.getRootKeyBase64());
         }
         catch (Exception e)
         {
             throw new RaplaInitializationException(e.getMessage(), e);
         }
+        final MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.gauge("rapla_access_token_cache_entries", "Verified access tokens in the cache", this, TokenHandler::getAccessTokenCacheSize);
+        cacheHits = registry.counter("rapla_access_token_cache_hits_total", "Access tokens found in the cache");
+        cacheMisses = registry.counter("rapla_access_token_cache_misses_total", "Access tokens verified with the signer");
+    }
 
+    /** @return the signers for the current root key. They are only recreated, with an empty token cache, if the root key has changed. */
+    private Signers getSigners() throws RaplaInvalidTokenException
+    {
+        Signers current = signers;
+        String rootKey = keyStore.getRootKeyBase64();
+        if (rootKey == null || rootKey.equals(current.secretKey))
+        {
+            return current;
+        }
+        synchronized (rotationLock)
+        {
+            current = signers;
+            if (rootKey.equals(current.secretKey))
+            {
+                return current;
+            }
+            try
+            {
+                current = new Signers(rootKey);
+            }
+            catch (TokenInvalidException e)
+            {
+                throw new RaplaInvalidTokenException(e.getMessage());
+            }
+            signers = current;
+            return current;
+        }
     }
 
     public User getUserWithAccessToken(String tokenString) throws EntityNotFoundException, RaplaInvalidTokenException
     {
-        return getUserWithToken(tokenString, accessTokenSigner);
+        if (tokenString == null)
+        {
+            return null;
+        }
+        final Signers current = getSigners();
+        final Map<String, VerifiedToken> verifiedAccessTokens = current.verifiedAccessTokens;
+        Date now = operator.getCurrentTimestamp();
+        VerifiedToken verified = verifiedAccessTokens.get(tokenString);
+        if (verified != null)
+        {
+            if (now.getTime() < verified.validUntil)
+            {
+                cacheHits.inc();
+                return resolveUser(verifiedAccessTokens, tokenString, verified.userId);
+            }
+            verifiedAccessTokens.remove(tokenString);
+        }
+        cacheMisses.inc();
+        final int s = tokenString.indexOf('$');
+        if (s <= 0)
+        {
+            return null;
+        }
+        final String userId = tokenString.substring(s + 1);
+        ValidToken checkToken = checkToken(tokenString, userId, current.accessTokenSigner, now);
+        if (verifiedAccessTokens.size() >= MAX_CACHED_TOKENS)
+        {
+            removeExpiredTokens(verifiedAccessTokens, now.getTime());
+        }
+        verifiedAccessTokens.put(tokenString, new VerifiedToken(userId, checkToken.getValidUntil()));
+        return resolveUser(verifiedAccessTokens, tokenString, userId);
+    }
+
+    private User resolveUser(Map<String, VerifiedToken> verifiedAccessTokens, String tokenString, String userId) throws EntityNotFoundException
+    {
+        try
+        {
+            return operator.resolve(userId, User.class);
+        }
+        catch (EntityNotFoundException ex)
+        {
+            verifiedAccessTokens.remove(tokenString);
+            throw ex;
+        }
+    }
+
+    private void removeExpiredTokens(Map<String, VerifiedToken> verifiedAccessTokens, long now)
+    {
+        verifiedAccessTokens.values().removeIf(token -> token.validUntil <= now);
+        // still full, so we start over instead of tracking the access order
+        if (verifiedAccessTokens.size() >= MAX_CACHED_TOKENS)
+        {
+            verifiedAccessTokens.clear();
+        }
+    }
+
+    public int getAccessTokenCacheSize()
+    {
+        return signers.verifiedAccessTokens.size();
+    }
+
+    /** @return the access tokens found in the cache of all token handlers since the start */
+    public long getAccessTokenCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+    /** @return the access tokens verified by all token handlers since the start */
+    public long getAccessTokenCacheMisses()
+    {
+        return cacheMisses.get();
     }
 
     /*
@@ -72,28 +211,34 @@ public class TokenHandler
         }
 
         final String recvText = tokenString.substring(s + 1);
+        Date now = operator.getCurrentTimestamp();
+        checkToken(tokenString, recvText, tokenSigner, now);
+        String userId = recvText;
+        User user = operator.resolve(userId, User.class);
+        return user;
+
+    }
+
+    private ValidToken checkToken(String tokenString, String recvText, SignedToken tokenSigner, Date now) throws RaplaInvalidTokenException
+    {
         try
         {
-            Date now = operator.getCurrentTimestamp();
             ValidToken checkToken = tokenSigner.checkToken(tokenString, recvText, now);
             if (checkToken == null)
             {
                 throw new RaplaInvalidTokenException(RemoteStorage.USER_WAS_NOT_AUTHENTIFIED + " InvalidToken " + tokenString);
             }
+            return checkToken;
         }
         catch (TokenInvalidException e)
         {
             throw new RaplaInvalidTokenException(RemoteStorage.USER_WAS_NOT_AUTHENTIFIED + " InvalidToken " + tokenString);
         }
-        String userId = recvText;
-        User user = operator.resolve(userId, User.class);
-        return user;
-
     }
 
     public LoginTokens refresh(String refreshToken) throws RaplaException
     {
-        User user = getUserWithToken(refreshToken, refreshTokenSigner);
+        User user = getUserWithToken(refreshToken, getSigners().refreshTokenSigner);
         Collection<String> apiKeys = keyStore.getAPIKeys(user);
         if (!apiKeys.contains(refreshToken))
         {
@@ -111,7 +256,7 @@ public class TokenHandler
         String signedToken = null;
         try
         {
-            signedToken = accessTokenSigner.newToken(userId, now);
+            signedToken = getSigners().accessTokenSigner.newToken(userId, now);
         }
         catch (TokenInvalidException e)
         {
@@ -144,7 +289,7 @@ public class TokenHandler
         String generatedAPIKey;
         try
         {
-            generatedAPIKey = accessTokenSigner.newToken(userId, now);
+            generatedAPIKey = getSigners().accessTokenSigner.newToken(userId, now);
         }
         catch (TokenInvalidException e)
         {
@@ -0,0 +1,51 @@
+package org.rapla.server.provider.resteasy;
+
+import org.rapla.components.util.metrics.MetricsRegistry;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+/** Measures the duration of the rest requests by resource class and method and counts the responses by status class.
+ * The resource method is used instead of the path, so the number of metrics doesn't grow with the ids in the urls. */
+@Provider
+@PreMatching
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter
+{
+    public static final String DURATION_METRIC = "rapla_http_request_seconds";
+    public static final String RESPONSES_METRIC = "rapla_http_responses_total";
+    static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext)
+    {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+    {
+        final Object start = requestContext.getProperty(START_PROPERTY);
+        if (!(start instanceof Long))
+        {
+            return;
+        }
+        final MetricsRegistry registry = MetricsRegistry.getDefault();
+        final Method method = resourceInfo != null ? resourceInfo.getResourceMethod() : null;
+        final Class<?> resourceClass = resourceInfo != null ? resourceInfo.getResourceClass() : null;
+        final String resource = resourceClass != null ? resourceClass.getSimpleName() : "unmatched";
+        final String methodName = method != null ? method.getName() : "unmatched";
+        registry.histogram(DURATION_METRIC, "Duration of the rest requests", "resource", resource, "method", methodName).recordSince((Long) start);
+        final String status = (responseContext.getStatus() / 100) + "xx";
+        registry.counter(RESPONSES_METRIC, "Rest responses by status class", "status", status).inc();
+    }
+}
@@ -4,8 +4,10 @@
 package org.rapla.server.servletpages;
 
 import org.rapla.RaplaSystemInfo;
+import org.rapla.components.util.metrics.MetricsRegistry;
 import org.rapla.server.internal.RaplaStatusEntry;
 import org.rapla.server.internal.ServerContainerContext;
+import org.rapla.server.internal.TokenHandler;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -23,6 +25,7 @@ import java.io.IOException;
 public class RaplaStatusPageGenerator  {
     @Inject RaplaSystemInfo m_i18n;
     @Inject ServerContainerContext serverContainerContext;
+    @Inject TokenHandler tokenHandler;
     @Inject
     public RaplaStatusPageGenerator()
     {
@@ -52,9 +55,54 @@ public class RaplaStatusPageGenerator  {
         String javaversion = System.getProperty("java.version");
      	out.println( "<p>Server running </p>" +  m_i18n.infoText( javaversion));
         out.println( "<hr>" );
+        out.println( "<p>Access token cache: " + tokenHandler.getAccessTokenCacheSize() + " tokens, "
+                + tokenHandler.getAccessTokenCacheHits() + " hits, " + tokenHandler.getAccessTokenCacheMisses() + " misses</p>" );
+        out.println( "<p>Metrics: <a href=\"" + linkPrefix + "server/metrics\">JSON</a> <a href=\"" + linkPrefix + "server/metrics/prometheus\">Prometheus</a></p>" );
         out.println( "</body>" );
         out.println( "</html>" );
         out.close();
     }
 
+    /** the metrics of the server as JSON */
+    @GET
+    @Path("metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void generateMetrics( @Context HttpServletResponse response ) throws IOException {
+        if ( !isEnabled( response))
+        {
+            return;
+        }
+        response.setContentType("application/json; charset=UTF-8");
+        java.io.PrintWriter out = response.getWriter();
+        MetricsRegistry.getDefault().writeJson( out);
+        out.close();
+    }
+
+    /** the metrics of the server in the text format of Prometheus */
+    @GET
+    @Path("metrics/prometheus")
+    @Produces(MediaType.TEXT_PLAIN)
+    public void generatePrometheusMetrics( @Context HttpServletResponse response ) throws IOException {
+        if ( !isEnabled( response))
+        {
+            return;
+        }
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        java.io.PrintWriter out = response.getWriter();
+        MetricsRegistry.getDefault().writePrometheus( out);
+        out.close();
+    }
+
+    private boolean isEnabled( HttpServletResponse response) throws IOException
+    {
+        if ( serverContainerContext.isServiceEnabled( RaplaStatusEntry.ID))
+        {
+            return true;
+        }
+        response.setStatus( 404);
+        java.io.PrintWriter out = response.getWriter();
+        out.println("Server Status disabled");
+        out.close();
+        return false;
+    }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.storage.ExternalSyncEntity;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.framework.RaplaException;
@@ -33,6 +34,9 @@ public interface CachableStorageOperator extends StorageOperator {
     void connect() throws RaplaException;
 	void runWithReadLock(CachableStorageOperatorCommand cmd) throws RaplaException;
     void dispatch(UpdateEvent evt) throws RaplaException;
+    /** dispatches the events one after another with a single acquisition of the write lock. A failing event doesn't affect the others.
+     * @return for each event the exception it failed with or null if it was dispatched */
+    List<RaplaException> dispatchAll(List<UpdateEvent> events) throws RaplaException;
     String authenticate(String username,String password) throws RaplaException;
     void saveData(LocalCache cache, Collection<ExternalSyncEntity> syncEntities, String version) throws RaplaException;
     
@@ -42,6 +46,10 @@ public interface CachableStorageOperator extends StorageOperator {
 
     ReferenceInfo tryResolveExternalId(String externalId);
 
+    /** returns the reservations with the passed {@link org.rapla.entities.domain.RaplaObjectAnnotations#KEY_EXTERNALID}, using the external id index of the storage.
+     * Reservations moved to the cold storage are included. Can be called without a lock. */
+    Collection<ReferenceInfo<Reservation>> getReservationsWithExternalId(String externalId);
+
     TimeZone getTimeZone();
     //DynamicType getUnresolvedAllocatableType(); 
     //DynamicType getAnonymousReservationType();
@@ -69,6 +77,15 @@ public interface CachableStorageOperator extends StorageOperator {
     <T> T  waitForWithRaplaException(Promise<T> promise, int millis) throws RaplaException;
 
     Set<ReferenceInfo<Allocatable>> filterAllocatablesWithNonTemplateReservations(Set<ReferenceInfo<Allocatable>> allocatables);
+
+    /** moves reservations that ended before the horizon out of the cache into the cold storage, if one is configured.
+     * @return the number of moved reservations */
+    int moveToColdStorage(Date horizon) throws RaplaException;
+
+    /** removes all reservations that ended before maxEnd from the cache, the persistent storage and the cold storage in a single update.
+     * Templates and reservations without an end are kept.
+     * @return the number of removed reservations */
+    int purgeReservations(Date maxEnd) throws RaplaException;
 }
 
 
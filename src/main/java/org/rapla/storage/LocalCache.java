@@ -30,6 +30,7 @@ import org.rapla.entities.dynamictype.internal.ClassificationImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.internal.CategoryImpl;
 import org.rapla.entities.internal.UserImpl;
+import org.rapla.entities.storage.EntityReferencer;
 import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ParentEntity;
 import org.rapla.entities.storage.ReferenceInfo;
@@ -57,6 +58,10 @@ public class LocalCache implements EntityResolver
     Map<String, AllocatableImpl> resources;
     Map<String, ReservationImpl> reservations;
     Map<ReferenceInfo<Allocatable>, GraphNode> graph = new ConcurrentHashMap<>();
+    // reverse index of the references. Maps each referenced entity to the reservations, resources, users, types, categories and preferences that reference it
+    Map<ReferenceInfo, Set<ReferenceInfo>> referers = new ConcurrentHashMap<>();
+    // the references of each referer when it was put into the cache, so that they can be removed from the index even if the referer was changed in the meantime
+    Map<ReferenceInfo, Collection<ReferenceInfo>> references = new ConcurrentHashMap<>();
 
     private String clientUserId;
     private final PermissionController permissionController;
@@ -103,8 +108,13 @@ public class LocalCache implements EntityResolver
     {
         String entityId = info.getId();
         Class<? extends Entity> typeClass = info.getType();
+        if (permissionController != null)
+        {
+            permissionController.invalidate(info);
+        }
         boolean bResult = true;
         bResult = entities.remove(entityId) != null;
+        removeReferences(info);
         Map<String, ? extends Entity> entitySet = getMap(typeClass);
         if (entitySet != null)
         {
@@ -187,6 +197,10 @@ public class LocalCache implements EntityResolver
         {
             updateDependencies(entity);
         }
+        if (permissionController != null)
+        {
+            permissionController.invalidate(entity.getReference());
+        }
         // first remove the old children from the map
         Entity oldEntity = entities.get(entity);
         if (oldEntity != null && oldEntity instanceof ParentEntity)
@@ -199,6 +213,11 @@ public class LocalCache implements EntityResolver
         }
 
         entities.put(entityId, entity);
+        if (isReferer(typeClass))
+        {
+            removeReferences(entity.getReference());
+            addReferences(entity);
+        }
         Map<String, Entity> entitySet = getMap(typeClass);
         if (entitySet != null)
         {
@@ -273,6 +292,10 @@ public class LocalCache implements EntityResolver
 
     public void clearAll()
     {
+        if (permissionController != null)
+        {
+            permissionController.clearCache();
+        }
         passwords.clear();
         reservations.clear();
         users.clear();
@@ -283,6 +306,119 @@ public class LocalCache implements EntityResolver
         disabledConflictApp2.clear();
         conflictLastChanged.clear();
         graph.clear();
+        referers.clear();
+        references.clear();
+    }
+
+    /** the types that are kept in the reverse reference index as referers. */
+    static boolean isReferer(Class<? extends Entity> type)
+    {
+        return type == Reservation.class || type == Allocatable.class || type == User.class || type == DynamicType.class || type == Category.class
+                || type == Preferences.class;
+    }
+
+    private void addReferences(Entity entity)
+    {
+        final ReferenceInfo referer = entity.getReference();
+        final Collection<ReferenceInfo> referenced = new HashSet<>();
+        for (ReferenceInfo info : ((EntityReferencer) entity).getReferenceInfo())
+        {
+            if (info != null && referenced.add(info))
+            {
+                referers.computeIfAbsent(info, (k) -> ConcurrentHashMap.newKeySet()).add(referer);
+            }
+        }
+        if (!referenced.isEmpty())
+        {
+            references.put(referer, referenced);
+        }
+    }
+
+    private void removeReferences(ReferenceInfo referer)
+    {
+        final Collection<ReferenceInfo> referenced = references.remove(referer);
+        if (referenced == null)
+        {
+            return;
+        }
+        for (ReferenceInfo info : referenced)
+        {
+            referers.computeIfPresent(info, (k, set) -> {
+                set.remove(referer);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    /**
+     * returns the reservations, resources, users, types, categories and preferences in the cache that reference the passed entity.
+     * The entity itself is not included. The references of the referers found in the index are checked again, because some entities share
+     * parts with their clones (e.g. the calendar configurations in the preferences), so a change of a clone can remove a reference without a put.
+     */
+    public Collection<Entity> getReferers(ReferenceInfo referenced)
+    {
+        final Set<ReferenceInfo> refererIds = referers.get(referenced);
+        if (refererIds == null)
+        {
+            return Collections.emptyList();
+        }
+        final List<Entity> result = new ArrayList<>(refererIds.size());
+        for (ReferenceInfo referer : refererIds)
+        {
+            final Entity entity = entities.get(referer.getId());
+            if (entity != null && !referer.equals(referenced) && isReferencing(entity, referenced))
+            {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isReferencing(Entity entity, ReferenceInfo referenced)
+    {
+        for (ReferenceInfo info : ((EntityReferencer) entity).getReferenceInfo())
+        {
+            if (referenced.equals(info))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * compares the reverse reference index with the references of the entities in the cache.
+     * @return a description of each difference, an empty list if the index is consistent
+     */
+    public List<String> checkReferenceIndex()
+    {
+        final Map<ReferenceInfo, Set<ReferenceInfo>> expected = new HashMap<>();
+        for (Entity entity : entities.values())
+        {
+            if (isReferer(entity.getTypeClass()))
+            {
+                for (ReferenceInfo info : ((EntityReferencer) entity).getReferenceInfo())
+                {
+                    if (info != null)
+                    {
+                        expected.computeIfAbsent(info, (k) -> new HashSet<>()).add(entity.getReference());
+                    }
+                }
+            }
+        }
+        final List<String> differences = new ArrayList<>();
+        final Set<ReferenceInfo> referenced = new HashSet<>(expected.keySet());
+        referenced.addAll(referers.keySet());
+        for (ReferenceInfo info : referenced)
+        {
+            final Set<ReferenceInfo> expectedReferers = expected.getOrDefault(info, Collections.emptySet());
+            final Set<ReferenceInfo> indexedReferers = referers.getOrDefault(info, Collections.emptySet());
+            if (!expectedReferers.equals(indexedReferers))
+            {
+                differences.add(info + " is referenced by " + expectedReferers + " but the index contains " + indexedReferers);
+            }
+        }
+        return differences;
     }
 
     public CategoryImpl getSuperCategory()
@@ -31,9 +31,15 @@ import org.rapla.framework.RaplaException;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Singleton
@@ -41,6 +47,13 @@ public class PermissionController
 {
     private final Set<PermissionExtension> permissionExtensions;
     StorageOperator operator;
+    // group membership per user id, including the parent groups
+    private final Map<String, UserGroups> userGroupsCache = new ConcurrentHashMap<>();
+    // maps a group id to its bit in the UserGroups bitset
+    private final Map<String, Integer> groupIndex = new ConcurrentHashMap<>();
+    private final AtomicInteger nextGroupIndex = new AtomicInteger();
+    // effective access per permission container id
+    private final Map<String, ContainerAccess> accessCache = new ConcurrentHashMap<>();
 
     @Inject
     public PermissionController(Set<PermissionExtension> permissionExtensions, StorageOperator operator)
@@ -110,10 +123,175 @@ public class PermissionController
         return false;
     }
 
+    /** the groups of the user and all their parent groups as a bitset, so that users with the same groups can share cached permission results */
+    static final class UserGroups
+    {
+        final User user;
+        final Collection<String> groupIds;
+        final BitSet groups;
+
+        UserGroups(User user, Collection<String> groupIds, BitSet groups)
+        {
+            this.user = user;
+            this.groupIds = groupIds;
+            this.groups = groups;
+        }
+    }
+
+    /** cached access results of one permission container. The results are only valid for the container instance, a changed container is a new instance. */
+    static final class ContainerAccess
+    {
+        final Entity container;
+        // true if a permission of the container is given to a single user, so the user must be part of the key
+        final boolean userDependent;
+        final Map<AccessKey, Boolean> results = new ConcurrentHashMap<>();
+
+        ContainerAccess(Entity container, boolean userDependent)
+        {
+            this.container = container;
+            this.userDependent = userDependent;
+        }
+    }
+
+    static final class AccessKey
+    {
+        final BitSet groups;
+        final String userId;
+        final AccessLevel accessLevel;
+
+        AccessKey(BitSet groups, String userId, AccessLevel accessLevel)
+        {
+            this.groups = groups;
+            this.userId = userId;
+            this.accessLevel = accessLevel;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof AccessKey))
+            {
+                return false;
+            }
+            AccessKey other = (AccessKey) obj;
+            return accessLevel == other.accessLevel && groups.equals(other.groups) && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(groups, userId, accessLevel);
+        }
+    }
+
+    /** returns the ids of the groups of the user including all parent groups. The result is cached until the user or a category changes. */
+    public Collection<String> getGroupsIncludingParents(User user)
+    {
+        return getUserGroups(user).groupIds;
+    }
+
+    private UserGroups getUserGroups(User user)
+    {
+        final String userId = user.getId();
+        UserGroups userGroups = userId != null ? userGroupsCache.get(userId) : null;
+        if (userGroups != null && userGroups.user == user)
+        {
+            return userGroups;
+        }
+        final Collection<String> groupIds = Collections.unmodifiableCollection(UserImpl.getGroupsIncludingParents(user));
+        final BitSet groups = new BitSet();
+        for (String groupId : groupIds)
+        {
+            groups.set(groupIndex.computeIfAbsent(groupId, (id) -> nextGroupIndex.getAndIncrement()));
+        }
+        userGroups = new UserGroups(user, groupIds, groups);
+        // only read only users can be cached, editable users can still change their groups
+        if (userId != null && user.isReadOnly())
+        {
+            userGroupsCache.put(userId, userGroups);
+        }
+        return userGroups;
+    }
+
+    /** removes the cached permission results for the entity. Must be called when an entity is stored or removed. */
+    public void invalidate(ReferenceInfo<?> reference)
+    {
+        final Class<? extends Entity> typeClass = reference.getType();
+        if (typeClass == Category.class)
+        {
+            clearCache();
+        }
+        else if (typeClass == User.class)
+        {
+            userGroupsCache.remove(reference.getId());
+        }
+        else if (typeClass == Allocatable.class || typeClass == Reservation.class)
+        {
+            accessCache.remove(reference.getId());
+        }
+    }
+
+    public void clearCache()
+    {
+        userGroupsCache.clear();
+        accessCache.clear();
+    }
+
     /**
      * Access method
      */
     private boolean hasAccess(Entity entity, User user, Permission.AccessLevel accessLevel)
+    {
+        if (user == null || user.isAdmin() || !isAccessCacheable(entity, user))
+        {
+            return hasAccessUncached(entity, user, accessLevel);
+        }
+        final String id = entity.getId();
+        ContainerAccess containerAccess = accessCache.get(id);
+        if (containerAccess == null || containerAccess.container != entity)
+        {
+            containerAccess = new ContainerAccess(entity, hasUserPermissions((PermissionContainer) entity));
+            accessCache.put(id, containerAccess);
+        }
+        final BitSet groups = getUserGroups(user).groups;
+        final AccessKey key = new AccessKey(groups, containerAccess.userDependent ? user.getId() : null, accessLevel);
+        Boolean result = containerAccess.results.get(key);
+        if (result == null)
+        {
+            result = hasAccessUncached(entity, user, accessLevel);
+            containerAccess.results.put(key, result);
+        }
+        return result;
+    }
+
+    /** only unchanged allocatables and reservations are cached. Owners are not cached, because they get access regardless of their groups */
+    private boolean isAccessCacheable(Entity entity, User user)
+    {
+        final Class<? extends Entity> typeClass = entity.getTypeClass();
+        if (typeClass != Allocatable.class && typeClass != Reservation.class)
+        {
+            return false;
+        }
+        if (!entity.isReadOnly() || entity.getId() == null || !user.isReadOnly())
+        {
+            return false;
+        }
+        return !isOwner((Ownable) entity, user);
+    }
+
+    private static boolean hasUserPermissions(PermissionContainer container)
+    {
+        for (Permission permission : container.getPermissionList())
+        {
+            if (permission.getUserId() != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasAccessUncached(Entity entity, User user, Permission.AccessLevel accessLevel)
     {
         for (PermissionExtension permissionExtension : permissionExtensions)
         {
@@ -300,7 +478,7 @@ public class PermissionController
 
     public boolean hasPermissionToAllocate(User user, Allocatable a)
     {
-        Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
+        Collection<String> groups = getGroupsIncludingParents(user);
         final ReferenceInfo<User> ownerRef = a.getOwnerRef();
         if ( user != null && ownerRef != null && user.getReference().equals(ownerRef))
         {
@@ -377,7 +555,7 @@ public class PermissionController
         {
             return true;
         }
-        Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
+        Collection<String> groups = getGroupsIncludingParents(user);
 
         Date start = appointment.getStart();
         Date end = appointment.getMaxEnd();
@@ -477,7 +655,7 @@ public class PermissionController
         if (user == null || user.isAdmin())
             return true;
 
-        Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
+        Collection<String> groups = getGroupsIncludingParents(user);
         for (Permission p : permissions)
         {
             for (AccessLevel accessLevel : accessLevels)
@@ -41,6 +41,7 @@ import org.rapla.facade.PeriodModel;
 import org.rapla.framework.RaplaException;
 import org.rapla.scheduler.Promise;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -139,6 +140,11 @@ public interface StorageOperator extends EntityResolver {
     
     Promise<Map<ReferenceInfo<Allocatable>, Map<Appointment,Collection<Appointment>>>> getAllAllocatableBindings(Collection<Allocatable> allocatables, Collection<Appointment> appointments, Collection<Reservation> ignoreList);
 
+    /** calculates for each allocatable which of the passed appointments can't be booked, because the allocatable is already booked by another reservation.
+     * @return a bitset for each allocatable that is busy for at least one appointment. Bit i is set if the allocatable is busy at the time of appointments.get(i).
+     * Allocatables that are free for all appointments are not contained in the map. */
+    Promise<Map<ReferenceInfo<Allocatable>, BitSet>> getAvailabilityMatrix(Collection<Allocatable> allocatables, List<Appointment> appointments, Collection<Reservation> ignoreList);
+
     Promise<Date> getNextAllocatableDate(Collection<Allocatable> allocatables,Appointment appointment, Collection<Reservation> ignoreList, Integer worktimeStartMinutes,Integer worktimeEndMinutes, Integer[] excludedDays, Integer rowsPerHour);
     
     Promise<Collection<Conflict>> getConflicts(User user);
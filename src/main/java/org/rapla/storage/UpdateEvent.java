@@ -428,6 +428,12 @@ public class UpdateEvent
         this.timezoneOffset = timezoneOffset;
     }
 
+    /** the number of stored and removed entities */
+    public long countChanges()
+    {
+        return getObjectStream().count() + ((removeSet != null) ? removeSet.size() : 0);
+    }
+
     public String getInfoString()
     {
         return getUserId() + " made " + getObjectStream( ).count() + " stores " + ((removeSet!=null)? removeSet.size() : 0) + " removes";
@@ -28,6 +28,7 @@ import org.rapla.entities.configuration.Preferences;
 import org.rapla.entities.configuration.RaplaConfiguration;
 import org.rapla.entities.domain.Permission;
 import org.rapla.entities.domain.PermissionContainer;
+import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.dynamictype.Attribute;
 import org.rapla.entities.dynamictype.AttributeType;
@@ -58,6 +59,7 @@ import org.rapla.storage.impl.EntityStore;
 import org.rapla.storage.impl.RaplaLock;
 import org.rapla.storage.impl.server.EntityHistory;
 import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
+import org.rapla.storage.impl.server.StartupImage;
 import org.rapla.storage.xml.IOContext;
 import org.rapla.storage.xml.RaplaDefaultXMLContext;
 import org.rapla.storage.xml.RaplaMainReader;
@@ -75,11 +77,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 /** Use this Operator to keep the data stored in an XML-File.
  @see AbstractCachableOperator
@@ -93,12 +99,19 @@ final public class FileOperator extends LocalAbstractCachableOperator
 
     static FileIO DefaultFileIO = new DefaultFileIO();
     FileIO FileIO = DefaultFileIO;
+    int loaderThreads = 0;
 
     public void setFileIO(FileIO fileIO)
     {
         FileIO = fileIO;
     }
 
+    /** reads the reservations of the data file with the given number of threads, see {@link ParallelXMLLoader}. 0 uses the sax reader. */
+    public void setLoaderThreads(int loaderThreads)
+    {
+        this.loaderThreads = loaderThreads;
+    }
+
     static public void setDefaultFileIO(FileIO fileIO)
     {
         DefaultFileIO = fileIO;
@@ -198,7 +211,10 @@ final public class FileOperator extends LocalAbstractCachableOperator
             cache.clearAll();
             externalSyncEntities.clear();
             addInternalTypes(cache);
-            loadData(cache);
+            if (!loadStartupImage())
+            {
+                loadData(cache);
+            }
             changeStatus(InitStatus.Loaded);
             initIndizes();
             changeStatus(InitStatus.Connected);
@@ -228,6 +244,79 @@ final public class FileOperator extends LocalAbstractCachableOperator
         externalSyncEntities.clear();
     }
 
+    /** there is no journal of the changes in the file, so the image is only used if the content of the file didn't change since it was written */
+    @Override
+    protected String getStartupImageSource()
+    {
+        final CRC32 crc = new CRC32();
+        long length = 0;
+        final InputSource source;
+        try
+        {
+            source = FileIO.getInputSource(storageURL);
+            if (source.getByteStream() != null)
+            {
+                try (InputStream in = source.getByteStream())
+                {
+                    final byte[] buffer = new byte[1 << 16];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0)
+                    {
+                        crc.update(buffer, 0, read);
+                        length += read;
+                    }
+                }
+            }
+            else
+            {
+                try (Reader in = source.getCharacterStream())
+                {
+                    final char[] buffer = new char[1 << 16];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0)
+                    {
+                        crc.update(new String(buffer, 0, read).getBytes(StandardCharsets.UTF_8));
+                        length += read;
+                    }
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            getLogger().warn("Can't read " + getURL() + " for the startup image: " + ex.getMessage());
+            return null;
+        }
+        return getURL() + ";" + length + ";" + Long.toHexString(crc.getValue());
+    }
+
+    @Override
+    protected StartupImage.Content createStartupImageContent()
+    {
+        final StartupImage.Content content = super.createStartupImageContent();
+        for (ExternalSyncEntity entity : getAllExternalSyncEntities())
+        {
+            content.getImportExports().add((ExternalSyncEntityImpl) entity);
+        }
+        return content;
+    }
+
+    private boolean loadStartupImage() throws RaplaException
+    {
+        Date lastUpdated = getCurrentTimestamp();
+        setLastRefreshed(lastUpdated);
+        setConnectStart(lastUpdated);
+        final StartupImage.Content content = loadStartupImage(null);
+        if (content == null)
+        {
+            return false;
+        }
+        for (ExternalSyncEntityImpl entity : content.getImportExports())
+        {
+            insertIntoImportExportCache(entity);
+        }
+        return true;
+    }
+
     @Override
     protected Object getRefreshData()
     {
@@ -267,7 +356,15 @@ final public class FileOperator extends LocalAbstractCachableOperator
         boolean isLowerThen1_2 = false;
         try
         {
-            parseData(contentHandler);
+            if (loaderThreads > 0)
+            {
+                ParallelXMLLoader loader = new ParallelXMLLoader(getLogger().getChildLogger("reading"), loaderThreads);
+                loader.load(FileIO.getInputSource(storageURL), inputContext, contentHandler);
+            }
+            else
+            {
+                parseData(contentHandler);
+            }
             isLowerThen1_2 = inputContext.lookup(RaplaMainReader.VERSION) < 1.2;
         }
         catch (FileNotFoundException ex)
@@ -443,49 +540,137 @@ final public class FileOperator extends LocalAbstractCachableOperator
 
     public void dispatch(final UpdateEvent evt) throws RaplaException
     {
+        final long start = System.nanoTime();
         final RaplaLock.WriteLock writeLock = writeLockIfLoaded("dispatching " +  evt.getInfoString());
         try
         {
-            preprocessEventStorage(evt);
-            Date since = getCurrentTimestamp();//evt.getLastValidated();
-            updateHistory(evt);
-            Date until = getCurrentTimestamp();
-            // this since is for the server and used to check if an entity is new created in this write transaction so set it to the current timestamp
-            // the since for the client will be used later when requesting the update event
-            // call of update must be first to update the cache.
-            // then saveData() saves all the data in the cache
-            final Collection<ReferenceInfo> removeIds = evt.getRemoveIds();
-            final List<PreferencePatch> preferencePatches = evt.getPreferencePatches();
-            final Collection<Entity> storeObjects = new ArrayList<>(evt.getStoreObjects());
-            for (Iterator<Entity> iterator = storeObjects.iterator(); iterator.hasNext();)
+            final User lastChangedBy = validateEvent(evt);
+            applyEvent(evt, lastChangedBy);
+            List<ExternalSyncEntity> externalSyncEntityList = getAllExternalSyncEntities();
+            saveData(cache, externalSyncEntityList,null, includeIds);
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+            DISPATCH_DURATION.recordSince(start);
+            DISPATCHED_CHANGES.inc();
+        }
+    }
+
+    /**
+     * updates the cache with each event and writes the file only once for all events.
+     * Each event is validated before it changes the cache, so a rejected event leaves the cache as it was.
+     * An event that fails after its validation may leave the cache changed in part, as it would with {@link #dispatch(UpdateEvent)}.
+     * It doesn't affect the other events of the batch: the events applied before and after it are saved and reported as successful.
+     */
+    @Override
+    public List<RaplaException> dispatchAll(List<UpdateEvent> events) throws RaplaException
+    {
+        List<RaplaException> result = new ArrayList<>(events.size());
+        final long start = System.nanoTime();
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded("dispatching " + events.size() + " events");
+        try
+        {
+            boolean changed = false;
+            for (UpdateEvent evt : events)
             {
-                Entity entity = iterator.next();
-                if(entity instanceof ExternalSyncEntity)
+                final User lastChangedBy;
+                try
                 {
-                    iterator.remove();
-                    ExternalSyncEntity cast = (ExternalSyncEntity) entity;
-                    insertIntoImportExportCache(cast);
+                    lastChangedBy = validateEvent(evt);
+                }
+                catch (RaplaException ex)
+                {
+                    result.add(ex);
+                    continue;
+                }
+                catch (RuntimeException ex)
+                {
+                    result.add(new RaplaException(ex));
+                    continue;
+                }
+                try
+                {
+                    applyEvent(evt, lastChangedBy);
+                    result.add(null);
+                }
+                catch (RaplaException | RuntimeException ex)
+                {
+                    getLogger().error("Could not apply validated event " + evt.getInfoString() + ". The cache may contain parts of it.", ex);
+                    result.add(ex instanceof RaplaException ? (RaplaException) ex : new RaplaException(ex));
                 }
+                // a failed event may have changed the cache as well, that part is saved with the others as the next dispatch would do
+                changed = true;
             }
-            Set<ReferenceInfo<ExternalSyncEntity>> removedImports = new HashSet<>();
-            for (Iterator<ReferenceInfo> iterator = removeIds.iterator(); iterator.hasNext();)
+            if (changed)
             {
-                ReferenceInfo referenceInfo = iterator.next();
-                if(referenceInfo.getType() == ExternalSyncEntity.class)
+                try
                 {
-                    iterator.remove();
-                    removedImports.add( referenceInfo);
+                    saveData(cache, getAllExternalSyncEntities(), null, includeIds);
+                }
+                catch (RaplaException ex)
+                {
+                    for (int i = 0; i < result.size(); i++)
+                    {
+                        if (result.get(i) == null)
+                        {
+                            result.set(i, ex);
+                        }
+                    }
                 }
             }
-            removeFromImportExportCache(removedImports);
-            refresh(since, until, storeObjects, preferencePatches, removeIds);
-            List<ExternalSyncEntity> externalSyncEntityList = getAllExternalSyncEntities();
-            saveData(cache, externalSyncEntityList,null, includeIds);
         }
         finally
         {
             lockManager.unlock(writeLock);
+            DISPATCH_DURATION.recordSince(start);
+            DISPATCHED_CHANGES.add(events.size());
         }
+        return result;
+    }
+
+    /** runs the checks that can reject the event before the cache is changed and returns the user that changed the entities */
+    private User validateEvent(final UpdateEvent evt) throws RaplaException
+    {
+        preprocessEventStorage(evt);
+        String userId = evt.getUserId();
+        return ( userId != null) ?  resolve(userId,User.class) : null;
+    }
+
+    private void applyEvent(final UpdateEvent evt, User lastChangedBy) throws RaplaException
+    {
+        Date since = getCurrentTimestamp();//evt.getLastValidated();
+        updateHistory(evt, lastChangedBy);
+        Date until = getCurrentTimestamp();
+        // this since is for the server and used to check if an entity is new created in this write transaction so set it to the current timestamp
+        // the since for the client will be used later when requesting the update event
+        // call of update must be first to update the cache.
+        // then saveData() saves all the data in the cache
+        final Collection<ReferenceInfo> removeIds = evt.getRemoveIds();
+        final List<PreferencePatch> preferencePatches = evt.getPreferencePatches();
+        final Collection<Entity> storeObjects = new ArrayList<>(evt.getStoreObjects());
+        for (Iterator<Entity> iterator = storeObjects.iterator(); iterator.hasNext();)
+        {
+            Entity entity = iterator.next();
+            if(entity instanceof ExternalSyncEntity)
+            {
+                iterator.remove();
+                ExternalSyncEntity cast = (ExternalSyncEntity) entity;
+                insertIntoImportExportCache(cast);
+            }
+        }
+        Set<ReferenceInfo<ExternalSyncEntity>> removedImports = new HashSet<>();
+        for (Iterator<ReferenceInfo> iterator = removeIds.iterator(); iterator.hasNext();)
+        {
+            ReferenceInfo referenceInfo = iterator.next();
+            if(referenceInfo.getType() == ExternalSyncEntity.class)
+            {
+                iterator.remove();
+                removedImports.add( referenceInfo);
+            }
+        }
+        removeFromImportExportCache(removedImports);
+        refresh(since, until, storeObjects, preferencePatches, removeIds);
     }
 
     @Override
@@ -580,9 +765,7 @@ final public class FileOperator extends LocalAbstractCachableOperator
         }
     }
 
-    private void updateHistory(UpdateEvent evt) throws RaplaException {
-        String userId = evt.getUserId();
-        User lastChangedBy =  ( userId != null) ?  resolve(userId,User.class) : null;
+    private void updateHistory(UpdateEvent evt, User lastChangedBy) throws RaplaException {
         try {
             Thread.sleep(1);
         } catch (InterruptedException e1) {
@@ -631,6 +814,14 @@ final public class FileOperator extends LocalAbstractCachableOperator
     }
 
 
+    @Override
+    protected void removeColdReservationsFromDatabase(Collection<ReferenceInfo<Reservation>> reservations) throws RaplaException
+    {
+        super.removeColdReservationsFromDatabase(reservations);
+        // the write lock is already held by moveToColdStorage
+        saveData(cache, getAllExternalSyncEntities(), null, includeIds);
+    }
+
     synchronized public void saveData() throws RaplaException
     {
         final RaplaLock.WriteLock writeLock = writeLockIfLoaded("Saving data");
@@ -0,0 +1,436 @@
+package org.rapla.storage.dbfile;
+
+import org.rapla.components.util.xml.RaplaSAXAttributes;
+import org.rapla.components.util.xml.RaplaSAXHandler;
+import org.rapla.components.util.xml.RaplaSAXParseException;
+import org.rapla.entities.Entity;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.impl.EntityStore;
+import org.rapla.storage.xml.IOContext;
+import org.rapla.storage.xml.Namespaces;
+import org.rapla.storage.xml.RaplaDefaultXMLContext;
+import org.rapla.storage.xml.RaplaMainReader;
+import org.xml.sax.InputSource;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Reads a rapla data file with a StAX pull parser and parses the reservations in worker threads.
+ * <p>
+ * The top level elements of the data file are split into chunks. Everything before the first reservation (categories, types, users, resources, ...)
+ * is read on the calling thread, so the reservations can resolve it. The reservations are recorded in batches and each batch is read by a worker
+ * into its own {@link EntityStore}. The elements following the first reservation are replayed on the calling thread after the workers are done,
+ * in the order of the file. The worker stores are merged into the main store in file order, so the result is the same as with the sax reader.
+ * </p>
+ */
+public class ParallelXMLLoader
+{
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final XMLInputFactory factory = createFactory();
+
+    private final Logger logger;
+    private final int threads;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public ParallelXMLLoader(Logger logger, int threads)
+    {
+        this.logger = logger;
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    private static XMLInputFactory createFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        return factory;
+    }
+
+    /** reads the source into the {@link EntityStore} of the input context. The mainHandler must be the {@link RaplaMainReader} of that context */
+    public void load(InputSource source, RaplaDefaultXMLContext inputContext, RaplaSAXHandler mainHandler) throws RaplaException, IOException
+    {
+        final EntityStore mainStore = inputContext.lookup(EntityStore.class);
+        final IOContext ioContext = new IOContext();
+        final List<Future<EntityStore>> batches = new ArrayList<>();
+        final Recorder deferred = new Recorder();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "rapla-xml-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        XMLStreamReader reader = null;
+        try
+        {
+            reader = createReader(source);
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT)
+            {
+            }
+            if (!reader.isStartElement())
+            {
+                throw new RaplaException("No data found in file");
+            }
+            final String rootNamespace = getNamespace(reader);
+            final String rootName = reader.getLocalName();
+            final Map<String, String> rootAttributes = getAttributes(reader);
+            handleStart(mainHandler, rootNamespace, rootName, rootAttributes, reader.getLocation());
+            Recorder batch = null;
+            int reservationCount = 0;
+            while (reader.hasNext())
+            {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT)
+                {
+                    break;
+                }
+                // characters between the top level elements are ignored by the main reader
+                if (event != XMLStreamConstants.START_ELEMENT)
+                {
+                    continue;
+                }
+                final boolean reservation = Namespaces.RAPLA_NS.equals(getNamespace(reader)) && "reservation".equals(reader.getLocalName());
+                if (reservation)
+                {
+                    if (batches.isEmpty() && batch == null)
+                    {
+                        prepareSharedEntities(mainStore);
+                    }
+                    if (batch == null)
+                    {
+                        batch = new Recorder();
+                    }
+                    copyElement(reader, batch);
+                    reservationCount++;
+                    if (reservationCount % batchSize == 0)
+                    {
+                        batches.add(submit(executor, ioContext, inputContext, mainStore, batch, rootNamespace, rootName, rootAttributes));
+                        batch = null;
+                    }
+                }
+                else if (batch != null || !batches.isEmpty())
+                {
+                    copyElement(reader, deferred);
+                }
+                else
+                {
+                    copyElement(reader, mainHandler);
+                }
+            }
+            if (batch != null)
+            {
+                batches.add(submit(executor, ioContext, inputContext, mainStore, batch, rootNamespace, rootName, rootAttributes));
+            }
+            for (Future<EntityStore> future : batches)
+            {
+                final EntityStore workerStore = getResult(future);
+                for (Entity entity : workerStore.getList())
+                {
+                    mainStore.put(entity);
+                }
+            }
+            deferred.replay(mainHandler);
+            handleEnd(mainHandler, rootNamespace, rootName, reader.getLocation());
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Read " + reservationCount + " reservations in " + batches.size() + " batches with " + threads + " threads");
+            }
+        }
+        catch (XMLStreamException ex)
+        {
+            throw createException(ex.getLocation(), ex.getMessage(), ex);
+        }
+        finally
+        {
+            executor.shutdownNow();
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (XMLStreamException ex)
+                {
+                    logger.warn("Can't close xml reader " + ex.getMessage());
+                }
+            }
+            // the stax reader doesn't close the underlying stream
+            if (source.getCharacterStream() != null)
+            {
+                source.getCharacterStream().close();
+            }
+            else if (source.getByteStream() != null)
+            {
+                source.getByteStream().close();
+            }
+        }
+    }
+
+    private XMLStreamReader createReader(InputSource source) throws XMLStreamException, IOException
+    {
+        if (source.getCharacterStream() != null)
+        {
+            return factory.createXMLStreamReader(source.getCharacterStream());
+        }
+        if (source.getByteStream() != null)
+        {
+            return source.getEncoding() != null ?
+                    factory.createXMLStreamReader(source.getByteStream(), source.getEncoding()) :
+                    factory.createXMLStreamReader(source.getByteStream());
+        }
+        if (source.getSystemId() != null)
+        {
+            return factory.createXMLStreamReader(source.getSystemId(), new URL(source.getSystemId()).openStream());
+        }
+        throw new IOException("Empty input source");
+    }
+
+    /** the workers create classifications of the already read types concurrently, so the lazy attribute index must exist before */
+    private void prepareSharedEntities(EntityStore mainStore)
+    {
+        for (Entity entity : mainStore.getList())
+        {
+            if (entity instanceof DynamicType)
+            {
+                ((DynamicType) entity).getAttribute("");
+            }
+        }
+    }
+
+    private Future<EntityStore> submit(ExecutorService executor, IOContext ioContext, RaplaDefaultXMLContext inputContext, EntityStore mainStore,
+            Recorder batch, String rootNamespace, String rootName, Map<String, String> rootAttributes)
+    {
+        return executor.submit(() -> {
+            EntityStore workerStore = new EntityStore(mainStore);
+            RaplaDefaultXMLContext workerContext = ioContext.createChildInputContext(inputContext, workerStore);
+            RaplaMainReader workerReader = new RaplaMainReader(workerContext);
+            handleStart(workerReader, rootNamespace, rootName, rootAttributes, null);
+            batch.replay(workerReader);
+            handleEnd(workerReader, rootNamespace, rootName, null);
+            return workerStore;
+        });
+    }
+
+    private EntityStore getResult(Future<EntityStore> future) throws RaplaException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RaplaException("Loading interrupted", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RaplaException)
+            {
+                throw (RaplaException) cause;
+            }
+            throw new RaplaException(cause);
+        }
+    }
+
+    /** copies the element at the current position including all children to the handler. The reader is positioned at the end element afterwards */
+    private void copyElement(XMLStreamReader reader, RaplaSAXHandler handler) throws XMLStreamException, RaplaException
+    {
+        int depth = 0;
+        do
+        {
+            switch (reader.getEventType())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    if (handler instanceof Recorder)
+                    {
+                        ((Recorder) handler).start(getNamespace(reader), reader.getLocalName(), getAttributes(reader), reader.getLocation());
+                    }
+                    else
+                    {
+                        handleStart(handler, getNamespace(reader), reader.getLocalName(), getAttributes(reader), reader.getLocation());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    handleEnd(handler, getNamespace(reader), reader.getLocalName(), reader.getLocation());
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                default:
+                    break;
+            }
+            if (depth > 0)
+            {
+                reader.next();
+            }
+        }
+        while (depth > 0);
+    }
+
+    private static String getNamespace(XMLStreamReader reader)
+    {
+        final String namespaceURI = reader.getNamespaceURI();
+        return namespaceURI != null ? namespaceURI : "";
+    }
+
+    private static Map<String, String> getAttributes(XMLStreamReader reader)
+    {
+        final int length = reader.getAttributeCount();
+        if (length == 0)
+        {
+            return Collections.emptyMap();
+        }
+        if (length == 1)
+        {
+            return Collections.singletonMap(reader.getAttributeLocalName(0), reader.getAttributeValue(0));
+        }
+        Map<String, String> attributeMap = new LinkedHashMap<>();
+        for (int i = 0; i < length; i++)
+        {
+            attributeMap.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return attributeMap;
+    }
+
+    private static void handleStart(RaplaSAXHandler handler, String namespace, String localName, Map<String, String> attributes, Location location)
+            throws RaplaException
+    {
+        try
+        {
+            handler.startElement(namespace, localName, new RaplaSAXAttributes(attributes));
+        }
+        catch (RaplaSAXParseException ex)
+        {
+            throw createException(location, ex.getMessage(), ex);
+        }
+    }
+
+    private static void handleEnd(RaplaSAXHandler handler, String namespace, String localName, Location location) throws RaplaException
+    {
+        try
+        {
+            handler.endElement(namespace, localName);
+        }
+        catch (RaplaSAXParseException ex)
+        {
+            throw createException(location, ex.getMessage(), ex);
+        }
+    }
+
+    private static RaplaException createException(Location location, String message, Throwable cause)
+    {
+        if (location == null)
+        {
+            return new RaplaException(message, cause);
+        }
+        return new RaplaException("Line: " + location.getLineNumber() + " Column: " + location.getColumnNumber() + " " + message, cause);
+    }
+
+    /** keeps the events of top level elements for reading them later or in another thread */
+    static class Recorder implements RaplaSAXHandler
+    {
+        private final List<Event> events = new ArrayList<>();
+
+        void start(String namespace, String localName, Map<String, String> attributes, Location location)
+        {
+            events.add(new Event(namespace, localName, attributes, null, location));
+        }
+
+        @Override
+        public void startElement(String namespaceURI, String localName, RaplaSAXAttributes atts)
+        {
+            events.add(new Event(namespaceURI, localName, atts.getMap(), null, null));
+        }
+
+        @Override
+        public void endElement(String namespaceURI, String localName)
+        {
+            events.add(new Event(namespaceURI, localName, null, null, null));
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            char[] text = new char[length];
+            System.arraycopy(ch, start, text, 0, length);
+            events.add(new Event(null, null, null, text, null));
+        }
+
+        void replay(RaplaSAXHandler handler) throws RaplaException
+        {
+            Event lastStart = null;
+            for (Event event : events)
+            {
+                try
+                {
+                    if (event.text != null)
+                    {
+                        handler.characters(event.text, 0, event.text.length);
+                    }
+                    else if (event.attributes == null)
+                    {
+                        handler.endElement(event.namespace, event.localName);
+                    }
+                    else
+                    {
+                        lastStart = event;
+                        handler.startElement(event.namespace, event.localName, new RaplaSAXAttributes(event.attributes));
+                    }
+                }
+                catch (RaplaSAXParseException ex)
+                {
+                    throw new RaplaException("Line: " + lastStart.line + " Column: " + lastStart.column + " " + ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /** a start element has attributes, a characters event has text and an end element has neither */
+    static class Event
+    {
+        final String namespace;
+        final String localName;
+        final Map<String, String> attributes;
+        final char[] text;
+        final int line;
+        final int column;
+
+        Event(String namespace, String localName, Map<String, String> attributes, char[] text, Location location)
+        {
+            this.namespace = namespace;
+            this.localName = localName;
+            this.attributes = attributes;
+            this.text = text;
+            this.line = location != null ? location.getLineNumber() : -1;
+            this.column = location != null ? location.getColumnNumber() : -1;
+        }
+    }
+}
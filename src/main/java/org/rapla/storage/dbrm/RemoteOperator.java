@@ -30,6 +30,7 @@ import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.extensionpoints.FunctionFactory;
 import org.rapla.entities.storage.EntityReferencer;
@@ -56,6 +57,7 @@ import org.rapla.storage.StorageUpdateListener;
 import org.rapla.storage.UpdateEvent;
 import org.rapla.storage.UpdateResult;
 import org.rapla.storage.dbrm.RemoteStorage.AllocatableBindingsRequest;
+import org.rapla.storage.dbrm.RemoteStorage.AvailabilityMatrix;
 import org.rapla.storage.dbrm.RemoteStorage.BindingMap;
 import org.rapla.storage.dbrm.RemoteStorage.MergeRequest;
 import org.rapla.storage.dbrm.RemoteStorage.NextAllocatableDateRequest;
@@ -69,6 +71,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -707,7 +710,8 @@ public class RemoteOperator
         final RemoteStorage serv = getRemoteStorage();
         Promise<AppointmentMapping> result = refreshIfIdle().thenCompose((refreshed) -> {String[] allocatableId = getIdList(allocatables);
             String[] ownerIds = getIdList( owners);
-            return serv.queryAppointments(new QueryAppointments(ownerIds,allocatableId, start, end, annotationQuery)).thenApply(list -> {
+            List<ClassificationFilterImpl> filterList = getFilterList(filters);
+            return serv.queryAppointments(new QueryAppointments(ownerIds,allocatableId, start, end, annotationQuery, filterList)).thenApply(list -> {
                 AppointmentMapping filtered;
                 {
                     long time = System.currentTimeMillis();
@@ -761,6 +765,20 @@ public class RemoteOperator
     //	    }
     //    }
 
+    /** converts the filters into their transferable form. Returns null if no filter is set, so the server doesn't filter*/
+    protected List<ClassificationFilterImpl> getFilterList(ClassificationFilter[] filters) {
+        if (filters == null) {
+            return null;
+        }
+        List<ClassificationFilterImpl> filterList = new ArrayList<>();
+        for (ClassificationFilter filter : filters) {
+            if (filter != null) {
+                filterList.add((ClassificationFilterImpl) filter);
+            }
+        }
+        return filterList;
+    }
+
     protected String[] getIdList(Collection<? extends Entity> entities) {
         List<String> idList = new ArrayList<>();
         if (entities != null) {
@@ -980,6 +998,33 @@ public class RemoteOperator
         return result;
     }
 
+    @Override
+    public Promise<Map<ReferenceInfo<Allocatable>, BitSet>> getAvailabilityMatrix(final Collection<Allocatable> allocatables, final List<Appointment> appointments,
+                                                                            final Collection<Reservation> ignoreList) {
+        final RemoteStorage serv = getRemoteStorage();
+        final String[] allocatableIds = getIdList(allocatables);
+        final List<AppointmentImpl> appointmentList = new ArrayList<>(appointments.size());
+        for (Appointment app : appointments) {
+            appointmentList.add((AppointmentImpl) app);
+        }
+        final String[] reservationIds = getIdList(ignoreList);
+        final Promise<AvailabilityMatrix> matrixPromise = serv.getAvailabilityMatrix(new AllocatableBindingsRequest(allocatableIds, appointmentList, reservationIds));
+        return matrixPromise.thenApply((matrix) -> {
+            Map<String, long[]> busyMap = matrix.get();
+            Map<ReferenceInfo<Allocatable>, BitSet> result = new HashMap<>();
+            if (busyMap == null) {
+                return result;
+            }
+            for (Allocatable alloc : allocatables) {
+                long[] busy = busyMap.get(alloc.getId());
+                if (busy != null) {
+                    result.put(alloc.getReference(), BitSet.valueOf(busy));
+                }
+            }
+            return result;
+        });
+    }
+
     @Override
     public Promise<Date> getNextAllocatableDate(Collection<Allocatable> allocatables, Appointment appointment, Collection<Reservation> ignoreList,
                                                 Integer worktimeStartMinutes, Integer worktimeEndMinutes, Integer[] excludedDays, Integer rowsPerHour) {
@@ -16,6 +16,7 @@ import org.jboss.resteasy.annotations.GZIP;
 import org.rapla.entities.domain.internal.AllocatableImpl;
 import org.rapla.entities.domain.internal.AppointmentImpl;
 import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.entities.dynamictype.internal.ClassificationFilterImpl;
 import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.scheduler.Promise;
@@ -118,8 +119,15 @@ public interface RemoteStorage
         private Date start;
         private Date end;
         private Map<String, String> annotations;
+        private List<ClassificationFilterImpl> filters;
 
         public QueryAppointments(String[] ownerIds, String[] resources, Date start, Date end, Map<String, String> annotations)
+        {
+            this(ownerIds, resources, start, end, annotations, null);
+        }
+
+        public QueryAppointments(String[] ownerIds, String[] resources, Date start, Date end, Map<String, String> annotations,
+                List<ClassificationFilterImpl> filters)
         {
             super();
             this.resources = resources;
@@ -127,6 +135,7 @@ public interface RemoteStorage
             this.start = start;
             this.end = end;
             this.annotations = annotations;
+            this.filters = filters;
         }
 
         public QueryAppointments()
@@ -156,6 +165,12 @@ public interface RemoteStorage
         {
             return annotations;
         }
+
+        /** the reservation filters that are evaluated on the server. null means no filtering */
+        public List<ClassificationFilterImpl> getFilters()
+        {
+            return filters;
+        }
     }
 
     @POST
@@ -265,6 +280,33 @@ public interface RemoteStorage
     @GZIP
     Promise<List<ReservationImpl>> getAllAllocatableBindings(AllocatableBindingsRequest job);
 
+    @POST
+    @Path("allocatable/availability")
+    @Consumes({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @GZIP
+    Promise<AvailabilityMatrix> getAvailabilityMatrix(AllocatableBindingsRequest job);
+
+    /** the busy appointments per allocatable id. Each entry is a bitset (see BitSet.toLongArray) with one bit per appointment in the request. */
+    class AvailabilityMatrix
+    {
+        Map<String, long[]> busy;
+
+        AvailabilityMatrix()
+        {
+        }
+
+        public AvailabilityMatrix(Map<String, long[]> busy)
+        {
+            this.busy = busy;
+        }
+
+        public Map<String, long[]> get()
+        {
+            return busy;
+        }
+    }
+
     @POST
     @Path("allocatable/date/next")
     @Consumes({ MediaType.APPLICATION_JSON })
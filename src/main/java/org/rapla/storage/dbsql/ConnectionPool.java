@@ -0,0 +1,563 @@
+package org.rapla.storage.dbsql;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.logger.Logger;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded pool for the connections of the {@link DBOperator}, for data sources that open a new physical connection on every
+ * getConnection(), e.g. a plain driver data source. Closing a connection returns it to the pool; uncommitted changes are rolled back.
+ * Each pooled connection keeps its prepared statements, so a statement for the same sql is only prepared once per connection.
+ * Connections that threw an SQLException or were idle for a while are validated before they are handed out again, connections idle longer
+ * than the idle timeout are closed.
+ */
+public class ConnectionPool
+{
+    public static final long DEFAULT_IDLE_TIMEOUT = 10 * DateTools.MILLISECONDS_PER_MINUTE;
+    public static final long DEFAULT_BORROW_TIMEOUT = 30 * 1000;
+    /** connections that were idle for longer are validated before they are used */
+    static final long VALIDATION_INTERVAL = 30 * 1000;
+    static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    static final int STATEMENT_CACHE_SIZE = 64;
+    static final Set<String> STATEMENT_SETTINGS = new HashSet<>(Arrays.asList("setQueryTimeout", "setMaxRows", "setLargeMaxRows", "setFetchSize",
+            "setMaxFieldSize", "setFetchDirection", "setEscapeProcessing", "setPoolable", "setCursorName", "closeOnCompletion"));
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final long borrowTimeout;
+    private final Logger logger;
+    /** the most recently used connection first */
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private int open;
+    private int generation;
+    private long created;
+    private long borrowed;
+
+    public ConnectionPool(DataSource dataSource, int maxSize, Logger logger)
+    {
+        this(dataSource, maxSize, DEFAULT_IDLE_TIMEOUT, DEFAULT_BORROW_TIMEOUT, logger);
+    }
+
+    public ConnectionPool(DataSource dataSource, int maxSize, long idleTimeout, long borrowTimeout, Logger logger)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("The pool needs at least one connection.");
+        }
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.borrowTimeout = borrowTimeout;
+        this.logger = logger;
+    }
+
+    /** returns an idle connection or opens a new one. Waits for a connection to be returned if all connections are in use. */
+    public Connection getConnection() throws SQLException
+    {
+        final long deadline = System.currentTimeMillis() + borrowTimeout;
+        while (true)
+        {
+            PooledConnection pooled;
+            final List<PooledConnection> expired;
+            synchronized (this)
+            {
+                expired = removeExpired(System.currentTimeMillis());
+                pooled = idle.pollFirst();
+                while (pooled == null && open >= maxSize)
+                {
+                    final long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0)
+                    {
+                        throw new SQLException("No database connection available. All " + maxSize + " connections are in use.");
+                    }
+                    try
+                    {
+                        wait(wait);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection.", e);
+                    }
+                    pooled = idle.pollFirst();
+                }
+                if (pooled == null)
+                {
+                    open++;
+                }
+                borrowed++;
+            }
+            closeAll(expired);
+            if (pooled == null)
+            {
+                return open().borrow();
+            }
+            if (pooled.validate())
+            {
+                return pooled.borrow();
+            }
+            logger.warn("Discarding invalid database connection.");
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException
+    {
+        try
+        {
+            final Connection physical = dataSource.getConnection();
+            synchronized (this)
+            {
+                created++;
+                return new PooledConnection(physical, generation);
+            }
+        }
+        catch (SQLException | RuntimeException ex)
+        {
+            synchronized (this)
+            {
+                open--;
+                notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    private void release(PooledConnection pooled)
+    {
+        boolean reuse = false;
+        synchronized (this)
+        {
+            reuse = pooled.generation == generation;
+        }
+        if (reuse)
+        {
+            reuse = pooled.reset();
+        }
+        if (!reuse)
+        {
+            discard(pooled);
+            return;
+        }
+        final List<PooledConnection> expired;
+        synchronized (this)
+        {
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.addFirst(pooled);
+            expired = removeExpired(pooled.lastUsed);
+            notifyAll();
+        }
+        closeAll(expired);
+    }
+
+    private void discard(PooledConnection pooled)
+    {
+        pooled.closePhysical();
+        synchronized (this)
+        {
+            open--;
+            notifyAll();
+        }
+    }
+
+    private List<PooledConnection> removeExpired(long now)
+    {
+        List<PooledConnection> expired = null;
+        // the least recently used connections are at the end
+        while (!idle.isEmpty() && now - idle.peekLast().lastUsed > idleTimeout)
+        {
+            if (expired == null)
+            {
+                expired = new ArrayList<>();
+            }
+            expired.add(idle.pollLast());
+            open--;
+        }
+        return expired;
+    }
+
+    private void closeAll(List<PooledConnection> connections)
+    {
+        if (connections != null)
+        {
+            for (PooledConnection pooled : connections)
+            {
+                pooled.closePhysical();
+            }
+        }
+    }
+
+    /** closes the idle connections. Connections in use are closed when they are returned. The pool can still be used afterwards. */
+    public void clear()
+    {
+        final List<PooledConnection> connections;
+        synchronized (this)
+        {
+            generation++;
+            connections = new ArrayList<>(idle);
+            idle.clear();
+            open -= connections.size();
+            notifyAll();
+        }
+        closeAll(connections);
+    }
+
+    /** the number of physical connections, idle and in use */
+    synchronized public int getOpenConnections()
+    {
+        return open;
+    }
+
+    synchronized public int getIdleConnections()
+    {
+        return idle.size();
+    }
+
+    /** the number of physical connections opened since the start */
+    synchronized public long getCreatedConnections()
+    {
+        return created;
+    }
+
+    /** the number of connections handed out since the start */
+    synchronized public long getBorrowedConnections()
+    {
+        return borrowed;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException ex)
+        {
+            throw ex.getCause();
+        }
+    }
+
+    /** a physical connection with its statement cache. Each borrower gets its own proxy, so a closed proxy can't be used again. */
+    class PooledConnection
+    {
+        final Connection physical;
+        final int generation;
+        final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+        long lastUsed;
+        /** an SQLException was thrown, so the connection is validated before it is used again */
+        boolean suspect;
+        Boolean autoCommit;
+        Integer isolation;
+
+        PooledConnection(Connection physical, int generation)
+        {
+            this.physical = physical;
+            this.generation = generation;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        Connection borrow()
+        {
+            final ConnectionHandler handler = new ConnectionHandler(this);
+            handler.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class[] { Connection.class }, handler);
+            return handler.proxy;
+        }
+
+        boolean validate()
+        {
+            if (!suspect && System.currentTimeMillis() - lastUsed < VALIDATION_INTERVAL)
+            {
+                return true;
+            }
+            try
+            {
+                suspect = !physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            }
+            catch (SQLException ex)
+            {
+                suspect = true;
+            }
+            return !suspect;
+        }
+
+        /** prepares the connection for the next borrower. Returns false if the connection can't be reused */
+        boolean reset()
+        {
+            try
+            {
+                if (physical.isClosed())
+                {
+                    return false;
+                }
+                final boolean isAutoCommit = autoCommit != null ? autoCommit : physical.getAutoCommit();
+                if (!isAutoCommit)
+                {
+                    physical.rollback();
+                }
+                for (CachedStatement cached : statements.values())
+                {
+                    cached.inUse = false;
+                }
+                return !suspect || validate();
+            }
+            catch (SQLException ex)
+            {
+                return false;
+            }
+        }
+
+        PreparedStatement prepare(String sql, ConnectionHandler connection) throws SQLException
+        {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && cached.inUse)
+            {
+                // the same statement is used twice at the same time, so the second one is not cached
+                return physical.prepareStatement(sql);
+            }
+            if (cached == null)
+            {
+                cached = new CachedStatement(sql, physical.prepareStatement(sql));
+                statements.put(sql, cached);
+                evictStatements();
+            }
+            cached.inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class[] { PreparedStatement.class },
+                    new StatementHandler(this, cached, connection));
+        }
+
+        private void evictStatements()
+        {
+            final Iterator<CachedStatement> it = statements.values().iterator();
+            while (statements.size() > STATEMENT_CACHE_SIZE && it.hasNext())
+            {
+                final CachedStatement eldest = it.next();
+                if (!eldest.inUse)
+                {
+                    it.remove();
+                    eldest.close();
+                }
+            }
+        }
+
+        void closePhysical()
+        {
+            for (CachedStatement cached : statements.values())
+            {
+                cached.close();
+            }
+            statements.clear();
+            try
+            {
+                physical.close();
+            }
+            catch (SQLException ex)
+            {
+                logger.debug("Could not close database connection: " + ex.getMessage());
+            }
+        }
+    }
+
+    static class CachedStatement
+    {
+        final String sql;
+        final PreparedStatement statement;
+        boolean inUse;
+
+        CachedStatement(String sql, PreparedStatement statement)
+        {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        void close()
+        {
+            try
+            {
+                statement.close();
+            }
+            catch (SQLException ex)
+            {
+                // the connection is closed anyway
+            }
+        }
+    }
+
+    class ConnectionHandler implements InvocationHandler
+    {
+        final PooledConnection pooled;
+        Connection proxy;
+        boolean closed;
+
+        ConnectionHandler(PooledConnection pooled)
+        {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            final String name = method.getName();
+            switch (name)
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.physical;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "close":
+                    if (!closed)
+                    {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                default:
+            }
+            if (closed)
+            {
+                throw new SQLException("Connection is closed.");
+            }
+            try
+            {
+                switch (name)
+                {
+                    case "setAutoCommit":
+                        // the operator sets auto commit and the isolation level for each connection it requests
+                        if (!args[0].equals(pooled.autoCommit))
+                        {
+                            pooled.autoCommit = null;
+                            pooled.physical.setAutoCommit((Boolean) args[0]);
+                            pooled.autoCommit = (Boolean) args[0];
+                        }
+                        return null;
+                    case "setTransactionIsolation":
+                        if (!args[0].equals(pooled.isolation))
+                        {
+                            pooled.isolation = null;
+                            pooled.physical.setTransactionIsolation((Integer) args[0]);
+                            pooled.isolation = (Integer) args[0];
+                        }
+                        return null;
+                    case "prepareStatement":
+                        if (args.length == 1)
+                        {
+                            return pooled.prepare((String) args[0], this);
+                        }
+                        break;
+                    default:
+                }
+                return ConnectionPool.invoke(pooled.physical, method, args);
+            }
+            catch (SQLException ex)
+            {
+                pooled.suspect = true;
+                throw ex;
+            }
+        }
+    }
+
+    class StatementHandler implements InvocationHandler
+    {
+        final PooledConnection pooled;
+        final CachedStatement cached;
+        final ConnectionHandler connection;
+        boolean closed;
+        /** statement settings were changed, so the statement is not reused */
+        boolean modified;
+
+        StatementHandler(PooledConnection pooled, CachedStatement cached, ConnectionHandler connection)
+        {
+            this.pooled = pooled;
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            final String name = method.getName();
+            switch (name)
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + cached.statement;
+                case "isClosed":
+                    return closed || connection.closed;
+                case "getConnection":
+                    return connection.proxy;
+                case "close":
+                    // after the connection is returned the statement may already be used by the next borrower
+                    if (!closed && !connection.closed)
+                    {
+                        close();
+                    }
+                    closed = true;
+                    return null;
+                default:
+            }
+            if (closed || connection.closed)
+            {
+                throw new SQLException("Statement is closed.");
+            }
+            if (STATEMENT_SETTINGS.contains(name))
+            {
+                modified = true;
+            }
+            try
+            {
+                return ConnectionPool.invoke(cached.statement, method, args);
+            }
+            catch (SQLException ex)
+            {
+                pooled.suspect = true;
+                throw ex;
+            }
+        }
+
+        private void close() throws SQLException
+        {
+            if (modified)
+            {
+                pooled.statements.remove(cached.sql);
+                cached.close();
+                return;
+            }
+            try
+            {
+                cached.statement.clearParameters();
+                cached.statement.clearBatch();
+                cached.inUse = false;
+            }
+            catch (SQLException ex)
+            {
+                pooled.statements.remove(cached.sql);
+                cached.close();
+            }
+        }
+    }
+}
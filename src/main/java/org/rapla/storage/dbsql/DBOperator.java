@@ -20,6 +20,7 @@ import org.rapla.entities.Category;
 import org.rapla.entities.Entity;
 import org.rapla.entities.Timestamp;
 import org.rapla.entities.User;
+import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
@@ -46,6 +47,7 @@ import org.rapla.storage.impl.EntityStore;
 import org.rapla.storage.impl.RaplaLock;
 import org.rapla.storage.impl.server.EntityHistory;
 import org.rapla.storage.impl.server.EntityHistory.HistoryEntry;
+import org.rapla.storage.impl.server.StartupImage;
 import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 import org.rapla.storage.xml.IOContext;
 import org.rapla.storage.xml.RaplaDefaultXMLContext;
@@ -76,6 +78,10 @@ import java.util.Set;
 @Singleton public class DBOperator extends LocalAbstractCachableOperator
 {
     //protected String datasourceName;
+    /** removals with more entities than this take the global lock */
+    static final int MAX_ENTITY_LOCKS = 1000;
+    /** number of entities removed with one batched statement per table */
+    static final int REMOVE_BATCH_SIZE = 1000;
     boolean bSupportsTransactions = false;
     boolean hsqldb = false;
 
@@ -83,8 +89,12 @@ import java.util.Set;
     //private String backupFileName;
 
     DataSource lookup;
+    /** optional, used instead of the data source if set */
+    private volatile ConnectionPool connectionPool;
 
     private String connectionName;
+    /** set while connecting, if the cache was filled from the startup image */
+    private Date startupImageTime;
     Provider<ImportExportManager> importExportManager;
 
     public DBOperator(Logger logger, PromiseWait promiseWait,RaplaResources i18n, RaplaLocale locale, final CommandScheduler scheduler, Map<String, FunctionFactory> functionFactoryMap,
@@ -116,6 +126,25 @@ import java.util.Set;
 
     }
 
+    /**
+     * pools up to maxSize connections of the data source, 0 to use a new connection from the data source for each request.
+     * Only useful if the data source is not pooled already.
+     */
+    public void setConnectionPoolSize(int maxSize)
+    {
+        final ConnectionPool oldPool = connectionPool;
+        connectionPool = maxSize > 0 ? new ConnectionPool(lookup, maxSize, getLogger().getChildLogger("pool")) : null;
+        if (oldPool != null)
+        {
+            oldPool.clear();
+        }
+    }
+
+    public ConnectionPool getConnectionPool()
+    {
+        return connectionPool;
+    }
+
     private void scheduleCleanupAndRefresh()
     {
         {
@@ -222,8 +251,16 @@ import java.util.Set;
                 }
                 try
                 {
-                    DataSource ds = (DataSource) source;
-                    connection = ds.getConnection();
+                    final ConnectionPool pool = connectionPool;
+                    if (pool != null)
+                    {
+                        connection = pool.getConnection();
+                    }
+                    else
+                    {
+                        DataSource ds = (DataSource) source;
+                        connection = ds.getConnection();
+                    }
                 }
                 catch (ClassCastException ex)
                 {
@@ -298,6 +335,11 @@ import java.util.Set;
             changeStatus(InitStatus.Loaded);
             initIndizes();
             changeStatus(InitStatus.Connected);
+            if (startupImageTime != null)
+            {
+                applyChangesSinceStartupImage(startupImageTime);
+                startupImageTime = null;
+            }
             scheduleCleanupAndRefresh();
         }
         /*
@@ -401,16 +443,21 @@ import java.util.Set;
             try
             {
                 getLogger().info("Disconnecting: " + getConnectionName());
-                Connection connection = createConnection();
-                Statement statement = connection.createStatement();
-                statement.execute(sql);
-                statement.close();
+                try (Connection connection = createConnection(); Statement statement = connection.createStatement())
+                {
+                    statement.execute(sql);
+                }
             }
             catch (SQLException ex)
             {
                 throw new RaplaException(ex);
             }
         }
+        final ConnectionPool pool = connectionPool;
+        if (pool != null)
+        {
+            pool.clear();
+        }
     }
 
     public final void loadData() throws RaplaException
@@ -433,7 +480,11 @@ import java.util.Set;
             }
             cache.clearAll();
             addInternalTypes(cache);
-            loadData(c, cache);
+            startupImageTime = loadStartupImage(c);
+            if (startupImageTime == null)
+            {
+                loadData(c, cache);
+            }
 
             if (getLogger().isDebugEnabled())
                 getLogger().debug("Entities contextualized");
@@ -456,6 +507,76 @@ import java.util.Set;
         }
     }
 
+    @Override
+    protected String getStartupImageSource()
+    {
+        return connectionName;
+    }
+
+    /** @return the time of the startup image or null if there is no usable image and all data must be loaded */
+    private Date loadStartupImage(Connection connection) throws SQLException, RaplaException
+    {
+        if (getStartupImage() == null)
+        {
+            return null;
+        }
+        final Date lastUpdated = loadInitialLastUpdateFromDb(connection);
+        // the changes since the image are read from the history, which is only kept for the HISTORY_DURATION
+        final Date notBefore = new Date(lastUpdated.getTime() - HISTORY_DURATION);
+        final StartupImage.Content content = loadStartupImage(notBefore);
+        if (content == null)
+        {
+            return null;
+        }
+        setLastRefreshed(content.getTimestamp());
+        setConnectStart(lastUpdated);
+        return content.getTimestamp();
+    }
+
+    /**
+     * reads the history since the start of the history valid interval, as the full load does, so clients can still get incremental updates,
+     * and applies the changes that were stored after the startup image was written.
+     */
+    private void applyChangesSinceStartupImage(Date imageTime) throws RaplaException
+    {
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded("applyChangesSinceStartupImage");
+        try (Connection c = createConnection())
+        {
+            final EntityStore entityStore = new EntityStore(cache);
+            final RaplaSQL raplaSQLInput = new RaplaSQL(createInputContext(entityStore, DBOperator.this, cache.getSuperCategory()));
+            final Date connectionTime = raplaSQLInput.getLastUpdated(c);
+            if (connectionTime.before(imageTime))
+            {
+                return;
+            }
+            final Date historyStart = new Date(connectionTime.getTime() - HISTORY_DURATION);
+            final Collection<ReferenceInfo> historyIds = raplaSQLInput.update(c, historyStart, connectionTime);
+            RefreshObject refreshObject = new RefreshObject();
+            refreshObject.allIds = new ArrayList<>();
+            for (ReferenceInfo id : historyIds)
+            {
+                final HistoryEntry latest = history.getLatest(id);
+                if (latest != null && latest.getTimestamp() >= imageTime.getTime())
+                {
+                    refreshObject.allIds.add(id);
+                }
+            }
+            refreshObject.patches = raplaSQLInput.getPatches(c, imageTime);
+            refreshObject.connectionTime = connectionTime;
+            refreshObject.lastUpdated = imageTime;
+            refreshWithoutLock(refreshObject);
+            getLogger().info("Applied " + refreshObject.allIds.size() + " changes since the startup image from " + imageTime);
+        }
+        catch (SQLException ex)
+        {
+            throw new RaplaDBException("Can't read the changes since the startup image: " + ex.getMessage(), ex);
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+    }
+
     @SuppressWarnings("deprecation") private boolean upgradeDatabase(Connection c) throws SQLException, RaplaException
     {
         Map<String, TableDef> schema = loadDBSchema(c);
@@ -682,6 +803,7 @@ import java.util.Set;
 
     public void dispatch(UpdateEvent evt) throws RaplaException
     {
+        final long start = System.nanoTime();
         RaplaLock.WriteLock writeLock = writeLockIfLoaded("Dispatching " + evt.toString());
         try
         {
@@ -698,17 +820,66 @@ import java.util.Set;
             try
             {
                 dbStore(storeObjects, preferencePatches, removeObjects, connection, evt.getUserId());
-                try
+                refreshFromDb(connection);
+            }
+            finally
+            {
+                close(connection);
+            }
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+            DISPATCH_DURATION.recordSince(start);
+            DISPATCHED_CHANGES.inc();
+        }
+        // TODO check if still needed
+        //fireStorageUpdated(result);
+    }
+
+    /**
+     * stores the events with one connection and reads the changes back into the cache once for all events. Each event is committed on its own,
+     * so a failing event is rolled back without affecting the others. The cache is only refreshed in between, if an event changes or refers to
+     * an entity that an earlier event of the batch changed.
+     */
+    @Override
+    public List<RaplaException> dispatchAll(List<UpdateEvent> events) throws RaplaException
+    {
+        List<RaplaException> result = new ArrayList<>(events.size());
+        final long start = System.nanoTime();
+        RaplaLock.WriteLock writeLock = writeLockIfLoaded("Dispatching " + events.size() + " events");
+        try
+        {
+            Connection connection = createConnection();
+            try
+            {
+                Set<ReferenceInfo> changedIds = new HashSet<>();
+                for (UpdateEvent evt : events)
                 {
-                    RefreshObject refreshObject = readRefreshInfoFromDb(connection);
-                    if (refreshObject != null)
+                    try
+                    {
+                        if (!Collections.disjoint(changedIds, getAffectedIds(evt, true)))
+                        {
+                            refreshFromDb(connection);
+                            changedIds.clear();
+                        }
+                        preprocessEventStorage(evt);
+                        dbStore(evt.getStoreObjects(), evt.getPreferencePatches(), evt.getRemoveIds(), connection, evt.getUserId());
+                        changedIds.addAll(getAffectedIds(evt, false));
+                        result.add(null);
+                    }
+                    catch (RaplaException ex)
+                    {
+                        result.add(ex);
+                    }
+                    catch (RuntimeException ex)
                     {
-                        refreshWithoutLock(refreshObject);
+                        result.add(new RaplaException(ex));
                     }
                 }
-                catch (SQLException e)
+                if (!changedIds.isEmpty())
                 {
-                    getLogger().error("Could not load update from db. Will be loaded afterwards", e);
+                    refreshFromDb(connection);
                 }
             }
             finally
@@ -719,13 +890,36 @@ import java.util.Set;
         finally
         {
             lockManager.unlock(writeLock);
+            DISPATCH_DURATION.recordSince(start);
+            DISPATCHED_CHANGES.add(events.size());
+        }
+        return result;
+    }
+
+    private void refreshFromDb(Connection connection) throws RaplaException
+    {
+        try
+        {
+            RefreshObject refreshObject = readRefreshInfoFromDb(connection);
+            if (refreshObject != null)
+            {
+                refreshWithoutLock(refreshObject);
+            }
+        }
+        catch (SQLException e)
+        {
+            getLogger().error("Could not load update from db. Will be loaded afterwards", e);
         }
-        // TODO check if still needed
-        //fireStorageUpdated(result);
     }
 
     private void dbStore(Collection<Entity> storeObjects, List<PreferencePatch> preferencePatches, Collection<ReferenceInfo> removeObjects,
             Connection connection, String userId) throws RaplaException
+    {
+        dbStore(storeObjects, preferencePatches, removeObjects, connection, userId, true);
+    }
+
+    private void dbStore(Collection<Entity> storeObjects, List<PreferencePatch> preferencePatches, Collection<ReferenceInfo> removeObjects,
+            Connection connection, String userId, boolean writeHistory) throws RaplaException
     {
         if (( storeObjects == null || storeObjects.isEmpty()) && (preferencePatches == null || preferencePatches.isEmpty())
                 && (removeObjects == null || removeObjects.isEmpty()))
@@ -749,7 +943,8 @@ import java.util.Set;
             }
         }
 
-        final boolean needsGlobalLock = containsDynamicType(ids);
+        // a single global lock is cheaper than one lock row per entity for bulk changes like purging old reservations
+        final boolean needsGlobalLock = containsDynamicType(ids) || ids.size() > MAX_ENTITY_LOCKS;
         Date connectionTimestamp = null;
         final Collection<String> lockIds = needsGlobalLock ? Collections.singletonList(LockStorage.GLOBAL_LOCK) : getLockIds(ids);
         RaplaSQL raplaSQLOutput = new RaplaSQL(createOutputContext(cache));
@@ -777,10 +972,7 @@ import java.util.Set;
                 storeMap.put( e, oldEntity);
             }
             raplaSQLOutput.requestLocks(connection, connectionTimestamp, lockIds, null, !needsGlobalLock);
-            for (ReferenceInfo id : removeObjects)
-            {
-                raplaSQLOutput.remove(connection, id, connectionTimestamp);
-            }
+            removeInBatches(raplaSQLOutput, connection, removeObjects, connectionTimestamp, writeHistory);
             getLogger().debug("Locks requested storing");
             raplaSQLOutput.store(connection, storeMap, connectionTimestamp);
             raplaSQLOutput.storePatches(connection, preferencePatches, connectionTimestamp);
@@ -833,6 +1025,23 @@ import java.util.Set;
         }
     }
 
+    private void removeInBatches(RaplaSQL raplaSQLOutput, Connection connection, Collection<ReferenceInfo> removeObjects, Date connectionTimestamp,
+            boolean writeHistory) throws SQLException, RaplaException
+    {
+        final List<ReferenceInfo> toRemove = new ArrayList<>(removeObjects);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < toRemove.size(); i += REMOVE_BATCH_SIZE)
+        {
+            final int end = Math.min(toRemove.size(), i + REMOVE_BATCH_SIZE);
+            raplaSQLOutput.remove(connection, toRemove.subList(i, end), connectionTimestamp, writeHistory);
+            if (toRemove.size() > REMOVE_BATCH_SIZE)
+            {
+                final long time = Math.max(1, System.currentTimeMillis() - start);
+                getLogger().info("Removed " + end + " of " + toRemove.size() + " entities from database (" + (end * 1000L / time) + " per second).");
+            }
+        }
+    }
+
     private Collection<String> getLockIds(Collection<ReferenceInfo> ids)
     {
         List<String> result = new ArrayList<>();
@@ -888,6 +1097,23 @@ import java.util.Set;
 
     }
 
+    @Override protected void removeColdReservationsFromDatabase(Collection<ReferenceInfo<Reservation>> reservations) throws RaplaException
+    {
+        super.removeColdReservationsFromDatabase(reservations);
+        Collection<Entity> storeObjects = Collections.emptyList();
+        List<PreferencePatch> preferencePatches = Collections.emptyList();
+        Collection<ReferenceInfo> removeObjects = new ArrayList<>(reservations);
+        try (Connection connection = createConnection())
+        {
+            // the reservations are archived, not deleted, so no delete entries are written to the history
+            dbStore(storeObjects, preferencePatches, removeObjects, connection, null, false);
+        }
+        catch (SQLException ex)
+        {
+            throw new RaplaDBException("Reservations could not be removed from database after moving them to cold storage.", ex);
+        }
+    }
+
     public void removeAll() throws RaplaException
     {
         Connection connection = createConnection();
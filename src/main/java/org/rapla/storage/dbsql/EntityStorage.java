@@ -44,6 +44,8 @@ import java.util.Set;
 
 abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage implements Storage<T> {
 	//String searchForIdSql;
+    // stays below the parameter limits of the supported databases
+    static final int DELETE_CHUNK_SIZE = 500;
 
     protected LocalCache cache;
     protected EntityStore entityStore;
@@ -395,22 +397,25 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
         }
     }
 
+	/** deletes the rows with the ids in one statement per chunk of ids */
 	public void deleteIds(Collection<String> ids) throws SQLException, RaplaException {
-    	PreparedStatement stmt = null;
-        try {
-            stmt = con.prepareStatement(deleteSqlWithoutCheck);
-            for ( String id: ids)
-            {
-                stmt.setString(1,id);
-                stmt.addBatch();
-            }
-            if ( ids.size() > 0)
+        if (ids.isEmpty())
+        {
+            return;
+        }
+        final List<String> idList = new ArrayList<>(ids);
+        for (int start = 0; start < idList.size(); start += DELETE_CHUNK_SIZE)
+        {
+            final List<String> chunk = idList.subList(start, Math.min(start + DELETE_CHUNK_SIZE, idList.size()));
+            final String sql = deleteSqlWithoutCheck.replace("= ?", " in (" + getMarkerList(chunk.size()) + ")");
+            try (PreparedStatement stmt = con.prepareStatement(sql))
             {
-                stmt.executeBatch();
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                stmt.executeUpdate();
             }
-        } finally {
-            if (stmt!=null)
-                stmt.close();
         }
 	}
 
@@ -226,47 +226,46 @@ class RaplaSQL
         }
     }
 
+    /**
+     * removes the entities with one delete per table and type, that deletes all ids of the type with an in list.
+     * If writeHistory is not set, no delete entries are written to the history, so other servers and clients don't see the removal.
+     */
     @SuppressWarnings("unchecked")
-    synchronized public void remove(Connection con, ReferenceInfo referenceInfo, Date connectionTimestamp) throws SQLException, RaplaException
+    synchronized public void remove(Connection con, Collection<ReferenceInfo> referenceInfos, Date connectionTimestamp, boolean writeHistory) throws SQLException, RaplaException
     {
-        final Class<? extends Entity> typeClass = referenceInfo.getType();
-        if (Attribute.class == typeClass)
-            return;
-        boolean couldDelete = false;
+        Map<Class<? extends Entity>, List<ReferenceInfo>> byType = new LinkedHashMap<>();
+        for (ReferenceInfo referenceInfo : referenceInfos)
         {
-            RaplaTypeStorage storage = stores.get( typeClass);
-            if ( storage != null)
-            {
-                couldDelete = delete(con, referenceInfo, connectionTimestamp, storage);
-            }
+            final Class<? extends Entity> typeClass = referenceInfo.getType();
+            if (Attribute.class == typeClass)
+                continue;
+            byType.computeIfAbsent(typeClass, type -> new ArrayList<>()).add(referenceInfo);
         }
-        if (!couldDelete)
+        for (Map.Entry<Class<? extends Entity>, List<ReferenceInfo>> entry : byType.entrySet())
         {
-            throw new RaplaException("No Storage-Sublass matches this object: " + referenceInfo.getType());
-        }
-    }
-
-    private boolean delete(Connection con, ReferenceInfo referenceInfo, Date connectionTimestamp, RaplaTypeStorage storage) throws SQLException, RaplaException
-    {
-        storage.setConnection(con, connectionTimestamp);
-        history.setConnection( con, connectionTimestamp);
-        try
-        {
-            List<ReferenceInfo> list = Collections.singletonList( referenceInfo);
-            storage.deleteEntities(list);
-            final Class<? extends Entity> typeClass = referenceInfo.getType();
-            if ( history.canDelete( typeClass))
+            final Class<? extends Entity> typeClass = entry.getKey();
+            RaplaTypeStorage storage = stores.get(typeClass);
+            if (storage == null)
             {
-                history.deleteEntities( list);
+                throw new RaplaException("No Storage-Sublass matches this object: " + typeClass);
+            }
+            final List list = entry.getValue();
+            storage.setConnection(con, connectionTimestamp);
+            history.setConnection(con, connectionTimestamp);
+            try
+            {
+                storage.deleteEntities(list);
+                if (writeHistory && history.canDelete(typeClass))
+                {
+                    history.deleteEntities(list);
+                }
+            }
+            finally
+            {
+                storage.removeConnection();
+                history.removeConnection();
             }
-            return true;
-        }
-        finally
-        {
-            storage.removeConnection();
-            history.removeConnection();
         }
-
     }
 
     @SuppressWarnings("unchecked")
@@ -1712,13 +1711,18 @@ class AppointmentStorage extends RaplaTypeStorage<Appointment>
     {
         // look for all appointment ids, as the sub storages must be deleted with appointment id
         final Set<String> ids = new HashSet<>();
-        final String sql = "SELECT ID FROM APPOINTMENT WHERE EVENT_ID=?";
-        for (String eventId : reservationIds)
+        final List<String> eventIds = new ArrayList<>(reservationIds);
+        for (int start = 0; start < eventIds.size(); start += DELETE_CHUNK_SIZE)
         {
+            final List<String> chunk = eventIds.subList(start, Math.min(start + DELETE_CHUNK_SIZE, eventIds.size()));
+            final String sql = "SELECT ID FROM APPOINTMENT WHERE EVENT_ID in (" + getMarkerList(chunk.size()) + ")";
             ResultSet rset = null;
             try (final PreparedStatement stmt = con.prepareStatement(sql))
             {
-                setString(stmt, 1, eventId);
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    setString(stmt, i + 1, chunk.get(i));
+                }
                 rset = stmt.executeQuery();
                 while (rset.next())
                 {
@@ -1,5 +1,8 @@
 package org.rapla.storage.impl;
 
+import org.rapla.components.util.metrics.Counter;
+import org.rapla.components.util.metrics.Histogram;
+import org.rapla.components.util.metrics.MetricsRegistry;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaSynchronizationException;
 import org.rapla.inject.DefaultImplementation;
@@ -18,6 +21,15 @@ public class DefaultRaplaLock implements RaplaLock
 {
     public static final int DEFAULT_READLOCK_TIMEOUT_SECONDS = 20;
     public static final int DEFAULT_WRITELOCK_TIMEOUT_SECONDS = 60;
+    static final String LOCK_WAIT_METRIC = "rapla_lock_wait_seconds";
+    static final String LOCK_TIMEOUT_METRIC = "rapla_lock_timeouts_total";
+    static final String LOCK_UNCONTENDED_METRIC = "rapla_lock_uncontended_total";
+    private static final Histogram READ_LOCK_WAIT = lockWaitHistogram("read");
+    private static final Histogram WRITE_LOCK_WAIT = lockWaitHistogram("write");
+    private static final Counter READ_LOCK_TIMEOUTS = lockTimeoutCounter("read");
+    private static final Counter WRITE_LOCK_TIMEOUTS = lockTimeoutCounter("write");
+    private static final Counter READ_LOCK_UNCONTENDED = lockUncontendedCounter("read");
+    private static final Counter WRITE_LOCK_UNCONTENDED = lockUncontendedCounter("write");
     final protected ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     Stack<WriteLock> writeLocks = new Stack<>();
     Stack<ReadLock> readLocks = new Stack<>();
@@ -29,6 +41,21 @@ public class DefaultRaplaLock implements RaplaLock
         this.logger = raplaLogger;
     }
 
+    private static Histogram lockWaitHistogram(String lock)
+    {
+        return MetricsRegistry.getDefault().histogram(LOCK_WAIT_METRIC, "Time waited for the storage lock when it was held by another thread", "lock", lock);
+    }
+
+    private static Counter lockUncontendedCounter(String lock)
+    {
+        return MetricsRegistry.getDefault().counter(LOCK_UNCONTENDED_METRIC, "Storage locks that were acquired without waiting", "lock", lock);
+    }
+
+    private static Counter lockTimeoutCounter(String lock)
+    {
+        return MetricsRegistry.getDefault().counter(LOCK_TIMEOUT_METRIC, "Storage locks that could not be acquired in time", "lock", lock);
+    }
+
     public WriteLock writeLock(Class clazz, String name) throws RaplaException
     {
         return writeLock(clazz, name,DEFAULT_WRITELOCK_TIMEOUT_SECONDS);
@@ -58,16 +85,22 @@ public class DefaultRaplaLock implements RaplaLock
     {
         try
         {
+            // the uncontended case is the common one, so it is only counted
             if (lock.tryLock())
             {
+                (isRead ? READ_LOCK_UNCONTENDED : WRITE_LOCK_UNCONTENDED).inc();
                 return lock;
             }
-            if (lock.tryLock(seconds, TimeUnit.SECONDS))
+            final long start = System.nanoTime();
+            final boolean locked = lock.tryLock(seconds, TimeUnit.SECONDS);
+            (isRead ? READ_LOCK_WAIT : WRITE_LOCK_WAIT).recordSince(start);
+            if (locked)
             {
                 return lock;
             }
             else
             {
+                (isRead ? READ_LOCK_TIMEOUTS : WRITE_LOCK_TIMEOUTS).inc();
                 if (logger != null)
                 {
                     int logThreshholdTime = 0;
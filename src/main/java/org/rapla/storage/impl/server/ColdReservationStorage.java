@@ -0,0 +1,483 @@
+package org.rapla.storage.impl.server;
+
+import org.rapla.components.util.SerializableDateTimeFormat;
+import org.rapla.entities.domain.RaplaObjectAnnotations;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.entities.storage.EntityReferencer;
+import org.rapla.entities.storage.EntityResolver;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.RaplaComponent;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.rest.JsonParserWrapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps reservations that ended before a horizon on disk instead of the LocalCache.
+ * The reservations are partitioned by the month of their last appointment end, each partition is a file with one json encoded reservation per line.
+ * An index with the time range, the reservation ids and the external ids of each partition is kept in memory, the partitions are loaded on the first query
+ * that overlaps them and are held as long as memory allows.
+ */
+public class ColdReservationStorage
+{
+    static final String INDEX_FILE = "index.json";
+    static final String PARTITION_PREFIX = "reservations-";
+    static final String PARTITION_SUFFIX = ".jsonl";
+
+    private final File directory;
+    private final Logger logger;
+    private final JsonParserWrapper.JsonParser gson;
+    private final Map<String, Partition> partitions = new TreeMap<>();
+    private final Map<ReferenceInfo<Reservation>, Partition> partitionForReservation = new HashMap<>();
+    // the reservations with an external id, so that imports find the reservations without loading the partitions
+    private final Map<String, Set<ReferenceInfo<Reservation>>> reservationsWithExternalId = new HashMap<>();
+
+    static class Partition
+    {
+        String name;
+        long minStart;
+        long maxEnd;
+        List<String> ids = new ArrayList<>();
+        // the external id of each reservation that has one, by reservation id
+        Map<String, String> externalIds = new LinkedHashMap<>();
+        transient SoftReference<List<Reservation>> loaded;
+
+        Partition()
+        {
+        }
+
+        Partition(String name)
+        {
+            this.name = name;
+            minStart = Long.MAX_VALUE;
+            maxEnd = Long.MIN_VALUE;
+        }
+
+        boolean overlaps(Date start, Date end)
+        {
+            return (end == null || minStart < end.getTime()) && (start == null || maxEnd > start.getTime());
+        }
+    }
+
+    static class Index
+    {
+        List<Partition> partitions = new ArrayList<>();
+    }
+
+    public ColdReservationStorage(File directory, Logger logger) throws RaplaException
+    {
+        this.directory = directory;
+        this.logger = logger;
+        this.gson = JsonParserWrapper.defaultJson().get();
+        readIndex();
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    synchronized public int size()
+    {
+        return partitionForReservation.size();
+    }
+
+    synchronized public boolean contains(ReferenceInfo<Reservation> id)
+    {
+        return partitionForReservation.containsKey(id);
+    }
+
+    /** returns the reservations with the passed {@link RaplaObjectAnnotations#KEY_EXTERNALID} in the order they were moved here. */
+    synchronized public Collection<ReferenceInfo<Reservation>> getReservationsWithExternalId(String externalId)
+    {
+        final Set<ReferenceInfo<Reservation>> ids = reservationsWithExternalId.get(externalId);
+        return ids != null ? new ArrayList<>(ids) : Collections.emptyList();
+    }
+
+    /** writes the reservations into their partitions. The reservations must not be changed afterwards. */
+    synchronized public void store(Collection<Reservation> reservations, EntityResolver resolver) throws RaplaException
+    {
+        Map<Partition, List<Reservation>> toWrite = new LinkedHashMap<>();
+        for (Reservation reservation : reservations)
+        {
+            final Date maxEnd = reservation.getMaxEnd();
+            final Date firstDate = reservation.getFirstDate();
+            if (maxEnd == null || firstDate == null)
+            {
+                throw new RaplaException("Reservation " + reservation + " has no end and can't be moved to cold storage.");
+            }
+            final String name = SerializableDateTimeFormat.INSTANCE.formatDate(maxEnd).substring(0, 7);
+            final Partition partition = partitions.computeIfAbsent(name, Partition::new);
+            toWrite.computeIfAbsent(partition, p -> new ArrayList<>()).add(reservation);
+        }
+        for (Map.Entry<Partition, List<Reservation>> entry : toWrite.entrySet())
+        {
+            final Partition partition = entry.getKey();
+            final List<Reservation> content = new ArrayList<>(load(partition, resolver));
+            for (Reservation reservation : entry.getValue())
+            {
+                final ReferenceInfo<Reservation> reference = reservation.getReference();
+                if (partitionForReservation.containsKey(reference))
+                {
+                    continue;
+                }
+                content.add(reservation);
+                addToPartition(partition, reservation);
+            }
+            writePartition(partition, content);
+        }
+        writeIndex();
+    }
+
+    /** returns the reservations of all partitions that overlap the interval. start and end can be null for an open interval */
+    synchronized public Collection<Reservation> getReservations(Date start, Date end, EntityResolver resolver) throws RaplaException
+    {
+        List<Reservation> result = new ArrayList<>();
+        for (Partition partition : partitions.values())
+        {
+            if (partition.overlaps(start, end))
+            {
+                result.addAll(load(partition, resolver));
+            }
+        }
+        return result;
+    }
+
+    /** returns the reservation or null if it is not stored here. */
+    synchronized public Reservation get(ReferenceInfo<Reservation> id, EntityResolver resolver) throws RaplaException
+    {
+        final Partition partition = partitionForReservation.get(id);
+        if (partition == null)
+        {
+            return null;
+        }
+        for (Reservation reservation : load(partition, resolver))
+        {
+            if (reservation.getReference().equals(id))
+            {
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the reservations that refer to one of the ids, e.g. as resource, owner or classification value, mapped by the id.
+     * The reservations are not in the reference index of the cache, so all partitions are read.
+     */
+    synchronized public Map<ReferenceInfo, Set<Reservation>> getReferencing(Set<ReferenceInfo> ids, EntityResolver resolver) throws RaplaException
+    {
+        Map<ReferenceInfo, Set<Reservation>> result = new LinkedHashMap<>();
+        if (ids.isEmpty())
+        {
+            return result;
+        }
+        for (Partition partition : partitions.values())
+        {
+            for (Reservation reservation : load(partition, resolver))
+            {
+                for (ReferenceInfo referenceInfo : ((EntityReferencer) reservation).getReferenceInfo())
+                {
+                    if (ids.contains(referenceInfo))
+                    {
+                        result.computeIfAbsent(referenceInfo, (key) -> new HashSet<>()).add(reservation);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** removes the reservation from the cold storage and returns it or null if it is not stored here. */
+    synchronized public Reservation remove(ReferenceInfo<Reservation> id, EntityResolver resolver) throws RaplaException
+    {
+        final Partition partition = partitionForReservation.get(id);
+        if (partition == null)
+        {
+            return null;
+        }
+        final List<Reservation> content = new ArrayList<>(load(partition, resolver));
+        Reservation removed = null;
+        for (Reservation reservation : content)
+        {
+            if (reservation.getReference().equals(id))
+            {
+                removed = reservation;
+            }
+        }
+        content.remove(removed);
+        partition.ids.remove(id.getId());
+        removeExternalId(id, partition.externalIds.remove(id.getId()));
+        partitionForReservation.remove(id);
+        if (content.isEmpty())
+        {
+            partitions.remove(partition.name);
+            deleteFile(getPartitionFile(partition));
+        }
+        else
+        {
+            writePartition(partition, content);
+        }
+        writeIndex();
+        return removed;
+    }
+
+    /**
+     * removes all reservations that ended before the horizon. Partitions that end before the horizon are deleted without reading them.
+     * @return the number of removed reservations
+     */
+    synchronized public int removeEndedBefore(Date horizon, EntityResolver resolver) throws RaplaException
+    {
+        int removed = 0;
+        for (Partition partition : new ArrayList<>(partitions.values()))
+        {
+            if (partition.minStart > horizon.getTime())
+            {
+                continue;
+            }
+            final List<Reservation> content;
+            if (partition.maxEnd <= horizon.getTime())
+            {
+                content = Collections.emptyList();
+            }
+            else
+            {
+                content = new ArrayList<>();
+                for (Reservation reservation : load(partition, resolver))
+                {
+                    if (reservation.getMaxEnd().after(horizon))
+                    {
+                        content.add(reservation);
+                    }
+                }
+                if (content.size() == partition.ids.size())
+                {
+                    continue;
+                }
+            }
+            removed += partition.ids.size() - content.size();
+            for (String id : partition.ids)
+            {
+                final ReferenceInfo<Reservation> reference = new ReferenceInfo<>(id, Reservation.class);
+                partitionForReservation.remove(reference);
+                removeExternalId(reference, partition.externalIds.get(id));
+            }
+            partition.ids.clear();
+            partition.externalIds.clear();
+            if (content.isEmpty())
+            {
+                partitions.remove(partition.name);
+                deleteFile(getPartitionFile(partition));
+            }
+            else
+            {
+                partition.minStart = Long.MAX_VALUE;
+                partition.maxEnd = Long.MIN_VALUE;
+                for (Reservation reservation : content)
+                {
+                    addToPartition(partition, reservation);
+                }
+                writePartition(partition, content);
+            }
+        }
+        if (removed > 0)
+        {
+            writeIndex();
+            logger.info("Removed " + removed + " reservations from cold storage that ended before " + horizon + ".");
+        }
+        return removed;
+    }
+
+    private void addToPartition(Partition partition, Reservation reservation)
+    {
+        final ReferenceInfo<Reservation> reference = reservation.getReference();
+        partition.ids.add(reference.getId());
+        partition.minStart = Math.min(partition.minStart, reservation.getFirstDate().getTime());
+        partition.maxEnd = Math.max(partition.maxEnd, reservation.getMaxEnd().getTime());
+        partitionForReservation.put(reference, partition);
+        final String externalId = reservation.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
+        if (externalId != null)
+        {
+            partition.externalIds.put(reference.getId(), externalId);
+            addExternalId(reference, externalId);
+        }
+    }
+
+    private void addExternalId(ReferenceInfo<Reservation> reference, String externalId)
+    {
+        reservationsWithExternalId.computeIfAbsent(externalId, (key) -> new LinkedHashSet<>()).add(reference);
+    }
+
+    private void removeExternalId(ReferenceInfo<Reservation> reference, String externalId)
+    {
+        if (externalId == null)
+        {
+            return;
+        }
+        final Set<ReferenceInfo<Reservation>> ids = reservationsWithExternalId.get(externalId);
+        if (ids != null && ids.remove(reference) && ids.isEmpty())
+        {
+            reservationsWithExternalId.remove(externalId);
+        }
+    }
+
+    private List<Reservation> load(Partition partition, EntityResolver resolver) throws RaplaException
+    {
+        final SoftReference<List<Reservation>> loaded = partition.loaded;
+        List<Reservation> reservations = loaded != null ? loaded.get() : null;
+        if (reservations != null)
+        {
+            return reservations;
+        }
+        reservations = new ArrayList<>();
+        final File file = getPartitionFile(partition);
+        if (file.exists())
+        {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (line.isEmpty())
+                    {
+                        continue;
+                    }
+                    final ReservationImpl reservation = gson.fromJson(line, ReservationImpl.class);
+                    reservation.setResolver(resolver);
+                    reservation.setReadOnly();
+                    reservations.add(reservation);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RaplaException("Could not read cold storage partition " + file + ": " + e.getMessage(), e);
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Loaded " + reservations.size() + " reservations from cold storage partition " + partition.name);
+            }
+        }
+        partition.loaded = new SoftReference<>(reservations);
+        return reservations;
+    }
+
+    private void writePartition(Partition partition, List<Reservation> content) throws RaplaException
+    {
+        final File file = getPartitionFile(partition);
+        List<String> lines = new ArrayList<>(content.size());
+        for (Reservation reservation : content)
+        {
+            // the compact json contains no line breaks, they are escaped in strings, so each reservation fits in a single line
+            lines.add(gson.toJson(reservation));
+        }
+        write(file, lines);
+        partition.loaded = new SoftReference<>(content);
+    }
+
+    private void readIndex() throws RaplaException
+    {
+        final File file = new File(directory, INDEX_FILE);
+        if (!file.exists())
+        {
+            return;
+        }
+        final Index index;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+        {
+            index = gson.fromJson(reader, Index.class);
+        }
+        catch (IOException e)
+        {
+            throw new RaplaException("Could not read cold storage index " + file + ": " + e.getMessage(), e);
+        }
+        for (Partition partition : index.partitions)
+        {
+            partitions.put(partition.name, partition);
+            for (String id : partition.ids)
+            {
+                final ReferenceInfo<Reservation> reference = new ReferenceInfo<>(id, Reservation.class);
+                partitionForReservation.put(reference, partition);
+                final String externalId = partition.externalIds.get(id);
+                if (externalId != null)
+                {
+                    addExternalId(reference, externalId);
+                }
+            }
+        }
+        logger.info("Cold storage " + directory + " contains " + partitionForReservation.size() + " reservations in " + partitions.size() + " partitions.");
+    }
+
+    private void writeIndex() throws RaplaException
+    {
+        Index index = new Index();
+        index.partitions.addAll(partitions.values());
+        write(new File(directory, INDEX_FILE), Arrays.asList(gson.toJson(index)));
+    }
+
+    private File getPartitionFile(Partition partition)
+    {
+        return new File(directory, PARTITION_PREFIX + partition.name + PARTITION_SUFFIX);
+    }
+
+    /** writes to a temporary file first, so that a crash doesn't leave a partly written file */
+    private void write(File file, List<String> lines) throws RaplaException
+    {
+        final File tmp = new File(directory, file.getName() + ".tmp");
+        try
+        {
+            Files.createDirectories(directory.toPath());
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))
+            {
+                for (String line : lines)
+                {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new RaplaException("Could not write cold storage file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void deleteFile(File file) throws RaplaException
+    {
+        try
+        {
+            Files.deleteIfExists(file.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new RaplaException("Could not delete cold storage file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    static boolean isColdCandidate(Reservation reservation, Date horizon)
+    {
+        return reservation.getAppointments().length > 0 && RaplaComponent.isEndedBefore(reservation, horizon);
+    }
+}
@@ -13,6 +13,10 @@
 package org.rapla.storage.impl.server;
 
 import org.rapla.components.util.DateTools;
+import org.rapla.components.util.metrics.Histogram;
+import org.rapla.components.util.metrics.MetricsRegistry;
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
@@ -48,18 +52,23 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 class ConflictFinder {
+    static final Histogram INITIALIZATION_DURATION = MetricsRegistry.getDefault().histogram("rapla_conflicts_initialization_seconds", "Duration of the conflict calculation for all resources");
+    static final Histogram UPDATE_DURATION = MetricsRegistry.getDefault().histogram("rapla_conflicts_update_seconds", "Duration of the conflict updates after a change");
 	AllocationMap  allocationMap;
     // stores all conflicts (can be without enable/disable information)
     private final Map<ReferenceInfo<Allocatable>,Map<ReferenceInfo<Conflict>,Conflict>> conflictMap;
     Logger logger;
     EntityResolver resolver;
     private final PermissionController permissionController;
+    // the conflicts each user can modify, see getConflicts(User). Filled on the first request of a user and kept up to date in updateConflicts
+    private final Map<ReferenceInfo<User>,Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>>> visibleConflicts = new HashMap<>();
     public ConflictFinder( AllocationMap  allocationMap, Date today, Logger logger, EntityResolver resolver,  PermissionController permissionController)  {
     	this.logger = logger;
     	this.allocationMap = allocationMap;
         this.permissionController = permissionController;
     	conflictMap = new ConcurrentHashMap<>();
     	long startTime = System.currentTimeMillis();
+    	long startNanos = System.nanoTime();
     	int conflictSize = 0;
         for (Allocatable allocatable:allocationMap.getAllocatables())
 		{
@@ -67,6 +76,7 @@ class ConflictFinder {
         	conflictMap.put( allocatable.getReference(), newConflicts);
         	conflictSize+= newConflicts.size();
 		}
+        INITIALIZATION_DURATION.recordSince(startNanos);
         logger.info("Conflict initialization found " + conflictSize + " conflicts and took " + (System.currentTimeMillis()- startTime) + "ms. " ); 
         this.resolver = resolver;
 	}
@@ -478,24 +488,147 @@ class ConflictFinder {
 	 */
 	public Collection<Conflict> getConflicts( User user)
 	{
-		Collection<Conflict> conflictList = new HashSet<>();
-		for ( ReferenceInfo<Allocatable> allocatable: conflictMap.keySet())
+		if ( user == null || user.isAdmin())
+		{
+			return getAllConflicts();
+		}
+		Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>> visible;
+		synchronized (visibleConflicts)
 		{
-			Map<ReferenceInfo<Conflict>,Conflict> set = conflictMap.get( allocatable);
-			if ( set != null)
+			visible = visibleConflicts.get( user.getReference());
+			if ( visible == null)
 			{
-				for ( Conflict conflict: set.values())
+				visible = new HashMap<>();
+				for ( Map<ReferenceInfo<Conflict>,Conflict> set: conflictMap.values())
 				{
-					if (user == null || permissionController.canModify(conflict,user))
+					for ( Conflict conflict: set.values())
 					{
-                        conflictList.add(conflict);
+						if (permissionController.canModify(conflict,user))
+						{
+							visible.put( conflict.getReference(), conflict.getAllocatableId());
+						}
 					}
 				}
+				visibleConflicts.put( user.getReference(), visible);
+			}
+			visible = new HashMap<>( visible);
+		}
+		Collection<Conflict> conflictList = new HashSet<>();
+		for ( Map.Entry<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>> entry: visible.entrySet())
+		{
+			Map<ReferenceInfo<Conflict>,Conflict> set = conflictMap.get( entry.getValue());
+			Conflict conflict = set != null ? set.get( entry.getKey()) : null;
+			if ( conflict != null)
+			{
+				conflictList.add( conflict);
 			}
 		}
 		return conflictList;
 	}
 
+	/** the number of all conflicts */
+	public int getConflictCount()
+	{
+		int count = 0;
+		for ( Map<ReferenceInfo<Conflict>,Conflict> set: conflictMap.values())
+		{
+			count += set.size();
+		}
+		return count;
+	}
+
+	private Collection<Conflict> getAllConflicts()
+	{
+		Collection<Conflict> conflictList = new HashSet<>();
+		for ( Map<ReferenceInfo<Conflict>,Conflict> set: conflictMap.values())
+		{
+			conflictList.addAll( set.values());
+		}
+		return conflictList;
+	}
+
+	/**
+	 * updates the conflicts of the users in visibleConflicts. Changed users are removed and calculated again on their next request,
+	 * changes of types or categories (user groups) can affect all permissions so the whole index is cleared.
+	 */
+	private void updateVisibleConflicts(UpdateResult updateResult, Collection<ConflictChangeOperation> conflictChanges)
+	{
+		synchronized (visibleConflicts)
+		{
+			if ( visibleConflicts.isEmpty())
+			{
+				return;
+			}
+			Set<ReferenceInfo<Allocatable>> changedAllocatables = new HashSet<>();
+			for (UpdateOperation operation: updateResult.getOperations())
+			{
+				final Class<? extends Entity> type = operation.getType();
+				if ( type == DynamicType.class || type == Category.class)
+				{
+					visibleConflicts.clear();
+					return;
+				}
+				if ( type == User.class)
+				{
+					visibleConflicts.remove( operation.getReference());
+				}
+				else if ( type == Allocatable.class)
+				{
+					changedAllocatables.add( operation.getReference());
+				}
+			}
+			Iterator<Map.Entry<ReferenceInfo<User>,Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>>>> it = visibleConflicts.entrySet().iterator();
+			while ( it.hasNext())
+			{
+				Map.Entry<ReferenceInfo<User>,Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>>> entry = it.next();
+				User user = resolver.tryResolve( entry.getKey());
+				if ( user == null)
+				{
+					it.remove();
+					continue;
+				}
+				Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>> visible = entry.getValue();
+				for ( ConflictChangeOperation change: conflictChanges)
+				{
+					final Conflict oldConflict = change.getOldConflict();
+					final Conflict newConflict = change.getNewConflict();
+					if ( oldConflict != null)
+					{
+						visible.remove( oldConflict.getReference());
+					}
+					if ( newConflict != null)
+					{
+						updateVisibility( visible, newConflict, user);
+					}
+				}
+				// the read permission of the resource could have changed
+				for ( ReferenceInfo<Allocatable> allocatableId: changedAllocatables)
+				{
+					Map<ReferenceInfo<Conflict>,Conflict> set = conflictMap.get( allocatableId);
+					if ( set != null)
+					{
+						for ( Conflict conflict: set.values())
+						{
+							updateVisibility( visible, conflict, user);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void updateVisibility(Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>> visible, Conflict conflict, User user)
+	{
+		if ( permissionController.canModify( conflict, user))
+		{
+			visible.put( conflict.getReference(), conflict.getAllocatableId());
+		}
+		else
+		{
+			visible.remove( conflict.getReference());
+		}
+	}
+
 
 	private boolean endsBefore(Conflict conflict,Date date )
 	{
@@ -577,6 +710,7 @@ class ConflictFinder {
 
 	public Collection<ConflictChangeOperation> updateConflicts(LocalAbstractCachableOperator.UpdateBindingsResult bindingsResult,UpdateResult currentUpdateResult, Date today)
 	{
+        final long startNanos = System.nanoTime();
         Collection<ConflictChangeOperation> conflictChanges = new ArrayList<>();
         Set<ReferenceInfo<Allocatable>> toUpdate = bindingsResult.toUpdate;
         Collection<ReferenceInfo<Allocatable>> removedAllocatables = bindingsResult.removedAllocatables;
@@ -738,6 +872,8 @@ class ConflictFinder {
                 conflictChanges.add(new ConflictChangeOperation(operation, oldConflict, newConflict));
     		}
     	}
+        updateVisibleConflicts(currentUpdateResult, conflictChanges);
+        UPDATE_DURATION.recordSince(startNanos);
         return conflictChanges;
 	}
 
@@ -781,6 +917,13 @@ class ConflictFinder {
                 conflictMap.put(  key, newMap);
             }
 		}
+		synchronized (visibleConflicts)
+		{
+			for ( Map<ReferenceInfo<Conflict>,ReferenceInfo<Allocatable>> visible: visibleConflicts.values())
+			{
+				visible.keySet().removeAll( result);
+			}
+		}
 		return result;
 		
 	}
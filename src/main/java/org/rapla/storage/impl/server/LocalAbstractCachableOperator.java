@@ -14,9 +14,7 @@
 package org.rapla.storage.impl.server;
 
 import io.reactivex.rxjava3.functions.Action;
-import org.apache.commons.collections4.BidiMap;
 import org.apache.commons.collections4.SortedBidiMap;
-import org.apache.commons.collections4.bidimap.DualHashBidiMap;
 import org.apache.commons.collections4.bidimap.DualTreeBidiMap;
 import org.jetbrains.annotations.NotNull;
 import org.rapla.RaplaResources;
@@ -26,6 +24,9 @@ import org.rapla.components.util.IOUtil;
 import org.rapla.components.util.SerializableDateTimeFormat;
 import org.rapla.components.util.Tools;
 import org.rapla.components.util.iterator.IterableChain;
+import org.rapla.components.util.metrics.Counter;
+import org.rapla.components.util.metrics.Histogram;
+import org.rapla.components.util.metrics.MetricsRegistry;
 import org.rapla.entities.Annotatable;
 import org.rapla.entities.Category;
 import org.rapla.entities.DependencyException;
@@ -116,11 +117,20 @@ import java.util.stream.Stream;
 
 public abstract class LocalAbstractCachableOperator extends AbstractCachableOperator implements Disposable, CachableStorageOperator, IdCreator
 {
+    static final Histogram REFRESH_DURATION = MetricsRegistry.getDefault().histogram("rapla_storage_refresh_seconds", "Duration of the refreshs from the data source");
+    static final Histogram UPDATE_DURATION = MetricsRegistry.getDefault().histogram("rapla_storage_update_seconds", "Duration of the cache and index updates after a change");
+    protected static final Histogram DISPATCH_DURATION = MetricsRegistry.getDefault().histogram("rapla_storage_dispatch_seconds", "Duration of the dispatch of changes to the data source");
+    protected static final Counter DISPATCHED_CHANGES = MetricsRegistry.getDefault().counter("rapla_storage_dispatched_changes_total", "Changes dispatched to the data source");
 
     InitStatus connectStatus = InitStatus.Disconnected;
     // some indexMaps
     AppointmentMapClass appointmentBindings;
-    private BidiMap<String, ReferenceInfo> externalIds;
+    // the resources and reservations with an external id, several entities can have the same id, e.g. if a calendar was imported twice
+    private final Map<String, Set<ReferenceInfo>> externalIds = new ConcurrentHashMap<>();
+    // the external id of each entity in the index, so that it can be removed even if the entity was changed in the meantime
+    private final Map<ReferenceInfo, String> externalIdOfEntity = new ConcurrentHashMap<>();
+    private ColdReservationStorage coldStorage;
+    private StartupImage startupImage;
 
     protected enum InitStatus
     {
@@ -165,6 +175,46 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         appointmentBindings = new AppointmentMapClass(logger);
     }
 
+    /** the gauges are registered when the data is loaded and only keep a weak reference to the operator. The operator loaded last replaces them */
+    private void registerGauges(MetricsRegistry registry)
+    {
+        final String cacheHelp = "Entities in the cache";
+        registry.gauge("rapla_cache_entities", cacheHelp, this, (operator) -> operator.cache.getAllocatables().size(), "type", "allocatable");
+        registry.gauge("rapla_cache_entities", cacheHelp, this, (operator) -> operator.cache.getReservations().size(), "type", "reservation");
+        registry.gauge("rapla_cache_entities", cacheHelp, this, (operator) -> operator.cache.getUsers().size(), "type", "user");
+        registry.gauge("rapla_cache_entities", cacheHelp, this, (operator) -> operator.cache.getDynamicTypes().size(), "type", "dynamictype");
+        registry.gauge("rapla_conflicts", "Current conflicts", this, (operator) -> {
+            final ConflictFinder finder = operator.conflictFinder;
+            return finder != null ? finder.getConflictCount() : 0;
+        });
+        registry.gauge("rapla_cold_storage_reservations", "Past reservations in the cold storage", this, (operator) -> {
+            final ColdReservationStorage storage = operator.coldStorage;
+            return storage != null ? storage.size() : 0;
+        });
+    }
+
+    /** enables the cold storage for reservations that ended before a horizon, see {@link #moveToColdStorage(Date)} */
+    public void setColdStorage(ColdReservationStorage coldStorage)
+    {
+        this.coldStorage = coldStorage;
+    }
+
+    public ColdReservationStorage getColdStorage()
+    {
+        return coldStorage;
+    }
+
+    /** enables the startup image, that is written on disconnect and periodically and read instead of the storage on connect */
+    public void setStartupImage(StartupImage startupImage)
+    {
+        this.startupImage = startupImage;
+    }
+
+    public StartupImage getStartupImage()
+    {
+        return startupImage;
+    }
+
     @Override
     final public boolean isConnected()
     {
@@ -481,17 +531,23 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 }
                 nonTemplates = Collections.emptySet();
             }
+            // reservations in the cold storage are only returned for queries with a start, so they don't show up in open queries like the resource sync
+            final Collection<Reservation> coldReservations = (coldStorage != null && start != null && !isResourceTemplate) ? getColdReservations(start, end) : null;
             Map<Entity, Collection<Appointment>> allocatableMap = new LinkedHashMap<>();
             for (Entity entity: entities)
             {
                 SortedSet<Appointment> appointmentSet;
-                final SortedSet<Appointment> appointments;
+                SortedSet<Appointment> appointments;
                 if (entity.getTypeClass()==User.class) {
                     ReferenceInfo<User> reference = ((User) entity).getReference();
                     appointments = getAppointmentsForUser(reference);
                 } else {
                     appointments = getAppointments((Allocatable) entity);
                 }
+                if (coldReservations != null && !coldReservations.isEmpty())
+                {
+                    appointments = addColdAppointments(entity, appointments, coldReservations);
+                }
                 appointmentSet = AppointmentImpl.getAppointments(appointments, user, start, end, excludeExceptions);
                 for (Appointment appointment : appointmentSet)
                 {
@@ -537,6 +593,216 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     }
 
 
+    private Collection<Reservation> getColdReservations(Date start, Date end) throws RaplaException
+    {
+        final Collection<Reservation> reservations = coldStorage.getReservations(start, end, this);
+        List<Reservation> result = new ArrayList<>(reservations.size());
+        for (Reservation reservation : reservations)
+        {
+            // a reservation that was changed after it was moved to the cold storage is back in the cache
+            if (cache.tryResolve(reservation.getReference()) == null)
+            {
+                result.add(reservation);
+            }
+        }
+        return result;
+    }
+
+    private SortedSet<Appointment> addColdAppointments(Entity entity, SortedSet<Appointment> appointments, Collection<Reservation> coldReservations)
+    {
+        SortedSet<Appointment> result = new TreeSet<>(new AppointmentStartComparator());
+        result.addAll(appointments);
+        if (entity.getTypeClass() == User.class)
+        {
+            final ReferenceInfo<User> userRef = ((User) entity).getReference();
+            for (Reservation reservation : coldReservations)
+            {
+                if (userRef.equals(reservation.getOwnerRef()))
+                {
+                    result.addAll(Arrays.asList(reservation.getAppointments()));
+                }
+            }
+            return result;
+        }
+        final Set<ReferenceInfo<Allocatable>> allocatableIds = cache.getDependentRef(((Allocatable) entity).getReference());
+        for (Reservation reservation : coldReservations)
+        {
+            final ReservationImpl event = (ReservationImpl) reservation;
+            for (Appointment appointment : reservation.getAppointments())
+            {
+                for (ReferenceInfo<Allocatable> allocatableId : allocatableIds)
+                {
+                    if (event.hasAllocatedOnRef(allocatableId, appointment))
+                    {
+                        result.add(appointment);
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves all reservations whose appointments end before the horizon (at most today) from the cache into the cold storage.
+     * They are removed from the cache, the appointment bindings and the persistent storage without an update event, so clients and the
+     * resource sync don't see a deletion, and they don't take part in the conflict calculation anymore.
+     * As the removal is not in the history, a startup image is deleted before and written again after the move.
+     * @return the number of moved reservations
+     */
+    @Override
+    public int moveToColdStorage(Date horizon) throws RaplaException
+    {
+        if (coldStorage == null)
+        {
+            return 0;
+        }
+        final Date today = today();
+        final Date maxEnd = horizon.after(today) ? today : horizon;
+        final int moved;
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded("Moving reservations to cold storage");
+        try
+        {
+            List<Reservation> toMove = new ArrayList<>();
+            for (Reservation reservation : cache.getReservations())
+            {
+                if (!RaplaComponent.isTemplate(reservation) && ColdReservationStorage.isColdCandidate(reservation, maxEnd))
+                {
+                    toMove.add(reservation);
+                }
+            }
+            if (toMove.isEmpty())
+            {
+                return 0;
+            }
+            // write the cold storage first, so nothing gets lost if removing from the database fails
+            coldStorage.store(toMove, this);
+            // the removal is not written to the history, so an image taken before would bring the moved reservations back on the next start
+            if (startupImage != null)
+            {
+                startupImage.invalidate();
+            }
+            UpdateBindingsResult bindingsResult = new UpdateBindingsResult();
+            List<ReferenceInfo<Reservation>> ids = new ArrayList<>(toMove.size());
+            for (Reservation reservation : toMove)
+            {
+                final ReferenceInfo<Reservation> reference = reservation.getReference();
+                appointmentBindings.updateReservation(reservation, bindingsResult.toUpdate, true);
+                removeExternalId(reference);
+                cache.remove(reservation);
+                ids.add(reference);
+            }
+            // the conflicts of the moved reservations are removed like in refresh, but there are no reservation operations for the clients
+            final Date now = getCurrentTimestamp();
+            updateConflicts(bindingsResult, new UpdateResult(now, now, Collections.emptyMap(), Collections.emptyMap()), new ArrayList<>());
+            removeColdReservationsFromDatabase(ids);
+            getLogger().info("Moved " + ids.size() + " reservations that ended before " + maxEnd + " to cold storage.");
+            moved = ids.size();
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+        // a new image without the moved reservations, so the next start is fast again
+        try
+        {
+            writeStartupImage();
+        }
+        catch (RaplaException ex)
+        {
+            getLogger().warn("Could not rewrite startup image after moving reservations to cold storage: " + ex.getMessage(), ex);
+        }
+        return moved;
+    }
+
+    /**
+     * Removes all reservations whose appointments ended before maxEnd with a single update event, so the conflicts and indices are updated once
+     * and the storage can remove the rows in batches. Reservations in the cold storage are removed with their partitions.
+     * @return the number of removed reservations
+     */
+    @Override
+    public int purgeReservations(Date maxEnd) throws RaplaException
+    {
+        final long start = System.currentTimeMillis();
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded("Purging reservations");
+        try
+        {
+            UpdateEvent evt = new UpdateEvent();
+            for (Reservation reservation : cache.getReservations())
+            {
+                if (!RaplaComponent.isTemplate(reservation) && RaplaComponent.isEndedBefore(reservation, maxEnd))
+                {
+                    evt.putRemoveId(reservation.getReference());
+                }
+            }
+            final int count = evt.getRemoveIds().size();
+            int removed = 0;
+            if (count > 0)
+            {
+                getLogger().info("Purging " + count + " reservations that ended before " + maxEnd + ".");
+                dispatch(evt);
+                removed += count;
+            }
+            if (coldStorage != null)
+            {
+                removed += coldStorage.removeEndedBefore(maxEnd, this);
+            }
+            if (removed == 0)
+            {
+                return 0;
+            }
+            final long time = Math.max(1, System.currentTimeMillis() - start);
+            getLogger().info("Purged " + removed + " reservations in " + time + " ms (" + (removed * 1000L / time) + " per second).");
+            return removed;
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+    }
+
+    /** removes the reservations that were moved to the cold storage from the persistent storage */
+    protected void removeColdReservationsFromDatabase(@SuppressWarnings("unused") Collection<ReferenceInfo<Reservation>> reservations) throws RaplaException
+    {
+    }
+
+    /**
+     * Puts reservations from the cold storage back into the cache, if they are changed or removed by the event.
+     * They stay in the cold storage until the update is applied in {@link #refresh(Date, Date, Collection, Collection, Collection)}.
+     */
+    private void thawColdReservations(UpdateEvent evt) throws RaplaException
+    {
+        List<ReferenceInfo<Reservation>> ids = new ArrayList<>();
+        for (Entity entity : evt.getStoreObjects())
+        {
+            if (entity.getTypeClass() == Reservation.class)
+            {
+                ids.add(entity.getReference());
+            }
+        }
+        for (ReferenceInfo id : evt.getRemoveIds())
+        {
+            if (id.getType() == Reservation.class)
+            {
+                ids.add(id);
+            }
+        }
+        for (ReferenceInfo<Reservation> id : ids)
+        {
+            if (!coldStorage.contains(id) || cache.tryResolve(id) != null)
+            {
+                continue;
+            }
+            final Reservation reservation = coldStorage.get(id, this);
+            if (reservation != null)
+            {
+                cache.put(reservation);
+                appointmentBindings.updateReservation(reservation, new HashSet<>(), false);
+                getLogger().info("Reservation " + id + " taken from cold storage for update.");
+            }
+        }
+    }
+
     private boolean containsResourceTemplate(Collection<Allocatable> allocs) {
         if ( allocs == null)
         {
@@ -779,6 +1045,161 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         processUserPersonLink(entities);
     }
 
+    /**
+     * identifies the state of the storage a startup image is written for, e.g. the database url or the data file with its size and modification time.
+     * Images of another source are not loaded. Returns null if the storage doesn't support startup images.
+     */
+    protected String getStartupImageSource()
+    {
+        return null;
+    }
+
+    /** collects the entities of the cache for the startup image. Called with a read lock. */
+    protected StartupImage.Content createStartupImageContent()
+    {
+        final StartupImage.Content content = new StartupImage.Content();
+        final UpdateEvent entities = content.getEntities();
+        for (Category category : CategoryImpl.getRecursive(cache.getSuperCategory()))
+        {
+            entities.addStore(category);
+        }
+        for (DynamicType type : cache.getDynamicTypes())
+        {
+            entities.addStore(type);
+        }
+        final Collection<User> users = cache.getUsers();
+        for (User user : users)
+        {
+            entities.addStore(user);
+            final String password = cache.getPassword(user.getReference());
+            if (password != null)
+            {
+                content.passwords.put(user.getId(), password);
+            }
+        }
+        for (User user : new IterableChain<>(users, Collections.<User>singleton(null)))
+        {
+            final Preferences preferences = cache.getPreferencesForUserId(user != null ? user.getId() : null);
+            if (preferences != null)
+            {
+                entities.addStore(preferences);
+            }
+        }
+        for (Allocatable allocatable : cache.getAllocatables())
+        {
+            entities.addStore(allocatable);
+        }
+        for (Reservation reservation : cache.getReservations())
+        {
+            entities.addStore(reservation);
+        }
+        for (Conflict conflict : cache.getDisabledConflicts())
+        {
+            entities.addStore(conflict);
+        }
+        return content;
+    }
+
+    /** writes the cache to the startup image, if an image is configured and the storage supports it */
+    public void writeStartupImage() throws RaplaException
+    {
+        if (startupImage == null || !isConnected())
+        {
+            return;
+        }
+        // the image must match the source, so no changes are allowed while writing
+        final RaplaLock.ReadLock readLock = lockManager.readLock(getClass(), "writeStartupImage");
+        try
+        {
+            final String source = getStartupImageSource();
+            if (source == null)
+            {
+                return;
+            }
+            startupImage.write(getLastRefreshed(), source, createStartupImageContent());
+        }
+        finally
+        {
+            lockManager.unlock(readLock);
+        }
+    }
+
+    /**
+     * puts the entities of the startup image into the cache, if there is an image of the current source that is not older than notBefore.
+     * The appointment bindings and the conflicts are computed in {@link #initIndizes()} as after a full load.
+     * @return the content of the image or null if the data must be loaded from the storage
+     */
+    protected StartupImage.Content loadStartupImage(Date notBefore) throws RaplaException
+    {
+        if (startupImage == null)
+        {
+            return null;
+        }
+        final String source = getStartupImageSource();
+        if (source == null)
+        {
+            return null;
+        }
+        final StartupImage.Content content = startupImage.read(source, notBefore);
+        if (content == null)
+        {
+            return null;
+        }
+        try
+        {
+            final List<Entity> list = new ArrayList<>();
+            for (Entity entity : content.getEntities().getStoreObjects())
+            {
+                // the internal types are already in the cache
+                if (cache.tryResolve(entity.getReference()) == null)
+                {
+                    list.add(entity);
+                }
+            }
+            // the decoded entities have no resolver yet, but the cache needs one to index allocatables
+            for (Entity entity : list)
+            {
+                if (entity instanceof EntityReferencer)
+                {
+                    ((EntityReferencer) entity).setResolver(this);
+                }
+            }
+            cache.putAll(list);
+            resolveInitial(list, this);
+            // It is important to do the read only later because some resolve might involve write to referenced objects
+            for (Entity entity : list)
+            {
+                ((RefEntity) entity).setReadOnly();
+            }
+            cache.getSuperCategory().setReadOnly();
+            for (Map.Entry<String, String> entry : content.passwords.entrySet())
+            {
+                cache.putPassword(new ReferenceInfo<>(entry.getKey(), User.class), entry.getValue());
+            }
+            for (Entity entity : list)
+            {
+                if (EntityHistory.isSupportedEntity(entity.getTypeClass()))
+                {
+                    Date lastChanged = ((Timestamp) entity).getLastChanged();
+                    if (lastChanged != null)
+                    {
+                        history.addHistoryEntry(entity, lastChanged, false);
+                    }
+                }
+            }
+            getLogger().info("Loaded " + list.size() + " entities from startup image " + startupImage.getFile());
+            return content;
+        }
+        catch (RaplaException | RuntimeException ex)
+        {
+            getLogger().warn("Could not use startup image " + startupImage.getFile() + ": " + ex.getMessage() + ". Loading all data.", ex);
+            cache.clearAll();
+            history.clear();
+            addInternalTypes(cache);
+            return null;
+        }
+    }
+
     protected Collection<Entity> migrateTemplates() throws RaplaException
     {
         Collection<Allocatable> allocatables = cache.getAllocatables();
@@ -981,8 +1402,10 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
     protected void initIndizes() throws RaplaException
     {
+        final long start = System.currentTimeMillis();
         deleteUpdateSet = new DualTreeBidiMap<>();
-        externalIds = new DualHashBidiMap<>();
+        externalIds.clear();
+        externalIdOfEntity.clear();
         // The appointment map
 
         final Collection<Allocatable> alloctables = cache.getAllocatables();
@@ -992,7 +1415,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
             if (externalId != null)
             {
-                externalIds.put(externalId, alloc.getReference());
+                putExternalId(externalId, alloc.getReference());
             }
             else
             {
@@ -1003,7 +1426,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                     final Object value = classification.getValueForAttribute(idAtt);
                     if (value != null)
                     {
-                        externalIds.put(value.toString(), alloc.getReference());
+                        putExternalId(value.toString(), alloc.getReference());
                     }
                 }
             }
@@ -1015,7 +1438,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             final String externalId = event.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
             if (externalId != null)
             {
-                externalIds.put(externalId, event.getReference());
+                putExternalId(externalId, event.getReference());
             }
         }
         appointmentBindings.initAppointmentBindings(events);
@@ -1036,6 +1459,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         // The conflict map
         Logger logger = getLogger();
         conflictFinder = new ConflictFinder(allocationMap, today2, logger, this, permissionController);
+        registerGauges(MetricsRegistry.getDefault());
 
         // if a client request changes before the start date return refresh conflict flag
         Action cleanUpConflicts = ()->
@@ -1074,8 +1498,23 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             Date timestamp = preference.getLastChanged();
             addToDeleteUpdate(referenceInfo, timestamp, isDelete, preference);
         }
+        getLogger().info("Appointment bindings and " + conflicts.size() + " conflicts computed in " + (System.currentTimeMillis() - start) + " ms.");
         final long delayCleanup = DateTools.MILLISECONDS_PER_HOUR;
         scheduleConnectedTasks(cleanUpConflicts, delayCleanup, DateTools.MILLISECONDS_PER_HOUR);
+        if (startupImage != null)
+        {
+            scheduleConnectedTasks(() ->
+            {
+                try
+                {
+                    writeStartupImage();
+                }
+                catch (Throwable t)
+                {
+                    getLogger().error("Could not write startup image: " + t.getMessage(), t);
+                }
+            }, StartupImage.WRITE_PERIOD, StartupImage.WRITE_PERIOD);
+        }
         final int refreshPeriod = 1000 * 60;
         final long delayRefresh = 1000;
         scheduleConnectedTasks(()->
@@ -1120,6 +1559,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     @Override
     public void refresh() throws RaplaException
     {
+        final long start = System.nanoTime();
         Object refreshData = getRefreshData();
         final RaplaLock.WriteLock lock = writeLockIfLoaded("refreshing");
         try
@@ -1129,6 +1569,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         finally
         {
             lockManager.unlock(lock);
+            REFRESH_DURATION.recordSince(start);
         }
     }
 
@@ -1145,6 +1586,17 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     {
         if (!isConnected())
             return;
+        if (startupImage != null)
+        {
+            try
+            {
+                writeStartupImage();
+            }
+            catch (Exception ex)
+            {
+                getLogger().error("Could not write startup image: " + ex.getMessage(), ex);
+            }
+        }
         RaplaLock.WriteLock writeLock = null;
         try
         {
@@ -1291,6 +1743,29 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             checkAndAddConflict(lastKnown);
         }
         */
+        return updateConflicts(bindingResult, result, conflictChanges);
+
+        //      Collection<Change> changes = result.getOperations( UpdateResult.Change.class);
+        //      for ( Change change:changes)
+        //      {
+        //          Entity old = change.getOld();
+        //          if (!( old instanceof Conflict))
+        //          {
+        //              continue;
+        //          }
+        //          Conflict conflict = (Conflict)change.getNew();
+        //          if (conflict.isEnabledAppointment1() && conflict.isEnabledAppointment2())
+        //          {
+        //              conflicts.add( conflict);
+        //          }
+        //      }
+
+    }
+
+    /** recalculates the conflicts of the resources in the binding result, registers the conflict changes for the clients and removes enabled conflicts */
+    private Collection<ConflictFinder.ConflictChangeOperation> updateConflicts(UpdateBindingsResult bindingResult, UpdateResult result,
+            Collection<UpdateOperation> conflictChanges)
+    {
         Date today = today();
         // processes the conflicts and adds the changes to the result
         final Collection<ConflictFinder.ConflictChangeOperation> calculatedConflictChanges = conflictFinder.updateConflicts(bindingResult, result, today);
@@ -1322,31 +1797,14 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         removeConflictsFromDatabase(conflictsToDelete);
         removeConflictsFromCache(conflictsToDelete);
         return calculatedConflictChanges;
-
-        //      Collection<Change> changes = result.getOperations( UpdateResult.Change.class);
-        //      for ( Change change:changes)
-        //      {
-        //          Entity old = change.getOld();
-        //          if (!( old instanceof Conflict))
-        //          {
-        //              continue;
-        //          }
-        //          Conflict conflict = (Conflict)change.getNew();
-        //          if (conflict.isEnabledAppointment1() && conflict.isEnabledAppointment2())
-        //          {
-        //              conflicts.add( conflict);
-        //          }
-        //      }
-
     }
 
     private void updateExternalId(UpdateOperation op, ReferenceInfo id)
     {
-        final BidiMap<ReferenceInfo, String> referenceInfoStringBidiMap = externalIds.inverseBidiMap();
-        final String oldExternalId = referenceInfoStringBidiMap.get(id);
+        final String oldExternalId = externalIdOfEntity.get(id);
         if (op instanceof Remove)
         {
-            externalIds.remove(oldExternalId);
+            removeExternalId(id);
         }
         else
         {
@@ -1356,16 +1814,35 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
                 final String newExternalId = ((Annotatable) entity).getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID);
                 if (oldExternalId != null && (newExternalId == null || !newExternalId.equals(oldExternalId)))
                 {
-                    externalIds.remove(oldExternalId);
+                    removeExternalId(id);
                 }
                 if (newExternalId != null && (oldExternalId == null || !oldExternalId.equals(newExternalId)))
                 {
-                    externalIds.put(newExternalId, id);
+                    putExternalId(newExternalId, id);
                 }
             }
         }
     }
 
+    private void putExternalId(String externalId, ReferenceInfo id)
+    {
+        externalIds.computeIfAbsent(externalId, (k) -> ConcurrentHashMap.newKeySet()).add(id);
+        externalIdOfEntity.put(id, externalId);
+    }
+
+    private void removeExternalId(ReferenceInfo id)
+    {
+        final String externalId = externalIdOfEntity.remove(id);
+        if (externalId == null)
+        {
+            return;
+        }
+        externalIds.computeIfPresent(externalId, (k, set) -> {
+            set.remove(id);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
     // updates appointmentBinding
     private UpdateBindingsResult updateAppointmentBindings(UpdateResult result)
     {
@@ -2038,14 +2515,25 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     protected UpdateResult refresh(Date since, Date until, Collection<Entity> storeObjects, Collection<PreferencePatch> preferencePatches,
             Collection<ReferenceInfo> removedIds) throws RaplaException
     {
-
+        final long start = System.nanoTime();
         UpdateResult update = super.update(since, until, storeObjects, preferencePatches, removedIds);
+        if (coldStorage != null && coldStorage.size() > 0)
+        {
+            for (UpdateOperation op : update.getOperations())
+            {
+                if (op.getType() == Reservation.class)
+                {
+                    coldStorage.remove(op.getReference(), this);
+                }
+            }
+        }
         final Collection<ConflictFinder.ConflictChangeOperation> updateOperations = updateIndizes(update);
         for (ConflictFinder.ConflictChangeOperation op : updateOperations)
         {
             // conflicts
             update.addOperation(op.getNewConflict(), op.getOldConflict(), op.getOperation());
         }
+        UPDATE_DURATION.recordSince(start);
         return update;
     }
 
@@ -2121,8 +2609,69 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         return conflicts;
     }
 
+    @Override
+    public List<RaplaException> dispatchAll(List<UpdateEvent> events) throws RaplaException
+    {
+        List<RaplaException> result = new ArrayList<>(events.size());
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded("Dispatching " + events.size() + " events");
+        try
+        {
+            for (UpdateEvent evt : events)
+            {
+                try
+                {
+                    dispatch(evt);
+                    result.add(null);
+                }
+                catch (RaplaException ex)
+                {
+                    result.add(ex);
+                }
+                catch (RuntimeException ex)
+                {
+                    result.add(new RaplaException(ex));
+                }
+            }
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+        return result;
+    }
+
+    /**
+     * returns the ids the event changes and, if includeReferences is set, the ids the stored entities refer to.
+     * If an event of a batch refers to an entity an earlier event changed, the cache must be updated between them.
+     */
+    protected Set<ReferenceInfo> getAffectedIds(UpdateEvent evt, boolean includeReferences) throws RaplaException
+    {
+        Set<ReferenceInfo> ids = new HashSet<>();
+        for (Entity entity : evt.getStoreObjects())
+        {
+            ids.add(entity.getReference());
+            if (includeReferences && entity instanceof EntityReferencer)
+            {
+                for (ReferenceInfo referenceInfo : ((EntityReferencer) entity).getReferenceInfo())
+                {
+                    ids.add(referenceInfo);
+                }
+            }
+        }
+        ids.addAll(evt.getRemoveIds());
+        for (PreferencePatch patch : evt.getPreferencePatches())
+        {
+            ids.add(patch.getReference());
+        }
+        return ids;
+    }
+
     protected void preprocessEventStorage(final UpdateEvent evt) throws RaplaException
     {
+        if (coldStorage != null)
+        {
+            thawColdReservations(evt);
+        }
         EntityStore store = new EntityStore(this);
         Collection<Entity> storeObjects = evt.getStoreObjects();
         for (Entity entity : storeObjects)
@@ -2221,7 +2770,13 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             if (entity instanceof Category)
             {
                 final CategoryImpl category = (CategoryImpl) entity;
-                addReferers(cache.getDynamicTypes(), category, dynamicTypesToStore);
+                for (Entity referer : cache.getReferers(category.getReference()))
+                {
+                    if (referer.getTypeClass() == DynamicType.class)
+                    {
+                        dynamicTypesToStore.add(referer);
+                    }
+                }
                 final ReferenceInfo<Category> reference = entity.getReference();
                 ReferenceInfo<Category> parentReference = category.getParentRef();
                 categoriesToStore.add(reference.getId());
@@ -2555,12 +3110,27 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
      */
     final protected Map<ReferenceInfo,Set<Entity>> getDependencies(Collection<Entity> entityList, EntityStore store)
     {
-        Set<ReferenceInfo> set = entityList.stream().filter(x -> {
+        Set<ReferenceInfo> set = getReferencableIds(entityList);
+        Map<ReferenceInfo, Set<Entity>> referencingEntities = getReferencingEntities(set, store);
+        return referencingEntities;
+    }
+
+    private static Set<ReferenceInfo> getReferencableIds(Collection<Entity> entityList)
+    {
+        return entityList.stream().filter(x -> {
             Class<? extends Entity> type = x.getTypeClass();
             return (Category.class == type || DynamicType.class == type || Allocatable.class == type || User.class == type);
         }).map(Entity::getReference).collect(Collectors.toSet());
-        Map<ReferenceInfo, Set<Entity>> referencingEntities = getReferencingEntities(set, store);
-        return referencingEntities;
+    }
+
+    /** adds the reservations in the cold storage that refer to the removed entities, so they can't be removed while archived reservations use them */
+    private void addColdDependencies(Collection<Entity> removeEntities, Map<ReferenceInfo, Set<Entity>> dependencyMap) throws RaplaException
+    {
+        final Map<ReferenceInfo, Set<Reservation>> coldReferences = coldStorage.getReferencing(getReferencableIds(removeEntities), this);
+        for (Map.Entry<ReferenceInfo, Set<Reservation>> entry : coldReferences.entrySet())
+        {
+            dependencyMap.computeIfAbsent(entry.getKey(), (key) -> new HashSet<>()).addAll(entry.getValue());
+        }
     }
 
     private void removeLastChangedReference(Collection<Entity> entityList, Map<ReferenceInfo, Set<Entity>> referencingEntities) {
@@ -2617,93 +3187,38 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     }
 
     public Set<ReferenceInfo<Allocatable>> filterAllocatablesWithNonTemplateReservations(Set<ReferenceInfo<Allocatable>> allocatables) {
-        Iterable<Reservation> refererList = cache.getReservations();
-        Set<ReferenceInfo<Allocatable>> entityReferences = allocatables;
         Set<ReferenceInfo<Allocatable>> result = new HashSet<>();
-        for (Reservation referer : refererList)
+        for (ReferenceInfo<Allocatable> allocatable : allocatables)
         {
-            // we ingnore Templates
-            if (RaplaComponent.isTemplate( referer ))
+            for (Entity referer : cache.getReferers(allocatable))
             {
-                continue;
-            }
-            if (referer != null && !entityReferences.contains(referer.getReference()))
-            {
-                Iterable<ReferenceInfo> referenceInfo = ((EntityReferencer) referer).getReferenceInfo();
-                for (ReferenceInfo info : referenceInfo)
+                // we ingnore Templates
+                if (referer.getTypeClass() == Reservation.class && !RaplaComponent.isTemplate( referer ))
                 {
-                    if (entityReferences.contains( info ))
-                    {
-                        result.add( info);
-                    }
+                    result.add( allocatable);
+                    break;
                 }
             }
         }
         return result;
     }
 
+    /** uses the reverse reference index of the cache, so only the referers of the passed entities are visited */
     @NotNull
     private Map<ReferenceInfo, Set<Entity>> getReferencingEntities(Set<ReferenceInfo> entityReferences, EntityStore store) {
         Map<ReferenceInfo,Set<Entity>> result = new LinkedHashMap<>();
-        addReferers(cache.getReservations(), entityReferences, result);
-        addReferers(cache.getAllocatables(), entityReferences, result);
-        Collection<User> users = cache.getUsers();
-        addReferers(users, entityReferences, result);
-        addReferers(cache.getDynamicTypes(), entityReferences, result);
-        addReferers(CategoryImpl.getRecursive(cache.getSuperCategory()), entityReferences, result);
-
-        List<Preferences> preferenceList = new ArrayList<>();
-        for (User user : users)
+        for (ReferenceInfo info : entityReferences)
         {
-            PreferencesImpl preferences = cache.getPreferencesForUserId(user.getId());
-            if (preferences != null)
+            for (Entity referer : cache.getReferers(info))
             {
-                preferenceList.add(preferences);
-            }
-        }
-        PreferencesImpl systemPreferences = cache.getPreferencesForUserId(null);
-        if (systemPreferences != null)
-        {
-            preferenceList.add(systemPreferences);
-        }
-        addReferers(preferenceList, entityReferences, result);
-        return result;
-    }
-
-    private void addReferers(Iterable<? extends Entity> refererList, Set<ReferenceInfo> entityReferences, Map<ReferenceInfo,Set<Entity>> result)
-    {
-        for (Entity referer : refererList)
-        {
-            if (referer != null && !entityReferences.contains(referer.getReference()))
-            {
-                Iterable<ReferenceInfo> referenceInfo = ((EntityReferencer) referer).getReferenceInfo();
-                for (ReferenceInfo info : referenceInfo)
+                if (!entityReferences.contains(referer.getReference()))
                 {
-                    if (entityReferences.contains( info ))
-                    {
-                        Set<Entity> entities = result.computeIfAbsent(info, (k) -> new HashSet<>());
-                        entities.add( referer);
-                    }
-                }
-            }
-        }
-    }
-
-    private void addReferers(Iterable<? extends Entity> refererList, Entity object, Collection<Entity> result)
-    {
-        for (Entity referer : refererList)
-        {
-            if (referer != null && !referer.isIdentical(object))
-            {
-                for (ReferenceInfo info : ((EntityReferencer) referer).getReferenceInfo())
-                {
-                    if (info.isReferenceOf(object))
-                    {
-                        result.add(referer);
-                    }
+                    Set<Entity> entities = result.computeIfAbsent(info, (k) -> new HashSet<>());
+                    entities.add( referer);
                 }
             }
         }
+        return result;
     }
 
     private int countDynamicTypes(Collection<? extends RaplaObject> entities, Set<String> classificationTypes) throws RaplaException
@@ -3172,6 +3687,10 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         // we don't add the dependencies from the stored object list here,
         // because a dependency could be removed in a stored object
         Map<ReferenceInfo, Set<Entity>> dependencyMap = getDependencies(removeEntities, store);
+        if (coldStorage != null && coldStorage.size() > 0)
+        {
+            addColdDependencies(removeEntities, dependencyMap);
+        }
         removeLastChangedReference(removeEntities, dependencyMap);
         for (Entity entity : removeEntities) {
             Set<Entity> dependencies = dependencyMap.get(entity.getReference());
@@ -3459,6 +3978,106 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         return map;
     }
 
+    @Override
+    public Promise<Map<ReferenceInfo<Allocatable>, BitSet>> getAvailabilityMatrix(Collection<Allocatable> allocatables, List<Appointment> appointments,
+            Collection<Reservation> ignoreList)
+    {
+        return scheduler.supply(() -> calculateAvailabilityMatrix(allocatables, appointments, ignoreList));
+    }
+
+    /** computes the busy bits for all allocatables in one pass over the appointments of each allocatable. The time range and reservation of the passed
+     * appointments are computed once and shared, the allocatables are evaluated in parallel. */
+    Map<ReferenceInfo<Allocatable>, BitSet> calculateAvailabilityMatrix(Collection<Allocatable> allocatables, List<Appointment> appointments,
+            Collection<Reservation> ignoreList)
+    {
+        final int size = appointments.size();
+        final Appointment[] appointmentArray = appointments.toArray(Appointment.EMPTY_ARRAY);
+        final Reservation[] reservations = new Reservation[size];
+        final long[] starts = new long[size];
+        final long[] ends = new long[size];
+        long minStart = Long.MAX_VALUE;
+        long maxEnd = Long.MIN_VALUE;
+        boolean testAny = false;
+        for (int i = 0; i < size; i++)
+        {
+            final Appointment appointment = appointmentArray[i];
+            final Reservation reservation = appointment.getReservation();
+            // Templates don't cause conflicts
+            if (RaplaComponent.isTemplate(appointment) || RaplaComponent.isTemplate(reservation))
+            {
+                appointmentArray[i] = null;
+                continue;
+            }
+            reservations[i] = reservation;
+            starts[i] = appointment.getStart().getTime();
+            final Date end = appointment.getMaxEnd();
+            ends[i] = end != null ? end.getTime() : Long.MAX_VALUE;
+            minStart = Math.min(minStart, starts[i]);
+            maxEnd = Math.max(maxEnd, ends[i]);
+            testAny = true;
+        }
+        final Map<ReferenceInfo<Allocatable>, BitSet> result = new ConcurrentHashMap<>();
+        if (!testAny)
+        {
+            return result;
+        }
+        final Date intervalStart = new Date(minStart);
+        final Date intervalEnd = maxEnd != Long.MAX_VALUE ? new Date(maxEnd) : null;
+        allocatables.parallelStream().forEach((allocatable) ->
+        {
+            String annotation = allocatable.getAnnotation(ResourceAnnotations.KEY_CONFLICT_CREATION);
+            if (annotation != null && annotation.equals(ResourceAnnotations.VALUE_CONFLICT_CREATION_IGNORE))
+            {
+                return;
+            }
+            SortedSet<Appointment> appointmentSet = getAppointments(allocatable);
+            if (appointmentSet == null || appointmentSet.isEmpty())
+            {
+                return;
+            }
+            final boolean excludeExceptions = true;
+            SortedSet<Appointment> appointmentsToTest = AppointmentImpl.getAppointments(appointmentSet, null, intervalStart, intervalEnd, excludeExceptions);
+            BitSet busy = null;
+            for (Appointment overlappingAppointment : appointmentsToTest)
+            {
+                final Reservation r2 = overlappingAppointment.getReservation();
+                if (RaplaComponent.isTemplate(r2) || RaplaComponent.isTemplate(overlappingAppointment) || (r2 != null && ignoreList.contains(r2)))
+                {
+                    continue;
+                }
+                final long start = overlappingAppointment.getStart().getTime();
+                final Date maxEndDate = overlappingAppointment.getMaxEnd();
+                final long end = maxEndDate != null ? maxEndDate.getTime() : Long.MAX_VALUE;
+                for (int i = 0; i < size; i++)
+                {
+                    final Appointment appointment = appointmentArray[i];
+                    if (appointment == null || start >= ends[i] || end <= starts[i] || (busy != null && busy.get(i)))
+                    {
+                        continue;
+                    }
+                    // Don't test overlapping for the same reservations or the same appointment
+                    if ((reservations[i] != null && reservations[i].equals(r2)) || overlappingAppointment.equals(appointment))
+                    {
+                        continue;
+                    }
+                    if (overlappingAppointment.overlapsAppointment(appointment))
+                    {
+                        if (busy == null)
+                        {
+                            busy = new BitSet(size);
+                        }
+                        busy.set(i);
+                    }
+                }
+            }
+            if (busy != null)
+            {
+                result.put(allocatable.getReference(), busy);
+            }
+        });
+        return result;
+    }
+
     @Override
     public Promise<Date> getNextAllocatableDate(final Collection<Allocatable> allocatables, final Appointment appointment,
             final Collection<Reservation> ignoreList, final Integer worktimeStartMinutes, final Integer worktimeEndMinutes, final Integer[] excludedDays,
@@ -3778,10 +4397,85 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         }
     }
 
+    /**
+     * several entities can have the same external id, e.g. if a calendar was imported twice. The first created one is returned, so the result
+     * doesn't depend on the order of the index. Reservations in the cold storage are only returned if there is no other entity with the id.
+     */
     public ReferenceInfo tryResolveExternalId(String externalId)
     {
-        final ReferenceInfo referenceInfo = externalIds.get(externalId);
-        return referenceInfo;
+        final Set<ReferenceInfo> ids = externalIds.get(externalId);
+        ReferenceInfo first = null;
+        Date firstCreated = null;
+        if (ids != null)
+        {
+            for (ReferenceInfo id : ids)
+            {
+                final Entity entity = tryResolve(id);
+                if (entity == null)
+                {
+                    continue;
+                }
+                final Date created = entity instanceof Timestamp ? ((Timestamp) entity).getCreateDate() : null;
+                if (first == null || isCreatedBefore(created, id, firstCreated, first))
+                {
+                    first = id;
+                    firstCreated = created;
+                }
+            }
+        }
+        if (first == null && coldStorage != null)
+        {
+            final Collection<ReferenceInfo<Reservation>> coldIds = coldStorage.getReservationsWithExternalId(externalId);
+            if (!coldIds.isEmpty())
+            {
+                first = coldIds.iterator().next();
+            }
+        }
+        return first;
+    }
+
+    /** entities without create date count as created first, entities created at the same time are ordered by id */
+    private static boolean isCreatedBefore(Date created, ReferenceInfo id, Date otherCreated, ReferenceInfo otherId)
+    {
+        if (created == null && otherCreated != null)
+        {
+            return true;
+        }
+        if (created != null && (otherCreated == null || !created.equals(otherCreated)))
+        {
+            return otherCreated != null && created.before(otherCreated);
+        }
+        return id.getId().compareTo(otherId.getId()) < 0;
+    }
+
+    /** returns the reservations with the external id in the cache and in the cold storage, so reservations moved to the cold storage are found as well */
+    @Override
+    public Collection<ReferenceInfo<Reservation>> getReservationsWithExternalId(String externalId)
+    {
+        final Set<ReferenceInfo> ids = externalIds.get(externalId);
+        final List<ReferenceInfo<Reservation>> result = new ArrayList<>(1);
+        if (ids != null)
+        {
+            for (ReferenceInfo id : ids)
+            {
+                if (id.getType() == Reservation.class)
+                {
+                    result.add(id);
+                }
+            }
+        }
+        // a reservation that is put back into the cache stays in the cold storage until the change is applied, so it can be in both
+        if (coldStorage != null)
+        {
+            for (ReferenceInfo<Reservation> id : coldStorage.getReservationsWithExternalId(externalId))
+            {
+                if (!result.contains(id))
+                {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
     }
 
     public UpdateResult getUpdateResult(Date since, User user) throws RaplaException
@@ -0,0 +1,289 @@
+package org.rapla.storage.impl.server;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.storage.internal.ExternalSyncEntityImpl;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.rest.JsonParserWrapper;
+import org.rapla.storage.UpdateEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A snapshot of the server cache that is written on shutdown and periodically, so that the next start doesn't have to read and resolve the
+ * whole storage. The file starts with a header containing a format version, the time of the snapshot, the source the snapshot was taken from
+ * and a checksum, followed by the entities as UTF-8 json in the same mapping as the remote storage uses.
+ * An image that can't be used, because the format, the source or the checksum doesn't match or it is too old, is ignored and the data is
+ * loaded from the storage.
+ */
+public class StartupImage
+{
+    static final byte[] MAGIC = "RAPLAIMG".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 2;
+    /** how often the image is written while the server is running */
+    public static final long WRITE_PERIOD = DateTools.MILLISECONDS_PER_HOUR;
+
+    private final File file;
+    private final Logger logger;
+    private final JsonParserWrapper.JsonParser gson;
+
+    /** the resolved entities of the cache. Indices like the appointment bindings and the conflicts are recomputed on load */
+    public static class Content
+    {
+        UpdateEvent entities = new UpdateEvent();
+        List<ExternalSyncEntityImpl> importExports = new ArrayList<>();
+        Map<String, String> passwords = new LinkedHashMap<>();
+        transient Date timestamp;
+
+        public UpdateEvent getEntities()
+        {
+            return entities;
+        }
+
+        public List<ExternalSyncEntityImpl> getImportExports()
+        {
+            return importExports;
+        }
+
+        public Date getTimestamp()
+        {
+            return timestamp;
+        }
+    }
+
+    public StartupImage(File file, Logger logger)
+    {
+        this.file = file;
+        this.logger = logger;
+        this.gson = JsonParserWrapper.defaultJson().get();
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /** writes to a temporary file first, so that a crash doesn't leave a partly written image */
+    synchronized public void write(Date timestamp, String source, Content content) throws RaplaException
+    {
+        final File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        final long start = System.currentTimeMillis();
+        try
+        {
+            final File directory = tmp.getParentFile();
+            if (directory != null)
+            {
+                Files.createDirectories(directory.toPath());
+            }
+            final CRC32 crc = new CRC32();
+            final long payloadLength;
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                // the header is written again when the length and the checksum of the payload are known
+                final byte[] emptyHeader = createHeader(timestamp, source, 0, 0);
+                channel.write(ByteBuffer.wrap(emptyHeader));
+                final CountingOutputStream out = new CountingOutputStream(new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+                final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                writer.write(gson.toJson(content));
+                writer.flush();
+                payloadLength = out.count;
+                channel.write(ByteBuffer.wrap(createHeader(timestamp, source, payloadLength, crc.getValue())), 0);
+                channel.force(true);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Startup image " + file + " written in " + (System.currentTimeMillis() - start) + " ms, " + payloadLength / 1024 + " KB.");
+        }
+        catch (IOException e)
+        {
+            throw new RaplaException("Could not write startup image " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * deletes the image, e.g. after entities were removed from the storage without a history entry, so they can't be recovered on the next start.
+     * @return true if there was an image
+     */
+    synchronized public boolean invalidate() throws RaplaException
+    {
+        try
+        {
+            final boolean deleted = Files.deleteIfExists(file.toPath());
+            if (deleted)
+            {
+                logger.info("Startup image " + file + " invalidated.");
+            }
+            return deleted;
+        }
+        catch (IOException e)
+        {
+            throw new RaplaException("Could not delete startup image " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * maps the image into memory and decodes it.
+     * @return the content or null if there is no image, it was written for another source, is older than notBefore or is damaged
+     */
+    synchronized public Content read(String source, Date notBefore)
+    {
+        if (!file.exists())
+        {
+            logger.info("No startup image found at " + file + ". Loading all data.");
+            return null;
+        }
+        final long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+            {
+                return ignore("it is not a startup image");
+            }
+            final int version = buffer.getInt();
+            if (version != FORMAT_VERSION)
+            {
+                return ignore("format version " + version + " is not supported");
+            }
+            final Date timestamp = new Date(buffer.getLong());
+            final byte[] sourceBytes = new byte[buffer.getInt()];
+            buffer.get(sourceBytes);
+            final String imageSource = new String(sourceBytes, StandardCharsets.UTF_8);
+            if (!imageSource.equals(source))
+            {
+                return ignore("it was written for " + imageSource + " and not for " + source);
+            }
+            if (notBefore != null && timestamp.before(notBefore))
+            {
+                return ignore("it was written at " + timestamp + ", changes before " + notBefore + " are not available anymore");
+            }
+            final long payloadLength = buffer.getLong();
+            final long checksum = buffer.getLong();
+            if (payloadLength != buffer.remaining())
+            {
+                return ignore("it is incomplete");
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum)
+            {
+                return ignore("the checksum doesn't match");
+            }
+            final Content content = gson.fromJson(new InputStreamReader(new ByteBufferInputStream(buffer), StandardCharsets.UTF_8), Content.class);
+            content.timestamp = timestamp;
+            logger.info("Startup image " + file + " from " + timestamp + " read in " + (System.currentTimeMillis() - start) + " ms.");
+            return content;
+        }
+        catch (Exception e)
+        {
+            return ignore(e.getMessage());
+        }
+    }
+
+    private Content ignore(String reason)
+    {
+        logger.warn("Ignoring startup image " + file + " because " + reason + ". Loading all data.");
+        return null;
+    }
+
+    private static byte[] createHeader(Date timestamp, String source, long payloadLength, long checksum) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(timestamp.getTime());
+        final byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(sourceBytes.length);
+        out.write(sourceBytes);
+        out.writeLong(payloadLength);
+        out.writeLong(checksum);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static class CountingOutputStream extends FilterOutputStream
+    {
+        long count;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (!buffer.hasRemaining())
+            {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -101,6 +101,18 @@ public class IOContext
         addReaders( readerMap, ioContext);
         return ioContext;
      }
+
+    /** creates a context that reads into its own store but shares the locale, id creator and category paths of the parent context.
+     * Used to read parts of a file in a separate thread. */
+    public RaplaDefaultXMLContext createChildInputContext(RaplaDefaultXMLContext parent, EntityStore store) throws RaplaException {
+        RaplaDefaultXMLContext ioContext = new RaplaDefaultXMLContext( parent );
+        ioContext.put(EntityStore.class, store);
+        Map<Class<? extends  RaplaObject>,RaplaXMLReader> readerMap = new HashMap<>();
+        ioContext.put(PreferenceReader.READERMAP, readerMap);
+        addReaders( readerMap, ioContext);
+        return ioContext;
+    }
+
     public static TypedComponentRole<Boolean> PRINTID = new TypedComponentRole<>(IOContext.class.getName() + ".idonly");
     public static TypedComponentRole<Provider<Category>> SUPERCATEGORY = new TypedComponentRole<>(IOContext.class.getName() + ".supercategory");
     
@@ -180,6 +180,40 @@ public class PermissionTest extends AbstractTestWithServer {
 
     }
 
+    @Test
+    public void testPermissionChange() throws Exception {
+        Allocatable allocatable = adminFacade.newResourceDeprecated();
+        allocatable.getClassification().setValue("name","test-allocatable");
+        //remove default permission.
+        allocatable.removePermission( allocatable.getPermissionList().iterator().next() );
+        Permission permission = allocatable.newPermission();
+        Category testGroup = adminFacade.getUserGroupsCategory().getCategory("test-group");
+        permission.setGroup ( testGroup );
+        permission.setAccessLevel( Permission.READ );
+        allocatable.addPermission( permission );
+        adminFacade.store( allocatable );
+        testFacade.refresh();
+
+        final PermissionController permissionController = DefaultPermissionControllerSupport.getController(testFacade.getOperator());
+        User user = testFacadeClient.getUser();
+        Assert.assertTrue(permissionController.canRead(getTestResource(), user));
+        Assert.assertFalse(permissionController.canModify(getTestResource(), user));
+
+        // the changed permission must not be answered from the cache
+        Allocatable edit = adminFacade.edit( adminFacade.getPersistent( allocatable));
+        edit.getPermissionList().iterator().next().setAccessLevel( Permission.EDIT);
+        adminFacade.store( edit );
+        testFacade.refresh();
+        Assert.assertTrue(permissionController.canModify(getTestResource(), user));
+
+        // removing the user from the group removes the access
+        User editUser = adminFacade.edit( adminFacade.getPersistent( user));
+        editUser.removeGroup( testGroup);
+        adminFacade.store( editUser );
+        testFacade.refresh();
+        Assert.assertNull(getTestResource());
+    }
+
     private Allocatable getTestResource() throws Exception {
         Allocatable[] all = testFacade.getAllocatables();
         for ( int i=0;i< all.length; i++ ){
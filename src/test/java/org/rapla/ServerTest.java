@@ -41,6 +41,7 @@ import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.ConstraintIds;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.CalendarModel;
 import org.rapla.facade.CalendarSelectionModel;
 import org.rapla.facade.RaplaFacade;
@@ -70,8 +71,10 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
 
 @RunWith(JUnit4.class)
 public class ServerTest
@@ -225,6 +228,31 @@ public class ServerTest
         logout(clientFacade2);
     }
 
+    @Test
+    public void testAllocatableBindings() throws Exception
+    {
+        final RaplaFacade raplaFacade1 = getRaplaFacade1();
+        final Allocatable busyResource = raplaFacade1.getAllocatables()[0];
+        final Allocatable freeResource = raplaFacade1.getAllocatables()[1];
+        final Date start = new Date(DateTools.toDate(2030, 3, 4) + DateTools.toTime(10, 0, 0));
+        final Date end = new Date(start.getTime() + 2 * DateTools.MILLISECONDS_PER_HOUR);
+        Reservation stored = raplaFacade1.newReservationDeprecated();
+        stored.getClassification().setValue("name", "busy");
+        stored.addAppointment(raplaFacade1.newAppointmentDeprecated(start, end));
+        stored.addAllocatable(busyResource);
+        raplaFacade1.store(stored);
+
+        Reservation edited = raplaFacade1.newReservationDeprecated();
+        final Appointment overlapping = raplaFacade1.newAppointmentDeprecated(new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), new Date(end.getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        final Appointment nextDay = raplaFacade1.newAppointmentDeprecated(DateTools.addDay(start), DateTools.addDay(end));
+        edited.addAppointment(overlapping);
+        edited.addAppointment(nextDay);
+        final Map<ReferenceInfo<Allocatable>, Collection<Appointment>> bindings = RaplaTestCase
+                .waitForWithRaplaException(raplaFacade1.getAllocatableBindings(Arrays.asList(busyResource, freeResource), Arrays.asList(overlapping, nextDay)), 10000);
+        Assert.assertEquals(Collections.singleton(overlapping), new HashSet<>(bindings.get(busyResource.getReference())));
+        Assert.assertNull(bindings.get(freeResource.getReference()));
+    }
+
     public RaplaFacade getRaplaFacade2()
     {
         return clientFacade2.getRaplaFacade();
@@ -593,6 +621,64 @@ public class ServerTest
 
     }
 
+    /** the reservation filters are sent with the query and resolved on the server */
+    @Test
+    public void testQueryAppointmentsWithFilters() throws Exception
+    {
+        final RaplaFacade facade = getRaplaFacade1();
+        final User user = clientFacade1.getUser();
+        final DynamicType newType = facade.newDynamicType(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION);
+        newType.setKey("seminar");
+        newType.getName().setName("en", "Seminar");
+        facade.store(newType);
+        final DynamicType seminarType = facade.getDynamicType("seminar");
+        final DynamicType eventType = facade.getDynamicType("event");
+        final Allocatable allocatable = facade.getAllocatables()[0];
+        final Date start = DateTools.addDays(facade.today(), 1);
+        final Reservation event = storeReservation(facade, user, eventType, allocatable, start);
+        final Reservation seminar = storeReservation(facade, user, seminarType, allocatable, start);
+
+        final StorageOperator operator = facade.getOperator();
+        final Collection<Allocatable> allocatables = Collections.singleton(allocatable);
+        final Date end = DateTools.addDays(start, 1);
+        {
+            final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(
+                    operator.queryAppointments(user, allocatables, null, start, end, seminarType.newClassificationFilter().toArray(), (Map<String, String>) null),
+                    10000).getAllReservations();
+            Assert.assertTrue(reservations.contains(seminar));
+            Assert.assertFalse(reservations.contains(event));
+        }
+        {
+            final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(
+                    operator.queryAppointments(user, allocatables, null, start, end, new ClassificationFilter[] {}, (Map<String, String>) null), 10000)
+                    .getAllReservations();
+            Assert.assertTrue(reservations.isEmpty());
+        }
+        {
+            // the type is removed on the server after the client created the filter, so the server skips it
+            final DynamicType removedType = facade.newDynamicType(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION);
+            removedType.setKey("removed");
+            removedType.getName().setName("en", "Removed");
+            facade.store(removedType);
+            final ClassificationFilter[] filters = { facade.getDynamicType("removed").newClassificationFilter(), seminarType.newClassificationFilter() };
+            getServerFacade().remove(getServerFacade().getDynamicType("removed"));
+            final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(
+                    operator.queryAppointments(user, allocatables, null, start, end, filters, (Map<String, String>) null), 10000).getAllReservations();
+            Assert.assertEquals(Collections.singleton(seminar), new HashSet<>(reservations));
+        }
+    }
+
+    private Reservation storeReservation(RaplaFacade facade, User user, DynamicType type, Allocatable allocatable, Date start) throws RaplaException
+    {
+        final Classification classification = type.newClassification();
+        classification.setValue("name", type.getKey() + " reservation");
+        final Reservation reservation = facade.newReservation(classification, user);
+        reservation.addAppointment(facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user));
+        reservation.addAllocatable(allocatable);
+        facade.store(reservation);
+        return facade.getPersistent(reservation);
+    }
+
     @Test
     public void testChangeGroup() throws Exception
     {
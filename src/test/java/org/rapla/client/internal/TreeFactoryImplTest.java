@@ -0,0 +1,242 @@
+package org.rapla.client.internal;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.RaplaResources;
+import org.rapla.client.RaplaTreeNode;
+import org.rapla.client.TreeFactory;
+import org.rapla.client.swing.internal.view.TreeItemFactorySwing;
+import org.rapla.components.i18n.internal.AbstractBundleManager;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.SortKeyClassifiableComparator;
+import org.rapla.entities.dynamictype.SortedClassifiableComparator;
+import org.rapla.facade.ModificationEvent;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.facade.internal.ModificationEventImpl;
+import org.rapla.framework.RaplaException;
+import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.UpdateResult;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class TreeFactoryImplTest
+{
+    ClientFacade clientFacade;
+    RaplaFacade facade;
+    TreeFactoryImpl treeFactory;
+    int inserted;
+    int removed;
+
+    @Before
+    public void setUp() throws RaplaException
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        clientFacade = RaplaTestCase.createSimpleSimpsonsWithHomer();
+        facade = clientFacade.getRaplaFacade();
+        AbstractBundleManager bundleManager = new ServerBundleManager();
+        RaplaResources i18n = new RaplaResources(bundleManager);
+        RaplaLocale raplaLocale = new RaplaLocaleImpl(bundleManager);
+        treeFactory = new TreeFactoryImpl(clientFacade, i18n, raplaLocale, logger, new TreeItemFactorySwing(i18n));
+    }
+
+    /** a new filter with rooms and lecturers for every call, like the calendar model does */
+    private ClassificationFilter[] createFilter() throws RaplaException
+    {
+        return new ClassificationFilter[] { facade.getDynamicType("room").newClassificationFilter(),
+                facade.getDynamicType("lecturer").newClassificationFilter() };
+    }
+
+    private final TreeFactory.TreeNodeListener listener = new TreeFactory.TreeNodeListener()
+    {
+        @Override
+        public void nodeInserted(RaplaTreeNode parent, int index, RaplaTreeNode child)
+        {
+            Assert.assertSame(child, parent.getChild(index));
+            inserted++;
+        }
+
+        @Override
+        public void nodeRemoved(RaplaTreeNode parent, int index, RaplaTreeNode child)
+        {
+            Assert.assertTrue(index >= 0 && index <= parent.getChildCount());
+            removed++;
+        }
+    };
+
+    /** the local facade has no modification listeners, so the event is created from the update result like in the server */
+    private ModificationEvent store(Entity... entities) throws Exception
+    {
+        return storeAndRemove(entities, Entity.ENTITY_ARRAY);
+    }
+
+    private ModificationEvent storeAndRemove(Entity[] toStore, Entity[] toRemove) throws Exception
+    {
+        final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        final Date since = operator.getCurrentTimestamp();
+        Thread.sleep(1);
+        facade.storeAndRemove(toStore, toRemove, clientFacade.getUser());
+        final UpdateResult updateResult = operator.getUpdateResult(since);
+        return new ModificationEventImpl(updateResult, null);
+    }
+
+    private void assertSameAsRebuild(TreeFactory.AllocatableNodes nodes) throws RaplaException
+    {
+        final TreeFactory.AllocatableNodes rebuild = treeFactory.createAllocatableModel(createFilter());
+        Assert.assertEquals(dump(rebuild.getAllocatableNode()), dump(nodes.getAllocatableNode()));
+    }
+
+    private static String dump(RaplaTreeNode node)
+    {
+        StringBuilder buf = new StringBuilder();
+        dump(node, "", buf);
+        return buf.toString();
+    }
+
+    private static void dump(RaplaTreeNode node, String indent, StringBuilder buf)
+    {
+        buf.append(indent).append(node.toString());
+        final Object userObject = node.getUserObject();
+        if (userObject instanceof Entity)
+        {
+            buf.append(" ").append(((Entity) userObject).getId());
+        }
+        buf.append("\n");
+        for (int i = 0; i < node.getChildCount(); i++)
+        {
+            dump(node.getChild(i), indent + "  ", buf);
+        }
+    }
+
+    private Allocatable newRoom(String name) throws RaplaException
+    {
+        final Classification classification = facade.getDynamicType("room").newClassification();
+        classification.setValue("name", name);
+        return facade.newAllocatable(classification, clientFacade.getUser());
+    }
+
+    @Test
+    public void testIncrementalUpdateEqualsRebuild() throws Exception
+    {
+        final TreeFactory.AllocatableNodes nodes = treeFactory.createAllocatableModel(createFilter());
+        final Random random = new Random(4711);
+        final List<Allocatable> rooms = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            rooms.add(newRoom("Room " + random.nextInt(1000)));
+        }
+        // rooms with the same name are sorted by id
+        rooms.add(newRoom("Room A66"));
+        rooms.add(newRoom("room b"));
+        Assert.assertTrue(nodes.update(createFilter(), store(rooms.toArray(Entity.ENTITY_ARRAY)), listener));
+        Assert.assertEquals(rooms.size(), inserted);
+        Assert.assertEquals(0, removed);
+        assertSameAsRebuild(nodes);
+
+        // renamed rooms move to their new position
+        final List<Allocatable> changed = new ArrayList<>();
+        for (Allocatable room : Arrays.asList(rooms.get(3), rooms.get(17), rooms.get(40)))
+        {
+            changed.add(facade.edit(room));
+        }
+        changed.get(0).getClassification().setValue("name", "AAA first");
+        changed.get(1).getClassification().setValue("name", "zzz last");
+        changed.get(2).getClassification().setValue("name", "Room 500");
+        inserted = 0;
+        Assert.assertTrue(nodes.update(createFilter(), store(changed.toArray(Entity.ENTITY_ARRAY)), listener));
+        Assert.assertEquals(3, inserted);
+        Assert.assertEquals(3, removed);
+        assertSameAsRebuild(nodes);
+
+        removed = 0;
+        inserted = 0;
+        final ModificationEvent evt = storeAndRemove(Entity.ENTITY_ARRAY, new Entity[] { rooms.get(5), rooms.get(6), changed.get(1) });
+        Assert.assertTrue(nodes.update(createFilter(), evt, listener));
+        Assert.assertEquals(0, inserted);
+        Assert.assertEquals(3, removed);
+        assertSameAsRebuild(nodes);
+    }
+
+    @Test
+    public void testAllocatablesOutsideFilterAreIgnored() throws Exception
+    {
+        final TreeFactory.AllocatableNodes nodes = treeFactory.createAllocatableModel(createFilter());
+        final String before = dump(nodes.getAllocatableNode());
+        final Classification classification = facade.getDynamicType("resource3").newClassification();
+        classification.setValue("name", "not in filter");
+        final Allocatable resource = facade.newAllocatable(classification, clientFacade.getUser());
+        Assert.assertTrue(nodes.update(createFilter(), store(resource), listener));
+        Assert.assertEquals(0, inserted);
+        Assert.assertEquals(before, dump(nodes.getAllocatableNode()));
+        assertSameAsRebuild(nodes);
+    }
+
+    @Test
+    public void testRebuildNeeded() throws Exception
+    {
+        final TreeFactory.AllocatableNodes nodes = treeFactory.createAllocatableModel(createFilter());
+        // another filter
+        final ClassificationFilter[] roomFilter = { facade.getDynamicType("room").newClassificationFilter() };
+        Assert.assertFalse(nodes.update(roomFilter, store(newRoom("new room")), listener));
+        // the type changes
+        final DynamicType roomType = facade.edit(facade.getDynamicType("room"));
+        final Attribute attribute = facade.newAttribute(AttributeType.STRING);
+        attribute.setKey("floor");
+        roomType.addAttribute(attribute);
+        Assert.assertFalse(nodes.update(createFilter(), store(roomType), listener));
+        // a full model can't be updated without an event
+        Assert.assertFalse(nodes.update(createFilter(), null, listener));
+        Assert.assertEquals(0, inserted);
+    }
+
+    @Test
+    public void testSortKeysSortLikeSortedClassifiableComparator() throws Exception
+    {
+        final List<Allocatable> allocatables = new ArrayList<>(Arrays.asList(facade.getAllocatables()));
+        final List<Allocatable> newRooms = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            newRooms.add(newRoom("Room " + (i % 7)));
+        }
+        allocatables.addAll(newRooms);
+        final List<Allocatable> expected = new ArrayList<>(allocatables);
+        expected.sort(new SortedClassifiableComparator(Locale.GERMAN));
+        final SortKeyClassifiableComparator comparator = new SortKeyClassifiableComparator(Locale.GERMAN);
+        for (int i = 0; i < 3; i++)
+        {
+            Collections.shuffle(allocatables, new Random(i));
+            allocatables.sort(comparator);
+            Assert.assertEquals(expected, allocatables);
+        }
+        // a changed classification invalidates the key
+        final Allocatable room = newRooms.get(3);
+        final Allocatable edited = facade.edit(room);
+        edited.getClassification().setValue("name", "zzz");
+        allocatables.set(allocatables.indexOf(room), edited);
+        expected.set(expected.indexOf(room), edited);
+        allocatables.sort(comparator);
+        expected.sort(new SortedClassifiableComparator(Locale.GERMAN));
+        Assert.assertEquals(expected, allocatables);
+    }
+}
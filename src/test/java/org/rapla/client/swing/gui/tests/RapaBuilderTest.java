@@ -18,18 +18,40 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.rapla.AppointmentFormaterImpl;
+import org.rapla.RaplaResources;
+import org.rapla.components.calendarview.Block;
+import org.rapla.components.calendarview.Builder.PreperationResult;
+import org.rapla.components.calendarview.swing.SwingWeekView;
+import org.rapla.components.i18n.BundleManager;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.components.util.DateTools;
 import org.rapla.components.util.SerializableDateTimeFormat;
+import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentBlock;
 import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.CalendarSelectionModel;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.facade.client.ClientFacade;
+import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.plugin.abstractcalendar.RaplaBlock;
 import org.rapla.plugin.abstractcalendar.RaplaBuilder;
+import org.rapla.plugin.abstractcalendar.client.swing.SwingRaplaBuilder;
 import org.rapla.test.util.RaplaTestCase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 
 
 @RunWith(JUnit4.class)
@@ -100,5 +122,119 @@ public final class RapaBuilderTest
         Assert.assertEquals("Blocks are not split in two", 2, blocks.size());
         Assert.assertEquals(formater().parseDateTime("2004-01-02", "23:59:59").getTime() / 1000, blocks.get(1).getEnd() / 1000);
     }
-}
 
+    @Test
+    public void testMinMaxMinutes() throws Exception {
+        long[] starts = new long[] {
+                formater().parseDateTime("2004-01-01", "08:30:00").getTime()
+                ,formater().parseDateTime("2004-01-02", "00:00:00").getTime()
+        };
+        long[] ends = new long[] {
+                formater().parseDateTime("2004-01-01", "12:15:00").getTime()
+                ,formater().parseDateTime("2004-01-02", "18:45:00").getTime()
+        };
+        int[] minMax = RaplaBuilder.calculateMinMaxMinutes(starts, ends, 2, 0);
+        Assert.assertEquals(8 * 60 + 30, minMax[0]);
+        Assert.assertEquals(18 * 60 + 45, minMax[1]);
+        final List<AppointmentBlock> blocks = Arrays.asList(new AppointmentBlock(starts[0], ends[0], null, false), new AppointmentBlock(starts[1], ends[1], null, false));
+        Assert.assertArrayEquals(minMax, RaplaBuilder.calculateMinMaxMinutes(blocks, 0));
+        minMax = RaplaBuilder.calculateMinMaxMinutes(starts, ends, 0, 0);
+        Assert.assertEquals(24 * 60, minMax[0]);
+        Assert.assertEquals(0, minMax[1]);
+    }
+
+    /** updates a week view incrementally and compares it with a full rebuild of the same week */
+    @Test
+    public void testIncrementalRebuild() throws Exception {
+        final RaplaFacade raplaFacade = facade.getRaplaFacade();
+        final BundleManager bundleManager = new ServerBundleManager();
+        final RaplaResources i18n = new RaplaResources(bundleManager);
+        final RaplaLocale raplaLocale = new RaplaLocaleImpl(bundleManager);
+        final AppointmentFormaterImpl appointmentFormater = new AppointmentFormaterImpl(i18n, raplaLocale);
+
+        Allocatable resource = raplaFacade.newResourceDeprecated();
+        resource.getClassification().setValue("name", "incremental");
+        raplaFacade.store(resource);
+        resource = raplaFacade.getPersistent(resource);
+        final Reservation monday = storeReservation(raplaFacade, resource, "monday", "2004-01-05");
+        final Reservation wednesday = storeReservation(raplaFacade, resource, "wednesday", "2004-01-07");
+        final CalendarSelectionModel model = raplaFacade.newCalendarModel(facade.getUser());
+        model.setSelectedObjects(Collections.singleton(resource));
+
+        final SwingWeekView view = new SwingWeekView();
+        view.setLocale(raplaLocale);
+        view.setToDate(formater().parseDate("2004-01-05", false));
+        final Date start = view.getStartDate();
+        final Date end = view.getEndDate();
+        final RaplaBuilder builder = new SwingRaplaBuilder(raplaFacade, i18n, raplaLocale, RaplaTestCase.initLoger(), appointmentFormater);
+        RaplaTestCase.waitForWithRaplaException(builder.initFromModel(model, start, end), 10000);
+        view.rebuild(builder);
+        final Block mondayBlock = getBlock(view, monday);
+
+        // move wednesday to thursday and add a new reservation on friday
+        final Reservation editable = raplaFacade.edit(wednesday);
+        editable.getAppointments()[0].move(formater().parseDateTime("2004-01-08", "10:00:00"), formater().parseDateTime("2004-01-08", "12:00:00"));
+        raplaFacade.store(editable);
+        final Reservation friday = storeReservation(raplaFacade, resource, "friday", "2004-01-09");
+        final Set<String> changedIds = new HashSet<>(Arrays.asList(wednesday.getId(), friday.getId()));
+        final Predicate<Appointment> changedAppointments = (appointment) -> changedIds.contains(appointment.getReservation().getId());
+        final Collection<Appointment> newAppointments = new ArrayList<>();
+        newAppointments.addAll(Arrays.asList(raplaFacade.getPersistent(editable).getAppointments()));
+        newAppointments.addAll(Arrays.asList(friday.getAppointments()));
+
+        final PreperationResult former = view.getPreperationResult();
+        final TimeInterval changedInterval = builder.getChangedInterval(former, changedAppointments, newAppointments, start, end);
+        Assert.assertEquals(formater().parseDate("2004-01-07", false), changedInterval.getStart());
+        Assert.assertEquals(formater().parseDate("2004-01-10", false), changedInterval.getEnd());
+        final RaplaBuilder.BindingsUpdate update = RaplaTestCase.waitForWithRaplaException(builder.updateFromModel(model, changedInterval, changedAppointments), 10000);
+        Assert.assertNotNull(update);
+        // an update that was queried before the bindings were replaced is not applied
+        final RaplaBuilder.BindingsUpdate staleUpdate = RaplaTestCase.waitForWithRaplaException(builder.updateFromModel(model, changedInterval, changedAppointments), 10000);
+        Assert.assertTrue(builder.applyUpdate(update));
+        Assert.assertFalse(builder.applyUpdate(staleUpdate));
+        final PreperationResult prep = builder.prepareBuild(former, start, end, changedInterval.getStart(), changedInterval.getEnd());
+        final Predicate<Block> changedBlocks = (block) -> changedAppointments.test(((RaplaBlock) block).getAppointment());
+        Assert.assertTrue(view.rebuild(builder, prep, changedInterval.getStart(), changedInterval.getEnd(), changedBlocks));
+        // the unchanged day is not built again
+        Assert.assertSame(mondayBlock, getBlock(view, monday));
+
+        final SwingWeekView fullView = new SwingWeekView();
+        fullView.setLocale(raplaLocale);
+        fullView.setToDate(start);
+        final RaplaBuilder fullBuilder = new SwingRaplaBuilder(raplaFacade, i18n, raplaLocale, RaplaTestCase.initLoger(), appointmentFormater);
+        RaplaTestCase.waitForWithRaplaException(fullBuilder.initFromModel(model, start, end), 10000);
+        fullView.rebuild(fullBuilder);
+        final PreperationResult fullPrep = fullView.getPreperationResult();
+        Assert.assertEquals(fullPrep.getMinMinutes(), prep.getMinMinutes());
+        Assert.assertEquals(fullPrep.getMaxMinutes(), prep.getMaxMinutes());
+        Assert.assertEquals(fullPrep.getBlocks().size(), prep.getBlocks().size());
+        Assert.assertEquals(3, fullView.getBlocks().size());
+        Assert.assertEquals(getBlockSignatures(fullView), getBlockSignatures(view));
+    }
+
+    private Reservation storeReservation(RaplaFacade raplaFacade, Allocatable resource, String name, String date) throws Exception {
+        final Reservation reservation = raplaFacade.newReservationDeprecated();
+        reservation.getClassification().setValue("name", name);
+        reservation.addAllocatable(resource);
+        reservation.addAppointment(raplaFacade.newAppointmentDeprecated(formater().parseDateTime(date, "10:00:00"), formater().parseDateTime(date, "12:00:00")));
+        raplaFacade.store(reservation);
+        return raplaFacade.getPersistent(reservation);
+    }
+
+    private Block getBlock(SwingWeekView view, Reservation reservation) {
+        for (Block block : view.getBlocks()) {
+            if (((RaplaBlock) block).getReservation().equals(reservation)) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private Set<String> getBlockSignatures(SwingWeekView view) {
+        final Set<String> result = new TreeSet<>();
+        for (Block block : view.getBlocks()) {
+            result.add(block.getName() + " " + block.getStart().getTime() + "-" + block.getEnd().getTime() + " " + DateTools.countDays(view.getStartDate(), block.getStart()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,166 @@
+package org.rapla.components.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class MetricsRegistryTest
+{
+    @Test
+    public void testBucketBounds()
+    {
+        Assert.assertEquals(0, Histogram.getBucketIndex(0));
+        Assert.assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucketIndex(Long.MAX_VALUE));
+        for (long value : new long[] { 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, 1L << 40, (1L << 41) - 1 })
+        {
+            final int index = Histogram.getBucketIndex(value);
+            Assert.assertTrue(value + " <= highest value of its bucket", value <= Histogram.getHighestValue(index));
+            Assert.assertTrue(value + " > highest value of the bucket before", index == 0 || value > Histogram.getHighestValue(index - 1));
+            // the precision of the buckets
+            Assert.assertTrue(Histogram.getHighestValue(index) - value <= value / Histogram.SUB_BUCKET_COUNT);
+        }
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final Histogram histogram = registry.histogram("test_seconds", "test");
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        final List<Long> values = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++)
+        {
+            values.add((long) i);
+        }
+        Collections.shuffle(values, new Random(4711));
+        for (long millis : values)
+        {
+            histogram.record(millis, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500500), histogram.getSumNanos());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMaxNanos());
+        assertPercentile(500, histogram.getValueAtPercentile(50));
+        assertPercentile(900, histogram.getValueAtPercentile(90));
+        assertPercentile(990, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getValueAtPercentile(100));
+        Assert.assertSame(histogram, registry.histogram("test_seconds", "test"));
+    }
+
+    private void assertPercentile(long expectedMillis, long nanos)
+    {
+        final long expected = TimeUnit.MILLISECONDS.toNanos(expectedMillis);
+        Assert.assertTrue(nanos + " >= " + expected, nanos >= expected);
+        Assert.assertTrue(nanos + " in precision of " + expected, nanos - expected <= expected / Histogram.SUB_BUCKET_COUNT);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception
+    {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            final String label = "thread" + (t % 2);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++)
+                {
+                    registry.counter("test_total", "test", "label", label).inc();
+                    registry.histogram("test_seconds", "test").record(i);
+                }
+            }));
+        }
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        Assert.assertEquals(20000, ((Counter) registry.find("test_total", "label", "thread0")).get());
+        Assert.assertEquals(20000, ((Counter) registry.find("test_total", "label", "thread1")).get());
+        final Histogram histogram = (Histogram) registry.find("test_seconds");
+        Assert.assertEquals(40000, histogram.getCount());
+        Assert.assertEquals(9999, histogram.getMaxNanos());
+        Assert.assertEquals(4L * 9999 * 10000 / 2, histogram.getSumNanos());
+    }
+
+    @Test
+    public void testGauge()
+    {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final List<String> owner = new ArrayList<>();
+        owner.add("a");
+        registry.gauge("test_size", "test", owner, List::size);
+        Assert.assertEquals(1, ((Gauge) registry.find("test_size")).get(), 0);
+        owner.add("b");
+        Assert.assertEquals(2, ((Gauge) registry.find("test_size")).get(), 0);
+        // a gauge with the same name replaces the former one
+        registry.gauge("test_size", "test", new ArrayList<>(), List::size);
+        Assert.assertEquals(0, ((Gauge) registry.find("test_size")).get(), 0);
+        try
+        {
+            registry.counter("test_size", "test");
+            Assert.fail("IllegalArgumentException expected");
+        }
+        catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testPrometheusFormat() throws Exception
+    {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_requests_total", "Requests", "path", "a\"b").add(3);
+        registry.histogram("test_duration_seconds", "Durations", "op", "x").record(2, TimeUnit.SECONDS);
+        final List<String> owner = new ArrayList<>();
+        registry.gauge("test_entries", "Entries", owner, List::size);
+        final StringWriter out = new StringWriter();
+        registry.writePrometheus(out);
+        final String expected = "# HELP test_duration_seconds Durations\n"
+                + "# TYPE test_duration_seconds summary\n"
+                + "test_duration_seconds{op=\"x\",quantile=\"0.5\"} 2\n"
+                + "test_duration_seconds{op=\"x\",quantile=\"0.9\"} 2\n"
+                + "test_duration_seconds{op=\"x\",quantile=\"0.99\"} 2\n"
+                + "test_duration_seconds_sum{op=\"x\"} 2\n"
+                + "test_duration_seconds_count{op=\"x\"} 1\n"
+                + "# HELP test_duration_seconds_max Maximum of test_duration_seconds\n"
+                + "# TYPE test_duration_seconds_max gauge\n"
+                + "test_duration_seconds_max{op=\"x\"} 2\n"
+                + "# HELP test_entries Entries\n"
+                + "# TYPE test_entries gauge\n"
+                + "test_entries 0\n"
+                + "# HELP test_requests_total Requests\n"
+                + "# TYPE test_requests_total counter\n"
+                + "test_requests_total{path=\"a\\\"b\"} 3\n";
+        Assert.assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testJsonFormat() throws Exception
+    {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_requests_total", "Requests", "path", "a\"b").add(3);
+        registry.histogram("test_duration_seconds", "Durations").record(1500, TimeUnit.MILLISECONDS);
+        final StringWriter out = new StringWriter();
+        registry.writeJson(out);
+        final String json = out.toString();
+        Assert.assertTrue(json, json.startsWith("{\"timestamp\":"));
+        Assert.assertTrue(json, json.contains(
+                "{\"name\":\"test_duration_seconds\",\"type\":\"histogram\",\"help\":\"Durations\",\"count\":1,\"sum\":1.5,\"max\":1.5,\"p50\":1.5,\"p90\":1.5,\"p99\":1.5}"));
+        Assert.assertTrue(json, json.contains(
+                "{\"name\":\"test_requests_total\",\"type\":\"counter\",\"help\":\"Requests\",\"labels\":{\"path\":\"a\\\"b\"},\"value\":3}"));
+        Assert.assertTrue(json, json.endsWith("]}\n"));
+    }
+}
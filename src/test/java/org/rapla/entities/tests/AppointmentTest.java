@@ -555,6 +555,72 @@ public class AppointmentTest {
         assertEquals( 1, blocks.size());        
     }
 
+
+    @Test
+    public void testMonthlyLongRunning()
+    {
+        Appointment a1 = createAppointment("2006-08-17","10:30","12:00");
+        a1.setRepeatingEnabled(true);
+        Repeating repeating1 = a1.getRepeating();
+        repeating1.setType( RepeatingType.MONTHLY);
+        repeating1.setEnd( null);
+        List<AppointmentBlock> blocks = new ArrayList<AppointmentBlock>();
+        // the third thursday in march 2016
+        a1.createBlocks( createDate("2016-03-01"), createDate("2016-04-01"), blocks);
+        assertEquals( 1, blocks.size());
+        assertEquals( createAppointment("2016-03-17","10:30","12:00").getStart(), new Date(blocks.get(0).getStart()));
+        assertTrue( a1.overlaps( createDate("2016-03-17"), createDate("2016-03-18")));
+        assertFalse( a1.overlaps( createDate("2016-03-18"), createDate("2016-04-20")));
+
+        // moving the appointment to the second thursday must not reuse the occurrences of the old start
+        a1.moveTo( createAppointment("2006-08-10","10:30","12:00").getStart());
+        blocks.clear();
+        a1.createBlocks( createDate("2016-03-01"), createDate("2016-04-01"), blocks);
+        assertEquals( 1, blocks.size());
+        assertEquals( createAppointment("2016-03-10","10:30","12:00").getStart(), new Date(blocks.get(0).getStart()));
+
+        repeating1.setNumber( 120);
+        Date end = repeating1.getEnd();
+        blocks.clear();
+        a1.createBlocks( createDate("2006-01-01"), createDate("2030-01-01"), blocks);
+        assertEquals( 120, blocks.size());
+        Collections.sort(blocks);
+        assertEquals( end, new Date(blocks.get(119).getStart()));
+        repeating1.setEnd( DateTools.addDay( end));
+        assertEquals( 120, repeating1.getNumber());
+    }
+
+    @Test
+    public void testManyExceptions()
+    {
+        Appointment a1 = createAppointment("2020-01-06","10:00","11:00");
+        a1.setRepeatingEnabled(true);
+        Repeating repeating1 = a1.getRepeating();
+        repeating1.setType( RepeatingType.DAILY);
+        repeating1.setNumber( 400);
+        final long start = a1.getStart().getTime();
+        // every second day is an exception
+        for ( int i=0;i<200;i++)
+        {
+            repeating1.addException( new Date( start + 2L * i * DateTools.MILLISECONDS_PER_DAY));
+        }
+        assertEquals( 200, repeating1.getExceptions().length);
+        assertTrue( repeating1.isException( start + 10 * DateTools.MILLISECONDS_PER_DAY + DateTools.MILLISECONDS_PER_HOUR));
+        assertFalse( repeating1.isException( start + 11 * DateTools.MILLISECONDS_PER_DAY));
+        assertFalse( repeating1.isException( start - DateTools.MILLISECONDS_PER_DAY));
+        List<AppointmentBlock> blocks = new ArrayList<AppointmentBlock>();
+        a1.createBlocks( createDate("2020-01-01"), createDate("2022-01-01"), blocks);
+        assertEquals( 200, blocks.size());
+
+        // copies share the exceptions until one of them is changed
+        Appointment copy = ((AppointmentImpl) a1).clone();
+        copy.getRepeating().removeException( new Date( start));
+        assertEquals( 199, copy.getRepeating().getExceptions().length);
+        assertEquals( 200, repeating1.getExceptions().length);
+        assertFalse( copy.getRepeating().isException( start));
+        assertTrue( repeating1.isException( start));
+    }
+
 }
 
 
@@ -0,0 +1,76 @@
+package org.rapla.entities.tests;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentBlock;
+import org.rapla.entities.domain.Repeating;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/** measures createBlocks and overlaps for daily series with many exceptions. Run manually. */
+@Ignore
+@RunWith(JUnit4.class)
+public class RepeatingExceptionsBenchmark
+{
+    static final int SERIES_COUNT = 1000;
+    static final int EXCEPTION_COUNT = 300;
+    static final int ROUNDS = 20;
+
+    @Test
+    public void testCreateBlocksWithManyExceptions()
+    {
+        final long start = DateTools.toDate(2020, 1, 6) + DateTools.toTime(10, 0, 0);
+        List<Appointment> appointments = new ArrayList<>();
+        for (int i = 0; i < SERIES_COUNT; i++)
+        {
+            final Appointment appointment = new AppointmentImpl(new Date(start), new Date(start + DateTools.MILLISECONDS_PER_HOUR));
+            appointment.setRepeatingEnabled(true);
+            final Repeating repeating = appointment.getRepeating();
+            repeating.setType(RepeatingType.DAILY);
+            repeating.setNumber(2 * EXCEPTION_COUNT);
+            for (int j = 0; j < EXCEPTION_COUNT; j++)
+            {
+                repeating.addException(new Date(start + (2L * j + (i % 2)) * DateTools.MILLISECONDS_PER_DAY));
+            }
+            appointments.add(appointment);
+        }
+        final Date intervalStart = new Date(start);
+        final Date intervalEnd = new Date(start + 2L * EXCEPTION_COUNT * DateTools.MILLISECONDS_PER_DAY);
+        List<AppointmentBlock> blocks = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            blocks.clear();
+            long time = System.nanoTime();
+            for (Appointment appointment : appointments)
+            {
+                appointment.createBlocks(intervalStart, intervalEnd, blocks);
+            }
+            long createBlocksTime = System.nanoTime() - time;
+            time = System.nanoTime();
+            int overlapCount = 0;
+            for (Appointment appointment : appointments)
+            {
+                for (int day = 0; day < 2 * EXCEPTION_COUNT; day += 7)
+                {
+                    final long dayStart = start + day * DateTools.MILLISECONDS_PER_DAY;
+                    if (appointment.overlaps(new Date(dayStart), new Date(dayStart + DateTools.MILLISECONDS_PER_DAY)))
+                    {
+                        overlapCount++;
+                    }
+                }
+            }
+            long overlapsTime = System.nanoTime() - time;
+            System.out.println(
+                    "round " + round + ": createBlocks " + blocks.size() + " blocks in " + createBlocksTime / 1000000 + " ms, " + overlapCount + " overlaps in "
+                            + overlapsTime / 1000000 + " ms");
+        }
+    }
+}
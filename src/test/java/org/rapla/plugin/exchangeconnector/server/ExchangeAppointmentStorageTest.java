@@ -0,0 +1,106 @@
+package org.rapla.plugin.exchangeconnector.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.User;
+import org.rapla.entities.configuration.Preferences;
+import org.rapla.entities.configuration.RaplaConfiguration;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.exchangeconnector.ExchangeConnectorConfig;
+import org.rapla.plugin.exchangeconnector.ShowExchangeForUser;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/** compares the tasks per user with a scan over all tasks after random changes */
+@RunWith(JUnit4.class)
+public class ExchangeAppointmentStorageTest
+{
+    @Test
+    public void testTasksForUser() throws Exception
+    {
+        final Logger logger = RaplaTestCase.initLoger();
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        // tasks of users without exchange synchronisation are removed on refresh
+        final Preferences systemPreferences = facade.edit(facade.getSystemPreferences());
+        final RaplaConfiguration clientConfig = new RaplaConfiguration("clientConfig");
+        clientConfig.getMutableChild(ExchangeConnectorConfig.ENABLED_BY_ADMIN.getId(), true).setValue(true);
+        systemPreferences.putEntry(ExchangeConnectorConfig.EXCHANGE_CLIENT_CONFIG, clientConfig);
+        facade.store(systemPreferences);
+        final ExchangeAppointmentStorage storage = new ExchangeAppointmentStorage(facade, logger, operator, new ShowExchangeForUser(operator));
+        final List<User> users = new ArrayList<>(operator.getUsers());
+        final Allocatable[] allocatables = facade.getAllocatables();
+        final Random random = new Random(7);
+        final List<SynchronizationTask> tasks = new ArrayList<>();
+        for (int step = 0; step < 50; step++)
+        {
+            final Collection<SynchronizationTask> toStore = new ArrayList<>();
+            final Collection<SynchronizationTask> toRemove = new ArrayList<>();
+            // a batch either stores or removes tasks
+            final boolean store = tasks.isEmpty() || random.nextInt(3) > 0;
+            for (int i = 0; i < 5 && (store || !tasks.isEmpty()); i++)
+            {
+                if (store)
+                {
+                    final User user = users.get(random.nextInt(users.size()));
+                    final Allocatable allocatable = allocatables[random.nextInt(allocatables.length)];
+                    final ReferenceInfo<Appointment> appointmentId = new ReferenceInfo<>("app" + random.nextInt(40), Appointment.class);
+                    final SynchronizationTask task = new SynchronizationTask("room" + random.nextInt(3) + "@example.com", appointmentId, user.getReference(),
+                            allocatable.getReference(), 0, null, null);
+                    // existing tasks are updated like the synchronisation manager does
+                    final int index = tasks.indexOf(task);
+                    toStore.add(index >= 0 ? tasks.get(index) : task);
+                    if (index < 0)
+                    {
+                        tasks.add(task);
+                    }
+                }
+                else
+                {
+                    toRemove.add(tasks.remove(random.nextInt(tasks.size())));
+                }
+            }
+            storage.storeAndRemove(toStore, toRemove);
+            assertSameTasks(storage, users, tasks);
+            // the synchronisation manager reloads the stored tasks before each run
+            storage.refresh();
+            assertSameTasks(storage, users, tasks);
+        }
+        RaplaTestCase.dispose(facade);
+    }
+
+    private static void assertSameTasks(ExchangeAppointmentStorage storage, List<User> users, List<SynchronizationTask> tasks) throws Exception
+    {
+        Assert.assertEquals(new HashSet<>(tasks), storage.getAllTasks());
+        for (User user : users)
+        {
+            for (String mailbox : new String[] { null, "room0@example.com", "room1@example.com" })
+            {
+                final Set<SynchronizationTask> expected = new HashSet<>();
+                for (SynchronizationTask task : tasks)
+                {
+                    if (task.matchesUserId(user.getReference()) && (mailbox == null || mailbox.equals(task.getMailboxName())))
+                    {
+                        expected.add(task);
+                    }
+                }
+                final Collection<SynchronizationTask> result = storage.getTasksForUser(user.getReference(), mailbox);
+                Assert.assertEquals(expected.size(), result.size());
+                Assert.assertEquals(expected, new HashSet<>(result));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.rapla.plugin.exchangeconnector.server;
+
+import org.rapla.logger.Logger;
+import org.rapla.plugin.exchangeconnector.server.exchange.EWSConnector;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** replaces the exchange server in tests. Every request waits for the configured latency and is recorded per mailbox */
+public class FakeEWSConnector extends EWSConnector
+{
+    private final long latency;
+    private final Map<String, List<String>> requests = new LinkedHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Map<String, AtomicInteger> runningPerMailbox = new LinkedHashMap<>();
+    private volatile boolean parallelMailboxAccess;
+
+    public FakeEWSConnector(Logger logger, long latency) throws URISyntaxException
+    {
+        super("https://exchange.invalid", "fake", "fake", logger, "");
+        this.latency = latency;
+    }
+
+    @Override
+    public void test() throws Exception
+    {
+        Thread.sleep(latency);
+    }
+
+    /** simulates the synchronisation of an appointment with the calendar of the mailbox */
+    public void synchronize(String mailbox, String appointmentId) throws InterruptedException
+    {
+        final AtomicInteger mailboxCount;
+        synchronized (runningPerMailbox)
+        {
+            mailboxCount = runningPerMailbox.computeIfAbsent(mailbox, (key) -> new AtomicInteger());
+        }
+        if (mailboxCount.incrementAndGet() > 1)
+        {
+            parallelMailboxAccess = true;
+        }
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try
+        {
+            Thread.sleep(latency);
+            synchronized (requests)
+            {
+                requests.computeIfAbsent(mailbox, (key) -> new ArrayList<>()).add(appointmentId);
+            }
+        }
+        finally
+        {
+            running.decrementAndGet();
+            mailboxCount.decrementAndGet();
+        }
+    }
+
+    public List<String> getRequests(String mailbox)
+    {
+        synchronized (requests)
+        {
+            return requests.containsKey(mailbox) ? new ArrayList<>(requests.get(mailbox)) : Collections.emptyList();
+        }
+    }
+
+    /** the maximum number of requests that were processed at the same time */
+    public int getMaxRunning()
+    {
+        return maxRunning.get();
+    }
+
+    /** true if a mailbox got a request while another request for the same mailbox was still running */
+    public boolean isParallelMailboxAccess()
+    {
+        return parallelMailboxAccess;
+    }
+}
@@ -0,0 +1,153 @@
+package org.rapla.plugin.exchangeconnector.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.logger.Logger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class MailboxWorkerPoolTest
+{
+    static final int THREADS = 8;
+    static final int TASKS_PER_MAILBOX = 10;
+    static final long LATENCY = 20;
+
+    Logger logger;
+    MailboxWorkerPool pool;
+
+    @Before
+    public void setUp()
+    {
+        logger = RaplaTestCase.initLoger();
+        pool = new MailboxWorkerPool(logger, THREADS);
+    }
+
+    @After
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testOrderPerMailbox() throws Exception
+    {
+        final FakeEWSConnector connector = new FakeEWSConnector(logger, 2);
+        final int mailboxes = 2 * THREADS;
+        final List<CompletableFuture<Void>> jobs = new ArrayList<>();
+        for (int i = 0; i < TASKS_PER_MAILBOX; i++)
+        {
+            for (int m = 0; m < mailboxes; m++)
+            {
+                final String mailbox = "room" + m + "@example.com";
+                final String appointmentId = "a" + i;
+                jobs.add(pool.submit(mailbox, () -> connector.synchronize(mailbox, appointmentId)));
+            }
+        }
+        waitFor(jobs);
+        for (int m = 0; m < mailboxes; m++)
+        {
+            final List<String> requests = connector.getRequests("room" + m + "@example.com");
+            Assert.assertEquals(TASKS_PER_MAILBOX, requests.size());
+            for (int i = 0; i < TASKS_PER_MAILBOX; i++)
+            {
+                Assert.assertEquals("a" + i, requests.get(i));
+            }
+        }
+        Assert.assertFalse(connector.isParallelMailboxAccess());
+        Assert.assertTrue(connector.getMaxRunning() <= THREADS);
+        Assert.assertEquals(0, pool.getActiveMailboxes());
+    }
+
+    @Test
+    public void testSlowMailboxDoesNotBlockOthers() throws Exception
+    {
+        final FakeEWSConnector connector = new FakeEWSConnector(logger, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Void> slow = pool.submit("slow@example.com", () -> release.await(10, TimeUnit.SECONDS));
+        final CompletableFuture<Void> queued = pool.submit("slow@example.com", () -> connector.synchronize("slow@example.com", "a1"));
+        final List<CompletableFuture<Void>> jobs = new ArrayList<>();
+        for (int m = 0; m < 20; m++)
+        {
+            final String mailbox = "room" + m + "@example.com";
+            jobs.add(pool.submit(mailbox, () -> connector.synchronize(mailbox, "a1")));
+        }
+        waitFor(jobs);
+        Assert.assertFalse(slow.isDone());
+        Assert.assertFalse(queued.isDone());
+        release.countDown();
+        queued.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, connector.getRequests("slow@example.com").size());
+    }
+
+    @Test
+    public void testFailedJobContinuesWithNext() throws Exception
+    {
+        final FakeEWSConnector connector = new FakeEWSConnector(logger, 1);
+        final CompletableFuture<Void> failed = pool.submit("room@example.com", () -> {
+            throw new IllegalStateException("exchange not reachable");
+        });
+        final CompletableFuture<Void> next = pool.submit("room@example.com", () -> connector.synchronize("room@example.com", "a1"));
+        next.get(10, TimeUnit.SECONDS);
+        try
+        {
+            failed.get();
+            Assert.fail("ExecutionException expected");
+        }
+        catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testThroughputScalesWithMailboxes() throws Exception
+    {
+        final long single = measure(1);
+        for (int mailboxes = 2; mailboxes <= THREADS; mailboxes *= 2)
+        {
+            final long time = measure(mailboxes);
+            final double speedup = (double) mailboxes * single / Math.max(1, time);
+            logger.info(mailboxes + " mailboxes: " + time + " ms, " + Math.round(mailboxes * TASKS_PER_MAILBOX * 1000.0 / Math.max(1, time))
+                    + " tasks/s, speedup " + Math.round(speedup * 10) / 10.0);
+            // sequential processing would take mailboxes times longer, the workers need roughly the same time as for one mailbox
+            Assert.assertTrue(mailboxes + " mailboxes took " + time + " ms, one mailbox " + single + " ms", speedup > mailboxes / 2.0);
+        }
+    }
+
+    private long measure(int mailboxes) throws Exception
+    {
+        final FakeEWSConnector connector = new FakeEWSConnector(logger, LATENCY);
+        final long start = System.currentTimeMillis();
+        final List<CompletableFuture<Void>> jobs = new ArrayList<>();
+        for (int m = 0; m < mailboxes; m++)
+        {
+            final String mailbox = "room" + m + "@example.com";
+            for (int i = 0; i < TASKS_PER_MAILBOX; i++)
+            {
+                final String appointmentId = "a" + i;
+                jobs.add(pool.submit(mailbox, () -> connector.synchronize(mailbox, appointmentId)));
+            }
+        }
+        waitFor(jobs);
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void waitFor(List<CompletableFuture<Void>> jobs) throws Exception
+    {
+        for (CompletableFuture<Void> job : jobs)
+        {
+            job.get(30, TimeUnit.SECONDS);
+        }
+    }
+}
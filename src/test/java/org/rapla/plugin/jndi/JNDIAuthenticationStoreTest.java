@@ -0,0 +1,208 @@
+package org.rapla.plugin.jndi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.jndi.internal.JNDIConf;
+import org.rapla.plugin.jndi.server.JNDIAuthenticationStore;
+import org.rapla.test.util.RaplaTestCase;
+
+import javax.naming.AuthenticationException;
+import javax.naming.Context;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.spi.InitialContextFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class JNDIAuthenticationStoreTest
+{
+    static final String USER_BASE = "ou=people,dc=example,dc=com";
+    static final String CONNECTION_NAME = "uid=admin,ou=system";
+    static final String CONNECTION_PASSWORD = "admin-secret";
+
+    static final AtomicInteger openedContexts = new AtomicInteger();
+    static final AtomicInteger closedContexts = new AtomicInteger();
+    static final AtomicInteger searches = new AtomicInteger();
+    static final Map<String, String> passwords = new HashMap<>();
+
+    Logger logger;
+
+    @Before
+    public void setUp()
+    {
+        logger = RaplaTestCase.initLoger();
+        openedContexts.set(0);
+        closedContexts.set(0);
+        searches.set(0);
+        passwords.clear();
+        passwords.put("uid=alice," + USER_BASE, "secret");
+        passwords.put("uid=bob," + USER_BASE, "bobs-secret");
+    }
+
+    private JNDIAuthenticationStore createStore(int cacheSeconds) throws Exception
+    {
+        Map<String, String> config = new HashMap<>();
+        config.put(JNDIConf.ENABLED, "true");
+        config.put(JNDIConf.CONNECTION_URL, "ldap://localhost");
+        config.put(JNDIConf.CONNECTION_NAME, CONNECTION_NAME);
+        config.put(JNDIConf.CONNECTION_PASSWORD, CONNECTION_PASSWORD);
+        config.put(JNDIConf.CONTEXT_FACTORY, InMemoryContextFactory.class.getName());
+        config.put(JNDIConf.USER_BASE, USER_BASE);
+        config.put(JNDIConf.USER_SEARCH, "(uid={0})");
+        config.put(JNDIConf.USER_MAIL, "mail");
+        config.put(JNDIConf.USER_CN, "cn");
+        config.put(JNDIConf.CACHE_SECONDS, String.valueOf(cacheSeconds));
+        return JNDIAuthenticationStore.createJNDIAuthenticationStore(config, logger);
+    }
+
+    @Test
+    public void testPooledContext() throws Exception
+    {
+        JNDIAuthenticationStore store = createStore(0);
+        Assert.assertTrue(store.authenticate("alice", "secret"));
+        Assert.assertFalse(store.authenticate("alice", "wrong"));
+        Assert.assertFalse(store.authenticate("carol", "secret"));
+        Assert.assertTrue(store.authenticate("bob", "bobs-secret"));
+        Assert.assertTrue(store.authenticate("alice", "secret"));
+        // the search context is reused for all logins
+        Assert.assertEquals(1, openedContexts.get());
+        Assert.assertEquals(0, closedContexts.get());
+        Assert.assertEquals(5, searches.get());
+        Assert.assertEquals(5, store.getLdapRequestCount());
+        Assert.assertEquals(0, store.getLoginCacheHits());
+        store.dispose();
+        Assert.assertEquals(1, closedContexts.get());
+    }
+
+    @Test
+    public void testLoginCache() throws Exception
+    {
+        JNDIAuthenticationStore store = createStore(60);
+        Assert.assertTrue(store.authenticate("alice", "secret"));
+        Assert.assertTrue(store.authenticate("alice", "secret"));
+        Assert.assertEquals(1, searches.get());
+        Assert.assertEquals(1, store.getLoginCacheHits());
+
+        // a wrong password is always checked against the directory
+        Assert.assertFalse(store.authenticate("alice", "wrong"));
+        Assert.assertEquals(2, searches.get());
+
+        // a changed password in the directory is noticed once the cached login was dropped
+        passwords.put("uid=alice," + USER_BASE, "new-secret");
+        Assert.assertFalse(store.authenticate("alice", "secret"));
+        Assert.assertTrue(store.authenticate("alice", "new-secret"));
+        Assert.assertTrue(store.authenticate("alice", "new-secret"));
+        Assert.assertEquals(4, searches.get());
+        Assert.assertEquals(2, store.getLoginCacheHits());
+        store.dispose();
+    }
+
+    /** in-process stand-in for an ldap server, with users in {@link #passwords} */
+    public static class InMemoryContextFactory implements InitialContextFactory
+    {
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) throws AuthenticationException
+        {
+            Hashtable<Object, Object> env = new Hashtable<>(environment);
+            if (!CONNECTION_NAME.equals(env.get(Context.SECURITY_PRINCIPAL)) || !CONNECTION_PASSWORD.equals(env.get(Context.SECURITY_CREDENTIALS)))
+            {
+                throw new AuthenticationException("invalid connection credentials");
+            }
+            openedContexts.incrementAndGet();
+            return (Context) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { DirContext.class }, (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                    case "addToEnvironment":
+                        return env.put(args[0], args[1]);
+                    case "removeFromEnvironment":
+                        return env.remove(args[0]);
+                    case "getEnvironment":
+                        return env;
+                    case "getNameInNamespace":
+                        return "";
+                    case "getNameParser":
+                        return (NameParser) LdapName::new;
+                    case "close":
+                        closedContexts.incrementAndGet();
+                        return null;
+                    case "search":
+                        return search((String) args[1]);
+                    case "getAttributes":
+                        return bind(env);
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private NamingEnumeration<SearchResult> search(String filter)
+        {
+            searches.incrementAndGet();
+            String uid = filter.substring("(uid=".length(), filter.length() - 1);
+            if (!passwords.containsKey("uid=" + uid + "," + USER_BASE))
+            {
+                return enumeration(Collections.emptyIterator());
+            }
+            BasicAttributes attributes = new BasicAttributes(true);
+            attributes.put("mail", uid + "@example.com");
+            attributes.put("cn", uid);
+            return enumeration(Collections.singletonList(new SearchResult("uid=" + uid, null, attributes)).iterator());
+        }
+
+        private BasicAttributes bind(Hashtable<Object, Object> env) throws AuthenticationException
+        {
+            Object principal = env.get(Context.SECURITY_PRINCIPAL);
+            Object credentials = env.get(Context.SECURITY_CREDENTIALS);
+            String password = passwords.get(principal);
+            if (password == null || !password.equals(credentials))
+            {
+                throw new AuthenticationException("invalid credentials for " + principal);
+            }
+            return new BasicAttributes(true);
+        }
+
+        private static NamingEnumeration<SearchResult> enumeration(Iterator<SearchResult> iterator)
+        {
+            return new NamingEnumeration<SearchResult>()
+            {
+                public SearchResult next()
+                {
+                    return iterator.next();
+                }
+
+                public boolean hasMore()
+                {
+                    return iterator.hasNext();
+                }
+
+                public void close()
+                {
+                }
+
+                public boolean hasMoreElements()
+                {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult nextElement()
+                {
+                    return iterator.next();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.rapla.plugin.tableview;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.RaplaResources;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.tableview.internal.TableConfig;
+import org.rapla.plugin.tableview.server.ServerTableColumnFactory;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@RunWith(JUnit4.class)
+public class RaplaTableCSVWriterTest
+{
+    ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFormat()
+    {
+        final List<RaplaTableColumn<Integer>> columns = createColumns();
+        final String csv = new RaplaTableCSVWriter<>(columns, DynamicTypeAnnotations.KEY_NAME_FORMAT, true).toCSV(Arrays.asList(1, 2));
+        final String date = DateTools.formatDateTime(new Date(DateTools.toDate(2024, 1, 2)));
+        Assert.assertEquals("id;name;start;number;\n;row 1 with   separator and  line;" + date + ";;\n;row 2;" + date + ";2;", csv);
+        Assert.assertEquals("id;name;start;number;", new RaplaTableCSVWriter<>(columns, null, true).toCSV(Collections.emptyList()));
+    }
+
+    @Test
+    public void testSameOutputAsSingleString() throws Exception
+    {
+        final List<RaplaTableColumn<Integer>> columns = createColumns();
+        for (int rowCount : new int[] { 0, 1, 7, 200, 201, 10000 })
+        {
+            final List<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < rowCount; i++)
+            {
+                rows.add(i);
+            }
+            final String expected = getLegacyCSV(columns, rows, DynamicTypeAnnotations.KEY_NAME_FORMAT, true);
+            Assert.assertEquals(expected, RaplaTableModel.getCSV(columns, rows, DynamicTypeAnnotations.KEY_NAME_FORMAT, true));
+            for (int batchSize : new int[] { 1, 7, RaplaTableCSVWriter.DEFAULT_BATCH_SIZE })
+            {
+                final RaplaTableCSVWriter<Integer> writer = new RaplaTableCSVWriter<>(columns, DynamicTypeAnnotations.KEY_NAME_FORMAT, true)
+                        .setExecutor(executor).setBatchSize(batchSize).setMaxPendingBatches(3);
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+                writer.write(rows, out);
+                Assert.assertArrayEquals(rowCount + " rows, batch size " + batchSize, expected.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testSameOutputWithTableConfigColumns() throws Exception
+    {
+        final Logger logger = RaplaTestCase.initLoger();
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final ServerBundleManager bundleManager = new ServerBundleManager();
+        final RaplaLocale raplaLocale = new RaplaLocaleImpl(bundleManager);
+        final TableConfig.TableConfigLoader loader = new TableConfig.TableConfigLoader(facade, new RaplaResources(bundleManager), raplaLocale,
+                Collections.emptySet(), new ServerTableColumnFactory(facade));
+        final User user = facade.getUser("homer");
+        final List<RaplaTableColumn<Reservation>> columns = loader.loadColumns(TableConfig.EVENTS_VIEW, user);
+        Assert.assertFalse(columns.isEmpty());
+        final Collection<Reservation> reservations = RaplaTestCase
+                .waitForWithRaplaException(facade.getReservationsForAllocatable(facade.getAllocatables(), null, null, null), 10000);
+        Assert.assertFalse(reservations.isEmpty());
+        final List<Reservation> rows = new ArrayList<>();
+        while (rows.size() < 2000)
+        {
+            rows.addAll(reservations);
+        }
+        final String expected = getLegacyCSV(columns, rows, DynamicTypeAnnotations.KEY_NAME_FORMAT, true);
+        final StringWriter out = new StringWriter();
+        new RaplaTableCSVWriter<>(columns, DynamicTypeAnnotations.KEY_NAME_FORMAT, true).setExecutor(executor).setBatchSize(50).write(rows, out);
+        Assert.assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testColumnExceptionIsPassedToCaller() throws Exception
+    {
+        final List<RaplaTableColumn<Integer>> columns = new ArrayList<>(createColumns());
+        columns.add(new TestColumn("failing", String.class)
+        {
+            @Override
+            public Object getValue(Integer row, String contextAnnotationName)
+            {
+                if (row == 1234)
+                {
+                    throw new IllegalStateException("no value for " + row);
+                }
+                return "ok";
+            }
+        });
+        final List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+        {
+            rows.add(i);
+        }
+        try
+        {
+            new RaplaTableCSVWriter<>(columns, null, false).setExecutor(executor).setBatchSize(10).write(rows, new StringWriter());
+            Assert.fail("IllegalStateException expected");
+        }
+        catch (IllegalStateException ex)
+        {
+            Assert.assertEquals("no value for 1234", ex.getMessage());
+        }
+    }
+
+    /** the implementation of RaplaTableModel.getCSV before the export was streamed */
+    static <T> String getLegacyCSV(List<RaplaTableColumn<T>> columns, List<T> rows, String contextAnnotationName, boolean addIds)
+    {
+        StringBuffer buf = new StringBuffer();
+        if (addIds)
+        {
+            buf.append("id");
+            buf.append(";");
+        }
+        for (RaplaTableColumn column : columns)
+        {
+            buf.append(column.getColumnName());
+            buf.append(";");
+        }
+        for (T row : rows)
+        {
+            buf.append("\n");
+            if (addIds)
+            {
+                if (row instanceof Entity)
+                    buf.append(((Entity) row).getId());
+                buf.append(";");
+            }
+            for (RaplaTableColumn column : columns)
+            {
+                Object value = column.getValue(row, contextAnnotationName);
+                String formated = "";
+                if (value != null)
+                {
+                    if (column.getColumnClass().equals(Date.class))
+                    {
+                        formated = DateTools.formatDateTime((Date) value);
+                    }
+                    else
+                    {
+                        formated = value.toString().replace("\n", " ").replace(";", " ");
+                    }
+                }
+                buf.append(formated);
+                buf.append(";");
+            }
+        }
+        return buf.toString();
+    }
+
+    private static List<RaplaTableColumn<Integer>> createColumns()
+    {
+        final List<RaplaTableColumn<Integer>> columns = new ArrayList<>();
+        columns.add(new TestColumn("name", String.class)
+        {
+            @Override
+            public Object getValue(Integer row, String contextAnnotationName)
+            {
+                return row % 2 == 1 && row < 10 ? "row " + row + " with ; separator and \nline" : "row " + row;
+            }
+        });
+        columns.add(new TestColumn("start", Date.class)
+        {
+            @Override
+            public Object getValue(Integer row, String contextAnnotationName)
+            {
+                return new Date(DateTools.toDate(2024, 1, 2) + (row / 10) * DateTools.MILLISECONDS_PER_HOUR);
+            }
+        });
+        columns.add(new TestColumn("number", Integer.class)
+        {
+            @Override
+            public Object getValue(Integer row, String contextAnnotationName)
+            {
+                return row % 3 == 1 ? null : row;
+            }
+        });
+        return columns;
+    }
+
+    static abstract class TestColumn implements RaplaTableColumn<Integer>
+    {
+        private final String name;
+        private final Class<?> columnClass;
+
+        TestColumn(String name, Class<?> columnClass)
+        {
+            this.name = name;
+            this.columnClass = columnClass;
+        }
+
+        @Override
+        public String getColumnName()
+        {
+            return name;
+        }
+
+        @Override
+        public Class<?> getColumnClass()
+        {
+            return columnClass;
+        }
+
+        @Override
+        public TableColumnType getType()
+        {
+            return TableColumnType.STRING;
+        }
+
+        @Override
+        public String getHtmlValue(Integer row)
+        {
+            return String.valueOf(getValue(row, null));
+        }
+    }
+}
@@ -10,8 +10,10 @@ import org.rapla.components.util.DateTools;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.RaplaObjectAnnotations;
 import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.logger.Logger;
@@ -19,11 +21,21 @@ import org.rapla.plugin.ical.server.RaplaICalImport;
 import org.rapla.server.RemoteSession;
 import org.rapla.server.internal.RemoteSessionImpl;
 import org.rapla.server.internal.TimeZoneConverterImpl;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.impl.server.ColdReservationStorage;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 import org.rapla.test.util.RaplaTestCase;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -120,4 +132,187 @@ public class ICalImportTest {
         Assert.assertEquals(DateTools.toDateTime(date, time), start);
         
 	}
+
+    @Test
+    public void testStreamingImport() throws Exception
+    {
+        RaplaICalImport importer = createImporter();
+        importer.setBatchSize(10);
+        StringBuilder content = new StringBuilder();
+        content.append("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//Rapla//Test//EN\r\n");
+        content.append("BEGIN:VTODO\r\nUID:todo\r\nSUMMARY:not an event\r\nEND:VTODO\r\n");
+        for (int i = 0; i < 25; i++)
+        {
+            appendEvent(content, "event" + i, "Event " + i, 20300101 + i % 28);
+        }
+        // an event without a name and one without an end are skipped
+        appendEvent(content, "noname", "", 20300101);
+        content.append("BEGIN:VEVENT\r\nUID:noend\r\nSUMMARY:No end\r\nDTSTART:20300101T100000Z\r\nEND:VEVENT\r\n");
+        // a second appointment for an event of the first batch
+        appendEvent(content, "event3", "Event 3", 20300215);
+        content.append("END:VCALENDAR\r\n");
+        String eventTypeKey = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].getKey();
+        Integer[] result = importer.importCalendar(new StringReader(content.toString()), Collections.emptyList(), user, eventTypeKey, "name");
+        Assert.assertArrayEquals(new Integer[] { 28, 26, 0, 2 }, result);
+        CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        Collection<ReferenceInfo<Reservation>> event3 = operator.getReservationsWithExternalId("event3");
+        Assert.assertEquals(1, event3.size());
+        Assert.assertEquals(2, facade.resolve(event3.iterator().next()).getAppointments().length);
+        Assert.assertTrue(operator.getReservationsWithExternalId("todo").isEmpty());
+
+        // importing the same calendar again doesn't create duplicates
+        result = importer.importCalendar(new StringReader(content.toString()), Collections.emptyList(), user, eventTypeKey, "name");
+        Assert.assertArrayEquals(new Integer[] { 28, 0, 26, 2 }, result);
+        Assert.assertEquals(25, countImported(facade));
+    }
+
+    @Test
+    public void testExternalIdIndex() throws Exception
+    {
+        CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        String eventTypeKey = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].getKey();
+        Reservation first = newReservation(eventTypeKey, "duplicate");
+        Reservation second = newReservation(eventTypeKey, "duplicate");
+        facade.store(first);
+        // the create dates must differ
+        Thread.sleep(10);
+        facade.store(second);
+        Assert.assertEquals(2, operator.getReservationsWithExternalId("duplicate").size());
+        // the first created reservation wins regardless of the order in the index
+        Assert.assertEquals(first.getReference(), operator.tryResolveExternalId("duplicate"));
+        facade.remove(first);
+        Assert.assertEquals(Collections.singletonList(second.getReference()), operator.getReservationsWithExternalId("duplicate"));
+        Reservation edited = facade.edit(second);
+        edited.setAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID, "changed");
+        facade.store(edited);
+        Assert.assertTrue(operator.getReservationsWithExternalId("duplicate").isEmpty());
+        Assert.assertEquals(1, operator.getReservationsWithExternalId("changed").size());
+    }
+
+    @Test
+    public void testReimportAfterColdStorage() throws Exception
+    {
+        LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        File directory = Files.createTempDirectory("raplacold").toFile();
+        operator.setColdStorage(new ColdReservationStorage(directory, logger));
+        RaplaICalImport importer = createImporter();
+        String eventTypeKey = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].getKey();
+        StringBuilder content = new StringBuilder();
+        content.append("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//Rapla//Test//EN\r\n");
+        appendEvent(content, "past", "Past event", 20010101);
+        content.append("END:VCALENDAR\r\n");
+        Integer[] result = importer.importCalendar(new StringReader(content.toString()), Collections.emptyList(), user, eventTypeKey, "name");
+        Assert.assertArrayEquals(new Integer[] { 1, 1, 0, 0 }, result);
+        ReferenceInfo<Reservation> past = operator.getReservationsWithExternalId("past").iterator().next();
+        Assert.assertEquals(1, operator.moveToColdStorage(new Date(DateTools.toDate(2002, 1, 1))));
+        Assert.assertTrue(operator.getColdStorage().contains(past));
+
+        // the reservation in the cold storage is still found, so it is not imported again
+        Assert.assertEquals(Collections.singletonList(past), operator.getReservationsWithExternalId("past"));
+        Assert.assertEquals(past, operator.tryResolveExternalId("past"));
+        result = importer.importCalendar(new StringReader(content.toString()), Collections.emptyList(), user, eventTypeKey, "name");
+        Assert.assertArrayEquals(new Integer[] { 1, 0, 1, 0 }, result);
+        Assert.assertEquals(0, countImported(facade));
+
+        // the external ids are kept in the index of the cold storage
+        operator.setColdStorage(new ColdReservationStorage(directory, logger));
+        Assert.assertEquals(Collections.singletonList(past), operator.getReservationsWithExternalId("past"));
+    }
+
+    /** imports a generated calendar over several batches and imports it again with some new events. */
+    @Test
+    public void testLargeImport() throws Exception
+    {
+        final int events = 2000;
+        File file = new File("target/test/ical-import-" + events + ".ics");
+        file.getParentFile().mkdirs();
+        writeCalendar(file, 0, events);
+        RaplaICalImport importer = createImporter();
+        String eventTypeKey = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].getKey();
+        Integer[] result;
+        try (FileReader reader = new FileReader(file))
+        {
+            result = importer.importCalendar(reader, Collections.emptyList(), user, eventTypeKey, "name");
+        }
+        Assert.assertArrayEquals(new Integer[] { events, events, 0, 0 }, result);
+        Assert.assertEquals(events, countImported(facade));
+
+        writeCalendar(file, 0, events + 100);
+        try (FileReader reader = new FileReader(file))
+        {
+            result = importer.importCalendar(reader, Collections.emptyList(), user, eventTypeKey, "name");
+        }
+        Assert.assertArrayEquals(new Integer[] { events + 100, 100, events, 0 }, result);
+        Assert.assertEquals(events + 100, countImported(facade));
+        CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        for (int i = 0; i < events + 100; i++)
+        {
+            Assert.assertEquals(1, operator.getReservationsWithExternalId(getGeneratedUid(i)).size());
+        }
+        file.delete();
+    }
+
+    private RaplaICalImport createImporter()
+    {
+        TimeZoneConverterImpl converter = new TimeZoneConverterImpl();
+        converter.setImportExportTimeZone(TimeZone.getTimeZone("GMT+1"));
+        RemoteSession session = new RemoteSessionImpl(logger, user);
+        return new RaplaICalImport(converter, session, facade, logger, null);
+    }
+
+    private Reservation newReservation(String eventTypeKey, String externalId) throws Exception
+    {
+        Reservation reservation = facade.newReservation(facade.getDynamicType(eventTypeKey).newClassification(), user);
+        reservation.getClassification().setValue("name", externalId);
+        reservation.setAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID, externalId);
+        Date start = DateTools.addDays(facade.today(), 1);
+        reservation.addAppointment(facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user));
+        return reservation;
+    }
+
+    static int countImported(RaplaFacade facade) throws Exception
+    {
+        int[] count = new int[1];
+        ((CachableStorageOperator) facade.getOperator()).runWithReadLock((cache, syncEntities) -> {
+            for (Reservation reservation : cache.getReservations())
+            {
+                if (reservation.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID) != null)
+                {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    static String getGeneratedUid(int i)
+    {
+        return "generated-" + i + "@rapla.test";
+    }
+
+    static void writeCalendar(File file, int from, int to) throws IOException
+    {
+        try (Writer writer = new FileWriter(file))
+        {
+            writer.write("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//Rapla//Test//EN\r\n");
+            StringBuilder event = new StringBuilder();
+            for (int i = from; i < to; i++)
+            {
+                event.setLength(0);
+                appendEvent(event, getGeneratedUid(i), "Generated event " + i, 20300101 + i % 28);
+                writer.write(event.toString());
+            }
+            writer.write("END:VCALENDAR\r\n");
+        }
+    }
+
+    private static void appendEvent(StringBuilder content, String uid, String summary, int date)
+    {
+        content.append("BEGIN:VEVENT\r\n");
+        content.append("UID:").append(uid).append("\r\n");
+        content.append("SUMMARY:").append(summary).append("\r\n");
+        content.append("DTSTART:").append(date).append("T100000Z\r\n");
+        content.append("DTEND:").append(date).append("T110000Z\r\n");
+        content.append("END:VEVENT\r\n");
+    }
 }
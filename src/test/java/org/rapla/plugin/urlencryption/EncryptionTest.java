@@ -12,6 +12,7 @@
  *--------------------------------------------------------------------------*/
 package org.rapla.plugin.urlencryption;
 
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -33,11 +34,18 @@ import org.rapla.server.internal.ServerServiceImpl;
 import org.rapla.storage.RaplaSecurityException;
 import org.rapla.test.util.RaplaTestCase;
 
-import javax.servlet.http.HttpServletRequest;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @RunWith(JUnit4.class)
 public class EncryptionTest {
@@ -82,6 +90,92 @@ public class EncryptionTest {
         String decryptedFile = URLDecoder.decode(map.get("file")[0],"UTF-8");
         Assert.assertEquals(filename, decryptedFile);
     }
+
+    @Test
+    public void testOutputFormat() throws Exception
+    {
+        User user = facade1.getUser("homer");
+        RaplaKeyStorage keyStore = new RaplaKeyStorageImpl(facade1, logger);
+        UrlEncryptor urlEncryptor = new UrlEncryptor(facade1, logger, keyStore, new RemoteSessionImpl(logger, user));
+        String plain = "user=homer&file=test";
+        String salt = Integer.toString(user.getId().hashCode());
+        // links that were sent out before must still be valid, so compare with a cipher that is set up like in earlier versions
+        Base64 base64 = new Base64(64, new byte[] {}, true);
+        byte[] key = Arrays.copyOf(base64.decode(keyStore.getRootKeyBase64()), 16);
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        String expected = plain;
+        for (int i = 0; i < 2; i++)
+        {
+            expected = base64.encodeAsString(cipher.doFinal((salt + expected).getBytes()));
+        }
+        Assert.assertEquals(expected + "&salt=" + salt, urlEncryptor.encrypt(plain, user.getId()));
+    }
+
+    @Test
+    public void testConcurrentRoundTrips() throws Exception
+    {
+        User user = facade1.getUser("homer");
+        RaplaKeyStorage keyStore = new RaplaKeyStorageImpl(facade1, logger);
+        UrlEncryptor urlEncryptor = new UrlEncryptor(facade1, logger, keyStore, new RemoteSessionImpl(logger, user));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+            {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++)
+                    {
+                        String userId = "user" + (i % 5);
+                        String salt = Integer.toString(userId.hashCode());
+                        String plain = "page=calendar&user=" + userId + "&file=thread" + thread + "_" + i;
+                        String encrypted = urlEncryptor.encrypt(plain, userId);
+                        String withoutSalt = encrypted.substring(0, encrypted.indexOf("&salt="));
+                        Assert.assertEquals(plain, urlEncryptor.decrypt(withoutSalt, salt));
+                        Assert.assertEquals(plain, urlEncryptor.decryptParameters(withoutSalt, salt));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDecryptedParametersAreCached() throws Exception
+    {
+        User user = facade1.getUser("homer");
+        RaplaKeyStorage keyStore = new RaplaKeyStorageImpl(facade1, logger);
+        UrlEncryptor urlEncryptor = new UrlEncryptor(facade1, logger, keyStore, new RemoteSessionImpl(logger, user));
+        String userId = user.getId();
+        String salt = Integer.toString(userId.hashCode());
+        String encrypted = urlEncryptor.encrypt("page=ical&user=homer", userId);
+        String withoutSalt = encrypted.substring(0, encrypted.indexOf("&salt="));
+        String first = urlEncryptor.decryptParameters(withoutSalt, salt);
+        Assert.assertEquals("page=ical&user=homer", first);
+        Assert.assertSame(first, urlEncryptor.decryptParameters(withoutSalt, salt));
+        // a truncated link is not a whole number of cipher blocks
+        try
+        {
+            urlEncryptor.decryptParameters(withoutSalt.substring(0, withoutSalt.length() - 4), salt);
+            Assert.fail("Exception expected");
+        }
+        catch (Exception ex)
+        {
+            Assert.assertTrue(ex.getMessage().startsWith("The provided URL is not valid."));
+        }
+        // the ciphers are still usable after an invalid link
+        Assert.assertEquals("page=ical&user=homer", urlEncryptor.decrypt(withoutSalt, salt));
+    }
  
 }
 
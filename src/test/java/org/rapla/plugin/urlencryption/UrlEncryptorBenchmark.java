@@ -0,0 +1,90 @@
+package org.rapla.plugin.urlencryption;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.User;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.urlencryption.server.UrlEncryptor;
+import org.rapla.server.RaplaKeyStorage;
+import org.rapla.server.internal.RaplaKeyStorageImpl;
+import org.rapla.server.internal.RemoteSessionImpl;
+import org.rapla.server.internal.ServerServiceImpl;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** measures the throughput of encrypted link requests with several threads. Run manually. */
+@Ignore
+@RunWith(JUnit4.class)
+public class UrlEncryptorBenchmark
+{
+    static final int REQUESTS_PER_THREAD = 20000;
+    static final int LINKS = 50;
+
+    @Test
+    public void testThroughput() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        ServerServiceImpl server = (ServerServiceImpl) RaplaTestCase.createServiceContainer(logger, "/testdefault.xml");
+        RaplaFacade facade = server.getFacade();
+        User user = facade.getUser("homer");
+        RaplaKeyStorage keyStore = new RaplaKeyStorageImpl(facade, logger);
+        UrlEncryptor urlEncryptor = new UrlEncryptor(facade, logger, keyStore, new RemoteSessionImpl(logger, user));
+        String salt = Integer.toString(user.getId().hashCode());
+        String[] links = new String[LINKS];
+        for (int i = 0; i < LINKS; i++)
+        {
+            String encrypted = urlEncryptor.encrypt("page=ical&user=homer&file=calendar" + i, user.getId());
+            links[i] = encrypted.substring(0, encrypted.indexOf("&salt="));
+        }
+        for (int threads = 1; threads <= 16; threads *= 2)
+        {
+            long decrypt = measure(threads, (i) -> urlEncryptor.decrypt(links[i % LINKS], salt));
+            long cached = measure(threads, (i) -> urlEncryptor.decryptParameters(links[i % LINKS], salt));
+            long encrypt = measure(threads, (i) -> urlEncryptor.encrypt("page=ical&user=homer&file=calendar" + i, user.getId()));
+            System.out.println(threads + " threads: decrypt " + decrypt + " req/s, cached decrypt " + cached + " req/s, encrypt " + encrypt + " req/s");
+        }
+    }
+
+    interface Request
+    {
+        String run(int i) throws Exception;
+    }
+
+    private long measure(int threads, Request request) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++)
+                    {
+                        request.run(i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+            long time = System.nanoTime() - start;
+            return threads * (long) REQUESTS_PER_THREAD * 1000000000L / time;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.rapla.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.AbstractTestWithServer;
+import org.rapla.components.util.DateTools;
+import org.rapla.components.util.metrics.Counter;
+import org.rapla.components.util.metrics.Gauge;
+import org.rapla.components.util.metrics.Histogram;
+import org.rapla.components.util.metrics.MetricsRegistry;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.rest.client.swing.HTTPConnector;
+import org.rapla.rest.client.swing.JsonRemoteConnector;
+import org.rapla.server.provider.resteasy.RequestMetricsFilter;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.net.URL;
+import java.util.Date;
+import java.util.HashMap;
+
+/** stores reservations through the remote storage and checks the metrics of the server and the status endpoints */
+@RunWith(JUnit4.class)
+public class ServerMetricsTest extends AbstractTestWithServer
+{
+    static final int RESERVATIONS = 10;
+    ClientFacade clientFacade;
+    final MetricsRegistry registry = MetricsRegistry.getDefault();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        clientFacade = createClientFacade();
+        login(clientFacade, "homer", "duffs".toCharArray());
+    }
+
+    private long count(String name, String... labels)
+    {
+        final Object metric = registry.find(name, labels);
+        if (metric instanceof Counter)
+        {
+            return ((Counter) metric).get();
+        }
+        return metric != null ? ((Histogram) metric).getCount() : 0;
+    }
+
+    /** the write locks acquired without waiting and those that had to wait */
+    private long countWriteLocks()
+    {
+        return count("rapla_lock_uncontended_total", "lock", "write") + count("rapla_lock_wait_seconds", "lock", "write");
+    }
+
+    private JsonRemoteConnector.CallResult get(String path, String accept) throws Exception
+    {
+        final URL url = new URL("http://localhost:" + getPort() + "/rapla/" + path);
+        return new HTTPConnector().sendCallWithString("GET", url, null, null, accept, new HashMap<>());
+    }
+
+    @Test
+    public void testMetricsAfterLoad() throws Exception
+    {
+        final long storesBefore = count("rapla_remote_storage_seconds", "operation", "store");
+        final long storedEntitiesBefore = count("rapla_remote_storage_entities_total", "operation", "store");
+        final long dispatchedBefore = count("rapla_storage_dispatched_changes_total");
+        final long writeLocksBefore = countWriteLocks();
+        final long conflictUpdatesBefore = count("rapla_conflicts_update_seconds");
+        final long icalNotFoundBefore = count("rapla_ical_export_requests_total", "result", "not_found");
+        final double reservationsBefore = ((Gauge) registry.find("rapla_cache_entities", "type", "reservation")).get();
+
+        final RaplaFacade facade = clientFacade.getRaplaFacade();
+        final User user = clientFacade.getUser();
+        final Allocatable resource = newResource(clientFacade);
+        facade.store(resource);
+        final Date start = DateTools.toDateTime(DateTools.addDay(new Date()), new Date(DateTools.toTime(10, 0, 0)));
+        for (int i = 0; i < RESERVATIONS; i++)
+        {
+            final Reservation reservation = newReservation(clientFacade);
+            reservation.addAllocatable(resource);
+            reservation.addAppointment(facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user));
+            facade.store(reservation);
+        }
+        // the servlet sets the status after the message is written, so only the metric shows that the calendar was not found
+        get("ical?user=homer&file=not_published", "text/calendar");
+
+        final int stores = RESERVATIONS + 1;
+        Assert.assertEquals(stores, count("rapla_remote_storage_seconds", "operation", "store") - storesBefore);
+        Assert.assertEquals(stores, count("rapla_remote_storage_entities_total", "operation", "store") - storedEntitiesBefore);
+        Assert.assertEquals(stores, count("rapla_storage_dispatched_changes_total") - dispatchedBefore);
+        Assert.assertTrue(countWriteLocks() - writeLocksBefore >= stores);
+        Assert.assertTrue(count("rapla_conflicts_update_seconds") - conflictUpdatesBefore >= stores);
+        // the response is closed before the servlet records the request
+        for (int i = 0; i < 50 && count("rapla_ical_export_requests_total", "result", "not_found") == icalNotFoundBefore; i++)
+        {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(1, count("rapla_ical_export_requests_total", "result", "not_found") - icalNotFoundBefore);
+        Assert.assertTrue(count(RequestMetricsFilter.RESPONSES_METRIC, "status", "2xx") >= stores);
+
+        // every pair of the overlapping reservations is a conflict
+        final RaplaFacade serverFacade = getServerRaplaFacade();
+        final int conflicts = RaplaTestCase.waitForWithRaplaException(serverFacade.getOperator().getConflicts((User) null), 10000).size();
+        Assert.assertTrue(conflicts >= RESERVATIONS * (RESERVATIONS - 1) / 2);
+        Assert.assertEquals(conflicts, ((Gauge) registry.find("rapla_conflicts")).get(), 0);
+        Assert.assertEquals(reservationsBefore + RESERVATIONS, ((Gauge) registry.find("rapla_cache_entities", "type", "reservation")).get(), 0);
+
+        final JsonRemoteConnector.CallResult json = get("server/metrics", "application/json");
+        Assert.assertEquals(200, json.getResponseCode());
+        Assert.assertTrue(json.getResult(), json.getResult().contains("\"name\":\"rapla_remote_storage_seconds\",\"type\":\"histogram\""));
+        Assert.assertTrue(json.getResult(), json.getResult().contains("\"name\":\"rapla_conflicts\",\"type\":\"gauge\""));
+
+        final JsonRemoteConnector.CallResult prometheus = get("server/metrics/prometheus", "text/plain");
+        Assert.assertEquals(200, prometheus.getResponseCode());
+        final String text = prometheus.getResult();
+        Assert.assertTrue(text, text.contains("# TYPE rapla_remote_storage_seconds summary"));
+        Assert.assertTrue(text, text.contains("rapla_remote_storage_seconds_count{operation=\"store\"} " + (storesBefore + stores) + "\n"));
+        Assert.assertTrue(text, text.contains("rapla_conflicts " + conflicts + "\n"));
+        Assert.assertTrue(text, text.contains("rapla_http_request_seconds_count{resource=\"RaplaStatusPageGenerator\",method=\"generateMetrics\"} "));
+    }
+}
@@ -0,0 +1,67 @@
+package org.rapla.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.EntityNotFoundException;
+import org.rapla.entities.User;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.server.internal.RaplaKeyStorageImpl;
+import org.rapla.server.internal.TokenHandler;
+import org.rapla.storage.RaplaInvalidTokenException;
+import org.rapla.test.util.RaplaTestCase;
+
+@RunWith(JUnit4.class)
+public class TokenHandlerTest
+{
+
+    @Test
+    public void testVerifiedTokenCache() throws RaplaException
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        RaplaKeyStorageImpl storage = new RaplaKeyStorageImpl(facade, logger);
+        TokenHandler tokenHandler = new TokenHandler(storage, facade.getOperator());
+        User user = facade.newUser();
+        user.setUsername("testuser");
+        facade.store(user);
+
+        // the counters are shared by all token handlers
+        final long hitsBefore = tokenHandler.getAccessTokenCacheHits();
+        final long missesBefore = tokenHandler.getAccessTokenCacheMisses();
+        String accessToken = tokenHandler.generateAccessToken(user).getAccessToken();
+        Assert.assertEquals(user, tokenHandler.getUserWithAccessToken(accessToken));
+        Assert.assertEquals(0, tokenHandler.getAccessTokenCacheHits() - hitsBefore);
+        Assert.assertEquals(1, tokenHandler.getAccessTokenCacheMisses() - missesBefore);
+        Assert.assertEquals(user, tokenHandler.getUserWithAccessToken(accessToken));
+        Assert.assertEquals(1, tokenHandler.getAccessTokenCacheHits() - hitsBefore);
+        Assert.assertEquals(1, tokenHandler.getAccessTokenCacheSize());
+
+        // a forged token with the same user id must not be answered from the cache
+        String forged = (accessToken.charAt(0) == 'A' ? "B" : "A") + accessToken.substring(1);
+        try
+        {
+            tokenHandler.getUserWithAccessToken(forged);
+            Assert.fail("RaplaInvalidTokenException expected");
+        }
+        catch (RaplaInvalidTokenException ex)
+        {
+        }
+        Assert.assertEquals(1, tokenHandler.getAccessTokenCacheSize());
+
+        facade.remove(user);
+        try
+        {
+            tokenHandler.getUserWithAccessToken(accessToken);
+            Assert.fail("Should throw Entity not found exception");
+        }
+        catch (EntityNotFoundException ex)
+        {
+        }
+        Assert.assertEquals(0, tokenHandler.getAccessTokenCacheSize());
+    }
+
+}
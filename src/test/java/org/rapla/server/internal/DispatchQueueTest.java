@@ -0,0 +1,217 @@
+package org.rapla.server.internal;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.DependencyException;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.storage.EntityResolver;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.UpdateEvent;
+import org.rapla.storage.dbfile.tests.FileOperatorTest;
+import org.rapla.storage.impl.server.ColdReservationStorage;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(JUnit4.class)
+public class DispatchQueueTest
+{
+    Logger logger;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+    }
+
+    private RaplaFacade createFileFacade() throws Exception
+    {
+        final String resolvedPath = RaplaTestCase.getTestDataFile("/testdefault.xml");
+        return RaplaTestCase.createFacadeWithFile(logger, resolvedPath, new FileOperatorTest.MyFileIO(resolvedPath, logger));
+    }
+
+    private RaplaFacade createDBFacade() throws Exception
+    {
+        JDBCDataSource datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:target/test/rapla-dispatchqueue");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        return RaplaTestCase.createFacadeWithDatasource(logger, datasource, "/testdefault.xml");
+    }
+
+    @Test
+    public void testFailingEventIsIsolatedInFile() throws Exception
+    {
+        testFailingEventIsIsolated(createFileFacade());
+    }
+
+    @Test
+    public void testFailingEventIsIsolatedInDatabase() throws Exception
+    {
+        testFailingEventIsIsolated(createDBFacade());
+    }
+
+    @Test
+    public void testApplyFailureInFile() throws Exception
+    {
+        final RaplaFacade facade = createFileFacade();
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        final User user = facade.getUser("homer");
+        final Reservation first = newReservation(facade, "first");
+        final Reservation failing = newReservation(facade, "failing");
+        final Reservation third = newReservation(facade, "third");
+        // the cold storage is asked for every stored reservation after the cache is updated, so it fails after the validation
+        operator.setColdStorage(new ColdReservationStorage(Files.createTempDirectory("raplacold").toFile(), logger)
+        {
+            @Override
+            synchronized public Reservation remove(ReferenceInfo<Reservation> id, EntityResolver resolver) throws RaplaException
+            {
+                if (id.equals(failing.getReference()))
+                {
+                    throw new RaplaException("cold storage not available");
+                }
+                return super.remove(id, resolver);
+            }
+        });
+        final Reservation past = newReservation(facade, "past");
+        final Date pastStart = DateTools.addDays(facade.today(), -100);
+        past.getAppointments()[0].move(pastStart, new Date(pastStart.getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        facade.store(past);
+        Assert.assertTrue(operator.moveToColdStorage(DateTools.addDays(facade.today(), -30)) >= 1);
+
+        final List<RaplaException> result = operator
+                .dispatchAll(Arrays.asList(createStoreEvent(user, first), createStoreEvent(user, failing), createStoreEvent(user, third)));
+        Assert.assertNull(result.get(0));
+        Assert.assertEquals("cold storage not available", result.get(1).getMessage());
+        Assert.assertNull(result.get(2));
+
+        // the events before and after the failing one are saved
+        operator.disconnect();
+        operator.connect();
+        Assert.assertNotNull(operator.tryResolve(first.getReference()));
+        Assert.assertNotNull(operator.tryResolve(third.getReference()));
+        RaplaTestCase.dispose(facade);
+    }
+
+    @Test
+    public void testConcurrentStores() throws Exception
+    {
+        final RaplaFacade facade = createDBFacade();
+        final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        final DispatchQueue queue = new DispatchQueue(operator, logger);
+        final User user = facade.getUser("homer");
+        final int threads = 8;
+        final int storesPerThread = 10;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<List<Reservation>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    List<Reservation> stored = new ArrayList<>();
+                    for (int i = 0; i < storesPerThread; i++)
+                    {
+                        final Reservation reservation = newReservation(facade, "thread " + thread + " event " + i);
+                        queue.dispatch(createStoreEvent(user, reservation));
+                        stored.add(reservation);
+                    }
+                    return stored;
+                }));
+            }
+            for (Future<List<Reservation>> future : futures)
+            {
+                for (Reservation reservation : future.get())
+                {
+                    Assert.assertNotNull(operator.tryResolve(reservation.getReference()));
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        Assert.assertTrue(queue.getAverageBatchSize() >= 1);
+        RaplaTestCase.dispose(facade);
+    }
+
+    private void testFailingEventIsIsolated(RaplaFacade facade) throws Exception
+    {
+        final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        final User user = facade.getUser("homer");
+        final Reservation first = newReservation(facade, "first");
+        final Reservation second = newReservation(facade, "second");
+        // the allocatable is used by reservations, so it can't be removed
+        final UpdateEvent failing = new UpdateEvent();
+        failing.setUserId(user.getId());
+        failing.putRemove(facade.getAllocatables()[0]);
+
+        final List<RaplaException> result = operator.dispatchAll(Arrays.asList(createStoreEvent(user, first), failing, createStoreEvent(user, second)));
+        Assert.assertNull(result.get(0));
+        Assert.assertTrue(result.get(1) instanceof DependencyException);
+        Assert.assertNull(result.get(2));
+        Assert.assertNotNull(operator.tryResolve(first.getReference()));
+        Assert.assertNotNull(operator.tryResolve(second.getReference()));
+        Assert.assertNotNull(operator.tryResolve(facade.getAllocatables()[0].getReference()));
+
+        // an event that changes an entity of an earlier event in the same batch sees that change
+        final Reservation edit = facade.edit(operator.resolve(first.getReference()));
+        edit.getClassification().setValue("name", "first changed");
+        final UpdateEvent remove = new UpdateEvent();
+        remove.setUserId(user.getId());
+        remove.putRemoveId(first.getReference());
+        final List<RaplaException> editAndRemove = operator.dispatchAll(Arrays.asList(createStoreEvent(user, edit), remove));
+        Assert.assertEquals(Arrays.asList(null, null), editAndRemove);
+        Assert.assertNull(operator.tryResolve(first.getReference()));
+        Assert.assertEquals(Collections.singletonList(null), operator.dispatchAll(Collections.singletonList(new UpdateEvent())));
+        RaplaTestCase.dispose(facade);
+    }
+
+    private UpdateEvent createStoreEvent(User user, Reservation reservation)
+    {
+        final UpdateEvent evt = new UpdateEvent();
+        evt.setUserId(user.getId());
+        evt.addStore(reservation);
+        return evt;
+    }
+
+    private static Reservation newReservation(RaplaFacade facade, String name) throws RaplaException
+    {
+        final User user = facade.getUser("homer");
+        final DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        final Classification classification = type.newClassification();
+        classification.setValue("name", name);
+        final Reservation reservation = facade.newReservation(classification, user);
+        final Date start = DateTools.addDays(facade.today(), 1);
+        final Appointment appointment = facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+        reservation.addAppointment(appointment);
+        final Allocatable allocatable = facade.getAllocatables()[0];
+        reservation.addAllocatable(allocatable);
+        return reservation;
+    }
+}
@@ -0,0 +1,121 @@
+package org.rapla.storage.dbfile.tests;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.facade.internal.ClientFacadeImpl;
+import org.rapla.facade.internal.FacadeImpl;
+import org.rapla.logger.Logger;
+import org.rapla.rest.JsonParserWrapper;
+import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RunWith(JUnit4.class)
+public class ParallelXMLLoaderTest
+{
+    Logger logger;
+    String resolvedPath;
+    FileOperatorTest.MyFileIO fileIO;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        resolvedPath = RaplaTestCase.getTestDataFile("/testdefault.xml");
+        fileIO = new FileOperatorTest.MyFileIO(resolvedPath, logger);
+    }
+
+    @Test
+    public void testSameEntitiesAsSaxReader() throws Exception
+    {
+        final Map<String, JsonElement> expected = load(0);
+        final Map<String, JsonElement> parallel = load(4);
+        Assert.assertEquals(expected.keySet(), parallel.keySet());
+        Assert.assertEquals(expected, parallel);
+    }
+
+    @Test
+    public void testManyReservations() throws Exception
+    {
+        // more than one batch and elements like preferences and conflicts after the reservations
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, resolvedPath, fileIO);
+        final User user = facade.getUser("homer");
+        final Allocatable allocatable = facade.getAllocatables()[0];
+        final DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        final List<Entity> reservations = new ArrayList<>();
+        final Date start = DateTools.addDays(facade.today(), 1);
+        for (int i = 0; i < 1200; i++)
+        {
+            Reservation reservation = facade.newReservation(type.newClassification(), user);
+            Date appointmentStart = new Date(start.getTime() + i * DateTools.MILLISECONDS_PER_HOUR);
+            Appointment appointment = facade.newAppointmentWithUser(appointmentStart, new Date(appointmentStart.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+            reservation.addAppointment(appointment);
+            reservation.addAllocatable(allocatable);
+            reservations.add(reservation);
+        }
+        facade.storeObjects(reservations.toArray(Entity.ENTITY_ARRAY));
+        RaplaTestCase.dispose(facade);
+
+        final Map<String, JsonElement> expected = load(0);
+        final Map<String, JsonElement> parallel = load(3);
+        Assert.assertTrue(expected.size() > 1200);
+        Assert.assertEquals(expected, parallel);
+    }
+
+    private Map<String, JsonElement> load(int threads) throws Exception
+    {
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, resolvedPath, fileIO);
+        final FileOperator operator = (FileOperator) facade.getOperator();
+        operator.disconnect();
+        operator.setLoaderThreads(threads);
+        operator.connect();
+        final List<Entity> entities = new ArrayList<>(operator.getVisibleEntities(null));
+        // reservations are only visible to a logged in user
+        final ClientFacade clientFacade = new ClientFacadeImpl(facade, logger, ((FacadeImpl) facade).getI18n());
+        clientFacade.login("homer", "duffs".toCharArray());
+        final RaplaFacade userFacade = clientFacade.getRaplaFacade();
+        entities.addAll(RaplaTestCase.waitForWithRaplaException(userFacade.getReservationsForAllocatable(null, null, null, null), 10000));
+        entities.addAll(RaplaTestCase.waitForWithRaplaException(userFacade.getReservationsForAllocatable(userFacade.getAllocatables(), null, null, null), 10000));
+        final JsonParserWrapper.JsonParser gson = JsonParserWrapper.defaultJson().get();
+        final Map<String, JsonElement> result = new TreeMap<>();
+        for (Entity entity : entities)
+        {
+            final JsonObject json = JsonParser.parseString(gson.toJson(entity)).getAsJsonObject();
+            // entities without timestamps in the file get the time of reading
+            json.remove("createDate");
+            json.remove("lastChanged");
+            // as well as attributes without ids
+            if (json.has("attributes"))
+            {
+                for (JsonElement attribute : json.getAsJsonArray("attributes"))
+                {
+                    attribute.getAsJsonObject().remove("id");
+                }
+            }
+            result.put(entity.getId(), json);
+        }
+        RaplaTestCase.dispose(facade);
+        return result;
+    }
+}
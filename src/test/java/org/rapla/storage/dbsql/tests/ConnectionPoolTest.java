@@ -0,0 +1,278 @@
+package org.rapla.storage.dbsql.tests;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.storage.dbsql.ConnectionPool;
+import org.rapla.storage.dbsql.DBOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(JUnit4.class)
+public class ConnectionPoolTest
+{
+    Logger logger;
+    JDBCDataSource datasource;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:mem:connectionpool");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        try (Connection connection = datasource.getConnection(); Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE POOL_TEST (ID INTEGER)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        try (Connection connection = datasource.getConnection(); Statement statement = connection.createStatement())
+        {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception
+    {
+        final ConnectionPool pool = new ConnectionPool(datasource, 2, logger);
+        for (int i = 0; i < 10; i++)
+        {
+            try (Connection connection = pool.getConnection())
+            {
+                connection.setAutoCommit(false);
+                insert(connection, i);
+                connection.commit();
+            }
+        }
+        Assert.assertEquals(1, pool.getCreatedConnections());
+        Assert.assertEquals(10, pool.getBorrowedConnections());
+        Assert.assertEquals(10, count(pool));
+    }
+
+    @Test
+    public void testPoolIsBounded() throws Exception
+    {
+        final ConnectionPool pool = new ConnectionPool(datasource, 2, ConnectionPool.DEFAULT_IDLE_TIMEOUT, 100, logger);
+        final Connection first = pool.getConnection();
+        final Connection second = pool.getConnection();
+        try
+        {
+            pool.getConnection();
+            Assert.fail("SQLException expected");
+        }
+        catch (SQLException ex)
+        {
+            // all connections are in use
+        }
+        first.close();
+        // a closed connection can't be used anymore
+        Assert.assertTrue(first.isClosed());
+        try
+        {
+            first.createStatement();
+            Assert.fail("SQLException expected");
+        }
+        catch (SQLException ex)
+        {
+        }
+        pool.getConnection().close();
+        second.close();
+        Assert.assertEquals(2, pool.getOpenConnections());
+        Assert.assertEquals(2, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testUncommittedChangesAreRolledBack() throws Exception
+    {
+        final ConnectionPool pool = new ConnectionPool(datasource, 1, logger);
+        try (Connection connection = pool.getConnection())
+        {
+            connection.setAutoCommit(false);
+            insert(connection, 1);
+        }
+        Assert.assertEquals(0, count(pool));
+    }
+
+    @Test
+    public void testPreparedStatementsAreReused() throws Exception
+    {
+        final ConnectionPool pool = new ConnectionPool(datasource, 1, logger);
+        final String sql = "SELECT COUNT(*) FROM POOL_TEST WHERE ID = ?";
+        final PreparedStatement physical;
+        try (Connection connection = pool.getConnection())
+        {
+            try (PreparedStatement stmt = connection.prepareStatement(sql))
+            {
+                physical = stmt.unwrap(PreparedStatement.class);
+                // the same statement used twice at the same time
+                try (PreparedStatement second = connection.prepareStatement(sql))
+                {
+                    Assert.assertNotSame(physical, second.unwrap(PreparedStatement.class));
+                }
+            }
+        }
+        try (Connection connection = pool.getConnection(); PreparedStatement stmt = connection.prepareStatement(sql))
+        {
+            Assert.assertSame(physical, stmt.unwrap(PreparedStatement.class));
+            stmt.setInt(1, 1);
+            try (ResultSet result = stmt.executeQuery())
+            {
+                Assert.assertTrue(result.next());
+            }
+        }
+        try (Connection connection = pool.getConnection(); PreparedStatement stmt = connection.prepareStatement(sql))
+        {
+            // changed settings are not passed to the next user of the statement
+            stmt.setMaxRows(1);
+        }
+        try (Connection connection = pool.getConnection(); PreparedStatement stmt = connection.prepareStatement(sql))
+        {
+            Assert.assertEquals(0, stmt.getMaxRows());
+        }
+    }
+
+    @Test
+    public void testBrokenConnectionsAreReplaced() throws Exception
+    {
+        final ConnectionPool pool = new ConnectionPool(datasource, 1, logger);
+        try (Connection connection = pool.getConnection())
+        {
+            connection.unwrap(Connection.class).close();
+            try
+            {
+                insert(connection, 1);
+                Assert.fail("SQLException expected");
+            }
+            catch (SQLException ex)
+            {
+                // the physical connection is closed
+            }
+        }
+        Assert.assertEquals(0, pool.getOpenConnections());
+        Assert.assertEquals(0, count(pool));
+        Assert.assertEquals(2, pool.getCreatedConnections());
+    }
+
+    @Test
+    public void testIdleConnectionsTimeOut() throws Exception
+    {
+        final ConnectionPool pool = new ConnectionPool(datasource, 2, 1, 1000, logger);
+        pool.getConnection().close();
+        Thread.sleep(20);
+        pool.getConnection().close();
+        Assert.assertEquals(2, pool.getCreatedConnections());
+        Assert.assertEquals(1, pool.getOpenConnections());
+        pool.clear();
+        Assert.assertEquals(0, pool.getOpenConnections());
+    }
+
+    @Test
+    public void testConcurrentStoresWithPool() throws Exception
+    {
+        JDBCDataSource fileDatasource = new JDBCDataSource();
+        fileDatasource.setUrl("jdbc:hsqldb:target/test/rapla-connectionpool");
+        fileDatasource.setUser("db_user");
+        fileDatasource.setPassword("your_pwd");
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithDatasource(logger, fileDatasource, "/testdefault.xml");
+        final DBOperator operator = (DBOperator) facade.getOperator();
+        operator.setConnectionPoolSize(4);
+        final User user = facade.getUser("homer");
+        final DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        final Date start = DateTools.addDays(facade.today(), 1);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5; i++)
+                    {
+                        final Classification classification = type.newClassification();
+                        classification.setValue("name", "thread " + thread + " event " + i);
+                        final Reservation reservation = facade.newReservation(classification, user);
+                        final Appointment appointment = facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+                        reservation.addAppointment(appointment);
+                        reservation.addAllocatable(facade.getAllocatables()[0]);
+                        facade.store(reservation);
+                        operator.refresh();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        final ConnectionPool pool = operator.getConnectionPool();
+        Assert.assertTrue(pool.getOpenConnections() <= 4);
+        Assert.assertTrue(pool.getCreatedConnections() < pool.getBorrowedConnections());
+        final int[] stored = new int[2];
+        operator.runWithReadLock((cache, syncEntities) -> stored[0] = cache.getReservations().size());
+        // the stored reservations are read again from the database
+        operator.disconnect();
+        Assert.assertEquals(0, pool.getOpenConnections());
+        operator.connect();
+        operator.runWithReadLock((cache, syncEntities) -> stored[1] = cache.getReservations().size());
+        Assert.assertEquals(stored[0], stored[1]);
+        Assert.assertTrue("stored " + stored[1], stored[1] >= threads * 5);
+        Assert.assertEquals(pool.getIdleConnections(), pool.getOpenConnections());
+        RaplaTestCase.dispose(facade);
+    }
+
+    private static void insert(Connection connection, int id) throws SQLException
+    {
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO POOL_TEST (ID) VALUES (?)"))
+        {
+            stmt.setInt(1, id);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static int count(ConnectionPool pool) throws SQLException
+    {
+        try (Connection connection = pool.getConnection(); PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*) FROM POOL_TEST");
+                ResultSet result = stmt.executeQuery())
+        {
+            result.next();
+            return result.getInt(1);
+        }
+    }
+}
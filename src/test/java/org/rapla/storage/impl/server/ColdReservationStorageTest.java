@@ -0,0 +1,93 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.components.util.SerializableDateTimeFormat;
+import org.rapla.entities.DependencyException;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class ColdReservationStorageTest
+{
+    @Test
+    public void testMoveToColdStorage() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        RaplaFacade facade = RaplaTestCase.createSimpleSimpsonsWithHomer().getRaplaFacade();
+        LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        File directory = Files.createTempDirectory("raplacold").toFile();
+        operator.setColdStorage(new ColdReservationStorage(directory, logger));
+
+        Allocatable allocatable = facade.newResourceDeprecated();
+        allocatable.getClassification().setValue("name", "past room");
+        facade.store(allocatable);
+        Date start = DateTools.addDays(facade.today(), -100);
+        Reservation reservation = facade.newReservationDeprecated();
+        reservation.getClassification().setValue("name", "past event");
+        Appointment appointment = facade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        reservation.addAppointment(appointment);
+        reservation.addAllocatable(allocatable);
+        facade.store(reservation);
+
+        Date horizon = DateTools.addDays(facade.today(), -30);
+        // the test data contains other past reservations as well
+        final int moved = operator.moveToColdStorage(horizon);
+        Assert.assertTrue(moved >= 1);
+        Assert.assertEquals(moved, operator.getColdStorage().size());
+        Assert.assertNull(operator.tryResolve(reservation.getReference()));
+        Assert.assertTrue(new File(directory, ColdReservationStorage.INDEX_FILE).exists());
+        final String partitionName = SerializableDateTimeFormat.INSTANCE.formatDate(reservation.getMaxEnd()).substring(0, 7);
+        final File partition = new File(directory, ColdReservationStorage.PARTITION_PREFIX + partitionName + ColdReservationStorage.PARTITION_SUFFIX);
+        for (String line : Files.readAllLines(partition.toPath()))
+        {
+            Assert.assertTrue(line, line.startsWith("{"));
+        }
+
+        // the resource is still used by the archived reservation
+        try
+        {
+            facade.remove(operator.resolve(allocatable.getReference()));
+            Assert.fail("DependencyException expected");
+        }
+        catch (DependencyException ex)
+        {
+        }
+        Assert.assertNotNull(operator.tryResolve(allocatable.getReference()));
+
+        // queries for a past period still find the reservation
+        Allocatable[] allocatables = { allocatable };
+        Date queryStart = DateTools.addDays(start, -1);
+        Collection<Reservation> past = RaplaTestCase.waitForWithRaplaException(facade.getReservationsForAllocatable(allocatables, queryStart, horizon, null), 10000);
+        Assert.assertTrue(past.contains(reservation));
+        // open queries don't
+        Collection<Reservation> open = RaplaTestCase.waitForWithRaplaException(facade.getReservationsForAllocatable(allocatables, null, null, null), 10000);
+        Assert.assertFalse(open.contains(reservation));
+
+        // the index is read again on restart
+        ColdReservationStorage reopened = new ColdReservationStorage(directory, logger);
+        Assert.assertTrue(reopened.contains(reservation.getReference()));
+
+        // a change moves the reservation back into the cache
+        Reservation cold = past.stream().filter(reservation::equals).findFirst().get();
+        Reservation edit = facade.edit(cold);
+        edit.getClassification().setValue("name", "changed past event");
+        facade.store(edit);
+        Assert.assertNotNull(operator.tryResolve(reservation.getReference()));
+        Assert.assertEquals(moved - 1, operator.getColdStorage().size());
+        Assert.assertEquals(0, operator.moveToColdStorage(DateTools.addDays(start, -1)));
+        Assert.assertEquals(1, operator.moveToColdStorage(horizon));
+    }
+}
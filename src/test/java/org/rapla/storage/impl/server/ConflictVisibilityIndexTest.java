@@ -0,0 +1,161 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.Conflict;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.storage.PermissionController;
+import org.rapla.storage.StorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** compares the indexed conflicts of each user with the conflicts found by checking the permissions of all conflicts */
+@RunWith(JUnit4.class)
+public class ConflictVisibilityIndexTest
+{
+    static final int STEPS = 150;
+
+    @Test
+    public void testRandomChanges() throws Exception
+    {
+        final Logger logger = RaplaTestCase.initLoger();
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final StorageOperator operator = facade.getOperator();
+        final Random random = new Random(4711);
+        final User homer = facade.getUser("homer");
+        final List<User> users = new ArrayList<>();
+        users.add(homer);
+        users.add(facade.getUser("monty"));
+        for (int i = 0; i < 3; i++)
+        {
+            final User user = facade.newUser();
+            user.setUsername("user" + i);
+            facade.store(user);
+            users.add(user);
+        }
+        final List<Allocatable> allocatables = Arrays.asList(facade.getAllocatables()).subList(0, 4);
+        final DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        final Date day = DateTools.addDays(facade.today(), 1);
+        final List<Reservation> reservations = new ArrayList<>();
+        for (int step = 0; step < STEPS; step++)
+        {
+            final int action = random.nextInt(10);
+            if (action < 5 || reservations.size() < 5)
+            {
+                final User owner = users.get(random.nextInt(users.size()));
+                final Classification classification = type.newClassification();
+                classification.setValue("name", "event " + step);
+                final Reservation reservation = facade.newReservation(classification, owner);
+                reservation.addAppointment(newAppointment(facade, random, day, owner));
+                reservation.addAllocatable(allocatables.get(random.nextInt(allocatables.size())));
+                facade.store(reservation);
+                reservations.add(reservation);
+            }
+            else if (action < 7)
+            {
+                // moves the reservation or changes its owner
+                final Reservation reservation = facade.edit(reservations.get(random.nextInt(reservations.size())));
+                if (random.nextBoolean())
+                {
+                    reservation.setOwner(users.get(random.nextInt(users.size())));
+                }
+                else
+                {
+                    final Appointment appointment = reservation.getAppointments()[0];
+                    final long start = day.getTime() + random.nextInt(8) * DateTools.MILLISECONDS_PER_HOUR;
+                    appointment.move(new Date(start), new Date(start + (1 + random.nextInt(3)) * DateTools.MILLISECONDS_PER_HOUR));
+                }
+                facade.store(reservation);
+                reservations.set(reservations.indexOf(reservation), reservation);
+            }
+            else if (action < 8)
+            {
+                facade.remove(reservations.remove(random.nextInt(reservations.size())));
+            }
+            else if (action < 9)
+            {
+                // restricts the read permission of a resource to a single user or grants it to all users
+                final Allocatable allocatable = facade.edit(allocatables.get(random.nextInt(allocatables.size())));
+                for (Permission permission : new ArrayList<>(allocatable.getPermissionList()))
+                {
+                    allocatable.removePermission(permission);
+                }
+                final Permission permission = allocatable.newPermission();
+                permission.setAccessLevel(Permission.AccessLevel.ALLOCATE_CONFLICTS);
+                if (random.nextBoolean())
+                {
+                    permission.setUser(users.get(random.nextInt(users.size())));
+                }
+                allocatable.addPermission(permission);
+                facade.store(allocatable);
+                allocatables.set(allocatables.indexOf(allocatable), allocatable);
+            }
+            else
+            {
+                // an admin can modify all conflicts
+                final int index = 1 + random.nextInt(users.size() - 1);
+                final User user = facade.edit(users.get(index));
+                user.setAdmin(!user.isAdmin());
+                facade.store(user);
+                users.set(index, user);
+            }
+            for (User user : users)
+            {
+                assertSameConflicts(operator, operator.resolve(user.getReference()), "step " + step);
+            }
+        }
+        RaplaTestCase.dispose(facade);
+    }
+
+    private static Appointment newAppointment(RaplaFacade facade, Random random, Date day, User owner) throws Exception
+    {
+        final long start = day.getTime() + random.nextInt(8) * DateTools.MILLISECONDS_PER_HOUR;
+        final long end = start + (1 + random.nextInt(3)) * DateTools.MILLISECONDS_PER_HOUR;
+        return facade.newAppointmentWithUser(new Date(start), new Date(end), owner);
+    }
+
+    private static void assertSameConflicts(StorageOperator operator, User user, String message) throws Exception
+    {
+        final PermissionController permissionController = operator.getPermissionController();
+        final Set<String> expected = new TreeSet<>();
+        for (Conflict conflict : RaplaTestCase.waitForWithRaplaException(operator.getConflicts((User) null), 10000))
+        {
+            if (permissionController.canModify(conflict, user))
+            {
+                expected.add(conflict.getId());
+            }
+        }
+        Assert.assertEquals(message + " " + user.getUsername(), expected, getIds(RaplaTestCase.waitForWithRaplaException(operator.getConflicts(user), 10000)));
+    }
+
+    private static Set<String> getIds(Collection<? extends Entity> entities)
+    {
+        final Set<String> ids = new TreeSet<>();
+        for (Entity entity : entities)
+        {
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,107 @@
+package org.rapla.storage.impl.server;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.storage.dbfile.tests.FileOperatorTest;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class PurgeReservationsTest
+{
+    @Test
+    public void testPurgeFile() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        String resolvedPath = RaplaTestCase.getTestDataFile("/testdefault.xml");
+        RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, resolvedPath, new FileOperatorTest.MyFileIO(resolvedPath, logger));
+        testPurge(logger, facade);
+    }
+
+    @Test
+    public void testPurgeDatabase() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        JDBCDataSource datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:target/test/rapla-purge");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        RaplaFacade facade = RaplaTestCase.createFacadeWithDatasource(logger, datasource, "/testdefault.xml");
+        testPurge(logger, facade);
+    }
+
+    private void testPurge(Logger logger, RaplaFacade facade) throws Exception
+    {
+        LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        File directory = Files.createTempDirectory("raplacold").toFile();
+        operator.setColdStorage(new ColdReservationStorage(directory, logger));
+        Allocatable allocatable = facade.getAllocatables()[0];
+        User user = facade.getUser("homer");
+        DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        Date today = facade.today();
+
+        // more than one batch of database deletes
+        List<Entity> past = new ArrayList<>();
+        for (int i = 0; i < 1200; i++)
+        {
+            past.add(createReservation(facade, user, type, allocatable, DateTools.addDays(today, -100 - i % 50), "past " + i));
+        }
+        Reservation cold = createReservation(facade, user, type, allocatable, DateTools.addDays(today, -400), "cold");
+        Reservation recent = createReservation(facade, user, type, allocatable, DateTools.addDays(today, -10), "recent");
+        Reservation future = createReservation(facade, user, type, allocatable, DateTools.addDays(today, 10), "future");
+        past.add(cold);
+        past.add(recent);
+        past.add(future);
+        facade.storeObjects(past.toArray(Entity.ENTITY_ARRAY));
+        Assert.assertTrue(operator.moveToColdStorage(DateTools.addDays(today, -300)) >= 1);
+        Assert.assertTrue(operator.getColdStorage().contains(cold.getReference()));
+
+        final int purged = operator.purgeReservations(DateTools.addDays(today, -30));
+        Assert.assertTrue(purged >= 1201);
+        Assert.assertEquals(0, operator.getColdStorage().size());
+        Assert.assertNull(operator.tryResolve(past.get(0).getReference()));
+        Assert.assertNotNull(operator.tryResolve(recent.getReference()));
+        Assert.assertNotNull(operator.tryResolve(future.getReference()));
+        // the removal is visible to clients as a delete in the history
+        Assert.assertTrue(operator.history.getLatest(past.get(0).getReference()).isDelete());
+
+        // the purge is persistent
+        operator.disconnect();
+        operator.connect();
+        Assert.assertNull(operator.tryResolve(past.get(0).getReference()));
+        Assert.assertNull(operator.tryResolve(past.get(1199).getReference()));
+        Assert.assertNotNull(operator.tryResolve(recent.getReference()));
+        Assert.assertEquals(0, operator.purgeReservations(DateTools.addDays(today, -30)));
+        RaplaTestCase.dispose(facade);
+    }
+
+    private Reservation createReservation(RaplaFacade facade, User user, DynamicType type, Allocatable allocatable, Date start, String name) throws Exception
+    {
+        Classification classification = type.newClassification();
+        classification.setValue("name", name);
+        Reservation reservation = facade.newReservation(classification, user);
+        Appointment appointment = facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+        reservation.addAppointment(appointment);
+        reservation.addAllocatable(allocatable);
+        return reservation;
+    }
+}
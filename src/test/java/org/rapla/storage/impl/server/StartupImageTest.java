@@ -0,0 +1,241 @@
+package org.rapla.storage.impl.server;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.client.ClientFacade;
+import org.rapla.facade.internal.ClientFacadeImpl;
+import org.rapla.facade.internal.FacadeImpl;
+import org.rapla.logger.Logger;
+import org.rapla.rest.JsonParserWrapper;
+import org.rapla.storage.dbfile.tests.FileOperatorTest;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RunWith(JUnit4.class)
+public class StartupImageTest
+{
+    Logger logger;
+    File imageFile;
+    CountingImage image;
+
+    static class CountingImage extends StartupImage
+    {
+        int loaded;
+
+        CountingImage(File file, Logger logger)
+        {
+            super(file, logger);
+        }
+
+        @Override
+        synchronized public Content read(String source, Date notBefore)
+        {
+            final Content content = super.read(source, notBefore);
+            if (content != null)
+            {
+                loaded++;
+            }
+            return content;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        imageFile = File.createTempFile("rapla", ".img");
+        imageFile.delete();
+        imageFile.deleteOnExit();
+        image = new CountingImage(imageFile, logger);
+    }
+
+    @Test
+    public void testFileOperator() throws Exception
+    {
+        final String resolvedPath = RaplaTestCase.getTestDataFile("/testdefault.xml");
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, resolvedPath, new FileOperatorTest.MyFileIO(resolvedPath, logger));
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        operator.setStartupImage(image);
+        storeReservation(facade, "before image");
+        Map<String, JsonElement> expected = getEntities(facade);
+
+        // the image is written on disconnect
+        operator.disconnect();
+        Assert.assertTrue(imageFile.exists());
+        operator.connect();
+        Assert.assertEquals(1, image.loaded);
+        Assert.assertEquals(expected, getEntities(facade));
+
+        // the file changes after the image was written, so the image is ignored
+        storeReservation(facade, "after image");
+        expected = getEntities(facade);
+        restartWithoutWritingImage(operator);
+        Assert.assertEquals(1, image.loaded);
+        Assert.assertEquals(expected, getEntities(facade));
+        RaplaTestCase.dispose(facade);
+    }
+
+    @Test
+    public void testDamagedImage() throws Exception
+    {
+        final String resolvedPath = RaplaTestCase.getTestDataFile("/testdefault.xml");
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, resolvedPath, new FileOperatorTest.MyFileIO(resolvedPath, logger));
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        operator.setStartupImage(image);
+        operator.writeStartupImage();
+        final Map<String, JsonElement> expected = getEntities(facade);
+        try (RandomAccessFile file = new RandomAccessFile(imageFile, "rw"))
+        {
+            file.seek(file.length() - 1);
+            final int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+        restartWithoutWritingImage(operator);
+        Assert.assertEquals(0, image.loaded);
+        Assert.assertEquals(expected, getEntities(facade));
+        RaplaTestCase.dispose(facade);
+    }
+
+    @Test
+    public void testDBOperatorAppliesChangesSinceImage() throws Exception
+    {
+        JDBCDataSource datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:target/test/rapla-startupimage");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithDatasource(logger, datasource, "/testdefault.xml");
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        operator.setStartupImage(image);
+        final Reservation removed = storeReservation(facade, "removed after image");
+        operator.writeStartupImage();
+
+        // these changes are only in the database and must be read from the history on restart
+        storeReservation(facade, "after image");
+        facade.remove(removed);
+        final Allocatable allocatable = facade.edit(facade.getAllocatables()[0]);
+        allocatable.getClassification().setValue("name", "changed after image");
+        facade.store(allocatable);
+        final Map<String, JsonElement> expected = getEntities(facade);
+
+        restartWithoutWritingImage(operator);
+        Assert.assertEquals(1, image.loaded);
+        final Map<String, JsonElement> entities = getEntities(facade);
+        Assert.assertFalse(entities.containsKey(removed.getId()));
+        Assert.assertEquals(expected, entities);
+        RaplaTestCase.dispose(facade);
+    }
+
+    @Test
+    public void testDBOperatorArchiveAndRestart() throws Exception
+    {
+        JDBCDataSource datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:target/test/rapla-startupimage-cold");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithDatasource(logger, datasource, "/testdefault.xml");
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        operator.setStartupImage(image);
+        final File directory = Files.createTempDirectory("raplacold").toFile();
+        operator.setColdStorage(new ColdReservationStorage(directory, logger));
+        final Reservation archived = storeReservation(facade, "archived", DateTools.addDays(facade.today(), -100));
+        operator.writeStartupImage();
+
+        // the archived reservation is removed from the database without a history entry
+        Assert.assertTrue(operator.moveToColdStorage(DateTools.addDays(facade.today(), -30)) >= 1);
+        Assert.assertNull(operator.tryResolve(archived.getReference()));
+        final Map<String, JsonElement> expected = getEntities(facade);
+
+        restartWithoutWritingImage(operator);
+        // the image was written again after the move
+        Assert.assertEquals(1, image.loaded);
+        Assert.assertNull(operator.tryResolve(archived.getReference()));
+        Assert.assertEquals(expected, getEntities(facade));
+        RaplaTestCase.dispose(facade);
+    }
+
+    private void restartWithoutWritingImage(LocalAbstractCachableOperator operator) throws Exception
+    {
+        operator.setStartupImage(null);
+        operator.disconnect();
+        operator.setStartupImage(image);
+        operator.connect();
+    }
+
+    private Reservation storeReservation(RaplaFacade facade, String name) throws Exception
+    {
+        return storeReservation(facade, name, DateTools.addDays(facade.today(), 1));
+    }
+
+    private Reservation storeReservation(RaplaFacade facade, String name, Date start) throws Exception
+    {
+        final User user = facade.getUser("homer");
+        final DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        final Classification classification = type.newClassification();
+        classification.setValue("name", name);
+        final Reservation reservation = facade.newReservation(classification, user);
+        final Appointment appointment = facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+        reservation.addAppointment(appointment);
+        reservation.addAllocatable(facade.getAllocatables()[0]);
+        facade.store(reservation);
+        return reservation;
+    }
+
+    private Map<String, JsonElement> getEntities(RaplaFacade facade) throws Exception
+    {
+        final LocalAbstractCachableOperator operator = (LocalAbstractCachableOperator) facade.getOperator();
+        final List<Entity> entities = new ArrayList<>(operator.getVisibleEntities(null));
+        // reservations are only visible to a logged in user
+        final ClientFacade clientFacade = new ClientFacadeImpl(facade, logger, ((FacadeImpl) facade).getI18n());
+        clientFacade.login("homer", "duffs".toCharArray());
+        final RaplaFacade userFacade = clientFacade.getRaplaFacade();
+        final Collection<Reservation> reservations = RaplaTestCase
+                .waitForWithRaplaException(userFacade.getReservationsForAllocatable(userFacade.getAllocatables(), null, null, null), 10000);
+        entities.addAll(reservations);
+        final JsonParserWrapper.JsonParser gson = JsonParserWrapper.defaultJson().get();
+        final Map<String, JsonElement> result = new TreeMap<>();
+        for (Entity entity : entities)
+        {
+            final JsonObject json = JsonParser.parseString(gson.toJson(entity)).getAsJsonObject();
+            // entities without timestamps in the file get the time of reading
+            json.remove("createDate");
+            json.remove("lastChanged");
+            // as well as attributes without ids
+            if (json.has("attributes"))
+            {
+                for (JsonElement attribute : json.getAsJsonArray("attributes"))
+                {
+                    attribute.getAsJsonObject().remove("id");
+                }
+            }
+            result.put(entity.getId(), json);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package org.rapla.storage.tests;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.storage.UpdateEvent;
+import org.rapla.storage.dbsql.DBOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** compares the dispatch and refresh latency of concurrent clients with and without the connection pool. Run manually. */
+@Ignore
+@RunWith(JUnit4.class)
+public class ConnectionPoolBenchmark
+{
+    static final int THREADS = 16;
+    static final int STORES_PER_THREAD = 20;
+    static final int ROUNDS = 3;
+    static final int POOL_SIZE = 8;
+    /** each reservation gets its own hour, so the conflicts don't grow from round to round */
+    final AtomicInteger hour = new AtomicInteger();
+
+    @Test
+    public void testDatabase() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        JDBCDataSource datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:target/test/rapla-poolbenchmark");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        RaplaFacade facade = RaplaTestCase.createFacadeWithDatasource(logger, datasource, "/testdefault.xml");
+        DBOperator operator = (DBOperator) facade.getOperator();
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            operator.setConnectionPoolSize(0);
+            String direct = measure(facade, operator);
+            operator.setConnectionPoolSize(POOL_SIZE);
+            String pooled = measure(facade, operator);
+            System.out.println("round " + round + ": " + THREADS + " threads, direct " + direct + ", pooled " + pooled + ", "
+                    + operator.getConnectionPool().getCreatedConnections() + " connections for " + operator.getConnectionPool().getBorrowedConnections()
+                    + " borrows");
+        }
+        operator.setConnectionPoolSize(0);
+        RaplaTestCase.dispose(facade);
+    }
+
+    private String measure(RaplaFacade facade, DBOperator operator) throws Exception
+    {
+        User user = facade.getUser("homer");
+        DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        Allocatable[] allocatables = facade.getAllocatables();
+        Date start = DateTools.addDays(facade.today(), 1);
+        AtomicLong dispatchTime = new AtomicLong();
+        AtomicLong refreshTime = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++)
+            {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < STORES_PER_THREAD; i++)
+                    {
+                        Classification classification = type.newClassification();
+                        classification.setValue("name", "thread " + thread + " event " + i);
+                        Reservation reservation = facade.newReservation(classification, user);
+                        Date appointmentStart = new Date(start.getTime() + hour.getAndIncrement() * DateTools.MILLISECONDS_PER_HOUR);
+                        Appointment appointment = facade.newAppointmentWithUser(appointmentStart, new Date(appointmentStart.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+                        reservation.addAppointment(appointment);
+                        reservation.addAllocatable(allocatables[thread % allocatables.length]);
+                        UpdateEvent evt = new UpdateEvent();
+                        evt.setUserId(user.getId());
+                        evt.addStore(reservation);
+                        long time = System.nanoTime();
+                        operator.dispatch(evt);
+                        dispatchTime.addAndGet(System.nanoTime() - time);
+                        time = System.nanoTime();
+                        operator.refresh();
+                        refreshTime.addAndGet(System.nanoTime() - time);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        int count = THREADS * STORES_PER_THREAD;
+        return "dispatch " + dispatchTime.get() / count / 1000000 + " ms, refresh " + refreshTime.get() / count / 1000000 + " ms";
+    }
+}
@@ -0,0 +1,126 @@
+package org.rapla.storage.tests;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.server.internal.DispatchQueue;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.UpdateEvent;
+import org.rapla.storage.dbfile.tests.FileOperatorTest;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** compares the saves per second of concurrent clients with and without the dispatch queue. Run manually. */
+@Ignore
+@RunWith(JUnit4.class)
+public class DispatchQueueBenchmark
+{
+    static final int THREADS = 16;
+    static final int STORES_PER_THREAD = 50;
+    static final int ROUNDS = 3;
+    /** each reservation gets its own hour, so the conflicts don't grow from round to round */
+    final AtomicInteger hour = new AtomicInteger();
+
+    interface Dispatcher
+    {
+        void dispatch(UpdateEvent evt) throws Exception;
+    }
+
+    @Test
+    public void testFile() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        String resolvedPath = RaplaTestCase.getTestDataFile("/testdefault.xml");
+        RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, resolvedPath, new FileOperatorTest.MyFileIO(resolvedPath, logger));
+        run("file", logger, facade);
+    }
+
+    @Test
+    public void testDatabase() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        JDBCDataSource datasource = new JDBCDataSource();
+        datasource.setUrl("jdbc:hsqldb:target/test/rapla-dispatchbenchmark");
+        datasource.setUser("db_user");
+        datasource.setPassword("your_pwd");
+        RaplaFacade facade = RaplaTestCase.createFacadeWithDatasource(logger, datasource, "/testdefault.xml");
+        run("database", logger, facade);
+    }
+
+    private void run(String name, Logger logger, RaplaFacade facade) throws Exception
+    {
+        CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        DispatchQueue queue = new DispatchQueue(operator, logger);
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            double queued = measure(facade, queue::dispatch);
+            double direct = measure(facade, operator::dispatch);
+            System.out.println(name + " round " + round + ": " + THREADS + " threads, direct " + Math.round(direct) + " saves/s, queued " + Math.round(queued)
+                    + " saves/s, average batch " + Math.round(queue.getAverageBatchSize() * 10) / 10.0);
+        }
+        RaplaTestCase.dispose(facade);
+    }
+
+    private double measure(RaplaFacade facade, Dispatcher dispatcher) throws Exception
+    {
+        User user = facade.getUser("homer");
+        DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        Allocatable[] allocatables = facade.getAllocatables();
+        Date start = DateTools.addDays(facade.today(), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long time = System.currentTimeMillis();
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++)
+            {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < STORES_PER_THREAD; i++)
+                    {
+                        Classification classification = type.newClassification();
+                        classification.setValue("name", "thread " + thread + " event " + i);
+                        Reservation reservation = facade.newReservation(classification, user);
+                        Date appointmentStart = new Date(start.getTime() + hour.getAndIncrement() * DateTools.MILLISECONDS_PER_HOUR);
+                        Appointment appointment = facade.newAppointmentWithUser(appointmentStart, new Date(appointmentStart.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+                        reservation.addAppointment(appointment);
+                        reservation.addAllocatable(allocatables[thread % allocatables.length]);
+                        UpdateEvent evt = new UpdateEvent();
+                        evt.setUserId(user.getId());
+                        evt.addStore(reservation);
+                        dispatcher.dispatch(evt);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        return THREADS * STORES_PER_THREAD * 1000.0 / Math.max(1, System.currentTimeMillis() - time);
+    }
+}
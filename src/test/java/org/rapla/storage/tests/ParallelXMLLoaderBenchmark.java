@@ -0,0 +1,90 @@
+package org.rapla.storage.tests;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/** compares the startup time of the sax reader with the parallel loader on a generated data file. Run manually. */
+@Ignore
+@RunWith(JUnit4.class)
+public class ParallelXMLLoaderBenchmark
+{
+    static final int RESERVATIONS = 100000;
+    static final int STORE_CHUNK = 10000;
+    static final int ROUNDS = 5;
+
+    @Test
+    public void testStartup() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        File file = File.createTempFile("raplabenchmark", ".xml");
+        file.deleteOnExit();
+        Files.copy(Paths.get(RaplaTestCase.getTestDataFile("/testdefault.xml")), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, file.getAbsolutePath(), new FileOperator.DefaultFileIO());
+        User user = facade.getUser("homer");
+        Allocatable[] allocatables = facade.getAllocatables();
+        DynamicType type = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        Date start = DateTools.addDays(facade.today(), -RESERVATIONS / 24);
+        List<Entity> chunk = new ArrayList<>();
+        for (int i = 0; i < RESERVATIONS; i++)
+        {
+            Classification classification = type.newClassification();
+            classification.setValue("name", "event " + i);
+            Reservation reservation = facade.newReservation(classification, user);
+            // one reservation per hour and resource, so there are no conflicts
+            Date appointmentStart = new Date(start.getTime() + (i / allocatables.length) * DateTools.MILLISECONDS_PER_HOUR);
+            Appointment appointment = facade.newAppointmentWithUser(appointmentStart, new Date(appointmentStart.getTime() + DateTools.MILLISECONDS_PER_HOUR), user);
+            reservation.addAppointment(appointment);
+            reservation.addAllocatable(allocatables[i % allocatables.length]);
+            chunk.add(reservation);
+            if (chunk.size() == STORE_CHUNK)
+            {
+                facade.storeObjects(chunk.toArray(Entity.ENTITY_ARRAY));
+                chunk.clear();
+            }
+        }
+        facade.storeObjects(chunk.toArray(Entity.ENTITY_ARRAY));
+        System.out.println("Generated " + RESERVATIONS + " reservations in " + file.length() / 1024 / 1024 + " MB");
+
+        FileOperator operator = (FileOperator) facade.getOperator();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            long saxTime = connect(operator, 0);
+            long parallelTime = connect(operator, threads);
+            System.out.println("round " + round + ": sax " + saxTime + " ms, parallel with " + threads + " threads " + parallelTime + " ms");
+        }
+        RaplaTestCase.dispose(facade);
+    }
+
+    private long connect(FileOperator operator, int threads) throws Exception
+    {
+        operator.disconnect();
+        operator.setLoaderThreads(threads);
+        long time = System.currentTimeMillis();
+        operator.connect();
+        return System.currentTimeMillis() - time;
+    }
+}
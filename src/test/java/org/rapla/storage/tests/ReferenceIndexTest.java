@@ -0,0 +1,199 @@
+package org.rapla.storage.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Category;
+import org.rapla.entities.DependencyException;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.configuration.Preferences;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.internal.CategoryImpl;
+import org.rapla.entities.storage.EntityReferencer;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.LocalCache;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** compares the reverse reference index of the cache with a scan over all entities after random changes */
+@RunWith(JUnit4.class)
+public class ReferenceIndexTest
+{
+    static final int STEPS = 200;
+
+    @Test
+    public void testIndexMatchesScan() throws Exception
+    {
+        final Logger logger = RaplaTestCase.initLoger();
+        final RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        final Random random = new Random(42);
+        final User homer = facade.getUser("homer");
+        final DynamicType reservationType = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0];
+        final DynamicType resourceType = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE)[0];
+        final Date day = DateTools.addDays(facade.today(), 1);
+        for (int step = 0; step < STEPS; step++)
+        {
+            final List<User> users = new ArrayList<>(operator.getUsers());
+            final List<Allocatable> allocatables = new ArrayList<>(operator.getAllocatables(null));
+            final List<Category> groups = new ArrayList<>(Collections.singletonList(facade.getUserGroupsCategory()));
+            Collections.addAll(groups, facade.getUserGroupsCategory().getCategories());
+            final List<Reservation> reservations = new ArrayList<>();
+            operator.runWithReadLock((cache, syncEntities) -> reservations.addAll(cache.getReservations()));
+            final int action = random.nextInt(8);
+            try
+            {
+                if (action == 0)
+                {
+                    final Category groupsCategory = facade.edit(facade.getUserGroupsCategory());
+                    final Category group = facade.newCategory();
+                    group.setKey("group" + step);
+                    group.getName().setName("en", "group " + step);
+                    groupsCategory.addCategory(group);
+                    facade.store(groupsCategory);
+                }
+                else if (action == 1)
+                {
+                    final User user = facade.newUser();
+                    user.setUsername("user" + step);
+                    user.addGroup(groups.get(random.nextInt(groups.size())));
+                    facade.store(user);
+                }
+                else if (action == 2)
+                {
+                    final Classification classification = resourceType.newClassification();
+                    classification.setValue("name", "resource " + step);
+                    final Allocatable allocatable = facade.newAllocatable(classification, homer);
+                    final Permission permission = allocatable.newPermission();
+                    permission.setAccessLevel(Permission.AccessLevel.ALLOCATE);
+                    if (random.nextBoolean())
+                    {
+                        permission.setUser(users.get(random.nextInt(users.size())));
+                    }
+                    else
+                    {
+                        permission.setGroup(groups.get(random.nextInt(groups.size())));
+                    }
+                    allocatable.addPermission(permission);
+                    facade.store(allocatable);
+                }
+                else if (action < 6)
+                {
+                    final User owner = users.get(random.nextInt(users.size()));
+                    final Classification classification = reservationType.newClassification();
+                    classification.setValue("name", "event " + step);
+                    final Reservation reservation = facade.newReservation(classification, owner);
+                    final Date start = new Date(day.getTime() + random.nextInt(10) * DateTools.MILLISECONDS_PER_HOUR);
+                    final Appointment appointment = facade.newAppointmentWithUser(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR), owner);
+                    reservation.addAppointment(appointment);
+                    reservation.addAllocatable(allocatables.get(random.nextInt(allocatables.size())));
+                    facade.store(reservation);
+                }
+                else if (action == 6)
+                {
+                    // removes referenced entities as well, these are rejected with a dependency exception
+                    final List<Entity> candidates = new ArrayList<>();
+                    candidates.addAll(allocatables);
+                    candidates.addAll(reservations);
+                    candidates.addAll(users);
+                    candidates.remove(homer);
+                    facade.remove(candidates.get(random.nextInt(candidates.size())));
+                }
+                else
+                {
+                    final Reservation reservation = facade.edit(reservations.get(random.nextInt(reservations.size())));
+                    reservation.setOwner(users.get(random.nextInt(users.size())));
+                    reservation.addAllocatable(allocatables.get(random.nextInt(allocatables.size())));
+                    facade.store(reservation);
+                }
+            }
+            catch (DependencyException ex)
+            {
+                // the entity is still referenced
+            }
+            final String message = "step " + step + " action " + action;
+            operator.runWithReadLock((cache, syncEntities) -> {
+                Assert.assertEquals(message, Collections.emptyList(), cache.checkReferenceIndex());
+                for (Entity entity : getReferers(cache))
+                {
+                    Assert.assertEquals(message + " " + entity, scanReferers(cache, entity.getReference()), getIds(cache.getReferers(entity.getReference())));
+                }
+            });
+        }
+        RaplaTestCase.dispose(facade);
+    }
+
+    /** all entities that are considered as referers, the same list the operator scanned before the index was introduced */
+    private static List<Entity> getReferers(LocalCache cache)
+    {
+        final List<Entity> result = new ArrayList<>();
+        result.addAll(cache.getReservations());
+        result.addAll(cache.getAllocatables());
+        result.addAll(cache.getUsers());
+        result.addAll(cache.getDynamicTypes());
+        result.addAll(CategoryImpl.getRecursive(cache.getSuperCategory()));
+        for (User user : cache.getUsers())
+        {
+            final Preferences preferences = cache.getPreferencesForUserId(user.getId());
+            if (preferences != null)
+            {
+                result.add(preferences);
+            }
+        }
+        final Preferences systemPreferences = cache.getPreferencesForUserId(null);
+        if (systemPreferences != null)
+        {
+            result.add(systemPreferences);
+        }
+        return result;
+    }
+
+    private static Set<String> scanReferers(LocalCache cache, ReferenceInfo referenced)
+    {
+        final Set<String> result = new TreeSet<>();
+        for (Entity referer : getReferers(cache))
+        {
+            if (referer.getReference().equals(referenced))
+            {
+                continue;
+            }
+            for (ReferenceInfo info : ((EntityReferencer) referer).getReferenceInfo())
+            {
+                if (referenced.equals(info))
+                {
+                    result.add(referer.getId());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> getIds(Iterable<Entity> entities)
+    {
+        final Set<String> result = new TreeSet<>();
+        for (Entity entity : entities)
+        {
+            result.add(entity.getId());
+        }
+        return result;
+    }
+}
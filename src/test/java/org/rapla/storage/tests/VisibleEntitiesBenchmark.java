@@ -0,0 +1,163 @@
+package org.rapla.storage.tests;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.RaplaResources;
+import org.rapla.components.i18n.internal.AbstractBundleManager;
+import org.rapla.components.i18n.server.ServerBundleManager;
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.entities.domain.internal.PermissionImpl;
+import org.rapla.entities.domain.permission.PermissionExtension;
+import org.rapla.entities.domain.permission.impl.RaplaDefaultPermissionImpl;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.dynamictype.internal.AttributeImpl;
+import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
+import org.rapla.entities.dynamictype.internal.StandardFunctions;
+import org.rapla.entities.extensionpoints.FunctionFactory;
+import org.rapla.entities.internal.CategoryImpl;
+import org.rapla.entities.internal.UserImpl;
+import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.internal.DefaultScheduler;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.logger.Logger;
+import org.rapla.logger.RaplaBootstrapLogger;
+import org.rapla.server.PromiseWait;
+import org.rapla.server.internal.PromiseWaitImpl;
+import org.rapla.storage.LocalCache;
+import org.rapla.storage.PermissionController;
+import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.test.util.DefaultPermissionControllerSupport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** measures LocalCache.getVisibleEntities for a non admin user on many resources with group permissions. Run manually. */
+@Ignore
+@RunWith(JUnit4.class)
+public class VisibleEntitiesBenchmark
+{
+    static final int RESOURCE_COUNT = 20000;
+    static final int GROUP_COUNT = 20;
+    static final int ROUNDS = 20;
+
+    @Test
+    public void testGetVisibleEntities() throws Exception
+    {
+        Logger logger = RaplaBootstrapLogger.createRaplaLogger();
+        AbstractBundleManager bundleManager = new ServerBundleManager();
+        RaplaResources i18n = new RaplaResources(bundleManager);
+        final DefaultScheduler scheduler = new DefaultScheduler(logger);
+        RaplaLocale raplaLocale = new RaplaLocaleImpl(bundleManager);
+        Map<String, FunctionFactory> functionFactoryMap = new HashMap<>();
+        functionFactoryMap.put(StandardFunctions.NAMESPACE, new StandardFunctions(raplaLocale));
+        Set<PermissionExtension> permissionExtensions = new LinkedHashSet<>();
+        permissionExtensions.add(new RaplaDefaultPermissionImpl());
+        PromiseWait promiseWait = new PromiseWaitImpl(logger);
+        FileOperator operator = new FileOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, "", permissionExtensions);
+        final PermissionController controller = DefaultPermissionControllerSupport.getController(operator);
+        LocalCache cache = new LocalCache(controller);
+
+        final Date today = new Date();
+        CategoryImpl superCategory = new CategoryImpl(today, today);
+        superCategory.setId(Category.SUPER_CATEGORY_REF.getId());
+        superCategory.setKey("supercategory");
+        superCategory.setResolver(cache);
+        CategoryImpl userGroups = new CategoryImpl(today, today);
+        userGroups.setId(getId(Category.class, 1));
+        userGroups.setKey("user-groups");
+        userGroups.setResolver(cache);
+        superCategory.addCategory(userGroups);
+        CategoryImpl[] groups = new CategoryImpl[GROUP_COUNT];
+        for (int i = 0; i < GROUP_COUNT; i++)
+        {
+            // nested groups, so that the parent walk has some depth
+            CategoryImpl group = new CategoryImpl(today, today);
+            group.setId(getId(Category.class, 10 + i));
+            group.setKey("group" + i);
+            group.setResolver(cache);
+            (i == 0 ? userGroups : groups[i - 1]).addCategory(group);
+            groups[i] = group;
+        }
+        List<CategoryImpl> categories = new ArrayList<>(Arrays.asList(groups));
+        categories.add(superCategory);
+        categories.add(userGroups);
+        for (CategoryImpl category : categories)
+        {
+            category.setReadOnly();
+            cache.put(category);
+        }
+
+        UserImpl user = new UserImpl(today, today);
+        user.setId(getId(User.class, 1));
+        user.setUsername("bart");
+        user.setResolver(cache);
+        user.addGroup(groups[GROUP_COUNT - 1]);
+        user.setReadOnly();
+        cache.put(user);
+
+        AttributeImpl attribute = new AttributeImpl(AttributeType.STRING);
+        attribute.setKey("name");
+        attribute.setId(getId(Attribute.class, 1));
+        DynamicTypeImpl type = new DynamicTypeImpl();
+        type.setKey("defaultResource");
+        type.setId(getId(DynamicType.class, 1));
+        type.addAttribute(attribute);
+        type.setAnnotation(DynamicTypeAnnotations.KEY_NAME_FORMAT, "{name}");
+        type.setAnnotation(DynamicTypeAnnotations.KEY_CLASSIFICATION_TYPE, DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE);
+        type.setResolver(cache);
+        type.setOperator(operator);
+        {
+            Permission permission = type.newPermission();
+            permission.setAccessLevel(Permission.READ_TYPE);
+            type.addPermission(permission);
+        }
+        type.setReadOnly();
+        cache.put(type);
+
+        for (int i = 0; i < RESOURCE_COUNT; i++)
+        {
+            AllocatableImpl resource = new AllocatableImpl(today, today);
+            resource.setId(getId(Allocatable.class, i));
+            resource.setResolver(cache);
+            Classification classification = type.newClassification();
+            classification.setValue("name", "resource" + i);
+            resource.setClassification(classification);
+            Permission permission = resource.newPermission();
+            permission.setAccessLevel(Permission.READ);
+            ((PermissionImpl) permission).setGroup(groups[i % GROUP_COUNT]);
+            resource.addPermission(permission);
+            resource.setReadOnly();
+            cache.put(resource);
+        }
+
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            long time = System.nanoTime();
+            final List<Entity> visibleEntities = cache.getVisibleEntities(user);
+            long visibleTime = System.nanoTime() - time;
+            System.out.println("round " + round + ": " + visibleEntities.size() + " visible entities in " + visibleTime / 1000000 + " ms");
+        }
+    }
+
+    private String getId(Class<? extends Entity> type, int intId)
+    {
+        return type.toString() + "_" + intId;
+    }
+}
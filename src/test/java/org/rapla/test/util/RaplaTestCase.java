@@ -373,6 +373,13 @@ public abstract class RaplaTestCase
     }
 
     public static RaplaFacade createFacadeWithDatasource(Logger logger, javax.sql.DataSource dataSource,String xmlFile) throws RaplaException
+    {
+        String resolvedPath = xmlFile != null ? getTestDataFile(xmlFile) : null;
+        return createFacadeWithDatasource(logger, dataSource, resolvedPath, new VoidFileIO());
+    }
+
+    /** an empty database is filled with the data of the file at the resolved path, if the path is not null */
+    public static RaplaFacade createFacadeWithDatasource(Logger logger, javax.sql.DataSource dataSource,String resolvedPath, FileOperator.FileIO fileIO) throws RaplaException
     {
         AbstractBundleManager bundleManager = new ServerBundleManager();
         RaplaResources i18n = new RaplaResources(bundleManager);
@@ -392,12 +399,11 @@ public abstract class RaplaTestCase
         PromiseWait promiseWait = new PromiseWaitImpl(logger);
         DBOperator operator = new DBOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, importExportManager,dataSource,
                 DefaultPermissionControllerSupport.getPermissionExtensions());
-        if ( xmlFile != null)
+        if ( resolvedPath != null)
         {
-            String resolvedPath = getTestDataFile(xmlFile);
             FileOperator fileOperator = new FileOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, resolvedPath,
                     DefaultPermissionControllerSupport.getPermissionExtensions());
-            fileOperator.setFileIO(new VoidFileIO());
+            fileOperator.setFileIO(fileIO);
             importExportManager.setManager( new ImportExportManagerImpl(logger,fileOperator,operator));
             operator.removeAll();
         }